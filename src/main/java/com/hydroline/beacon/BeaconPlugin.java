@@ -3,19 +3,35 @@ package com.hydroline.beacon;
 import com.hydroline.beacon.command.BeaconCommand;
 import com.hydroline.beacon.config.ConfigManager;
 import com.hydroline.beacon.config.PluginConfig;
+import com.hydroline.beacon.listener.AdvancementListener;
+import com.hydroline.beacon.listener.PlayerDataRefreshListener;
 import com.hydroline.beacon.listener.PlayerSessionListener;
+import com.hydroline.beacon.mtr.MtrEntityStore;
+import com.hydroline.beacon.mtr.MtrGraphEngine;
+import com.hydroline.beacon.mtr.MtrTileEngine;
+import com.hydroline.beacon.provider.BeaconActionCache;
+import com.hydroline.beacon.provider.MtrNodeMirror;
+import com.hydroline.beacon.provider.MtrRailwaySnapshotCache;
+import com.hydroline.beacon.provider.MtrSchedulePrefetcher;
+import com.hydroline.beacon.provider.MtrTrainStream;
 import com.hydroline.beacon.provider.actions.BeaconProviderActions;
 import com.hydroline.beacon.provider.actions.dto.BeaconPingResponse;
 import com.hydroline.beacon.provider.channel.BeaconProviderClient;
 import com.hydroline.beacon.socket.SocketServerManager;
 import com.hydroline.beacon.storage.DatabaseManager;
+import com.hydroline.beacon.storage.DirectBufferStore;
+import com.hydroline.beacon.storage.MtrQueryCache;
+import com.hydroline.beacon.storage.PlayerDataCache;
+import com.hydroline.beacon.storage.PlayerIdentityIndex;
 import com.hydroline.beacon.task.ScanScheduler;
+import com.hydroline.beacon.task.ServerSnapshotPublisher;
 import com.hydroline.beacon.world.WorldFileAccess;
 import org.bukkit.command.PluginCommand;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
 
+import java.io.File;
 import java.sql.SQLException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -27,6 +43,19 @@ public class BeaconPlugin extends JavaPlugin {
     private WorldFileAccess worldFileAccess;
     private SocketServerManager socketServerManager;
     private BeaconProviderClient beaconProviderClient;
+    private BeaconActionCache beaconActionCache;
+    private MtrNodeMirror mtrNodeMirror;
+    private MtrSchedulePrefetcher mtrSchedulePrefetcher;
+    private MtrTrainStream mtrTrainStream;
+    private DirectBufferStore snapshotBuffers;
+    private MtrRailwaySnapshotCache mtrRailwaySnapshotCache;
+    private ServerSnapshotPublisher snapshotPublisher;
+    private PlayerIdentityIndex identityIndex;
+    private PlayerDataCache playerDataCache;
+    private MtrQueryCache mtrQueryCache;
+    private MtrEntityStore mtrEntityStore;
+    private MtrGraphEngine mtrGraphEngine;
+    private MtrTileEngine mtrTileEngine;
     private final AtomicBoolean shuttingDown = new AtomicBoolean(false);
 
     @Override
@@ -44,11 +73,34 @@ public class BeaconPlugin extends JavaPlugin {
                 + ", version=" + cfg.getVersion());
 
         this.databaseManager = new DatabaseManager(this);
+        this.identityIndex = new PlayerIdentityIndex();
+        this.playerDataCache = new PlayerDataCache(databaseManager, cfg.getPlayerDataCacheMaxKb() * 1024L);
+        this.mtrQueryCache = new MtrQueryCache(databaseManager, cfg.getMtrQueryCacheMaxKb() * 1024L);
+        this.mtrEntityStore = new MtrEntityStore(databaseManager);
+        this.mtrGraphEngine = new MtrGraphEngine(databaseManager, getLogger());
+        this.mtrTileEngine = new MtrTileEngine(databaseManager, mtrGraphEngine, new File(getDataFolder(), "mtr-tiles"), getLogger());
         this.worldFileAccess = new WorldFileAccess(Bukkit.getWorlds());
+        this.snapshotPublisher = new ServerSnapshotPublisher(this, cfg.getStateSnapshotIntervalTicks());
+        this.snapshotPublisher.start();
         Bukkit.getPluginManager().registerEvents(new PlayerSessionListener(this), this);
+        Bukkit.getPluginManager().registerEvents(new PlayerDataRefreshListener(this), this);
+        Bukkit.getPluginManager().registerEvents(new AdvancementListener(this), this);
 
         this.beaconProviderClient = new BeaconProviderClient(this);
         this.beaconProviderClient.start();
+        this.beaconActionCache = new BeaconActionCache(this::getBeaconProviderClient,
+                cfg.getProviderActionCacheTtlSeconds(),
+                cfg.getProviderActionCacheStaleSeconds(),
+                cfg.getProviderActionCacheMaxEntries());
+        this.mtrNodeMirror = new MtrNodeMirror(this, cfg.getMtrNodeMirrorRefreshSeconds());
+        this.mtrNodeMirror.start();
+        this.snapshotBuffers = new DirectBufferStore(cfg.getSnapshotOffHeapMaxMb() * 1024L * 1024L);
+        this.mtrSchedulePrefetcher = new MtrSchedulePrefetcher(this, snapshotBuffers,
+                cfg.getMtrSchedulePrefetchDimensions(), cfg.getMtrSchedulePrefetchIntervalSeconds());
+        this.mtrSchedulePrefetcher.start();
+        this.mtrTrainStream = new MtrTrainStream(this, cfg.getMtrTrainStreamIntervalMs());
+        this.mtrTrainStream.start();
+        this.mtrRailwaySnapshotCache = new MtrRailwaySnapshotCache(snapshotBuffers);
         scheduleBeaconProviderStartupPing();
 
         Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
@@ -56,6 +108,13 @@ public class BeaconPlugin extends JavaPlugin {
                 databaseManager.initialize();
                 getLogger().info("SQLite database initialized successfully.");
 
+                try {
+                    identityIndex.load(databaseManager);
+                    getLogger().info("Loaded " + identityIndex.size() + " player identities into memory.");
+                } catch (SQLException e) {
+                    getLogger().warning("Failed to load player identity index, identity lookups will query SQLite: " + e.getMessage());
+                }
+
                 // Backfill: close any sessions whose last record is JOIN (unclean shutdown previously)
                 try {
                     int fixed = closeOpenSessions(System.currentTimeMillis());
@@ -87,9 +146,24 @@ public class BeaconPlugin extends JavaPlugin {
         if (this.socketServerManager != null) {
             this.socketServerManager.stop();
         }
+        if (this.mtrNodeMirror != null) {
+            this.mtrNodeMirror.stop();
+        }
+        if (this.mtrSchedulePrefetcher != null) {
+            this.mtrSchedulePrefetcher.stop();
+        }
+        if (this.mtrTrainStream != null) {
+            this.mtrTrainStream.stop();
+        }
+        if (this.mtrTileEngine != null) {
+            this.mtrTileEngine.stop();
+        }
         if (this.beaconProviderClient != null) {
             this.beaconProviderClient.stop();
         }
+        if (this.snapshotPublisher != null) {
+            this.snapshotPublisher.stop();
+        }
         // On shutdown, ensure any players whose last event is JOIN receive an ABNORMAL_QUIT record
         try {
             int fixed = closeOpenSessions(System.currentTimeMillis());
@@ -114,6 +188,10 @@ public class BeaconPlugin extends JavaPlugin {
         return databaseManager;
     }
 
+    public ScanScheduler getScanScheduler() {
+        return scanScheduler;
+    }
+
     public WorldFileAccess getWorldFileAccess() {
         return worldFileAccess;
     }
@@ -126,6 +204,58 @@ public class BeaconPlugin extends JavaPlugin {
         return beaconProviderClient;
     }
 
+    public BeaconActionCache getBeaconActionCache() {
+        return beaconActionCache;
+    }
+
+    public MtrNodeMirror getMtrNodeMirror() {
+        return mtrNodeMirror;
+    }
+
+    public MtrSchedulePrefetcher getMtrSchedulePrefetcher() {
+        return mtrSchedulePrefetcher;
+    }
+
+    public MtrTrainStream getMtrTrainStream() {
+        return mtrTrainStream;
+    }
+
+    public MtrRailwaySnapshotCache getMtrRailwaySnapshotCache() {
+        return mtrRailwaySnapshotCache;
+    }
+
+    public DirectBufferStore getSnapshotBuffers() {
+        return snapshotBuffers;
+    }
+
+    public ServerSnapshotPublisher getSnapshotPublisher() {
+        return snapshotPublisher;
+    }
+
+    public PlayerIdentityIndex getIdentityIndex() {
+        return identityIndex;
+    }
+
+    public PlayerDataCache getPlayerDataCache() {
+        return playerDataCache;
+    }
+
+    public MtrQueryCache getMtrQueryCache() {
+        return mtrQueryCache;
+    }
+
+    public MtrEntityStore getMtrEntityStore() {
+        return mtrEntityStore;
+    }
+
+    public MtrGraphEngine getMtrGraphEngine() {
+        return mtrGraphEngine;
+    }
+
+    public MtrTileEngine getMtrTileEngine() {
+        return mtrTileEngine;
+    }
+
     private void scheduleBeaconProviderStartupPing() {
         if (this.beaconProviderClient == null) {
             return;
@@ -2,6 +2,7 @@ package com.hydroline.beacon.command;
 
 import com.hydroline.beacon.BeaconPlugin;
 import com.hydroline.beacon.config.PluginConfig;
+import com.hydroline.beacon.provider.BeaconActionCache;
 import com.hydroline.beacon.provider.channel.BeaconProviderClient;
 import com.hydroline.beacon.provider.channel.BeaconProviderClient.StatusSnapshot;
 import com.hydroline.beacon.socket.SocketServerManager;
@@ -167,6 +168,17 @@ public final class BeaconCommand implements CommandExecutor {
                     formatTimestamp(snapshot.getLastConnectedAtMillis()));
         }
         send(sender, locale, "commands.beacon.provider.details.pending", snapshot.getPendingRequests());
+        send(sender, locale, "commands.beacon.provider.details.coalesced",
+                snapshot.getCoalescedRequests(),
+                snapshot.getCoalescedRequests() + snapshot.getDispatchedRequests());
+        BeaconActionCache cache = plugin.getBeaconActionCache();
+        if (cache != null) {
+            for (Map.Entry<String, BeaconActionCache.ActionStats> entry : cache.getActionStats().entrySet()) {
+                BeaconActionCache.ActionStats stats = entry.getValue();
+                send(sender, locale, "commands.beacon.provider.details.cache",
+                        entry.getKey(), stats.getHits(), stats.getStale(), stats.getMisses());
+            }
+        }
         send(sender, locale, "commands.beacon.provider.details.reconnect", snapshot.getReconnectDelayMillis());
         send(sender, locale, "commands.beacon.provider.details.version",
                 snapshot.getModVersion() != null ? snapshot.getModVersion() : "-");
@@ -4,6 +4,10 @@ import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class ConfigManager {
 
@@ -68,6 +72,120 @@ public class ConfigManager {
             cfg.set("default_language", defaultLanguage);
         }
 
+        int scanParserThreads = cfg.getInt("scan_parser_threads");
+        if (scanParserThreads <= 0) {
+            scanParserThreads = 4;
+            cfg.set("scan_parser_threads", scanParserThreads);
+        }
+        int scanQueueCapacity = cfg.getInt("scan_queue_capacity");
+        if (scanQueueCapacity <= 0) {
+            scanQueueCapacity = 256;
+            cfg.set("scan_queue_capacity", scanQueueCapacity);
+        }
+
+        long playerFullScanInterval = cfg.getLong("player_full_scan_interval");
+        if (playerFullScanInterval <= 0) {
+            playerFullScanInterval = 1200L;
+            cfg.set("player_full_scan_interval", playerFullScanInterval);
+        }
+
+        if (!cfg.contains("online_stats_sampler_enabled")) {
+            cfg.set("online_stats_sampler_enabled", true);
+        }
+        boolean onlineStatsSamplerEnabled = cfg.getBoolean("online_stats_sampler_enabled");
+        if (!cfg.contains("online_stats_sample_keys")) {
+            cfg.set("online_stats_sample_keys", new ArrayList<>(PluginConfig.DEFAULT_ONLINE_STATS_SAMPLE_KEYS));
+        }
+        List<String> onlineStatsSampleKeys = cfg.getStringList("online_stats_sample_keys");
+        long onlineStatsTickBudget = cfg.getLong("online_stats_tick_budget_us");
+        if (onlineStatsTickBudget <= 0) {
+            onlineStatsTickBudget = 500L;
+            cfg.set("online_stats_tick_budget_us", onlineStatsTickBudget);
+        }
+        long onlineStatsSampleInterval = cfg.getLong("online_stats_sample_interval");
+        if (onlineStatsSampleInterval <= 0) {
+            onlineStatsSampleInterval = 200L;
+            cfg.set("online_stats_sample_interval", onlineStatsSampleInterval);
+        }
+
+        long stateSnapshotInterval = cfg.getLong("state_snapshot_interval");
+        if (stateSnapshotInterval <= 0) {
+            stateSnapshotInterval = 1L;
+            cfg.set("state_snapshot_interval", stateSnapshotInterval);
+        }
+
+        long playerDataCacheMaxKb = cfg.getLong("player_data_cache_max_kb");
+        if (playerDataCacheMaxKb <= 0) {
+            playerDataCacheMaxKb = 16384L;
+            cfg.set("player_data_cache_max_kb", playerDataCacheMaxKb);
+        }
+
+        long mtrQueryCacheMaxKb = cfg.getLong("mtr_query_cache_max_kb");
+        if (mtrQueryCacheMaxKb <= 0) {
+            mtrQueryCacheMaxKb = 32768L;
+            cfg.set("mtr_query_cache_max_kb", mtrQueryCacheMaxKb);
+        }
+
+        if (!cfg.contains("mtr_node_mirror_refresh_seconds")) {
+            cfg.set("mtr_node_mirror_refresh_seconds", 300L);
+        }
+        long mtrNodeMirrorRefreshSeconds = cfg.getLong("mtr_node_mirror_refresh_seconds");
+        if (mtrNodeMirrorRefreshSeconds < 0) {
+            mtrNodeMirrorRefreshSeconds = 300L;
+            cfg.set("mtr_node_mirror_refresh_seconds", mtrNodeMirrorRefreshSeconds);
+        }
+
+        if (!cfg.contains("snapshot_offheap_max_mb")) {
+            cfg.set("snapshot_offheap_max_mb", 256L);
+        }
+        long snapshotOffHeapMaxMb = cfg.getLong("snapshot_offheap_max_mb");
+        if (snapshotOffHeapMaxMb < 0) {
+            snapshotOffHeapMaxMb = 256L;
+            cfg.set("snapshot_offheap_max_mb", snapshotOffHeapMaxMb);
+        }
+
+        if (!cfg.contains("provider_action_cache_ttl_seconds")) {
+            cfg.set("provider_action_cache_ttl_seconds",
+                    new LinkedHashMap<>(PluginConfig.DEFAULT_PROVIDER_ACTION_CACHE_TTL_SECONDS));
+        }
+        Map<String, Long> providerActionCacheTtlSeconds =
+                PluginConfig.readActionCacheTtls(cfg.getConfigurationSection("provider_action_cache_ttl_seconds"));
+        if (!cfg.contains("provider_action_cache_stale_seconds")) {
+            cfg.set("provider_action_cache_stale_seconds", 60L);
+        }
+        long providerActionCacheStaleSeconds = cfg.getLong("provider_action_cache_stale_seconds");
+        if (providerActionCacheStaleSeconds < 0) {
+            providerActionCacheStaleSeconds = 60L;
+            cfg.set("provider_action_cache_stale_seconds", providerActionCacheStaleSeconds);
+        }
+        int providerActionCacheMaxEntries = cfg.getInt("provider_action_cache_max_entries");
+        if (providerActionCacheMaxEntries <= 0) {
+            providerActionCacheMaxEntries = 1024;
+            cfg.set("provider_action_cache_max_entries", providerActionCacheMaxEntries);
+        }
+
+        if (!cfg.contains("mtr_schedule_prefetch_dimensions")) {
+            cfg.set("mtr_schedule_prefetch_dimensions", new ArrayList<>(PluginConfig.DEFAULT_MTR_SCHEDULE_PREFETCH_DIMENSIONS));
+        }
+        List<String> mtrSchedulePrefetchDimensions = cfg.getStringList("mtr_schedule_prefetch_dimensions");
+        if (!cfg.contains("mtr_schedule_prefetch_interval_seconds")) {
+            cfg.set("mtr_schedule_prefetch_interval_seconds", 5L);
+        }
+        long mtrSchedulePrefetchIntervalSeconds = cfg.getLong("mtr_schedule_prefetch_interval_seconds");
+        if (mtrSchedulePrefetchIntervalSeconds < 0) {
+            mtrSchedulePrefetchIntervalSeconds = 5L;
+            cfg.set("mtr_schedule_prefetch_interval_seconds", mtrSchedulePrefetchIntervalSeconds);
+        }
+
+        if (!cfg.contains("mtr_train_stream_interval_ms")) {
+            cfg.set("mtr_train_stream_interval_ms", 1000L);
+        }
+        long mtrTrainStreamIntervalMs = cfg.getLong("mtr_train_stream_interval_ms");
+        if (mtrTrainStreamIntervalMs < 0) {
+            mtrTrainStreamIntervalMs = 1000L;
+            cfg.set("mtr_train_stream_interval_ms", mtrTrainStreamIntervalMs);
+        }
+
         plugin.saveConfig();
         currentConfig = new PluginConfig(
                 port,
@@ -77,7 +195,25 @@ public class ConfigManager {
                 nbtCacheTtlMinutes,
                 mtrWorldScanEnabled,
                 (int) mtrWorldScanBatchSize,
-                defaultLanguage
+                defaultLanguage,
+                scanParserThreads,
+                scanQueueCapacity,
+                playerFullScanInterval,
+                onlineStatsSamplerEnabled,
+                onlineStatsSampleKeys,
+                onlineStatsTickBudget,
+                onlineStatsSampleInterval,
+                stateSnapshotInterval,
+                playerDataCacheMaxKb,
+                mtrQueryCacheMaxKb,
+                mtrNodeMirrorRefreshSeconds,
+                snapshotOffHeapMaxMb,
+                providerActionCacheTtlSeconds,
+                providerActionCacheStaleSeconds,
+                providerActionCacheMaxEntries,
+                mtrSchedulePrefetchDimensions,
+                mtrSchedulePrefetchIntervalSeconds,
+                mtrTrainStreamIntervalMs
         );
     }
 
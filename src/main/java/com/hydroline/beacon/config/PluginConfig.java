@@ -1,9 +1,45 @@
 package com.hydroline.beacon.config;
 
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 public class PluginConfig {
 
+    public static final List<String> DEFAULT_ONLINE_STATS_SAMPLE_KEYS = Collections.unmodifiableList(Arrays.asList(
+            "minecraft:custom:minecraft:play_one_minute",
+            "minecraft:custom:minecraft:deaths",
+            "minecraft:custom:minecraft:mob_kills",
+            "minecraft:custom:minecraft:player_kills",
+            "minecraft:custom:minecraft:walk_one_cm",
+            "minecraft:custom:minecraft:jump"
+    ));
+
+    public static final List<String> DEFAULT_MTR_SCHEDULE_PREFETCH_DIMENSIONS =
+            Collections.singletonList("minecraft:overworld");
+
+    public static final Map<String, Long> DEFAULT_PROVIDER_ACTION_CACHE_TTL_SECONDS;
+
+    static {
+        Map<String, Long> ttl = new LinkedHashMap<>();
+        ttl.put("mtr:list_stations", 300L);
+        ttl.put("mtr:list_fare_areas", 300L);
+        ttl.put("mtr:list_depots", 300L);
+        ttl.put("mtr:list_network_overview", 60L);
+        ttl.put("mtr:get_route_detail", 60L);
+        ttl.put("mtr:get_station_timetable", 30L);
+        ttl.put("mtr:get_station_schedule", 5L);
+        ttl.put("mtr:get_all_station_schedules", 5L);
+        ttl.put("mtr:get_route_trains", 1L);
+        ttl.put("mtr:get_depot_trains", 1L);
+        DEFAULT_PROVIDER_ACTION_CACHE_TTL_SECONDS = Collections.unmodifiableMap(ttl);
+    }
+
     private final int port;
     private final String key;
     private final long intervalTimeTicks;
@@ -12,6 +48,24 @@ public class PluginConfig {
     private final boolean mtrWorldScanEnabled;
     private final int mtrWorldScanBatchSize;
     private final String defaultLanguage;
+    private final int scanParserThreads;
+    private final int scanQueueCapacity;
+    private final long playerFullScanIntervalTicks;
+    private final boolean onlineStatsSamplerEnabled;
+    private final List<String> onlineStatsSampleKeys;
+    private final long onlineStatsTickBudgetMicros;
+    private final long onlineStatsSampleIntervalTicks;
+    private final long stateSnapshotIntervalTicks;
+    private final long playerDataCacheMaxKb;
+    private final long mtrQueryCacheMaxKb;
+    private final long mtrNodeMirrorRefreshSeconds;
+    private final long snapshotOffHeapMaxMb;
+    private final Map<String, Long> providerActionCacheTtlSeconds;
+    private final long providerActionCacheStaleSeconds;
+    private final int providerActionCacheMaxEntries;
+    private final List<String> mtrSchedulePrefetchDimensions;
+    private final long mtrSchedulePrefetchIntervalSeconds;
+    private final long mtrTrainStreamIntervalMs;
 
     public PluginConfig(int port,
                         String key,
@@ -20,7 +74,25 @@ public class PluginConfig {
                         long nbtCacheTtlMinutes,
                         boolean mtrWorldScanEnabled,
                         int mtrWorldScanBatchSize,
-                        String defaultLanguage) {
+                        String defaultLanguage,
+                        int scanParserThreads,
+                        int scanQueueCapacity,
+                        long playerFullScanIntervalTicks,
+                        boolean onlineStatsSamplerEnabled,
+                        List<String> onlineStatsSampleKeys,
+                        long onlineStatsTickBudgetMicros,
+                        long onlineStatsSampleIntervalTicks,
+                        long stateSnapshotIntervalTicks,
+                        long playerDataCacheMaxKb,
+                        long mtrQueryCacheMaxKb,
+                        long mtrNodeMirrorRefreshSeconds,
+                        long snapshotOffHeapMaxMb,
+                        Map<String, Long> providerActionCacheTtlSeconds,
+                        long providerActionCacheStaleSeconds,
+                        int providerActionCacheMaxEntries,
+                        List<String> mtrSchedulePrefetchDimensions,
+                        long mtrSchedulePrefetchIntervalSeconds,
+                        long mtrTrainStreamIntervalMs) {
         this.port = port;
         this.key = key;
         this.intervalTimeTicks = intervalTimeTicks;
@@ -29,6 +101,24 @@ public class PluginConfig {
         this.mtrWorldScanEnabled = mtrWorldScanEnabled;
         this.mtrWorldScanBatchSize = mtrWorldScanBatchSize;
         this.defaultLanguage = defaultLanguage;
+        this.scanParserThreads = scanParserThreads;
+        this.scanQueueCapacity = scanQueueCapacity;
+        this.playerFullScanIntervalTicks = playerFullScanIntervalTicks;
+        this.onlineStatsSamplerEnabled = onlineStatsSamplerEnabled;
+        this.onlineStatsSampleKeys = onlineStatsSampleKeys;
+        this.onlineStatsTickBudgetMicros = onlineStatsTickBudgetMicros;
+        this.onlineStatsSampleIntervalTicks = onlineStatsSampleIntervalTicks;
+        this.stateSnapshotIntervalTicks = stateSnapshotIntervalTicks;
+        this.playerDataCacheMaxKb = playerDataCacheMaxKb;
+        this.mtrQueryCacheMaxKb = mtrQueryCacheMaxKb;
+        this.mtrNodeMirrorRefreshSeconds = mtrNodeMirrorRefreshSeconds;
+        this.snapshotOffHeapMaxMb = snapshotOffHeapMaxMb;
+        this.providerActionCacheTtlSeconds = providerActionCacheTtlSeconds;
+        this.providerActionCacheStaleSeconds = providerActionCacheStaleSeconds;
+        this.providerActionCacheMaxEntries = providerActionCacheMaxEntries;
+        this.mtrSchedulePrefetchDimensions = mtrSchedulePrefetchDimensions;
+        this.mtrSchedulePrefetchIntervalSeconds = mtrSchedulePrefetchIntervalSeconds;
+        this.mtrTrainStreamIntervalMs = mtrTrainStreamIntervalMs;
     }
 
     public static PluginConfig fromConfig(FileConfiguration config) {
@@ -46,6 +136,72 @@ public class PluginConfig {
         if (defaultLanguage == null || defaultLanguage.trim().isEmpty()) {
             defaultLanguage = "zh_cn";
         }
+        int scanParserThreads = config.getInt("scan_parser_threads", 4);
+        if (scanParserThreads <= 0) {
+            scanParserThreads = 4;
+        }
+        int scanQueueCapacity = config.getInt("scan_queue_capacity", 256);
+        if (scanQueueCapacity <= 0) {
+            scanQueueCapacity = 256;
+        }
+        long playerFullScanIntervalTicks = config.getLong("player_full_scan_interval", 1200L);
+        if (playerFullScanIntervalTicks <= 0) {
+            playerFullScanIntervalTicks = 1200L;
+        }
+        boolean onlineStatsSamplerEnabled = config.getBoolean("online_stats_sampler_enabled", true);
+        List<String> onlineStatsSampleKeys = config.contains("online_stats_sample_keys")
+                ? config.getStringList("online_stats_sample_keys")
+                : DEFAULT_ONLINE_STATS_SAMPLE_KEYS;
+        long onlineStatsTickBudgetMicros = config.getLong("online_stats_tick_budget_us", 500L);
+        if (onlineStatsTickBudgetMicros <= 0) {
+            onlineStatsTickBudgetMicros = 500L;
+        }
+        long onlineStatsSampleIntervalTicks = config.getLong("online_stats_sample_interval", 200L);
+        if (onlineStatsSampleIntervalTicks <= 0) {
+            onlineStatsSampleIntervalTicks = 200L;
+        }
+        long stateSnapshotIntervalTicks = config.getLong("state_snapshot_interval", 1L);
+        if (stateSnapshotIntervalTicks <= 0) {
+            stateSnapshotIntervalTicks = 1L;
+        }
+        long playerDataCacheMaxKb = config.getLong("player_data_cache_max_kb", 16384L);
+        if (playerDataCacheMaxKb <= 0) {
+            playerDataCacheMaxKb = 16384L;
+        }
+        long mtrQueryCacheMaxKb = config.getLong("mtr_query_cache_max_kb", 32768L);
+        if (mtrQueryCacheMaxKb <= 0) {
+            mtrQueryCacheMaxKb = 32768L;
+        }
+        long mtrNodeMirrorRefreshSeconds = config.getLong("mtr_node_mirror_refresh_seconds", 300L);
+        if (mtrNodeMirrorRefreshSeconds < 0) {
+            mtrNodeMirrorRefreshSeconds = 300L;
+        }
+        long snapshotOffHeapMaxMb = config.getLong("snapshot_offheap_max_mb", 256L);
+        if (snapshotOffHeapMaxMb < 0) {
+            snapshotOffHeapMaxMb = 256L;
+        }
+        Map<String, Long> providerActionCacheTtlSeconds = config.contains("provider_action_cache_ttl_seconds")
+                ? readActionCacheTtls(config.getConfigurationSection("provider_action_cache_ttl_seconds"))
+                : DEFAULT_PROVIDER_ACTION_CACHE_TTL_SECONDS;
+        long providerActionCacheStaleSeconds = config.getLong("provider_action_cache_stale_seconds", 60L);
+        if (providerActionCacheStaleSeconds < 0) {
+            providerActionCacheStaleSeconds = 60L;
+        }
+        int providerActionCacheMaxEntries = config.getInt("provider_action_cache_max_entries", 1024);
+        if (providerActionCacheMaxEntries <= 0) {
+            providerActionCacheMaxEntries = 1024;
+        }
+        List<String> mtrSchedulePrefetchDimensions = config.contains("mtr_schedule_prefetch_dimensions")
+                ? config.getStringList("mtr_schedule_prefetch_dimensions")
+                : DEFAULT_MTR_SCHEDULE_PREFETCH_DIMENSIONS;
+        long mtrSchedulePrefetchIntervalSeconds = config.getLong("mtr_schedule_prefetch_interval_seconds", 5L);
+        if (mtrSchedulePrefetchIntervalSeconds < 0) {
+            mtrSchedulePrefetchIntervalSeconds = 5L;
+        }
+        long mtrTrainStreamIntervalMs = config.getLong("mtr_train_stream_interval_ms", 1000L);
+        if (mtrTrainStreamIntervalMs < 0) {
+            mtrTrainStreamIntervalMs = 1000L;
+        }
         return new PluginConfig(
                 port,
                 key,
@@ -54,10 +210,45 @@ public class PluginConfig {
                 nbtCacheTtlMinutes,
                 mtrWorldScanEnabled,
                 mtrWorldScanBatchSize,
-                defaultLanguage
+                defaultLanguage,
+                scanParserThreads,
+                scanQueueCapacity,
+                playerFullScanIntervalTicks,
+                onlineStatsSamplerEnabled,
+                onlineStatsSampleKeys,
+                onlineStatsTickBudgetMicros,
+                onlineStatsSampleIntervalTicks,
+                stateSnapshotIntervalTicks,
+                playerDataCacheMaxKb,
+                mtrQueryCacheMaxKb,
+                mtrNodeMirrorRefreshSeconds,
+                snapshotOffHeapMaxMb,
+                providerActionCacheTtlSeconds,
+                providerActionCacheStaleSeconds,
+                providerActionCacheMaxEntries,
+                mtrSchedulePrefetchDimensions,
+                mtrSchedulePrefetchIntervalSeconds,
+                mtrTrainStreamIntervalMs
         );
     }
 
+    /**
+     * action -> TTL seconds from a provider_action_cache_ttl_seconds section; entries of 0 or less are dropped.
+     */
+    public static Map<String, Long> readActionCacheTtls(ConfigurationSection section) {
+        Map<String, Long> ttl = new LinkedHashMap<>();
+        if (section == null) {
+            return ttl;
+        }
+        for (String action : section.getKeys(false)) {
+            long seconds = section.getLong(action);
+            if (seconds > 0) {
+                ttl.put(action, seconds);
+            }
+        }
+        return ttl;
+    }
+
     public int getPort() {
         return port;
     }
@@ -89,4 +280,76 @@ public class PluginConfig {
     public String getDefaultLanguage() {
         return defaultLanguage;
     }
+
+    public int getScanParserThreads() {
+        return scanParserThreads;
+    }
+
+    public int getScanQueueCapacity() {
+        return scanQueueCapacity;
+    }
+
+    public long getPlayerFullScanIntervalTicks() {
+        return playerFullScanIntervalTicks;
+    }
+
+    public boolean isOnlineStatsSamplerEnabled() {
+        return onlineStatsSamplerEnabled;
+    }
+
+    public List<String> getOnlineStatsSampleKeys() {
+        return onlineStatsSampleKeys;
+    }
+
+    public long getOnlineStatsTickBudgetMicros() {
+        return onlineStatsTickBudgetMicros;
+    }
+
+    public long getOnlineStatsSampleIntervalTicks() {
+        return onlineStatsSampleIntervalTicks;
+    }
+
+    public long getStateSnapshotIntervalTicks() {
+        return stateSnapshotIntervalTicks;
+    }
+
+    public long getPlayerDataCacheMaxKb() {
+        return playerDataCacheMaxKb;
+    }
+
+    public long getMtrQueryCacheMaxKb() {
+        return mtrQueryCacheMaxKb;
+    }
+
+    public long getMtrNodeMirrorRefreshSeconds() {
+        return mtrNodeMirrorRefreshSeconds;
+    }
+
+    public long getSnapshotOffHeapMaxMb() {
+        return snapshotOffHeapMaxMb;
+    }
+
+    public Map<String, Long> getProviderActionCacheTtlSeconds() {
+        return providerActionCacheTtlSeconds;
+    }
+
+    public long getProviderActionCacheStaleSeconds() {
+        return providerActionCacheStaleSeconds;
+    }
+
+    public int getProviderActionCacheMaxEntries() {
+        return providerActionCacheMaxEntries;
+    }
+
+    public List<String> getMtrSchedulePrefetchDimensions() {
+        return mtrSchedulePrefetchDimensions;
+    }
+
+    public long getMtrSchedulePrefetchIntervalSeconds() {
+        return mtrSchedulePrefetchIntervalSeconds;
+    }
+
+    public long getMtrTrainStreamIntervalMs() {
+        return mtrTrainStreamIntervalMs;
+    }
 }
@@ -0,0 +1,50 @@
+package com.hydroline.beacon.listener;
+
+import com.hydroline.beacon.BeaconPlugin;
+import com.hydroline.beacon.task.LivePlayerDataWriter;
+import com.hydroline.beacon.task.ScanScheduler;
+import org.bukkit.advancement.Advancement;
+import org.bukkit.advancement.AdvancementProgress;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerAdvancementDoneEvent;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Captures completed advancements with their criteria timestamps as they happen.
+ */
+public class AdvancementListener implements Listener {
+
+    private final BeaconPlugin plugin;
+
+    public AdvancementListener(BeaconPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAdvancementDone(PlayerAdvancementDoneEvent event) {
+        ScanScheduler scheduler = plugin.getScanScheduler();
+        LivePlayerDataWriter writer = scheduler != null ? scheduler.getLiveDataWriter() : null;
+        if (writer == null) {
+            return;
+        }
+        Player player = event.getPlayer();
+        Advancement advancement = event.getAdvancement();
+        AdvancementProgress progress = player.getAdvancementProgress(advancement);
+
+        // read progress on the main thread; serialization and the DB write happen in the writer
+        Map<String, Long> criteria = new LinkedHashMap<>();
+        for (String criterion : progress.getAwardedCriteria()) {
+            Date awarded = progress.getDateAwarded(criterion);
+            if (awarded != null) {
+                criteria.put(criterion, awarded.getTime());
+            }
+        }
+        writer.enqueueAdvancement(player.getUniqueId().toString(), advancement.getKey().toString(), criteria, progress.isDone());
+    }
+}
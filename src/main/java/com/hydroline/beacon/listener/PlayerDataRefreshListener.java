@@ -0,0 +1,38 @@
+package com.hydroline.beacon.listener;
+
+import com.hydroline.beacon.BeaconPlugin;
+import com.hydroline.beacon.task.ScanScheduler;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.WorldSaveEvent;
+
+/**
+ * Queues targeted rescans when the server writes player files (quit) or whole worlds (save),
+ * so stats/advancements/playerdata show up without waiting for the next full scan.
+ */
+public class PlayerDataRefreshListener implements Listener {
+
+    private final BeaconPlugin plugin;
+
+    public PlayerDataRefreshListener(BeaconPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        ScanScheduler scheduler = plugin.getScanScheduler();
+        if (scheduler != null) {
+            scheduler.requestPlayerRefresh(event.getPlayer().getUniqueId().toString());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldSave(WorldSaveEvent event) {
+        ScanScheduler scheduler = plugin.getScanScheduler();
+        if (scheduler != null) {
+            scheduler.requestWorldRefresh(event.getWorld().getName());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.hydroline.beacon.listener;
 
 import com.hydroline.beacon.BeaconPlugin;
 import com.hydroline.beacon.storage.DatabaseManager;
+import com.hydroline.beacon.storage.PlayerIdentityIndex;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
@@ -56,6 +57,7 @@ public class PlayerSessionListener implements Listener {
                 return;
             }
             try (Connection connection = db.getConnection()) {
+                connection.setAutoCommit(false);
                 try (PreparedStatement ps = connection.prepareStatement(
                         "INSERT INTO player_sessions (" +
                                 "event_type, occurred_at, player_uuid, player_name, player_ip, " +
@@ -74,6 +76,24 @@ public class PlayerSessionListener implements Listener {
                     ps.setDouble(10, z);
                     ps.executeUpdate();
                 }
+                // a rename seen live; first/last played stay with the playerdata scan
+                try (PreparedStatement ps = connection.prepareStatement(
+                        "INSERT INTO player_identities (player_uuid, player_name, last_updated) VALUES (?, ?, ?) " +
+                                "ON CONFLICT(player_uuid) DO UPDATE SET " +
+                                "player_name=excluded.player_name, last_updated=excluded.last_updated " +
+                                "WHERE player_identities.player_name IS NOT excluded.player_name"
+                )) {
+                    ps.setString(1, playerUuid);
+                    ps.setString(2, playerName);
+                    ps.setLong(3, occurredAt);
+                    ps.executeUpdate();
+                }
+                connection.commit();
+                // the index mirrors the table, so it only sees the name once the write has committed
+                PlayerIdentityIndex identityIndex = plugin.getIdentityIndex();
+                if (identityIndex != null) {
+                    identityIndex.recordName(playerUuid, playerName, occurredAt);
+                }
             } catch (SQLException e) {
                 Plugin p = this.plugin;
                 if (p != null) {
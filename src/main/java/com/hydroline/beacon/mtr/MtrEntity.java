@@ -0,0 +1,97 @@
+package com.hydroline.beacon.mtr;
+
+import com.fasterxml.jackson.databind.util.RawValue;
+
+/**
+ * One row of an mtr_* entity table. The payload is kept as the JSON text written by the scanner and exposed
+ * as a {@link RawValue}, so responses embed it verbatim instead of parsing and re-serializing it.
+ */
+public final class MtrEntity {
+
+    private final String dimensionContext;
+    private final String entityId;
+    private final String transportMode;
+    private final String name;
+    private final Long color;
+    private final String filePath;
+    private final long lastUpdated;
+    private final String payloadJson;
+    private final RawValue payload;
+
+    public MtrEntity(String dimensionContext,
+                     String entityId,
+                     String transportMode,
+                     String name,
+                     Long color,
+                     String filePath,
+                     long lastUpdated,
+                     String payloadJson) {
+        this.dimensionContext = dimensionContext;
+        this.entityId = entityId;
+        this.transportMode = transportMode;
+        this.name = name;
+        this.color = color;
+        this.filePath = filePath;
+        this.lastUpdated = lastUpdated;
+        this.payloadJson = payloadJson;
+        this.payload = payloadJson != null ? new RawValue(payloadJson) : null;
+    }
+
+    public String getDimensionContext() {
+        return dimensionContext;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public String getTransportMode() {
+        return transportMode;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Long getColor() {
+        return color;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public long getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public String getPayloadJson() {
+        return payloadJson;
+    }
+
+    public RawValue getPayload() {
+        return payload;
+    }
+
+    /**
+     * Value of a table column by name, as used by query_mtr_entities filters and ordering.
+     */
+    public Object getColumn(String column) {
+        switch (column) {
+            case "entity_id":
+                return entityId;
+            case "transport_mode":
+                return transportMode;
+            case "name":
+                return name;
+            case "color":
+                return color;
+            case "file_path":
+                return filePath;
+            case "last_updated":
+                return lastUpdated;
+            default:
+                return null;
+        }
+    }
+}
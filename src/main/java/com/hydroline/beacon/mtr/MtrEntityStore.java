@@ -0,0 +1,263 @@
+package com.hydroline.beacon.mtr;
+
+import com.hydroline.beacon.storage.DatabaseManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of the mtr_* entity tables, grouped per category and dimension. A category is loaded from
+ * SQLite on first use and then kept current by MtrWorldScanner, which hands over the changes it committed
+ * at the end of every scan (or invalidates the store when a scan fails half way).
+ */
+public class MtrEntityStore {
+
+    private final DatabaseManager db;
+    private final Map<MtrCategory, Slot> slots = new EnumMap<>(MtrCategory.class);
+
+    public MtrEntityStore(DatabaseManager db) {
+        this.db = db;
+        for (MtrCategory category : MtrCategory.values()) {
+            slots.put(category, new Slot());
+        }
+    }
+
+    /**
+     * Entities of {@code category} in {@code dimensionContext} (all dimensions when null) whose columns equal
+     * {@code filters}, ordered by {@code orderBy} with entity_id as tie-breaker. {@code limit < 0} returns
+     * everything after {@code offset}.
+     */
+    public List<MtrEntity> select(MtrCategory category,
+                                  String dimensionContext,
+                                  Map<String, Object> filters,
+                                  String orderBy,
+                                  boolean descending,
+                                  int offset,
+                                  int limit) throws SQLException {
+        Map<String, Map<String, MtrEntity>> byDimension = load(category);
+        List<MtrEntity> matched = new ArrayList<>();
+        if (dimensionContext != null) {
+            Map<String, MtrEntity> entities = byDimension.get(dimensionContext);
+            if (entities != null) {
+                collectMatching(entities.values(), filters, matched);
+            }
+        } else {
+            for (Map<String, MtrEntity> entities : byDimension.values()) {
+                collectMatching(entities.values(), filters, matched);
+            }
+        }
+        Comparator<MtrEntity> order = Comparator.comparing((MtrEntity entity) -> entity.getColumn(orderBy),
+                MtrEntityStore::compareColumnValues);
+        if (descending) {
+            order = order.reversed();
+        }
+        matched.sort(order.thenComparing(MtrEntity::getEntityId));
+        if (offset >= matched.size()) {
+            return Collections.emptyList();
+        }
+        int end = limit < 0 ? matched.size() : (int) Math.min(matched.size(), (long) offset + limit);
+        return matched.subList(offset, end);
+    }
+
+    /**
+     * Every entity of {@code category} in one dimension, keyed by entity_id. Read-only view.
+     */
+    public Map<String, MtrEntity> getAll(MtrCategory category, String dimensionContext) throws SQLException {
+        Map<String, MtrEntity> entities = load(category).get(dimensionContext);
+        return entities != null ? Collections.unmodifiableMap(entities) : Collections.emptyMap();
+    }
+
+    /**
+     * Applies changes already committed to SQLite. Categories that have not been loaded yet are skipped;
+     * their first load reads the committed rows anyway.
+     */
+    public void apply(Collection<Change> changes) {
+        for (Change change : changes) {
+            Slot slot = slots.get(change.category);
+            synchronized (slot) {
+                if (slot.byDimension == null) {
+                    continue;
+                }
+                Map<String, MtrEntity> entities = slot.byDimension.computeIfAbsent(change.dimensionContext,
+                        key -> new ConcurrentHashMap<>());
+                if (change.entity != null) {
+                    entities.put(change.entity.getEntityId(), change.entity);
+                } else {
+                    entities.values().removeIf(entity -> change.filePath.equals(entity.getFilePath()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all loaded data; the next read reloads from SQLite.
+     */
+    public void invalidate() {
+        for (Slot slot : slots.values()) {
+            synchronized (slot) {
+                slot.byDimension = null;
+            }
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        for (Map.Entry<MtrCategory, Slot> entry : slots.entrySet()) {
+            Map<String, Map<String, MtrEntity>> byDimension = entry.getValue().byDimension;
+            if (byDimension == null) {
+                continue;
+            }
+            int count = 0;
+            for (Map<String, MtrEntity> entities : byDimension.values()) {
+                count += entities.size();
+            }
+            metrics.put(entry.getKey().getKey(), count);
+        }
+        return metrics;
+    }
+
+    private Map<String, Map<String, MtrEntity>> load(MtrCategory category) throws SQLException {
+        Slot slot = slots.get(category);
+        Map<String, Map<String, MtrEntity>> byDimension = slot.byDimension;
+        if (byDimension != null) {
+            return byDimension;
+        }
+        synchronized (slot) {
+            if (slot.byDimension != null) {
+                return slot.byDimension;
+            }
+            List<String> columns = new ArrayList<>();
+            columns.add("dimension_context");
+            columns.add("entity_id");
+            columns.addAll(category.getMetadataColumns());
+            columns.add("file_path");
+            columns.add("payload");
+            columns.add("last_updated");
+            Map<String, Map<String, MtrEntity>> loaded = new ConcurrentHashMap<>();
+            try (Connection conn = db.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(
+                         "SELECT " + String.join(", ", columns) + " FROM " + category.getTableName());
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Object color = category.hasColorColumn() ? rs.getObject("color") : null;
+                    MtrEntity entity = new MtrEntity(
+                            rs.getString("dimension_context"),
+                            rs.getString("entity_id"),
+                            category.hasTransportModeColumn() ? rs.getString("transport_mode") : null,
+                            category.hasNameColumn() ? rs.getString("name") : null,
+                            color instanceof Number ? ((Number) color).longValue() : null,
+                            rs.getString("file_path"),
+                            rs.getLong("last_updated"),
+                            rs.getString("payload"));
+                    loaded.computeIfAbsent(entity.getDimensionContext(), key -> new ConcurrentHashMap<>())
+                            .put(entity.getEntityId(), entity);
+                }
+            }
+            slot.byDimension = loaded;
+            return loaded;
+        }
+    }
+
+    private static void collectMatching(Collection<MtrEntity> entities, Map<String, Object> filters, List<MtrEntity> out) {
+        for (MtrEntity entity : entities) {
+            if (matches(entity, filters)) {
+                out.add(entity);
+            }
+        }
+    }
+
+    private static boolean matches(MtrEntity entity, Map<String, Object> filters) {
+        if (filters == null) {
+            return true;
+        }
+        for (Map.Entry<String, Object> filter : filters.entrySet()) {
+            Object actual = entity.getColumn(filter.getKey());
+            // SQL "column = NULL" never matches
+            if (actual == null || filter.getValue() == null) {
+                return false;
+            }
+            if (!normalize(actual).equals(normalize(filter.getValue()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Mirrors SQLite's comparison of bound parameters against TEXT/INTEGER columns closely enough for filters.
+    private static String normalize(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? "1" : "0";
+        }
+        if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            if (d == Math.rint(d) && !Double.isInfinite(d) && Math.abs(d) < 9.0e18) {
+                return Long.toString(((Number) value).longValue());
+            }
+            return Double.toString(d);
+        }
+        return value.toString();
+    }
+
+    // NULLs sort first as in SQLite; numbers before text.
+    private static int compareColumnValues(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+        }
+        if (a instanceof Number || b instanceof Number) {
+            return a instanceof Number ? -1 : 1;
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private static final class Slot {
+        private volatile Map<String, Map<String, MtrEntity>> byDimension;
+    }
+
+    /**
+     * A committed change reported by the scanner: an inserted/updated entity, or the removal of every entity
+     * that came from a deleted file.
+     */
+    public static final class Change {
+        private final MtrCategory category;
+        private final String dimensionContext;
+        private final MtrEntity entity;
+        private final String filePath;
+
+        private Change(MtrCategory category, String dimensionContext, MtrEntity entity, String filePath) {
+            this.category = category;
+            this.dimensionContext = dimensionContext;
+            this.entity = entity;
+            this.filePath = filePath;
+        }
+
+        public static Change upsert(MtrCategory category, MtrEntity entity) {
+            return new Change(category, entity.getDimensionContext(), entity, entity.getFilePath());
+        }
+
+        public static Change removeFile(MtrCategory category, String dimensionContext, String filePath) {
+            return new Change(category, dimensionContext, null, filePath);
+        }
+
+        public MtrCategory getCategory() {
+            return category;
+        }
+
+        public String getDimensionContext() {
+            return dimensionContext;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.hydroline.beacon.mtr;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hydroline.beacon.storage.DatabaseManager;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Maintains one {@link MtrNetworkGraph} per MTR dimension. Entities are loaded from the mtr_* tables once and
+ * then kept current by replaying mtr_entity_diffs rows newer than the last one applied; only dimensions that
+ * received diffs are re-derived, and ride-time caches are kept unless that dimension's rails changed.
+ */
+public class MtrGraphEngine {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Set<MtrCategory> GRAPH_CATEGORIES =
+            EnumSet.of(MtrCategory.STATIONS, MtrCategory.PLATFORMS, MtrCategory.ROUTES, MtrCategory.RAILS);
+    // MTR 3 stores dwell time in half seconds; 20 is its default.
+    private static final int DEFAULT_DWELL_HALF_SECONDS = 20;
+
+    private final DatabaseManager db;
+    private final Logger logger;
+    private final Map<String, DimensionData> dimensions = new HashMap<>();
+    private boolean loaded;
+    private volatile boolean stale = true;
+    private volatile long lastDiffId;
+    private volatile int dimensionCount;
+
+    public MtrGraphEngine(DatabaseManager db, Logger logger) {
+        this.db = db;
+        this.logger = logger;
+    }
+
+    /**
+     * Called after MtrWorldScanner commits; pending diffs are read on the next query.
+     */
+    public void markStale() {
+        stale = true;
+    }
+
+    /**
+     * Current graph of {@code dimensionContext}, or null when nothing has been scanned for it.
+     */
+    public synchronized MtrNetworkGraph getGraph(String dimensionContext) throws SQLException {
+        ensureFresh();
+        DimensionData data = dimensions.get(dimensionContext);
+        if (data == null) {
+            return null;
+        }
+        if (data.graph == null) {
+            if (data.railsChanged) {
+                // graphs handed out earlier keep their own cache
+                data.segmentCache = new ConcurrentHashMap<>();
+                data.railsChanged = false;
+            }
+            data.graph = new MtrNetworkGraph(new HashMap<>(data.stations), new HashMap<>(data.platforms),
+                    new HashMap<>(data.routes), new HashMap<>(data.rails), data.segmentCache, lastDiffId);
+        }
+        return data.graph;
+    }
+
+    /**
+     * Rail nodes and stations of {@code dimensionContext} inside the block rectangle, or null when nothing has
+     * been scanned for that dimension.
+     */
+    public synchronized MtrSpatialIndex.Result queryViewport(String dimensionContext,
+                                                             int minX,
+                                                             int minZ,
+                                                             int maxX,
+                                                             int maxZ,
+                                                             boolean includeRails,
+                                                             boolean includeStations,
+                                                             int limit) throws SQLException {
+        ensureFresh();
+        DimensionData data = dimensions.get(dimensionContext);
+        if (data == null) {
+            return null;
+        }
+        return data.spatial.query(minX, minZ, maxX, maxZ, includeRails, includeStations, limit);
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("dimensions", dimensionCount);
+        metrics.put("last_diff_id", lastDiffId);
+        return metrics;
+    }
+
+    private void ensureFresh() throws SQLException {
+        if (!stale) {
+            return;
+        }
+        stale = false;
+        try {
+            refresh();
+        } catch (SQLException e) {
+            stale = true;
+            throw e;
+        }
+    }
+
+    private void refresh() throws SQLException {
+        try (Connection conn = db.getConnection()) {
+            // one read transaction, so the tables and the diff high-water mark come from the same snapshot
+            conn.setAutoCommit(false);
+            try {
+                if (!loaded) {
+                    loadAll(conn);
+                    loaded = true;
+                } else {
+                    applyDiffs(conn);
+                }
+            } finally {
+                conn.rollback();
+                dimensionCount = dimensions.size();
+            }
+        }
+    }
+
+    private void loadAll(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM mtr_entity_diffs");
+             ResultSet rs = ps.executeQuery()) {
+            lastDiffId = rs.next() ? rs.getLong(1) : 0L;
+        }
+        dimensions.clear();
+        int entities = 0;
+        for (MtrCategory category : GRAPH_CATEGORIES) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT dimension_context, entity_id, payload FROM " + category.getTableName());
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    DimensionData data = dimensions.computeIfAbsent(rs.getString(1), key -> new DimensionData());
+                    put(data, category, rs.getString(2), rs.getString(3));
+                    entities++;
+                }
+            }
+        }
+        logger.info("MTR graph loaded " + entities + " entities across " + dimensions.size() + " dimension(s)");
+    }
+
+    private void applyDiffs(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT id, category, dimension_context, entity_id, change_type, after_payload " +
+                        "FROM mtr_entity_diffs WHERE id > ? ORDER BY id")) {
+            ps.setLong(1, lastDiffId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    lastDiffId = rs.getLong("id");
+                    MtrCategory category = MtrCategory.fromKey(rs.getString("category"));
+                    if (category == null || !GRAPH_CATEGORIES.contains(category)) {
+                        continue;
+                    }
+                    DimensionData data = dimensions.computeIfAbsent(rs.getString("dimension_context"),
+                            key -> new DimensionData());
+                    String entityId = rs.getString("entity_id");
+                    if ("deleted".equals(rs.getString("change_type"))) {
+                        remove(data, category, entityId);
+                    } else {
+                        put(data, category, entityId, rs.getString("after_payload"));
+                    }
+                }
+            }
+        }
+    }
+
+    private void put(DimensionData data, MtrCategory category, String entityId, String payload) {
+        JsonNode node;
+        try {
+            node = payload != null ? JSON.readTree(payload) : null;
+        } catch (IOException e) {
+            node = null;
+        }
+        if (node == null || !node.isObject()) {
+            remove(data, category, entityId);
+            return;
+        }
+        switch (category) {
+            case STATIONS: {
+                long id = node.path("id").asLong();
+                MtrNetworkGraph.Station station = new MtrNetworkGraph.Station(id, node.path("name").asText(""),
+                        node.path("color").asLong(), node.path("x_min").asInt(), node.path("z_min").asInt(),
+                        node.path("x_max").asInt(), node.path("z_max").asInt());
+                data.stations.put(id, station);
+                data.spatial.putStation(station);
+                break;
+            }
+            case PLATFORMS: {
+                long id = node.path("id").asLong();
+                JsonNode pos1 = node.has("node_pos_1") ? node.get("node_pos_1") : node.path("pos_1");
+                JsonNode pos2 = node.has("node_pos_2") ? node.get("node_pos_2") : node.path("pos_2");
+                int dwell = node.path("dwell_time").asInt(DEFAULT_DWELL_HALF_SECONDS);
+                data.platforms.put(id, new MtrNetworkGraph.Platform(id, node.path("name").asText(""),
+                        pos1.asLong(), pos2.asLong(), dwell / 2.0));
+                break;
+            }
+            case ROUTES: {
+                long id = node.path("id").asLong();
+                List<Long> platformIds = new ArrayList<>();
+                for (JsonNode platformId : node.path("platform_ids")) {
+                    platformIds.add(platformId.asLong());
+                }
+                String circular = node.path("circular_state").asText("NONE");
+                data.routes.put(id, new MtrNetworkGraph.Route(id, node.path("name").asText(""), node.path("color").asLong(),
+                        Collections.unmodifiableList(platformIds), !"NONE".equals(circular.toUpperCase(Locale.ROOT))));
+                break;
+            }
+            case RAILS: {
+                long pos = node.path("node_pos").asLong();
+                JsonNode connections = node.path("rail_connections");
+                long[] targets = new long[connections.size()];
+                String[] railTypes = new String[connections.size()];
+                double[] travel = new double[connections.size()];
+                int i = 0;
+                for (JsonNode connection : connections) {
+                    targets[i] = connection.path("node_pos").asLong();
+                    railTypes[i] = connection.path("rail_type").asText("").toUpperCase(Locale.ROOT);
+                    double speed = railSpeedBlocksPerSecond(railTypes[i]);
+                    travel[i] = speed > 0 ? blockDistance(pos, targets[i]) / speed : Double.POSITIVE_INFINITY;
+                    i++;
+                }
+                MtrNetworkGraph.RailNode rail = new MtrNetworkGraph.RailNode(pos, targets, railTypes, travel);
+                data.rails.put(pos, rail);
+                data.spatial.putRail(rail);
+                data.railsChanged = true;
+                break;
+            }
+            default:
+                return;
+        }
+        data.graph = null;
+    }
+
+    private void remove(DimensionData data, MtrCategory category, String entityId) {
+        long id;
+        try {
+            id = Long.parseLong(entityId);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        switch (category) {
+            case STATIONS:
+                data.stations.remove(id);
+                data.spatial.removeStation(id);
+                break;
+            case PLATFORMS:
+                data.platforms.remove(id);
+                break;
+            case ROUTES:
+                data.routes.remove(id);
+                break;
+            case RAILS:
+                data.rails.remove(id);
+                data.spatial.removeRail(id);
+                data.railsChanged = true;
+                break;
+            default:
+                return;
+        }
+        data.graph = null;
+    }
+
+    private static double blockDistance(long a, long b) {
+        return MtrNetworkGraph.distance(MtrNetworkGraph.blockX(a), MtrNetworkGraph.blockY(a), MtrNetworkGraph.blockZ(a),
+                MtrNetworkGraph.blockX(b), MtrNetworkGraph.blockY(b), MtrNetworkGraph.blockZ(b));
+    }
+
+    // MTR 3 RailType speed limits (km/h); NONE marks the blocked direction of a one-way rail.
+    private static double railSpeedBlocksPerSecond(String railType) {
+        switch (railType) {
+            case "NONE":
+                return 0;
+            case "WOODEN":
+                return 20 / 3.6;
+            case "STONE":
+            case "SIDING":
+                return 40 / 3.6;
+            case "EMERALD":
+                return 60 / 3.6;
+            case "BLAZE":
+            case "PLATFORM":
+            case "TURN_BACK":
+                return 80 / 3.6;
+            case "QUARTZ":
+                return 120 / 3.6;
+            case "DIAMOND":
+                return 160 / 3.6;
+            case "CABLE_CAR":
+                return 30 / 3.6;
+            case "CABLE_CAR_STATION":
+                return 2 / 3.6;
+            case "RUNWAY":
+                return 300 / 3.6;
+            case "AIRPLANE_DUMMY":
+                return 900 / 3.6;
+            default:
+                return 40 / 3.6;
+        }
+    }
+
+    private static final class DimensionData {
+        private final Map<Long, MtrNetworkGraph.Station> stations = new HashMap<>();
+        private final Map<Long, MtrNetworkGraph.Platform> platforms = new HashMap<>();
+        private final Map<Long, MtrNetworkGraph.Route> routes = new HashMap<>();
+        private final Map<Long, MtrNetworkGraph.RailNode> rails = new HashMap<>();
+        private final MtrSpatialIndex spatial = new MtrSpatialIndex();
+        private Map<MtrNetworkGraph.SegmentKey, Double> segmentCache = new ConcurrentHashMap<>();
+        private boolean railsChanged;
+        private MtrNetworkGraph graph;
+    }
+}
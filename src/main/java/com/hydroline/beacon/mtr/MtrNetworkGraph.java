@@ -0,0 +1,550 @@
+package com.hydroline.beacon.mtr;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Journey-planning graph of one MTR dimension. Nodes are platforms; consecutive platforms of a route form
+ * ride edges, and platforms inside the same station area are linked by interchange walks. Ride times follow
+ * the rail network (shortest rail path at the rail type's speed, plus dwell time) and are cached per pair of
+ * platform positions, so the cache survives rebuilds that do not touch rails.
+ */
+public final class MtrNetworkGraph {
+
+    public enum Mode {
+        FASTEST("fastest"),
+        FEWEST_TRANSFERS("fewest_transfers");
+
+        private final String key;
+
+        Mode(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public static Mode fromKey(String key) {
+            for (Mode mode : values()) {
+                if (mode.key.equalsIgnoreCase(key)) {
+                    return mode;
+                }
+            }
+            return null;
+        }
+    }
+
+    // Boarding another train costs an assumed average wait; changing platforms inside a station a short walk.
+    static final double TRANSFER_WAIT_SECONDS = 60.0;
+    static final double INTERCHANGE_WALK_SECONDS = 30.0;
+    // Used when two consecutive platforms are not connected by scanned rails.
+    private static final double FALLBACK_BLOCKS_PER_SECOND = 40.0 / 3.6;
+    private static final int MAX_RAIL_EXPANSIONS = 200_000;
+    // Rail search work one findJourney call may spend on segments not yet in the shared cache; once spent, the
+    // remaining segments use the straight-line estimate without caching it, and later queries fill them in.
+    private static final int MAX_QUERY_RAIL_EXPANSIONS = 400_000;
+
+    private final Map<Long, Station> stations;
+    private final Map<Long, Platform> platforms;
+    private final Map<Long, Route> routes;
+    private final Map<Long, RailNode> rails;
+    private final Map<Long, Long> stationByPlatform = new HashMap<>();
+    private final Map<Long, List<Long>> platformsByStation = new HashMap<>();
+    private final Map<Long, List<RouteStop>> stopsByPlatform = new HashMap<>();
+    private final Map<SegmentKey, Double> segmentSeconds;
+    private final long diffId;
+
+    MtrNetworkGraph(Map<Long, Station> stations,
+                    Map<Long, Platform> platforms,
+                    Map<Long, Route> routes,
+                    Map<Long, RailNode> rails,
+                    Map<SegmentKey, Double> segmentSeconds,
+                    long diffId) {
+        this.diffId = diffId;
+        this.stations = stations;
+        this.platforms = platforms;
+        this.routes = routes;
+        this.rails = rails;
+        this.segmentSeconds = segmentSeconds;
+        for (Platform platform : platforms.values()) {
+            Station station = findStation(platform);
+            if (station != null) {
+                stationByPlatform.put(platform.id, station.id);
+                platformsByStation.computeIfAbsent(station.id, key -> new ArrayList<>()).add(platform.id);
+            }
+        }
+        for (Route route : routes.values()) {
+            List<Long> ids = route.platformIds;
+            for (int i = 0; i < ids.size(); i++) {
+                Long next = i + 1 < ids.size() ? ids.get(i + 1) : (route.circular && ids.size() > 1 ? ids.get(0) : null);
+                if (next == null || !platforms.containsKey(ids.get(i)) || !platforms.containsKey(next)) {
+                    continue;
+                }
+                stopsByPlatform.computeIfAbsent(ids.get(i), key -> new ArrayList<>()).add(new RouteStop(route.id, next));
+            }
+        }
+    }
+
+    /**
+     * Last mtr_entity_diffs id applied when this graph was built. Later diffs never touch this dimension's
+     * entities while the graph is current, since any such diff replaces the graph.
+     */
+    long getDiffId() {
+        return diffId;
+    }
+
+    Collection<Station> stations() {
+        return stations.values();
+    }
+
+    Collection<RailNode> rails() {
+        return rails.values();
+    }
+
+    public Station getStation(long stationId) {
+        return stations.get(stationId);
+    }
+
+    public int getStationCount() {
+        return stations.size();
+    }
+
+    public int getPlatformCount() {
+        return platforms.size();
+    }
+
+    public int getRouteCount() {
+        return routes.size();
+    }
+
+    public int getRailNodeCount() {
+        return rails.size();
+    }
+
+    /**
+     * Best journey between two stations, or null when the destination cannot be reached.
+     */
+    public Map<String, Object> findJourney(long fromStationId, long toStationId, Mode mode) {
+        List<Long> origins = platformsByStation.getOrDefault(fromStationId, Collections.emptyList());
+        List<Long> targets = platformsByStation.getOrDefault(toStationId, Collections.emptyList());
+        if (origins.isEmpty() || targets.isEmpty() || fromStationId == toStationId) {
+            return null;
+        }
+        int[] railBudget = {MAX_QUERY_RAIL_EXPANSIONS};
+        Map<State, Label> best = new HashMap<>();
+        PriorityQueue<Label> queue = new PriorityQueue<>(mode == Mode.FASTEST ? FASTEST_ORDER : FEWEST_TRANSFERS_ORDER);
+        for (Long platformId : origins) {
+            Label start = new Label(new State(platformId, null), 0.0, 0, null, false);
+            best.put(start.state, start);
+            queue.add(start);
+        }
+        while (!queue.isEmpty()) {
+            Label label = queue.poll();
+            if (best.get(label.state) != label) {
+                continue;
+            }
+            Long currentRoute = label.state.routeId;
+            if (currentRoute != null && targets.contains(label.state.platformId)) {
+                return toJourney(label);
+            }
+            for (RouteStop stop : stopsByPlatform.getOrDefault(label.state.platformId, Collections.emptyList())) {
+                boolean boarding = !stop.routeId.equals(currentRoute);
+                double seconds = label.seconds + rideSeconds(label.state.platformId, stop.nextPlatformId, railBudget);
+                if (boarding && label.boardings > 0) {
+                    seconds += TRANSFER_WAIT_SECONDS;
+                }
+                relax(new Label(new State(stop.nextPlatformId, stop.routeId), seconds,
+                        label.boardings + (boarding ? 1 : 0), label, false), best, queue, mode);
+            }
+            Long stationId = stationByPlatform.get(label.state.platformId);
+            if (currentRoute != null && stationId != null) {
+                for (Long other : platformsByStation.get(stationId)) {
+                    if (!other.equals(label.state.platformId)) {
+                        relax(new Label(new State(other, null), label.seconds + INTERCHANGE_WALK_SECONDS,
+                                label.boardings, label, true), best, queue, mode);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private void relax(Label candidate, Map<State, Label> best, PriorityQueue<Label> queue, Mode mode) {
+        Label known = best.get(candidate.state);
+        Comparator<Label> order = mode == Mode.FASTEST ? FASTEST_ORDER : FEWEST_TRANSFERS_ORDER;
+        if (known == null || order.compare(candidate, known) < 0) {
+            best.put(candidate.state, candidate);
+            queue.add(candidate);
+        }
+    }
+
+    private Map<String, Object> toJourney(Label end) {
+        Deque<Label> path = new ArrayDeque<>();
+        for (Label label = end; label.previous != null; label = label.previous) {
+            path.push(label);
+        }
+        List<Map<String, Object>> legs = new ArrayList<>();
+        Map<String, Object> leg = null;
+        double legStart = 0.0;
+        for (Label label : path) {
+            if (label.walk) {
+                continue;
+            }
+            if (label.boardings != label.previous.boardings) {
+                Route route = routes.get(label.state.routeId);
+                legStart = label.previous.seconds + (label.boardings > 1 ? TRANSFER_WAIT_SECONDS : 0.0);
+                leg = new LinkedHashMap<>();
+                leg.put("route_id", route.id);
+                leg.put("route_name", route.name);
+                leg.put("route_color", route.color);
+                putPlatform(leg, "from", label.previous.state.platformId);
+                leg.put("stops", 0);
+                legs.add(leg);
+            }
+            putPlatform(leg, "to", label.state.platformId);
+            leg.put("stops", (Integer) leg.get("stops") + 1);
+            leg.put("seconds", Math.round(label.seconds - legStart));
+        }
+        Map<String, Object> journey = new LinkedHashMap<>();
+        journey.put("total_seconds", Math.round(end.seconds));
+        journey.put("transfers", end.boardings - 1);
+        journey.put("legs", legs);
+        return journey;
+    }
+
+    private void putPlatform(Map<String, Object> leg, String prefix, long platformId) {
+        Platform platform = platforms.get(platformId);
+        Long stationId = stationByPlatform.get(platformId);
+        Station station = stationId != null ? stations.get(stationId) : null;
+        leg.put(prefix + "_platform_id", platformId);
+        leg.put(prefix + "_platform_name", platform != null ? platform.name : null);
+        leg.put(prefix + "_station_id", stationId);
+        leg.put(prefix + "_station_name", station != null ? station.name : null);
+    }
+
+    // Rail travel time between consecutive platforms plus the dwell at the arrival platform.
+    private double rideSeconds(long fromPlatformId, long toPlatformId, int[] railBudget) {
+        Platform from = platforms.get(fromPlatformId);
+        Platform to = platforms.get(toPlatformId);
+        SegmentKey key = new SegmentKey(from.node1, from.node2, to.node1, to.node2);
+        Double travel = segmentSeconds.get(key);
+        if (travel == null) {
+            travel = railSeconds(from, to, railBudget);
+            if (travel == null) {
+                travel = fallbackSeconds(from, to);
+            } else {
+                segmentSeconds.put(key, travel);
+            }
+        }
+        return travel + to.dwellSeconds;
+    }
+
+    // Null when the query's rail budget ran out before the search finished.
+    private Double railSeconds(Platform from, Platform to, int[] railBudget) {
+        Map<Long, Double> distance = new HashMap<>();
+        PriorityQueue<RailStep> queue = new PriorityQueue<>(Comparator.comparingDouble((RailStep step) -> step.seconds));
+        for (long start : new long[]{from.node1, from.node2}) {
+            distance.put(start, 0.0);
+            queue.add(new RailStep(start, 0.0));
+        }
+        int expansions = 0;
+        while (!queue.isEmpty() && expansions++ < MAX_RAIL_EXPANSIONS) {
+            if (railBudget[0]-- <= 0) {
+                return null;
+            }
+            RailStep step = queue.poll();
+            if (step.seconds > distance.getOrDefault(step.node, Double.MAX_VALUE)) {
+                continue;
+            }
+            if (step.node == to.node1 || step.node == to.node2) {
+                return step.seconds;
+            }
+            RailNode rail = rails.get(step.node);
+            if (rail == null) {
+                continue;
+            }
+            for (int i = 0; i < rail.targets.length; i++) {
+                if (Double.isInfinite(rail.seconds[i])) {
+                    continue;
+                }
+                double next = step.seconds + rail.seconds[i];
+                if (next < distance.getOrDefault(rail.targets[i], Double.MAX_VALUE)) {
+                    distance.put(rail.targets[i], next);
+                    queue.add(new RailStep(rail.targets[i], next));
+                }
+            }
+        }
+        return fallbackSeconds(from, to);
+    }
+
+    private static double fallbackSeconds(Platform from, Platform to) {
+        return distance(from.midX(), from.midY(), from.midZ(), to.midX(), to.midY(), to.midZ()) / FALLBACK_BLOCKS_PER_SECOND;
+    }
+
+    private Station findStation(Platform platform) {
+        double x = platform.midX();
+        double z = platform.midZ();
+        for (Station station : stations.values()) {
+            if (station.contains(x, z)) {
+                return station;
+            }
+        }
+        return null;
+    }
+
+    static double distance(double x1, double y1, double z1, double x2, double y2, double z2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        double dz = z1 - z2;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    // Minecraft 1.16 BlockPos.asLong layout: x 26 bits, z 26 bits, y 12 bits.
+    public static int blockX(long packed) {
+        return (int) (packed >> 38);
+    }
+
+    public static int blockY(long packed) {
+        return (int) (packed << 52 >> 52);
+    }
+
+    public static int blockZ(long packed) {
+        return (int) (packed << 26 >> 38);
+    }
+
+    private static final Comparator<Label> FASTEST_ORDER = (a, b) -> {
+        int bySeconds = Double.compare(a.seconds, b.seconds);
+        return bySeconds != 0 ? bySeconds : Integer.compare(a.boardings, b.boardings);
+    };
+
+    private static final Comparator<Label> FEWEST_TRANSFERS_ORDER = (a, b) -> {
+        int byBoardings = Integer.compare(a.boardings, b.boardings);
+        return byBoardings != 0 ? byBoardings : Double.compare(a.seconds, b.seconds);
+    };
+
+    public static final class Station {
+        final long id;
+        final String name;
+        final long color;
+        final int minX;
+        final int minZ;
+        final int maxX;
+        final int maxZ;
+
+        Station(long id, String name, long color, int x1, int z1, int x2, int z2) {
+            this.id = id;
+            this.name = name;
+            this.color = color;
+            this.minX = Math.min(x1, x2);
+            this.maxX = Math.max(x1, x2);
+            this.minZ = Math.min(z1, z2);
+            this.maxZ = Math.max(z1, z2);
+        }
+
+        boolean contains(double x, double z) {
+            return x >= minX && x <= maxX + 1 && z >= minZ && z <= maxZ + 1;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getColor() {
+            return color;
+        }
+
+        public int getMinX() {
+            return minX;
+        }
+
+        public int getMinZ() {
+            return minZ;
+        }
+
+        public int getMaxX() {
+            return maxX;
+        }
+
+        public int getMaxZ() {
+            return maxZ;
+        }
+    }
+
+    public static final class Platform {
+        final long id;
+        final String name;
+        final long node1;
+        final long node2;
+        final double dwellSeconds;
+
+        Platform(long id, String name, long node1, long node2, double dwellSeconds) {
+            this.id = id;
+            this.name = name;
+            this.node1 = node1;
+            this.node2 = node2;
+            this.dwellSeconds = dwellSeconds;
+        }
+
+        double midX() {
+            return (blockX(node1) + blockX(node2)) / 2.0 + 0.5;
+        }
+
+        double midY() {
+            return (blockY(node1) + blockY(node2)) / 2.0;
+        }
+
+        double midZ() {
+            return (blockZ(node1) + blockZ(node2)) / 2.0 + 0.5;
+        }
+    }
+
+    public static final class Route {
+        final long id;
+        final String name;
+        final long color;
+        final List<Long> platformIds;
+        final boolean circular;
+
+        Route(long id, String name, long color, List<Long> platformIds, boolean circular) {
+            this.id = id;
+            this.name = name;
+            this.color = color;
+            this.platformIds = platformIds;
+            this.circular = circular;
+        }
+    }
+
+    public static final class RailNode {
+        final long pos;
+        final long[] targets;
+        final String[] railTypes;
+        // infinite for the blocked direction of a one-way rail
+        final double[] seconds;
+
+        RailNode(long pos, long[] targets, String[] railTypes, double[] seconds) {
+            this.pos = pos;
+            this.targets = targets;
+            this.railTypes = railTypes;
+            this.seconds = seconds;
+        }
+
+        public long getPos() {
+            return pos;
+        }
+
+        public long[] getTargets() {
+            return targets;
+        }
+
+        public String[] getRailTypes() {
+            return railTypes;
+        }
+    }
+
+    static final class SegmentKey {
+        private final long from1;
+        private final long from2;
+        private final long to1;
+        private final long to2;
+
+        SegmentKey(long from1, long from2, long to1, long to2) {
+            this.from1 = from1;
+            this.from2 = from2;
+            this.to1 = to1;
+            this.to2 = to2;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SegmentKey)) {
+                return false;
+            }
+            SegmentKey other = (SegmentKey) o;
+            return from1 == other.from1 && from2 == other.from2 && to1 == other.to1 && to2 == other.to2;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Long.hashCode(from1);
+            result = 31 * result + Long.hashCode(from2);
+            result = 31 * result + Long.hashCode(to1);
+            return 31 * result + Long.hashCode(to2);
+        }
+    }
+
+    private static final class RouteStop {
+        private final Long routeId;
+        private final Long nextPlatformId;
+
+        private RouteStop(Long routeId, Long nextPlatformId) {
+            this.routeId = routeId;
+            this.nextPlatformId = nextPlatformId;
+        }
+    }
+
+    // A platform reached while riding routeId (null after walking or at the origin).
+    private static final class State {
+        private final Long platformId;
+        private final Long routeId;
+
+        private State(Long platformId, Long routeId) {
+            this.platformId = platformId;
+            this.routeId = routeId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof State)) {
+                return false;
+            }
+            State other = (State) o;
+            return platformId.equals(other.platformId)
+                    && (routeId == null ? other.routeId == null : routeId.equals(other.routeId));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * platformId.hashCode() + (routeId != null ? routeId.hashCode() : 0);
+        }
+    }
+
+    private static final class Label {
+        private final State state;
+        private final double seconds;
+        private final int boardings;
+        private final Label previous;
+        private final boolean walk;
+
+        private Label(State state, double seconds, int boardings, Label previous, boolean walk) {
+            this.state = state;
+            this.seconds = seconds;
+            this.boardings = boardings;
+            this.previous = previous;
+            this.walk = walk;
+        }
+    }
+
+    private static final class RailStep {
+        private final long node;
+        private final double seconds;
+
+        private RailStep(long node, double seconds) {
+            this.node = node;
+            this.seconds = seconds;
+        }
+    }
+}
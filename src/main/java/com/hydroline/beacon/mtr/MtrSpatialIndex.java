@@ -0,0 +1,196 @@
+package com.hydroline.beacon.mtr;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid over one dimension's rail nodes (by node position) and stations (by area bounds). Stations are
+ * registered in every cell their bounds cover, except stations covering more than {@link #MAX_STATION_CELLS}
+ * cells (or with corrupt, huge bounds), which are kept in one global list checked by every query.
+ * Not thread-safe; MtrGraphEngine guards it with its own lock.
+ */
+public final class MtrSpatialIndex {
+
+    private static final int CELL_SHIFT = 8; // 256-block cells
+    private static final long MAX_STATION_CELLS = 64L;
+
+    private final Map<Long, Map<Long, MtrNetworkGraph.RailNode>> railCells = new HashMap<>();
+    private final Map<Long, Map<Long, MtrNetworkGraph.Station>> stationCells = new HashMap<>();
+    private final Map<Long, MtrNetworkGraph.Station> stations = new HashMap<>();
+    private final Map<Long, MtrNetworkGraph.Station> globalStations = new HashMap<>();
+    private int railCount;
+
+    public void putRail(MtrNetworkGraph.RailNode rail) {
+        Map<Long, MtrNetworkGraph.RailNode> cell = railCells.computeIfAbsent(
+                cellOfBlock(MtrNetworkGraph.blockX(rail.pos), MtrNetworkGraph.blockZ(rail.pos)), key -> new HashMap<>());
+        if (cell.put(rail.pos, rail) == null) {
+            railCount++;
+        }
+    }
+
+    public void removeRail(long pos) {
+        long cellKey = cellOfBlock(MtrNetworkGraph.blockX(pos), MtrNetworkGraph.blockZ(pos));
+        Map<Long, MtrNetworkGraph.RailNode> cell = railCells.get(cellKey);
+        if (cell != null && cell.remove(pos) != null) {
+            railCount--;
+            if (cell.isEmpty()) {
+                railCells.remove(cellKey);
+            }
+        }
+    }
+
+    public void putStation(MtrNetworkGraph.Station station) {
+        removeStation(station.id);
+        stations.put(station.id, station);
+        if (isGlobal(station)) {
+            globalStations.put(station.id, station);
+            return;
+        }
+        forEachCell(station.minX, station.minZ, station.maxX, station.maxZ,
+                cellKey -> stationCells.computeIfAbsent(cellKey, key -> new HashMap<>()).put(station.id, station));
+    }
+
+    public void removeStation(long stationId) {
+        MtrNetworkGraph.Station old = stations.remove(stationId);
+        if (old == null) {
+            return;
+        }
+        if (globalStations.remove(stationId) != null) {
+            return;
+        }
+        forEachCell(old.minX, old.minZ, old.maxX, old.maxZ, cellKey -> {
+            Map<Long, MtrNetworkGraph.Station> cell = stationCells.get(cellKey);
+            if (cell != null) {
+                cell.remove(stationId);
+                if (cell.isEmpty()) {
+                    stationCells.remove(cellKey);
+                }
+            }
+        });
+    }
+
+    public int getRailCount() {
+        return railCount;
+    }
+
+    public int getStationCount() {
+        return stations.size();
+    }
+
+    /**
+     * Rail nodes inside and stations intersecting the block rectangle (inclusive). Stops after {@code limit}
+     * entities in total; {@link Result#isTruncated()} reports whether anything was left out.
+     */
+    public Result query(int minX, int minZ, int maxX, int maxZ, boolean includeRails, boolean includeStations, int limit) {
+        Result result = new Result();
+        long cellsX = ((long) maxX >> CELL_SHIFT) - (minX >> CELL_SHIFT) + 1;
+        long cellsZ = ((long) maxZ >> CELL_SHIFT) - (minZ >> CELL_SHIFT) + 1;
+        // a viewport wider than the populated grid is cheaper to answer by walking the occupied cells
+        boolean scanOccupied = cellsX * cellsZ > railCells.size() + stationCells.size();
+        if (includeStations) {
+            Map<Long, MtrNetworkGraph.Station> seen = new LinkedHashMap<>();
+            if (scanOccupied) {
+                for (MtrNetworkGraph.Station station : stations.values()) {
+                    seen.put(station.id, station);
+                }
+            } else {
+                seen.putAll(globalStations);
+                forEachCell(minX, minZ, maxX, maxZ, cellKey -> {
+                    Map<Long, MtrNetworkGraph.Station> cell = stationCells.get(cellKey);
+                    if (cell != null) {
+                        seen.putAll(cell);
+                    }
+                });
+            }
+            for (MtrNetworkGraph.Station station : seen.values()) {
+                if (station.maxX < minX || station.minX > maxX || station.maxZ < minZ || station.minZ > maxZ) {
+                    continue;
+                }
+                if (result.size() >= limit) {
+                    result.truncated = true;
+                    return result;
+                }
+                result.stations.add(station);
+            }
+        }
+        if (includeRails) {
+            List<Map<Long, MtrNetworkGraph.RailNode>> cells = new ArrayList<>();
+            if (scanOccupied) {
+                cells.addAll(railCells.values());
+            } else {
+                forEachCell(minX, minZ, maxX, maxZ, cellKey -> {
+                    Map<Long, MtrNetworkGraph.RailNode> cell = railCells.get(cellKey);
+                    if (cell != null) {
+                        cells.add(cell);
+                    }
+                });
+            }
+            for (Map<Long, MtrNetworkGraph.RailNode> cell : cells) {
+                for (MtrNetworkGraph.RailNode rail : cell.values()) {
+                    int x = MtrNetworkGraph.blockX(rail.pos);
+                    int z = MtrNetworkGraph.blockZ(rail.pos);
+                    if (x < minX || x > maxX || z < minZ || z > maxZ) {
+                        continue;
+                    }
+                    if (result.size() >= limit) {
+                        result.truncated = true;
+                        return result;
+                    }
+                    result.rails.add(rail);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isGlobal(MtrNetworkGraph.Station station) {
+        long cellsX = ((long) station.maxX >> CELL_SHIFT) - (station.minX >> CELL_SHIFT) + 1;
+        long cellsZ = ((long) station.maxZ >> CELL_SHIFT) - (station.minZ >> CELL_SHIFT) + 1;
+        return cellsX <= 0 || cellsZ <= 0 || cellsX * cellsZ > MAX_STATION_CELLS;
+    }
+
+    private static void forEachCell(int minX, int minZ, int maxX, int maxZ, CellVisitor visitor) {
+        for (int cx = minX >> CELL_SHIFT; cx <= maxX >> CELL_SHIFT; cx++) {
+            for (int cz = minZ >> CELL_SHIFT; cz <= maxZ >> CELL_SHIFT; cz++) {
+                visitor.visit(cellKey(cx, cz));
+            }
+        }
+    }
+
+    private static long cellOfBlock(int x, int z) {
+        return cellKey(x >> CELL_SHIFT, z >> CELL_SHIFT);
+    }
+
+    private static long cellKey(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    private interface CellVisitor {
+        void visit(long cellKey);
+    }
+
+    public static final class Result {
+        private final List<MtrNetworkGraph.RailNode> rails = new ArrayList<>();
+        private final List<MtrNetworkGraph.Station> stations = new ArrayList<>();
+        private boolean truncated;
+
+        public List<MtrNetworkGraph.RailNode> getRails() {
+            return rails;
+        }
+
+        public List<MtrNetworkGraph.Station> getStations() {
+            return stations;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        private int size() {
+            return rails.size() + stations.size();
+        }
+    }
+}
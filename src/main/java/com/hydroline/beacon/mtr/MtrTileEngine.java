@@ -0,0 +1,899 @@
+package com.hydroline.beacon.mtr;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hydroline.beacon.storage.DatabaseManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Railway map tiles per dimension and zoom level. Rails are joined into polylines (runs of nodes with exactly
+ * two neighbours and one rail type), simplified with Douglas–Peucker at one tile pixel of tolerance, and bucketed
+ * into the tiles their segments cross; stations go to every tile their bounds intersect, except stations covering
+ * more than {@link #MAX_STATION_TILES} tiles of a zoom level (or with corrupt, huge bounds), which that level keeps
+ * in one global list checked by every tile it renders. Only tiles with bucketed content are serialized and cached
+ * in memory and under {@code cacheDir}; every other tile is rendered per request, so requests far outside the
+ * network cannot grow the cache.
+ * <p>
+ * When a dimension's graph changes, its polylines and every zoom level are rebuilt on a background thread while
+ * tiles keep being served from the previous build; installing the new build drops exactly the tiles whose
+ * content digest changed, which covers neighbouring tiles re-simplified along a changed polyline. The first build
+ * after a restart has no previous build to compare with, so it drops the tiles under mtr_entity_diffs rows newer
+ * than the disk cache, widened to the full extent of every polyline through a changed rail node.
+ */
+public class MtrTileEngine {
+
+    public static final int MAX_ZOOM = 8;
+    // tile edge in blocks at MAX_ZOOM; each lower zoom doubles it
+    private static final int MAX_ZOOM_TILE_BLOCKS = 128;
+    private static final int TILE_PIXELS = 256;
+    private static final int MAX_MEMORY_TILES = 2048;
+    private static final long MAX_STATION_TILES = 64L;
+    // beyond this many tiles of one zoom level, invalidating a range drops the whole level instead
+    private static final long MAX_INVALIDATED_TILES = 4096L;
+    private static final String STATE_FILE = "state.json";
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final DatabaseManager db;
+    private final MtrGraphEngine graphEngine;
+    private final File cacheDir;
+    private final Logger logger;
+    private final Map<String, DimensionTiles> dimensions = new HashMap<>();
+    private final Set<String> rebuilding = new HashSet<>();
+    // dimension -> last mtr_entity_diffs id its cached tiles reflect
+    private final Map<String, Long> cursors = new HashMap<>();
+    private final LinkedHashMap<String, String> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "beacon-mtr-tiles");
+        t.setDaemon(true);
+        return t;
+    });
+    private boolean stateLoaded;
+    // cursor of the single-cursor state file written by earlier versions; applies to every dimension
+    private long legacyCursor = -1L;
+    private long generated;
+    private long uncached;
+    private long memoryHits;
+    private long diskHits;
+    private long rebuilds;
+    private long invalidatedTiles;
+
+    public MtrTileEngine(DatabaseManager db, MtrGraphEngine graphEngine, File cacheDir, Logger logger) {
+        this.db = db;
+        this.graphEngine = graphEngine;
+        this.cacheDir = cacheDir;
+        this.logger = logger;
+    }
+
+    public static int tileBlocks(int zoom) {
+        return MAX_ZOOM_TILE_BLOCKS << (MAX_ZOOM - zoom);
+    }
+
+    public void stop() {
+        builder.shutdownNow();
+    }
+
+    /**
+     * Serialized tile JSON, or null when the dimension has never been scanned. Only the first request for a
+     * dimension after startup waits for its polylines to be built; later graph changes are rebuilt in the
+     * background.
+     */
+    public String getTile(String dimensionContext, int zoom, int x, int z) throws SQLException {
+        MtrNetworkGraph graph = graphEngine.getGraph(dimensionContext);
+        if (graph == null) {
+            return null;
+        }
+        DimensionTiles tiles;
+        synchronized (this) {
+            tiles = dimensions.get(dimensionContext);
+            if (tiles != null && tiles.graph != graph) {
+                scheduleRebuild(dimensionContext, tiles, graph);
+            }
+        }
+        if (tiles == null) {
+            // built outside the lock so cached tiles of other dimensions are still served meanwhile
+            DimensionTiles built = DimensionTiles.build(graph);
+            synchronized (this) {
+                if (dimensions.get(dimensionContext) == null) {
+                    installFirst(dimensionContext, built);
+                }
+            }
+        }
+        return tile(dimensionContext, zoom, x, z);
+    }
+
+    private synchronized String tile(String dimensionContext, int zoom, int x, int z) {
+        // read under the lock: a build installed since getTile() looked has already invalidated its changed tiles,
+        // so rendering from an earlier build here would cache stale content
+        ZoomLevel level = dimensions.get(dimensionContext).levels[zoom];
+        if (!level.digests.containsKey(tileKey(x, z))) {
+            uncached++;
+            return renderTile(level, zoom, x, z);
+        }
+        String key = dimensionContext + "|" + zoom + "|" + x + "|" + z;
+        String json = memory.get(key);
+        if (json != null) {
+            memoryHits++;
+            return json;
+        }
+        File file = tileFile(dimensionContext, zoom, x, z);
+        if (file.isFile()) {
+            try {
+                json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                diskHits++;
+            } catch (IOException e) {
+                logger.warning("Failed to read MTR tile " + file + ": " + e.getMessage());
+            }
+        }
+        if (json == null) {
+            json = renderTile(level, zoom, x, z);
+            generated++;
+            try {
+                Files.createDirectories(file.getParentFile().toPath());
+                Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                logger.warning("Failed to write MTR tile " + file + ": " + e.getMessage());
+            }
+        }
+        remember(key, json);
+        return json;
+    }
+
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("memory_tiles", memory.size());
+        metrics.put("memory_hits", memoryHits);
+        metrics.put("disk_hits", diskHits);
+        metrics.put("generated", generated);
+        metrics.put("uncached", uncached);
+        metrics.put("rebuilds", rebuilds);
+        metrics.put("rebuilding", rebuilding.size());
+        metrics.put("invalidated_tiles", invalidatedTiles);
+        long lastDiffId = -1L;
+        for (Long cursor : cursors.values()) {
+            lastDiffId = Math.max(lastDiffId, cursor);
+        }
+        metrics.put("last_diff_id", lastDiffId);
+        return metrics;
+    }
+
+    private void scheduleRebuild(String dimensionContext, DimensionTiles previous, MtrNetworkGraph graph) {
+        if (!rebuilding.add(dimensionContext)) {
+            return;
+        }
+        try {
+            builder.execute(() -> {
+                try {
+                    DimensionTiles next = DimensionTiles.build(graph);
+                    TileChanges changed = changedTiles(previous, next);
+                    synchronized (this) {
+                        install(dimensionContext, previous, next, changed);
+                    }
+                } catch (RuntimeException e) {
+                    logger.warning("Failed to rebuild MTR tiles for " + dimensionContext + ": " + e.getMessage());
+                } finally {
+                    synchronized (this) {
+                        rebuilding.remove(dimensionContext);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rebuilding.remove(dimensionContext);
+        }
+    }
+
+    // Swaps in a background build and drops the tiles whose content differs from the build it replaces.
+    private void install(String dimensionContext, DimensionTiles previous, DimensionTiles next, TileChanges changed) {
+        if (dimensions.get(dimensionContext) != previous) {
+            return;
+        }
+        long diffId = next.graph.getDiffId();
+        Long cursor = cursors.get(dimensionContext);
+        if (cursor != null && diffId < cursor) {
+            // the diff log went backwards: the database was recreated, nothing cached can be trusted
+            dropDimension(dimensionContext);
+        } else {
+            for (int zoom : changed.levels) {
+                dropLevel(dimensionContext, zoom);
+            }
+            for (Map.Entry<Integer, Set<Long>> zoom : changed.tiles.entrySet()) {
+                for (long key : zoom.getValue()) {
+                    invalidateTile(dimensionContext, zoom.getKey(), (int) (key >> 32), (int) key);
+                }
+            }
+        }
+        dimensions.put(dimensionContext, next);
+        cursors.put(dimensionContext, diffId);
+        rebuilds++;
+        writeState();
+    }
+
+    // First build of a dimension since startup: reconcile the disk cache with the diffs it has not seen.
+    private void installFirst(String dimensionContext, DimensionTiles tiles) {
+        if (!stateLoaded) {
+            readState();
+            stateLoaded = true;
+        }
+        long diffId = tiles.graph.getDiffId();
+        Long cursor = cursors.get(dimensionContext);
+        if (cursor == null && legacyCursor >= 0) {
+            cursor = legacyCursor;
+        }
+        if (cursor == null || diffId < cursor) {
+            // no record of what the disk cache reflects, or the database was recreated since
+            dropDimension(dimensionContext);
+        } else if (diffId > cursor) {
+            try {
+                invalidateFromDiffs(dimensionContext, tiles, cursor, diffId);
+            } catch (SQLException e) {
+                logger.warning("Failed to read MTR diffs for tile invalidation, dropping " + dimensionContext + " tiles: " + e.getMessage());
+                dropDimension(dimensionContext);
+            }
+        }
+        dimensions.put(dimensionContext, tiles);
+        cursors.put(dimensionContext, diffId);
+        writeState();
+    }
+
+    private void invalidateFromDiffs(String dimensionContext, DimensionTiles tiles, long fromDiffId, long toDiffId) throws SQLException {
+        Map<Long, List<Polyline>> byNode = tiles.polylinesByNode();
+        Set<Polyline> widened = java.util.Collections.newSetFromMap(new IdentityHashMap<>());
+        try (Connection conn = db.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT category, before_payload, after_payload FROM mtr_entity_diffs " +
+                             "WHERE dimension_context = ? AND id > ? AND id <= ? AND category IN ('rails', 'stations')")) {
+            ps.setString(1, dimensionContext);
+            ps.setLong(2, fromDiffId);
+            ps.setLong(3, toDiffId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    boolean rail = "rails".equals(rs.getString(1));
+                    for (int column = 2; column <= 3; column++) {
+                        JsonNode payload = readPayload(rs.getString(column));
+                        int[] bounds = payloadBounds(payload, rail);
+                        if (bounds != null) {
+                            invalidate(dimensionContext, bounds);
+                        }
+                        if (rail && payload != null) {
+                            // a changed node re-simplifies every polyline through it and its neighbours
+                            for (long pos : railPositions(payload)) {
+                                widened.addAll(byNode.getOrDefault(pos, new ArrayList<>()));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        for (Polyline polyline : widened) {
+            invalidate(dimensionContext, polyline.bounds);
+        }
+    }
+
+    private void invalidate(String dimensionContext, int[] bounds) {
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            int size = tileBlocks(zoom);
+            if (tileCount(bounds[0], bounds[1], bounds[2], bounds[3], size) > MAX_INVALIDATED_TILES) {
+                // a huge or corrupt area: deleting the level costs at most the tiles actually cached
+                dropLevel(dimensionContext, zoom);
+                continue;
+            }
+            for (int tx = Math.floorDiv(bounds[0], size); tx <= Math.floorDiv(bounds[2], size); tx++) {
+                for (int tz = Math.floorDiv(bounds[1], size); tz <= Math.floorDiv(bounds[3], size); tz++) {
+                    invalidateTile(dimensionContext, zoom, tx, tz);
+                }
+            }
+        }
+    }
+
+    private void invalidateTile(String dimensionContext, int zoom, int x, int z) {
+        boolean cached = memory.remove(dimensionContext + "|" + zoom + "|" + x + "|" + z) != null;
+        if (tileFile(dimensionContext, zoom, x, z).delete() || cached) {
+            invalidatedTiles++;
+        }
+    }
+
+    private void dropDimension(String dimensionContext) {
+        String prefix = dimensionContext + "|";
+        memory.keySet().removeIf(key -> key.startsWith(prefix));
+        deleteRecursively(dimensionFolder(dimensionContext));
+    }
+
+    private void dropLevel(String dimensionContext, int zoom) {
+        String prefix = dimensionContext + "|" + zoom + "|";
+        memory.keySet().removeIf(key -> key.startsWith(prefix));
+        deleteRecursively(new File(dimensionFolder(dimensionContext), String.valueOf(zoom)));
+    }
+
+    // Per zoom level, the tiles whose lines or stations differ between two builds; a level whose global stations
+    // changed is dropped as a whole, since those stations may appear in any of its tiles.
+    private static TileChanges changedTiles(DimensionTiles before, DimensionTiles after) {
+        TileChanges changes = new TileChanges();
+        Map<Integer, Set<Long>> changed = changes.tiles;
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            if (before.levels[zoom].globalDigest != after.levels[zoom].globalDigest) {
+                changes.levels.add(zoom);
+                continue;
+            }
+            Map<Long, Long> old = before.levels[zoom].digests;
+            Map<Long, Long> current = after.levels[zoom].digests;
+            Set<Long> keys = new HashSet<>();
+            for (Map.Entry<Long, Long> tile : old.entrySet()) {
+                if (!tile.getValue().equals(current.get(tile.getKey()))) {
+                    keys.add(tile.getKey());
+                }
+            }
+            for (Long key : current.keySet()) {
+                if (!old.containsKey(key)) {
+                    keys.add(key);
+                }
+            }
+            if (!keys.isEmpty()) {
+                changed.put(zoom, keys);
+            }
+        }
+        return changes;
+    }
+
+    private static JsonNode readPayload(String payload) {
+        if (payload == null) {
+            return null;
+        }
+        try {
+            JsonNode node = JSON.readTree(payload);
+            return node != null && node.isObject() ? node : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // {minX, minZ, maxX, maxZ} covered by a rail node and its connections, or by a station's area.
+    private static int[] payloadBounds(JsonNode node, boolean rail) {
+        if (node == null) {
+            return null;
+        }
+        if (!rail) {
+            int x1 = node.path("x_min").asInt();
+            int x2 = node.path("x_max").asInt();
+            int z1 = node.path("z_min").asInt();
+            int z2 = node.path("z_max").asInt();
+            return new int[]{Math.min(x1, x2), Math.min(z1, z2), Math.max(x1, x2), Math.max(z1, z2)};
+        }
+        long pos = node.path("node_pos").asLong();
+        int[] bounds = {MtrNetworkGraph.blockX(pos), MtrNetworkGraph.blockZ(pos), MtrNetworkGraph.blockX(pos), MtrNetworkGraph.blockZ(pos)};
+        for (JsonNode connection : node.path("rail_connections")) {
+            long target = connection.path("node_pos").asLong();
+            bounds[0] = Math.min(bounds[0], MtrNetworkGraph.blockX(target));
+            bounds[1] = Math.min(bounds[1], MtrNetworkGraph.blockZ(target));
+            bounds[2] = Math.max(bounds[2], MtrNetworkGraph.blockX(target));
+            bounds[3] = Math.max(bounds[3], MtrNetworkGraph.blockZ(target));
+        }
+        return bounds;
+    }
+
+    private static List<Long> railPositions(JsonNode node) {
+        List<Long> positions = new ArrayList<>();
+        positions.add(node.path("node_pos").asLong());
+        for (JsonNode connection : node.path("rail_connections")) {
+            positions.add(connection.path("node_pos").asLong());
+        }
+        return positions;
+    }
+
+    private String renderTile(ZoomLevel level, int zoom, int x, int z) {
+        long key = tileKey(x, z);
+        List<Map<String, Object>> lines = new ArrayList<>();
+        for (Line line : level.lines.getOrDefault(key, new ArrayList<>())) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("rail_type", line.railType);
+            entry.put("points", Arrays.copyOf(line.points, line.size));
+            lines.add(entry);
+        }
+        List<MtrNetworkGraph.Station> tileStations = new ArrayList<>(level.stations.getOrDefault(key, new ArrayList<>()));
+        long size = tileBlocks(zoom);
+        for (MtrNetworkGraph.Station station : level.globalStations) {
+            if (station.getMaxX() >= x * size && station.getMinX() < (x + 1) * size
+                    && station.getMaxZ() >= z * size && station.getMinZ() < (z + 1) * size) {
+                tileStations.add(station);
+            }
+        }
+        List<Map<String, Object>> stations = new ArrayList<>();
+        for (MtrNetworkGraph.Station station : tileStations) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("id", station.getId());
+            entry.put("name", station.getName());
+            entry.put("color", station.getColor());
+            entry.put("x_min", station.getMinX());
+            entry.put("z_min", station.getMinZ());
+            entry.put("x_max", station.getMaxX());
+            entry.put("z_max", station.getMaxZ());
+            stations.add(entry);
+        }
+        Map<String, Object> tile = new LinkedHashMap<>();
+        tile.put("zoom", zoom);
+        tile.put("x", x);
+        tile.put("z", z);
+        tile.put("tile_blocks", tileBlocks(zoom));
+        tile.put("lines", lines);
+        tile.put("stations", stations);
+        try {
+            return JSON.writeValueAsString(tile);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize MTR tile", e);
+        }
+    }
+
+    private static ZoomLevel buildLevel(List<Polyline> polylines, Collection<MtrNetworkGraph.Station> stations, int zoom) {
+        int size = tileBlocks(zoom);
+        double tolerance = (double) size / TILE_PIXELS;
+        ZoomLevel level = new ZoomLevel();
+        for (Polyline polyline : polylines) {
+            int[] points = simplify(polyline.points, tolerance);
+            // consecutive segments landing in the same tile extend that tile's current line
+            Map<Long, Line> open = new HashMap<>();
+            for (int i = 0; i + 3 < points.length; i += 2) {
+                int x1 = points[i];
+                int z1 = points[i + 1];
+                int x2 = points[i + 2];
+                int z2 = points[i + 3];
+                for (long key : segmentTiles(x1, z1, x2, z2, size)) {
+                    Line line = open.get(key);
+                    if (line == null || line.lastSegment != i - 2) {
+                        line = new Line(polyline.railType);
+                        line.add(x1, z1);
+                        open.put(key, line);
+                        level.lines.computeIfAbsent(key, k -> new ArrayList<>()).add(line);
+                    }
+                    line.add(x2, z2);
+                    line.lastSegment = i;
+                }
+            }
+        }
+        for (MtrNetworkGraph.Station station : stations) {
+            if (tileCount(station.getMinX(), station.getMinZ(), station.getMaxX(), station.getMaxZ(), size) > MAX_STATION_TILES) {
+                level.globalStations.add(station);
+                continue;
+            }
+            for (int tx = Math.floorDiv(station.getMinX(), size); tx <= Math.floorDiv(station.getMaxX(), size); tx++) {
+                for (int tz = Math.floorDiv(station.getMinZ(), size); tz <= Math.floorDiv(station.getMaxZ(), size); tz++) {
+                    level.stations.computeIfAbsent(tileKey(tx, tz), k -> new ArrayList<>()).add(station);
+                }
+            }
+        }
+        level.digest();
+        return level;
+    }
+
+    // Tiles covered by a block range; 0 when the bounds are inverted.
+    private static long tileCount(int minX, int minZ, int maxX, int maxZ, int size) {
+        long tilesX = (long) Math.floorDiv(maxX, size) - Math.floorDiv(minX, size) + 1;
+        long tilesZ = (long) Math.floorDiv(maxZ, size) - Math.floorDiv(minZ, size) + 1;
+        return tilesX <= 0 || tilesZ <= 0 ? 0L : tilesX * tilesZ;
+    }
+
+    // Tiles a segment passes through, walked tile by tile from its first end (a grid traversal); where it crosses
+    // a tile corner exactly, one of the tiles beside the corner is included too.
+    static long[] segmentTiles(int x1, int z1, int x2, int z2, int size) {
+        int tx = Math.floorDiv(x1, size);
+        int tz = Math.floorDiv(z1, size);
+        int endX = Math.floorDiv(x2, size);
+        int endZ = Math.floorDiv(z2, size);
+        long[] keys = new long[Math.abs(endX - tx) + Math.abs(endZ - tz) + 1];
+        keys[0] = tileKey(tx, tz);
+        int stepX = Integer.signum(endX - tx);
+        int stepZ = Integer.signum(endZ - tz);
+        double dx = Math.abs((double) x2 - x1);
+        double dz = Math.abs((double) z2 - z1);
+        // segment parameter t in [0, 1] at which the walk reaches the next tile boundary on each axis
+        double nextX = dx == 0 ? Double.POSITIVE_INFINITY
+                : Math.abs(((double) tx + (stepX > 0 ? 1 : 0)) * size - x1) / dx;
+        double nextZ = dz == 0 ? Double.POSITIVE_INFINITY
+                : Math.abs(((double) tz + (stepZ > 0 ? 1 : 0)) * size - z1) / dz;
+        double deltaX = dx == 0 ? Double.POSITIVE_INFINITY : size / dx;
+        double deltaZ = dz == 0 ? Double.POSITIVE_INFINITY : size / dz;
+        for (int i = 1; i < keys.length; i++) {
+            // each step moves one tile towards the end tile, so the walk ends after exactly keys.length - 1 steps
+            if (tz == endZ || (tx != endX && nextX <= nextZ)) {
+                tx += stepX;
+                nextX += deltaX;
+            } else {
+                tz += stepZ;
+                nextZ += deltaZ;
+            }
+            keys[i] = tileKey(tx, tz);
+        }
+        return keys;
+    }
+
+    // Joins rail edges into maximal runs through nodes of degree two with a single rail type.
+    static List<Polyline> buildPolylines(Collection<MtrNetworkGraph.RailNode> rails) {
+        Map<Long, Map<Long, String>> adjacency = new HashMap<>();
+        for (MtrNetworkGraph.RailNode rail : rails) {
+            for (int i = 0; i < rail.targets.length; i++) {
+                String type = rail.railTypes[i];
+                addEdge(adjacency, rail.pos, rail.targets[i], type);
+                addEdge(adjacency, rail.targets[i], rail.pos, type);
+            }
+        }
+        Set<Edge> visited = new HashSet<>();
+        List<Polyline> polylines = new ArrayList<>();
+        for (Map.Entry<Long, Map<Long, String>> node : adjacency.entrySet()) {
+            if (node.getValue().size() != 2) {
+                for (Long next : node.getValue().keySet()) {
+                    walk(adjacency, visited, node.getKey(), next, polylines);
+                }
+            }
+        }
+        // what is left are loops and runs split only by a rail type change
+        for (Map.Entry<Long, Map<Long, String>> node : adjacency.entrySet()) {
+            for (Long next : node.getValue().keySet()) {
+                walk(adjacency, visited, node.getKey(), next, polylines);
+            }
+        }
+        return polylines;
+    }
+
+    private static void addEdge(Map<Long, Map<Long, String>> adjacency, long from, long to, String type) {
+        Map<Long, String> edges = adjacency.computeIfAbsent(from, key -> new HashMap<>());
+        String existing = edges.get(to);
+        // the blocked direction of a one-way rail reports NONE; keep the real type
+        if (existing == null || "NONE".equals(existing)) {
+            edges.put(to, type);
+        }
+    }
+
+    private static void walk(Map<Long, Map<Long, String>> adjacency, Set<Edge> visited, long start, long next,
+                             List<Polyline> out) {
+        if (!visited.add(new Edge(start, next))) {
+            return;
+        }
+        String type = adjacency.get(start).get(next);
+        Line points = new Line(type);
+        List<Long> nodes = new ArrayList<>();
+        points.add(MtrNetworkGraph.blockX(start), MtrNetworkGraph.blockZ(start));
+        points.add(MtrNetworkGraph.blockX(next), MtrNetworkGraph.blockZ(next));
+        nodes.add(start);
+        nodes.add(next);
+        long previous = start;
+        long current = next;
+        while (true) {
+            Map<Long, String> edges = adjacency.get(current);
+            if (edges == null || edges.size() != 2) {
+                break;
+            }
+            Long following = null;
+            for (Long candidate : edges.keySet()) {
+                if (candidate != previous) {
+                    following = candidate;
+                }
+            }
+            if (following == null || !type.equals(edges.get(following)) || !visited.add(new Edge(current, following))) {
+                break;
+            }
+            points.add(MtrNetworkGraph.blockX(following), MtrNetworkGraph.blockZ(following));
+            nodes.add(following);
+            previous = current;
+            current = following;
+        }
+        long[] positions = new long[nodes.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = nodes.get(i);
+        }
+        out.add(Polyline.canonical(type, Arrays.copyOf(points.points, points.size), positions));
+    }
+
+    // Douglas–Peucker over a flat [x0, z0, x1, z1, ...] array; iterative so long runs cannot overflow the stack.
+    static int[] simplify(int[] points, double tolerance) {
+        int count = points.length / 2;
+        if (count <= 2) {
+            return points;
+        }
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[]{0, count - 1});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int first = range[0];
+            int last = range[1];
+            double maxDistance = -1;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = segmentDistance(points, i, first, last);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    index = i;
+                }
+            }
+            if (index >= 0 && maxDistance > tolerance) {
+                keep[index] = true;
+                ranges.push(new int[]{first, index});
+                ranges.push(new int[]{index, last});
+            }
+        }
+        Line kept = new Line(null);
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                kept.add(points[i * 2], points[i * 2 + 1]);
+            }
+        }
+        return Arrays.copyOf(kept.points, kept.size);
+    }
+
+    private static double segmentDistance(int[] points, int i, int a, int b) {
+        double px = points[i * 2];
+        double pz = points[i * 2 + 1];
+        double ax = points[a * 2];
+        double az = points[a * 2 + 1];
+        double bx = points[b * 2];
+        double bz = points[b * 2 + 1];
+        double dx = bx - ax;
+        double dz = bz - az;
+        double lengthSquared = dx * dx + dz * dz;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (pz - az) * dz) / lengthSquared));
+        double cx = ax + t * dx - px;
+        double cz = az + t * dz - pz;
+        return Math.sqrt(cx * cx + cz * cz);
+    }
+
+    private void remember(String key, String json) {
+        memory.put(key, json);
+        while (memory.size() > MAX_MEMORY_TILES) {
+            memory.remove(memory.keySet().iterator().next());
+        }
+    }
+
+    private File dimensionFolder(String dimensionContext) {
+        return new File(cacheDir, dimensionContext.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+
+    private File tileFile(String dimensionContext, int zoom, int x, int z) {
+        return new File(new File(dimensionFolder(dimensionContext), String.valueOf(zoom)), x + "_" + z + ".json");
+    }
+
+    private void readState() {
+        File file = new File(cacheDir, STATE_FILE);
+        if (!file.isFile()) {
+            return;
+        }
+        try {
+            JsonNode state = JSON.readTree(file);
+            legacyCursor = state.path("last_diff_id").asLong(-1L);
+            Iterator<Map.Entry<String, JsonNode>> it = state.path("dimensions").fields();
+            while (it.hasNext()) {
+                Map.Entry<String, JsonNode> entry = it.next();
+                cursors.putIfAbsent(entry.getKey(), entry.getValue().asLong());
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to read MTR tile cache state: " + e.getMessage());
+        }
+    }
+
+    private void writeState() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        if (legacyCursor >= 0) {
+            state.put("last_diff_id", legacyCursor);
+        }
+        state.put("dimensions", cursors);
+        try {
+            Files.createDirectories(cacheDir.toPath());
+            JSON.writeValue(new File(cacheDir, STATE_FILE), state);
+        } catch (IOException e) {
+            logger.warning("Failed to persist MTR tile cache state: " + e.getMessage());
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static long tileKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    // Polylines and every zoom level of one graph; immutable once built.
+    private static final class DimensionTiles {
+        private final MtrNetworkGraph graph;
+        private final List<Polyline> polylines;
+        private final ZoomLevel[] levels = new ZoomLevel[MAX_ZOOM + 1];
+
+        private DimensionTiles(MtrNetworkGraph graph, List<Polyline> polylines) {
+            this.graph = graph;
+            this.polylines = polylines;
+        }
+
+        private static DimensionTiles build(MtrNetworkGraph graph) {
+            DimensionTiles tiles = new DimensionTiles(graph, buildPolylines(graph.rails()));
+            for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+                tiles.levels[zoom] = buildLevel(tiles.polylines, graph.stations(), zoom);
+            }
+            return tiles;
+        }
+
+        private Map<Long, List<Polyline>> polylinesByNode() {
+            Map<Long, List<Polyline>> byNode = new HashMap<>();
+            for (Polyline polyline : polylines) {
+                for (long node : polyline.nodes) {
+                    byNode.computeIfAbsent(node, key -> new ArrayList<>(2)).add(polyline);
+                }
+            }
+            return byNode;
+        }
+    }
+
+    private static final class ZoomLevel {
+        private final Map<Long, List<Line>> lines = new HashMap<>();
+        private final Map<Long, List<MtrNetworkGraph.Station>> stations = new HashMap<>();
+        // stations covering too many tiles to bucket; rendered into every tile they intersect
+        private final List<MtrNetworkGraph.Station> globalStations = new ArrayList<>();
+        // tile -> order-independent hash of its lines and stations
+        private final Map<Long, Long> digests = new HashMap<>();
+        private long globalDigest;
+
+        private void digest() {
+            for (Map.Entry<Long, List<Line>> tile : lines.entrySet()) {
+                long digest = 0L;
+                for (Line line : tile.getValue()) {
+                    digest += line.digest();
+                }
+                digests.merge(tile.getKey(), digest, Long::sum);
+            }
+            for (Map.Entry<Long, List<MtrNetworkGraph.Station>> tile : stations.entrySet()) {
+                long digest = 0L;
+                for (MtrNetworkGraph.Station station : tile.getValue()) {
+                    digest += digest(station);
+                }
+                digests.merge(tile.getKey(), digest, Long::sum);
+            }
+            for (MtrNetworkGraph.Station station : globalStations) {
+                globalDigest += digest(station);
+            }
+        }
+
+        private static long digest(MtrNetworkGraph.Station station) {
+            return mix(Objects.hash(station.getId(), station.getName(), station.getColor(),
+                    station.getMinX(), station.getMinZ(), station.getMaxX(), station.getMaxZ()));
+        }
+    }
+
+    private static final class TileChanges {
+        // zoom -> changed tiles
+        private final Map<Integer, Set<Long>> tiles = new HashMap<>();
+        // zoom levels dropped as a whole
+        private final Set<Integer> levels = new HashSet<>();
+    }
+
+    static final class Polyline {
+        final String railType;
+        final int[] points;
+        final long[] nodes;
+        // {minX, minZ, maxX, maxZ}
+        final int[] bounds;
+
+        Polyline(String railType, int[] points, long[] nodes) {
+            this.railType = railType;
+            this.points = points;
+            this.nodes = nodes;
+            this.bounds = new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+            for (int i = 0; i + 1 < points.length; i += 2) {
+                bounds[0] = Math.min(bounds[0], points[i]);
+                bounds[1] = Math.min(bounds[1], points[i + 1]);
+                bounds[2] = Math.max(bounds[2], points[i]);
+                bounds[3] = Math.max(bounds[3], points[i + 1]);
+            }
+        }
+
+        // Walks may start from either end; fixing the direction keeps unchanged runs identical across builds.
+        static Polyline canonical(String railType, int[] points, long[] nodes) {
+            int last = points.length - 2;
+            boolean reversed = points[last] < points[0] || (points[last] == points[0] && points[last + 1] < points[1]);
+            if (!reversed) {
+                return new Polyline(railType, points, nodes);
+            }
+            int[] flipped = new int[points.length];
+            for (int i = 0; i < points.length; i += 2) {
+                flipped[i] = points[last - i];
+                flipped[i + 1] = points[last - i + 1];
+            }
+            long[] flippedNodes = new long[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                flippedNodes[i] = nodes[nodes.length - 1 - i];
+            }
+            return new Polyline(railType, flipped, flippedNodes);
+        }
+    }
+
+    // Growable flat point list.
+    private static final class Line {
+        private final String railType;
+        private int[] points = new int[8];
+        private int size;
+        private int lastSegment = -1;
+
+        private Line(String railType) {
+            this.railType = railType;
+        }
+
+        private void add(int x, int z) {
+            if (size + 2 > points.length) {
+                points = Arrays.copyOf(points, points.length * 2);
+            }
+            points[size++] = x;
+            points[size++] = z;
+        }
+
+        private long digest() {
+            long hash = Objects.hashCode(railType);
+            for (int i = 0; i < size; i++) {
+                hash = hash * 1_000_003L + points[i];
+            }
+            return mix(hash);
+        }
+    }
+
+    // spreads a hash over 64 bits so digests summed per tile rarely collide
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private static final class Edge {
+        private final long a;
+        private final long b;
+
+        private Edge(long from, long to) {
+            this.a = Math.min(from, to);
+            this.b = Math.max(from, to);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Edge)) {
+                return false;
+            }
+            Edge other = (Edge) o;
+            return a == other.a && b == other.b;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(a) * 31 + Long.hashCode(b);
+        }
+    }
+}
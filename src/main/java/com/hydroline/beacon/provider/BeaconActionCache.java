@@ -0,0 +1,259 @@
+package com.hydroline.beacon.provider;
+
+import com.hydroline.beacon.provider.channel.BeaconActionCall;
+import com.hydroline.beacon.provider.channel.BeaconActionResponse;
+import com.hydroline.beacon.provider.channel.BeaconProviderClient;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Response cache for provider actions forwarded from Socket.IO, with a TTL per action (actions without one
+ * are always forwarded). Within the stale window after the TTL the cached response is served while one
+ * background request refreshes it; the window is the configured one capped at the action's TTL, so a
+ * response is never served more than twice its TTL old while the provider answers. When the provider is
+ * offline or the request fails, the last response is served whatever its age. Only OK responses are cached,
+ * at most {@code maxEntries} of them (LRU).
+ */
+public final class BeaconActionCache {
+
+    public enum Source {
+        PROVIDER,
+        HIT,
+        STALE
+    }
+
+    enum Freshness {
+        FRESH,
+        // inside the stale window: served while one background request refreshes it
+        STALE,
+        // past the stale window: served only when the provider is offline or fails
+        EXPIRED
+    }
+
+    private final Supplier<BeaconProviderClient> client;
+    private final Map<String, Long> ttlMillis;
+    private final long staleMillis;
+    private final int maxEntries;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, ActionStats> stats = new ConcurrentHashMap<>();
+
+    public BeaconActionCache(Supplier<BeaconProviderClient> client,
+                             Map<String, Long> ttlSeconds,
+                             long staleSeconds,
+                             int maxEntries) {
+        this.client = client;
+        Map<String, Long> ttl = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : ttlSeconds.entrySet()) {
+            if (entry.getValue() != null && entry.getValue() > 0) {
+                ttl.put(entry.getKey(), TimeUnit.SECONDS.toMillis(entry.getValue()));
+            }
+        }
+        this.ttlMillis = Collections.unmodifiableMap(ttl);
+        this.staleMillis = TimeUnit.SECONDS.toMillis(Math.max(0L, staleSeconds));
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * Response for {@code call}: from the cache when fresh (or stale, see class comment), otherwise from the
+     * provider; null when the provider is offline and nothing is cached.
+     */
+    public <T> CompletableFuture<Result<T>> send(BeaconActionCall<T> call) {
+        Long ttl = ttlMillis.get(call.getAction());
+        String key = ttl != null ? call.getRequestKey() : null;
+        long stale = ttl != null ? staleMillis(ttl) : 0L;
+        BeaconProviderClient provider = client.get();
+        boolean online = provider != null && provider.isStarted();
+        if (key == null) {
+            if (!online) {
+                return null;
+            }
+            return provider.sendAction(call).thenApply(response -> new Result<>(response, Source.PROVIDER, 0L));
+        }
+        ActionStats actionStats = stats.computeIfAbsent(call.getAction(), action -> new ActionStats());
+        long now = System.currentTimeMillis();
+        Entry entry;
+        boolean refresh = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && online && freshness(now - entry.fetchedAt, ttl, stale) == Freshness.STALE
+                    && !entry.refreshing) {
+                entry.refreshing = true;
+                refresh = true;
+            }
+        }
+        if (entry != null) {
+            long age = now - entry.fetchedAt;
+            Freshness freshness = freshness(age, ttl, stale);
+            if (freshness == Freshness.FRESH) {
+                actionStats.hits.incrementAndGet();
+                return CompletableFuture.completedFuture(entry.result(Source.HIT, age));
+            }
+            if (!online || freshness == Freshness.STALE) {
+                actionStats.stale.incrementAndGet();
+                if (refresh) {
+                    fetch(provider, call, key).whenComplete((response, error) -> {
+                        if (error != null) {
+                            actionStats.refreshFailures.incrementAndGet();
+                        }
+                        synchronized (this) {
+                            entry.refreshing = false;
+                        }
+                    });
+                }
+                return CompletableFuture.completedFuture(entry.result(Source.STALE, age));
+            }
+        }
+        actionStats.misses.incrementAndGet();
+        if (!online) {
+            return null;
+        }
+        Entry fallback = entry;
+        return fetch(provider, call, key).handle((response, error) -> {
+            if (error == null) {
+                return new Result<>(response, Source.PROVIDER, 0L);
+            }
+            if (fallback == null) {
+                throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+            }
+            actionStats.stale.incrementAndGet();
+            return fallback.result(Source.STALE, System.currentTimeMillis() - fallback.fetchedAt);
+        });
+    }
+
+    /**
+     * Counters of the cached actions that have been requested at least once.
+     */
+    public Map<String, ActionStats> getActionStats() {
+        Map<String, ActionStats> result = new LinkedHashMap<>();
+        for (String action : ttlMillis.keySet()) {
+            ActionStats actionStats = stats.get(action);
+            if (actionStats != null) {
+                result.put(action, actionStats);
+            }
+        }
+        return result;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("stale_seconds", TimeUnit.MILLISECONDS.toSeconds(staleMillis));
+        metrics.put("max_entries", maxEntries);
+        synchronized (this) {
+            metrics.put("entries", entries.size());
+        }
+        Map<String, Object> actions = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> ttl : ttlMillis.entrySet()) {
+            ActionStats actionStats = stats.get(ttl.getKey());
+            Map<String, Object> action = new LinkedHashMap<>();
+            action.put("ttl_seconds", TimeUnit.MILLISECONDS.toSeconds(ttl.getValue()));
+            action.put("stale_seconds", TimeUnit.MILLISECONDS.toSeconds(staleMillis(ttl.getValue())));
+            action.put("hits", actionStats != null ? actionStats.hits.get() : 0L);
+            action.put("stale", actionStats != null ? actionStats.stale.get() : 0L);
+            action.put("misses", actionStats != null ? actionStats.misses.get() : 0L);
+            action.put("refresh_failures", actionStats != null ? actionStats.refreshFailures.get() : 0L);
+            actions.put(ttl.getKey(), action);
+        }
+        metrics.put("actions", actions);
+        return metrics;
+    }
+
+    // stale window of an action: a realtime action with a short TTL must not serve a much older response
+    long staleMillis(long ttl) {
+        return Math.min(staleMillis, ttl);
+    }
+
+    static Freshness freshness(long ageMillis, long ttlMillis, long staleMillis) {
+        if (ageMillis < ttlMillis) {
+            return Freshness.FRESH;
+        }
+        return ageMillis < ttlMillis + staleMillis ? Freshness.STALE : Freshness.EXPIRED;
+    }
+
+    private <T> CompletableFuture<BeaconActionResponse<T>> fetch(BeaconProviderClient provider,
+                                                                  BeaconActionCall<T> call,
+                                                                  String key) {
+        return provider.sendAction(call).thenApply(response -> {
+            if (response.isOk()) {
+                store(key, response);
+            }
+            return response;
+        });
+    }
+
+    private synchronized void store(String key, BeaconActionResponse<?> response) {
+        entries.put(key, new Entry(response, System.currentTimeMillis()));
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static final class Entry {
+        private final BeaconActionResponse<?> response;
+        private final long fetchedAt;
+        private boolean refreshing;
+
+        private Entry(BeaconActionResponse<?> response, long fetchedAt) {
+            this.response = response;
+            this.fetchedAt = fetchedAt;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> Result<T> result(Source source, long ageMillis) {
+            return new Result<>((BeaconActionResponse<T>) response, source, ageMillis);
+        }
+    }
+
+    public static final class ActionStats {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong stale = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong refreshFailures = new AtomicLong();
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getStale() {
+            return stale.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+    }
+
+    public static final class Result<T> {
+        private final BeaconActionResponse<T> response;
+        private final Source source;
+        private final long ageMillis;
+
+        private Result(BeaconActionResponse<T> response, Source source, long ageMillis) {
+            this.response = response;
+            this.source = source;
+            this.ageMillis = ageMillis;
+        }
+
+        public BeaconActionResponse<T> getResponse() {
+            return response;
+        }
+
+        public Source getSource() {
+            return source;
+        }
+
+        public long getAgeMillis() {
+            return ageMillis;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.hydroline.beacon.provider;
+
+import com.hydroline.beacon.BeaconPlugin;
+import com.hydroline.beacon.provider.actions.BeaconProviderActions;
+import com.hydroline.beacon.provider.actions.dto.MtrDtos;
+import com.hydroline.beacon.provider.actions.dto.MtrNodePageResponse;
+import com.hydroline.beacon.provider.channel.BeaconActionResponse;
+import com.hydroline.beacon.provider.channel.BeaconProviderClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local copy of the provider's rail node list, per dimension. A dimension is mirrored once a client pages
+ * through list_mtr_nodes_paginated for it; a background thread then walks mtr:list_nodes_paginated every
+ * refresh interval and swaps the copy only when the node set changed. Pages are served from the copy with
+ * keyset cursors (the last node's position), so walks stay consistent across a swap.
+ */
+public final class MtrNodeMirror {
+    public static final int DEFAULT_PAGE_LIMIT = 512;
+    private static final int SYNC_PAGE_LIMIT = 2048;
+    private static final long SYNC_PAGE_TIMEOUT_SECONDS = 30L;
+    private static final String CURSOR_PREFIX = "mirror:";
+    // dimensions nobody paged through for this long stop being refreshed
+    private static final long IDLE_DROP_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final Comparator<MtrDtos.NodeInfo> ORDER = Comparator.comparingInt(MtrDtos.NodeInfo::getX)
+            .thenComparingInt(MtrDtos.NodeInfo::getZ)
+            .thenComparingInt(MtrDtos.NodeInfo::getY);
+
+    private final BeaconPlugin plugin;
+    private final long refreshMillis;
+    private final Map<String, Mirror> mirrors = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "beacon-node-mirror");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong servedPages = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong syncFailures = new AtomicLong();
+
+    public MtrNodeMirror(BeaconPlugin plugin, long refreshSeconds) {
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+        this.refreshMillis = TimeUnit.SECONDS.toMillis(Math.max(0L, refreshSeconds));
+    }
+
+    public void start() {
+        if (refreshMillis <= 0) {
+            return;
+        }
+        executor.scheduleWithFixedDelay(this::refreshAll, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A page from the local copy, or null when the caller has to ask the provider: mirroring is disabled,
+     * the dimension has not been synced yet (its first sync is queued here), the copy is older than two
+     * refresh intervals, or {@code cursor} came from the provider. Walks that already hold a mirror cursor
+     * keep being served even when the copy has gone stale.
+     */
+    public MtrNodePageResponse page(String dimension, String cursor, Integer limit) {
+        if (refreshMillis <= 0) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Mirror mirror = mirrors.get(dimension);
+        if (mirror == null) {
+            Mirror created = new Mirror();
+            mirror = mirrors.putIfAbsent(dimension, created);
+            if (mirror == null) {
+                created.lastRequestedAt = now;
+                executor.execute(() -> syncQuietly(dimension, created));
+                return null;
+            }
+        }
+        mirror.lastRequestedAt = now;
+        MtrDtos.NodeInfo[] nodes = mirror.nodes;
+        boolean continuing = cursor != null && !cursor.isEmpty();
+        if (continuing && !cursor.startsWith(CURSOR_PREFIX)) {
+            return null;
+        }
+        if (nodes == null || (!continuing && now - mirror.syncedAt > refreshMillis * 2)) {
+            return null;
+        }
+        int from = 0;
+        if (continuing) {
+            MtrDtos.NodeInfo after = parseCursor(cursor);
+            if (after == null) {
+                return null;
+            }
+            from = firstAfter(nodes, after);
+        }
+        int size = limit != null && limit > 0 ? limit : DEFAULT_PAGE_LIMIT;
+        int to = (int) Math.min(nodes.length, (long) from + size);
+        MtrNodePageResponse page = new MtrNodePageResponse();
+        page.setDimension(dimension);
+        page.setNodes(new ArrayList<>(Arrays.asList(nodes).subList(from, to)));
+        page.setHasMore(to < nodes.length);
+        page.setNextCursor(to < nodes.length ? toCursor(nodes[to - 1]) : null);
+        servedPages.incrementAndGet();
+        return page;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("refresh_seconds", TimeUnit.MILLISECONDS.toSeconds(refreshMillis));
+        metrics.put("served_pages", servedPages.get());
+        metrics.put("syncs", syncs.get());
+        metrics.put("sync_failures", syncFailures.get());
+        Map<String, Object> dimensions = new LinkedHashMap<>();
+        for (Map.Entry<String, Mirror> entry : mirrors.entrySet()) {
+            MtrDtos.NodeInfo[] nodes = entry.getValue().nodes;
+            Map<String, Object> dimension = new LinkedHashMap<>();
+            dimension.put("nodes", nodes != null ? nodes.length : 0);
+            dimension.put("synced_at", entry.getValue().syncedAt);
+            dimensions.put(entry.getKey(), dimension);
+        }
+        metrics.put("dimensions", dimensions);
+        return metrics;
+    }
+
+    private void refreshAll() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Mirror>> it = mirrors.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Mirror> entry = it.next();
+            if (now - entry.getValue().lastRequestedAt > IDLE_DROP_MILLIS) {
+                it.remove();
+                continue;
+            }
+            syncQuietly(entry.getKey(), entry.getValue());
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private void syncQuietly(String dimension, Mirror mirror) {
+        try {
+            sync(dimension, mirror);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | RuntimeException e) {
+            // anything escaping to the scheduled refresh would cancel every later run
+            syncFailures.incrementAndGet();
+            plugin.getLogger().warning("MTR node mirror sync failed for " + dimension + ": " + e.getMessage());
+        }
+    }
+
+    private void sync(String dimension, Mirror mirror)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        BeaconProviderClient client = plugin.getBeaconProviderClient();
+        if (client == null || !client.isStarted()) {
+            return;
+        }
+        List<MtrDtos.NodeInfo> fetched = new ArrayList<>();
+        String cursor = null;
+        do {
+            BeaconActionResponse<MtrNodePageResponse> response = client
+                    .sendAction(BeaconProviderActions.listNodesPaginated(dimension, cursor, SYNC_PAGE_LIMIT))
+                    .get(SYNC_PAGE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            MtrNodePageResponse page = response.getPayload();
+            if (!response.isOk() || page == null) {
+                throw new IllegalStateException(response.getResult() + " " + response.getMessage());
+            }
+            fetched.addAll(page.getNodes());
+            cursor = page.isHasMore() ? page.getNextCursor() : null;
+        } while (cursor != null && !cursor.isEmpty());
+
+        MtrDtos.NodeInfo[] nodes = fetched.toArray(new MtrDtos.NodeInfo[0]);
+        Arrays.sort(nodes, ORDER);
+        syncs.incrementAndGet();
+        if (!sameNodes(mirror.nodes, nodes)) {
+            mirror.nodes = nodes;
+        }
+        mirror.syncedAt = System.currentTimeMillis();
+    }
+
+    private static boolean sameNodes(MtrDtos.NodeInfo[] current, MtrDtos.NodeInfo[] fetched) {
+        if (current == null || current.length != fetched.length) {
+            return false;
+        }
+        for (int i = 0; i < current.length; i++) {
+            MtrDtos.NodeInfo a = current[i];
+            MtrDtos.NodeInfo b = fetched[i];
+            if (a.getX() != b.getX() || a.getY() != b.getY() || a.getZ() != b.getZ()
+                    || a.isPlatformSegment() != b.isPlatformSegment()
+                    || !Objects.equals(a.getRailType(), b.getRailType())
+                    || !Objects.equals(a.getStationId(), b.getStationId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int firstAfter(MtrDtos.NodeInfo[] nodes, MtrDtos.NodeInfo after) {
+        int low = 0;
+        int high = nodes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ORDER.compare(nodes[mid], after) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String toCursor(MtrDtos.NodeInfo node) {
+        return CURSOR_PREFIX + node.getX() + "," + node.getY() + "," + node.getZ();
+    }
+
+    private static MtrDtos.NodeInfo parseCursor(String cursor) {
+        String[] parts = cursor.substring(CURSOR_PREFIX.length()).split(",");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            MtrDtos.NodeInfo node = new MtrDtos.NodeInfo();
+            node.setX(Integer.parseInt(parts[0]));
+            node.setY(Integer.parseInt(parts[1]));
+            node.setZ(Integer.parseInt(parts[2]));
+            return node;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static final class Mirror {
+        private volatile MtrDtos.NodeInfo[] nodes;
+        private volatile long syncedAt;
+        private volatile long lastRequestedAt;
+    }
+}
@@ -0,0 +1,330 @@
+package com.hydroline.beacon.provider;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.hydroline.beacon.storage.DirectBufferStore;
+import com.hydroline.beacon.storage.DirectJsonValue;
+import com.hydroline.beacon.util.MtrMessagePackDecoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Railway snapshots per dimension, versioned by last_deployed. A snapshot whose MessagePack bytes match the
+ * cached one is not decoded again; a changed one is decoded, filtered to stations/platforms/routes/depots,
+ * serialized once to JSON held in a {@link DirectBufferStore} buffer (on the heap only when the store is
+ * full), and diffed against its predecessor by per-record checksums. The last {@value #MAX_DELTAS} deltas
+ * are kept so clients can ask for the changes since a version they hold.
+ */
+public final class MtrRailwaySnapshotCache {
+    public static final String[] PAYLOAD_KEYS = new String[]{"stations", "platforms", "routes", "depots"};
+    private static final int MAX_DELTAS = 32;
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final DirectBufferStore buffers;
+    private final Map<String, DimensionSnapshots> dimensions = new HashMap<>();
+    private long decodes;
+    private long reuses;
+    private long heapFallbacks;
+
+    public MtrRailwaySnapshotCache(DirectBufferStore buffers) {
+        this.buffers = buffers;
+    }
+
+    /**
+     * Current snapshot of {@code dimension} built from the provider's MessagePack bytes.
+     *
+     * @throws MtrMessagePackDecoder.MtrMessagePackException when the bytes do not decode
+     */
+    public synchronized Snapshot update(String dimension, byte[] messagePack) {
+        CRC32 crc = new CRC32();
+        crc.update(messagePack, 0, messagePack.length);
+        long checksum = crc.getValue();
+        DimensionSnapshots snapshots = dimensions.computeIfAbsent(dimension, key -> new DimensionSnapshots());
+        Snapshot previous = snapshots.current;
+        if (previous != null && previous.checksum == checksum && previous.length == messagePack.length) {
+            reuses++;
+            return previous;
+        }
+        decodes++;
+        Object decoded = MtrMessagePackDecoder.decode(messagePack);
+        Map<?, ?> raw = decoded instanceof Map ? (Map<?, ?>) decoded : new HashMap<>();
+        Object lastDeployed = raw.get("last_deployed");
+        long version = lastDeployed instanceof Number ? ((Number) lastDeployed).longValue() : 0L;
+        if (previous != null && version <= previous.version) {
+            // content changed without a newer deployment stamp; versions must still move forward
+            version = previous.version + 1;
+        }
+        Map<String, Map<String, Record>> records = new LinkedHashMap<>();
+        byte[] json = serializePayload(raw, lastDeployed, records);
+        ByteBuffer offHeap = buffers.store(json);
+        if (offHeap == null) {
+            heapFallbacks++;
+        }
+        Snapshot snapshot = new Snapshot(dimension, version, messagePack.length, checksum,
+                offHeap, offHeap == null ? json : null, checksums(records));
+        if (previous != null) {
+            snapshots.deltas.addLast(new Delta(previous.version, version, diff(previous, records)));
+            while (snapshots.deltas.size() > MAX_DELTAS) {
+                snapshots.deltas.removeFirst();
+            }
+            buffers.release(previous.offHeap);
+        }
+        snapshots.current = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Per-category {@code upserted} records and {@code removed} ids that turn the snapshot at
+     * {@code sinceVersion} into the current one, or null when that version is no longer (or never was)
+     * in the delta history.
+     */
+    public synchronized Map<String, Object> changesSince(String dimension, long sinceVersion) {
+        DimensionSnapshots snapshots = dimensions.get(dimension);
+        if (snapshots == null || snapshots.current == null) {
+            return null;
+        }
+        List<Delta> chain = new ArrayList<>();
+        long target = snapshots.current.version;
+        Iterator<Delta> it = snapshots.deltas.descendingIterator();
+        while (target != sinceVersion && it.hasNext()) {
+            Delta delta = it.next();
+            if (delta.toVersion != target) {
+                return null;
+            }
+            chain.add(0, delta);
+            target = delta.fromVersion;
+        }
+        if (target != sinceVersion) {
+            return null;
+        }
+        // fold the chain; a later change of the same id replaces the earlier one
+        Map<String, Map<String, String>> merged = new LinkedHashMap<>();
+        for (String key : PAYLOAD_KEYS) {
+            merged.put(key, new LinkedHashMap<>());
+        }
+        for (Delta delta : chain) {
+            for (Map.Entry<String, Map<String, String>> category : delta.changes.entrySet()) {
+                Map<String, String> records = merged.get(category.getKey());
+                for (Map.Entry<String, String> change : category.getValue().entrySet()) {
+                    records.remove(change.getKey());
+                    records.put(change.getKey(), change.getValue());
+                }
+            }
+        }
+        Map<String, Object> changes = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, String>> category : merged.entrySet()) {
+            List<Object> upserted = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
+            for (Map.Entry<String, String> change : category.getValue().entrySet()) {
+                if (change.getValue() != null) {
+                    upserted.add(new RawValue(change.getValue()));
+                } else {
+                    removed.add(change.getKey());
+                }
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("upserted", upserted);
+            entry.put("removed", removed);
+            changes.put(category.getKey(), entry);
+        }
+        return changes;
+    }
+
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("decodes", decodes);
+        metrics.put("reuses", reuses);
+        metrics.put("heap_fallbacks", heapFallbacks);
+        Map<String, Object> versions = new LinkedHashMap<>();
+        for (Map.Entry<String, DimensionSnapshots> entry : dimensions.entrySet()) {
+            Snapshot current = entry.getValue().current;
+            if (current != null) {
+                Map<String, Object> dimension = new LinkedHashMap<>();
+                dimension.put("version", current.version);
+                dimension.put("deltas", entry.getValue().deltas.size());
+                dimension.put("off_heap", current.offHeap != null);
+                versions.put(entry.getKey(), dimension);
+            }
+        }
+        metrics.put("dimensions", versions);
+        return metrics;
+    }
+
+    // Writes {"stations":[...],...,"last_deployed":n}, serializing every record exactly once.
+    private static byte[] serializePayload(Map<?, ?> raw, Object lastDeployed, Map<String, Map<String, Record>> records) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            out.write('{');
+            boolean first = true;
+            for (String key : PAYLOAD_KEYS) {
+                if (!raw.containsKey(key)) {
+                    continue;
+                }
+                Object value = raw.get(key);
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                out.write(JSON.writeValueAsBytes(key));
+                out.write(':');
+                Map<String, Record> byId = new LinkedHashMap<>();
+                records.put(key, byId);
+                if (!(value instanceof List)) {
+                    out.write(JSON.writeValueAsBytes(value));
+                    continue;
+                }
+                out.write('[');
+                boolean firstRecord = true;
+                for (Object record : (List<?>) value) {
+                    byte[] bytes = JSON.writeValueAsBytes(record);
+                    if (!firstRecord) {
+                        out.write(',');
+                    }
+                    firstRecord = false;
+                    out.write(bytes);
+                    Object id = record instanceof Map ? ((Map<?, ?>) record).get("id") : null;
+                    if (id != null) {
+                        byId.put(id.toString(), new Record(bytes));
+                    }
+                }
+                out.write(']');
+            }
+            if (lastDeployed != null) {
+                if (!first) {
+                    out.write(',');
+                }
+                out.write(JSON.writeValueAsBytes("last_deployed"));
+                out.write(':');
+                out.write(JSON.writeValueAsBytes(lastDeployed));
+            }
+            out.write('}');
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize railway snapshot", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static Map<String, Map<String, Long>> checksums(Map<String, Map<String, Record>> records) {
+        Map<String, Map<String, Long>> checksums = new HashMap<>();
+        for (Map.Entry<String, Map<String, Record>> category : records.entrySet()) {
+            Map<String, Long> byId = new HashMap<>();
+            for (Map.Entry<String, Record> record : category.getValue().entrySet()) {
+                byId.put(record.getKey(), record.getValue().checksum);
+            }
+            checksums.put(category.getKey(), byId);
+        }
+        return checksums;
+    }
+
+    // id -> changed record JSON, or null for a removed id
+    private static Map<String, Map<String, String>> diff(Snapshot before, Map<String, Map<String, Record>> after) {
+        Map<String, Map<String, String>> changes = new LinkedHashMap<>();
+        for (String key : PAYLOAD_KEYS) {
+            Map<String, Long> oldChecksums = before.checksums.getOrDefault(key, new HashMap<>());
+            Map<String, Record> newRecords = after.getOrDefault(key, new LinkedHashMap<>());
+            Map<String, String> changed = new LinkedHashMap<>();
+            for (Map.Entry<String, Record> record : newRecords.entrySet()) {
+                Long old = oldChecksums.get(record.getKey());
+                if (old == null || old != record.getValue().checksum) {
+                    changed.put(record.getKey(), new String(record.getValue().json, StandardCharsets.UTF_8));
+                }
+            }
+            for (String id : oldChecksums.keySet()) {
+                if (!newRecords.containsKey(id)) {
+                    changed.put(id, null);
+                }
+            }
+            if (!changed.isEmpty()) {
+                changes.put(key, changed);
+            }
+        }
+        return changes;
+    }
+
+    private static final class DimensionSnapshots {
+        private Snapshot current;
+        private final Deque<Delta> deltas = new ArrayDeque<>();
+    }
+
+    private static final class Record {
+        private final byte[] json;
+        private final long checksum;
+
+        private Record(byte[] json) {
+            this.json = json;
+            CRC32 crc = new CRC32();
+            crc.update(json, 0, json.length);
+            // length in the high bits makes a collision between differing records far less likely
+            this.checksum = ((long) json.length << 32) | crc.getValue();
+        }
+    }
+
+    private static final class Delta {
+        private final long fromVersion;
+        private final long toVersion;
+        private final Map<String, Map<String, String>> changes;
+
+        private Delta(long fromVersion, long toVersion, Map<String, Map<String, String>> changes) {
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+            this.changes = changes;
+        }
+    }
+
+    public static final class Snapshot {
+        private final String dimension;
+        private final long version;
+        private final int length;
+        private final long checksum;
+        private final ByteBuffer offHeap;
+        private final byte[] onHeap;
+        private final Map<String, Map<String, Long>> checksums;
+
+        private Snapshot(String dimension,
+                         long version,
+                         int length,
+                         long checksum,
+                         ByteBuffer offHeap,
+                         byte[] onHeap,
+                         Map<String, Map<String, Long>> checksums) {
+            this.dimension = dimension;
+            this.version = version;
+            this.length = length;
+            this.checksum = checksum;
+            this.offHeap = offHeap;
+            this.onHeap = onHeap;
+            this.checksums = checksums;
+        }
+
+        public String getDimension() {
+            return dimension;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * The filtered payload as a raw JSON value, streamed from its buffer when the response is written.
+         */
+        public DirectJsonValue getPayloadJson() {
+            return offHeap != null ? new DirectJsonValue(offHeap) : new DirectJsonValue(onHeap);
+        }
+    }
+}
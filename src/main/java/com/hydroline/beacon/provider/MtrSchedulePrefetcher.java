@@ -0,0 +1,345 @@
+package com.hydroline.beacon.provider;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hydroline.beacon.BeaconPlugin;
+import com.hydroline.beacon.provider.actions.BeaconProviderActions;
+import com.hydroline.beacon.provider.actions.dto.MtrAllStationSchedulesResponse;
+import com.hydroline.beacon.provider.channel.BeaconActionResponse;
+import com.hydroline.beacon.provider.channel.BeaconProviderClient;
+import com.hydroline.beacon.socket.SocketServerManager;
+import com.hydroline.beacon.storage.DirectBufferStore;
+import com.hydroline.beacon.storage.DirectJsonValue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Fetches mtr:get_all_station_schedules for each configured dimension on a fixed cadence and keeps the
+ * latest schedules, so get_mtr_all_station_schedules is answered locally and provider load does not grow
+ * with the number of display boards. Each station is held as its serialized JSON in a
+ * {@link DirectBufferStore} buffer; stations whose JSON changed since the previous fetch are pushed to
+ * clients subscribed through subscribe_mtr_station_schedules. A dimension with no subscriber and no request
+ * for {@link #IDLE_PAUSE_MILLIS} is paused (not fetched, buffers released) until it is asked for again.
+ */
+public final class MtrSchedulePrefetcher {
+    private static final long FETCH_TIMEOUT_SECONDS = 30L;
+    private static final long IDLE_PAUSE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final BeaconPlugin plugin;
+    private final DirectBufferStore buffers;
+    private final Set<String> dimensions;
+    private final long intervalMillis;
+    private final Map<String, Prefetched> latest = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastRequestedAt = new ConcurrentHashMap<>();
+    private final Set<String> paused = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "beacon-schedule-prefetch");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong fetchFailures = new AtomicLong();
+    private final AtomicLong servedRequests = new AtomicLong();
+    private final AtomicLong pushedStations = new AtomicLong();
+
+    public MtrSchedulePrefetcher(BeaconPlugin plugin,
+                                 DirectBufferStore buffers,
+                                 List<String> dimensions,
+                                 long intervalSeconds) {
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+        this.buffers = Objects.requireNonNull(buffers, "buffers");
+        this.dimensions = Collections.unmodifiableSet(new LinkedHashSet<>(dimensions));
+        this.intervalMillis = TimeUnit.SECONDS.toMillis(Math.max(0L, intervalSeconds));
+        // nothing is fetched before the first request or subscription
+        this.paused.addAll(this.dimensions);
+    }
+
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        executor.scheduleWithFixedDelay(this::fetchAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+        for (String dimension : dimensions) {
+            drop(dimension);
+        }
+    }
+
+    public boolean isEnabled() {
+        return intervalMillis > 0 && !dimensions.isEmpty();
+    }
+
+    public boolean isPrefetched(String dimension) {
+        return isEnabled() && dimension != null && dimensions.contains(dimension);
+    }
+
+    /**
+     * Latest schedules for {@code dimension} in the shape of the provider's payload, or null when the
+     * dimension is not prefetched, is paused, or the last successful fetch is older than two intervals.
+     */
+    public Map<String, Object> latest(String dimension) {
+        Prefetched prefetched = fresh(dimension);
+        if (prefetched == null) {
+            return null;
+        }
+        servedRequests.incrementAndGet();
+        List<Map<String, Object>> groups = new ArrayList<>();
+        for (Map.Entry<String, List<Long>> group : prefetched.groups.entrySet()) {
+            List<DirectJsonValue> stations = new ArrayList<>();
+            for (Long stationId : group.getValue()) {
+                stations.add(prefetched.stations.get(stationId).json());
+            }
+            Map<String, Object> schedules = new LinkedHashMap<>();
+            schedules.put("dimension", group.getKey());
+            schedules.put("stations", stations);
+            groups.add(schedules);
+        }
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("timestamp", prefetched.timestamp);
+        payload.put("dimension", prefetched.dimension);
+        payload.put("note", prefetched.note);
+        payload.put("dimensions", groups);
+        return payload;
+    }
+
+    /**
+     * Station schedules (as raw JSON) of the latest fetch for {@code dimension}, limited to
+     * {@code stationIds} when given; empty when nothing fresh is held.
+     */
+    public List<DirectJsonValue> stations(String dimension, Set<Long> stationIds) {
+        Prefetched prefetched = fresh(dimension);
+        List<DirectJsonValue> stations = new ArrayList<>();
+        if (prefetched == null) {
+            return stations;
+        }
+        servedRequests.incrementAndGet();
+        for (Map.Entry<Long, StationJson> station : prefetched.stations.entrySet()) {
+            if (stationIds == null || stationIds.isEmpty() || stationIds.contains(station.getKey())) {
+                stations.add(station.getValue().json());
+            }
+        }
+        return stations;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("interval_seconds", TimeUnit.MILLISECONDS.toSeconds(intervalMillis));
+        metrics.put("fetches", fetches.get());
+        metrics.put("fetch_failures", fetchFailures.get());
+        metrics.put("served_requests", servedRequests.get());
+        metrics.put("pushed_stations", pushedStations.get());
+        Map<String, Object> byDimension = new LinkedHashMap<>();
+        for (String dimension : dimensions) {
+            Prefetched prefetched = latest.get(dimension);
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("paused", paused.contains(dimension));
+            entry.put("stations", prefetched != null ? prefetched.stations.size() : 0);
+            entry.put("bytes", prefetched != null ? prefetched.bytes() : 0L);
+            entry.put("fetched_at", prefetched != null ? prefetched.fetchedAt : 0L);
+            byDimension.put(dimension, entry);
+        }
+        metrics.put("dimensions", byDimension);
+        return metrics;
+    }
+
+    // Records demand for the dimension; a paused one is fetched right away instead of at the next tick.
+    private Prefetched fresh(String dimension) {
+        if (!isPrefetched(dimension)) {
+            return null;
+        }
+        lastRequestedAt.put(dimension, System.currentTimeMillis());
+        if (paused.remove(dimension)) {
+            if (!executor.isShutdown()) {
+                executor.execute(() -> fetchQuietly(dimension));
+            }
+            return null;
+        }
+        Prefetched prefetched = latest.get(dimension);
+        if (prefetched == null || System.currentTimeMillis() - prefetched.fetchedAt > intervalMillis * 2) {
+            return null;
+        }
+        return prefetched;
+    }
+
+    private void fetchAll() {
+        SocketServerManager socket = plugin.getSocketServerManager();
+        long now = System.currentTimeMillis();
+        for (String dimension : dimensions) {
+            if (paused.contains(dimension)) {
+                continue;
+            }
+            boolean subscribed = socket != null && socket.hasScheduleSubscribers(dimension);
+            if (!subscribed && now - lastRequestedAt.getOrDefault(dimension, 0L) > IDLE_PAUSE_MILLIS) {
+                paused.add(dimension);
+                drop(dimension);
+                continue;
+            }
+            fetchQuietly(dimension);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private void fetchQuietly(String dimension) {
+        try {
+            fetch(dimension);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | RuntimeException e) {
+            // anything escaping to the scheduled task would cancel every later fetch
+            fetchFailures.incrementAndGet();
+            plugin.getLogger().warning("MTR schedule prefetch failed for " + dimension + ": " + e.getMessage());
+        }
+    }
+
+    private void fetch(String dimension) throws InterruptedException, ExecutionException, TimeoutException {
+        BeaconProviderClient client = plugin.getBeaconProviderClient();
+        if (client == null || !client.isStarted()) {
+            return;
+        }
+        BeaconActionResponse<MtrAllStationSchedulesResponse> response = client
+                .sendAction(BeaconProviderActions.getAllStationSchedules(dimension))
+                .get(FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        MtrAllStationSchedulesResponse payload = response.getPayload();
+        if (!response.isOk() || payload == null) {
+            throw new IllegalStateException(response.getResult() + " " + response.getMessage());
+        }
+        fetches.incrementAndGet();
+
+        Prefetched previous = latest.get(dimension);
+        Map<String, List<Long>> groups = new LinkedHashMap<>();
+        Map<Long, StationJson> stations = new LinkedHashMap<>();
+        Map<Long, DirectJsonValue> changed = new LinkedHashMap<>();
+        for (MtrAllStationSchedulesResponse.DimensionSchedules schedules : payload.getDimensions()) {
+            List<Long> stationIds = groups.computeIfAbsent(schedules.getDimension(), key -> new ArrayList<>());
+            for (MtrAllStationSchedulesResponse.StationSchedules station : schedules.getStations()) {
+                if (stations.containsKey(station.getStationId())) {
+                    continue;
+                }
+                byte[] json = serialize(station);
+                long fingerprint = fingerprint(json);
+                StationJson before = previous != null ? previous.stations.get(station.getStationId()) : null;
+                StationJson after;
+                if (before != null && before.fingerprint == fingerprint) {
+                    // unchanged: keep the buffer already holding these bytes
+                    after = before;
+                } else {
+                    ByteBuffer offHeap = buffers.store(json);
+                    after = new StationJson(offHeap, offHeap == null ? json : null, fingerprint);
+                    changed.put(station.getStationId(), after.json());
+                }
+                stations.put(station.getStationId(), after);
+                stationIds.add(station.getStationId());
+            }
+        }
+        latest.put(dimension, new Prefetched(payload.getTimestamp(), payload.getDimension(), payload.getNote(),
+                groups, stations, System.currentTimeMillis()));
+        if (previous != null) {
+            releaseReplaced(previous, stations);
+        }
+
+        SocketServerManager socket = plugin.getSocketServerManager();
+        if (!changed.isEmpty() && socket != null) {
+            pushedStations.addAndGet(socket.pushStationSchedules(dimension, payload.getTimestamp(), changed));
+        }
+    }
+
+    private void drop(String dimension) {
+        Prefetched previous = latest.remove(dimension);
+        if (previous != null) {
+            releaseReplaced(previous, Collections.emptyMap());
+        }
+    }
+
+    private void releaseReplaced(Prefetched previous, Map<Long, StationJson> kept) {
+        for (Map.Entry<Long, StationJson> station : previous.stations.entrySet()) {
+            if (kept.get(station.getKey()) != station.getValue()) {
+                buffers.release(station.getValue().offHeap);
+            }
+        }
+    }
+
+    private static byte[] serialize(MtrAllStationSchedulesResponse.StationSchedules station) {
+        try {
+            return JSON.writeValueAsBytes(station);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize station " + station.getStationId(), e);
+        }
+    }
+
+    // serialized length in the high bits, CRC32 of the JSON in the low bits
+    private static long fingerprint(byte[] json) {
+        CRC32 crc = new CRC32();
+        crc.update(json, 0, json.length);
+        return ((long) json.length << 32) | crc.getValue();
+    }
+
+    private static final class StationJson {
+        private final ByteBuffer offHeap;
+        private final byte[] onHeap;
+        private final long fingerprint;
+
+        private StationJson(ByteBuffer offHeap, byte[] onHeap, long fingerprint) {
+            this.offHeap = offHeap;
+            this.onHeap = onHeap;
+            this.fingerprint = fingerprint;
+        }
+
+        private DirectJsonValue json() {
+            return offHeap != null ? new DirectJsonValue(offHeap) : new DirectJsonValue(onHeap);
+        }
+    }
+
+    private static final class Prefetched {
+        private final long timestamp;
+        private final String dimension;
+        private final String note;
+        // provider dimension entry -> its station ids, in response order
+        private final Map<String, List<Long>> groups;
+        private final Map<Long, StationJson> stations;
+        private final long fetchedAt;
+
+        private Prefetched(long timestamp,
+                           String dimension,
+                           String note,
+                           Map<String, List<Long>> groups,
+                           Map<Long, StationJson> stations,
+                           long fetchedAt) {
+            this.timestamp = timestamp;
+            this.dimension = dimension;
+            this.note = note;
+            this.groups = groups;
+            this.stations = stations;
+            this.fetchedAt = fetchedAt;
+        }
+
+        private long bytes() {
+            long total = 0L;
+            for (StationJson station : stations.values()) {
+                total += station.offHeap != null ? station.offHeap.capacity() : station.onHeap.length;
+            }
+            return total;
+        }
+    }
+}
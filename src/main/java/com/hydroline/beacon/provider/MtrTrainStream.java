@@ -0,0 +1,324 @@
+package com.hydroline.beacon.provider;
+
+import com.hydroline.beacon.BeaconPlugin;
+import com.hydroline.beacon.provider.actions.BeaconProviderActions;
+import com.hydroline.beacon.provider.actions.dto.MtrDtos;
+import com.hydroline.beacon.provider.actions.dto.MtrRouteTrainsResponse;
+import com.hydroline.beacon.provider.channel.BeaconActionResponse;
+import com.hydroline.beacon.provider.channel.BeaconProviderClient;
+import com.hydroline.beacon.socket.SocketServerManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live train positions for subscribed Socket.IO clients. One shared schedule samples, per dimension, every
+ * route any subscriber asked for (mtr:get_route_trains once per route, whatever the number of subscribers),
+ * diffs each train against the previous sample and pushes only the trains that changed, with progress and
+ * velocity deltas so clients can interpolate until the next update.
+ */
+public final class MtrTrainStream {
+    public static final int MAX_ROUTES_PER_SUBSCRIPTION = 256;
+    public static final int MAX_DIMENSIONS_PER_SESSION = 8;
+    private static final long SAMPLE_TIMEOUT_MILLIS = 5000L;
+
+    private final BeaconPlugin plugin;
+    private final long intervalMillis;
+    // dimension -> client session -> subscribed route ids
+    private final Map<String, Map<UUID, Set<Long>>> subscriptions = new ConcurrentHashMap<>();
+    // dimension -> trainUuid -> last sample
+    private final Map<String, Map<String, Sampled>> samples = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "beacon-train-stream");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong routeRequests = new AtomicLong();
+    private final AtomicLong routeFailures = new AtomicLong();
+    private final AtomicLong changedTrains = new AtomicLong();
+    private final AtomicLong unchangedTrains = new AtomicLong();
+    private final AtomicLong pushedEvents = new AtomicLong();
+
+    public MtrTrainStream(BeaconPlugin plugin, long intervalMillis) {
+        this.plugin = Objects.requireNonNull(plugin, "plugin");
+        this.intervalMillis = Math.max(0L, intervalMillis);
+    }
+
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        executor.scheduleWithFixedDelay(this::sampleAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return intervalMillis > 0;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Replaces the session's subscription for {@code dimension} and returns the last sampled state of its
+     * routes (empty for routes nobody sampled yet; they arrive with the next update). Returns null without
+     * subscribing when the session already follows {@link #MAX_DIMENSIONS_PER_SESSION} other dimensions.
+     */
+    public List<MtrDtos.TrainStatus> subscribe(UUID session, String dimension, Set<Long> routeIds) {
+        Map<UUID, Set<Long>> existing = subscriptions.get(dimension);
+        if ((existing == null || !existing.containsKey(session))
+                && countSubscriptions(session) >= MAX_DIMENSIONS_PER_SESSION) {
+            return null;
+        }
+        Set<Long> routes = Collections.unmodifiableSet(new HashSet<>(routeIds));
+        // compute keeps the put atomic with unsubscribe dropping the dimension's last subscriber
+        subscriptions.compute(dimension, (key, subscribers) -> {
+            Map<UUID, Set<Long>> updated = subscribers != null ? subscribers : new ConcurrentHashMap<>();
+            updated.put(session, routes);
+            return updated;
+        });
+        List<MtrDtos.TrainStatus> trains = new ArrayList<>();
+        Map<String, Sampled> sampled = samples.get(dimension);
+        if (sampled != null) {
+            for (Sampled train : sampled.values()) {
+                if (routeIds.contains(train.status.getRouteId())) {
+                    trains.add(train.status);
+                }
+            }
+        }
+        return trains;
+    }
+
+    public void unsubscribe(UUID session, String dimension) {
+        subscriptions.computeIfPresent(dimension, (key, subscribers) -> {
+            subscribers.remove(session);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    public void unsubscribeAll(UUID session) {
+        for (String dimension : subscriptions.keySet()) {
+            unsubscribe(session, dimension);
+        }
+    }
+
+    private int countSubscriptions(UUID session) {
+        int count = 0;
+        for (Map<UUID, Set<Long>> subscribers : subscriptions.values()) {
+            if (subscribers.containsKey(session)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("interval_ms", intervalMillis);
+        metrics.put("ticks", ticks.get());
+        metrics.put("route_requests", routeRequests.get());
+        metrics.put("route_failures", routeFailures.get());
+        metrics.put("changed_trains", changedTrains.get());
+        metrics.put("unchanged_trains", unchangedTrains.get());
+        metrics.put("pushed_events", pushedEvents.get());
+        Map<String, Object> dimensions = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<UUID, Set<Long>>> entry : subscriptions.entrySet()) {
+            Map<String, Sampled> sampled = samples.get(entry.getKey());
+            Map<String, Object> dimension = new LinkedHashMap<>();
+            dimension.put("subscribers", entry.getValue().size());
+            dimension.put("routes", routesOf(entry.getValue()).size());
+            dimension.put("trains", sampled != null ? sampled.size() : 0);
+            dimensions.put(entry.getKey(), dimension);
+        }
+        metrics.put("dimensions", dimensions);
+        return metrics;
+    }
+
+    private void sampleAll() {
+        ticks.incrementAndGet();
+        // dimensions lose their entry with their last subscriber; drop their samples too
+        samples.keySet().retainAll(subscriptions.keySet());
+        for (Map.Entry<String, Map<UUID, Set<Long>>> entry : subscriptions.entrySet()) {
+            try {
+                sample(entry.getKey(), new HashMap<>(entry.getValue()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                plugin.getLogger().warning("MTR train sampling failed for " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void sample(String dimension, Map<UUID, Set<Long>> subscribers) throws InterruptedException {
+        BeaconProviderClient client = plugin.getBeaconProviderClient();
+        if (client == null || !client.isStarted()) {
+            return;
+        }
+        Set<Long> routes = routesOf(subscribers);
+        Map<Long, CompletableFuture<BeaconActionResponse<MtrRouteTrainsResponse>>> requests = new HashMap<>();
+        for (Long routeId : routes) {
+            requests.put(routeId, client.sendAction(BeaconProviderActions.getRouteTrains(dimension, routeId)));
+            routeRequests.incrementAndGet();
+        }
+
+        long sampledAt = System.currentTimeMillis();
+        long deadline = sampledAt + SAMPLE_TIMEOUT_MILLIS;
+        Map<String, Sampled> previous = samples.getOrDefault(dimension, Collections.emptyMap());
+        Map<String, Sampled> current = new HashMap<>();
+        Set<Long> fetched = new HashSet<>();
+        for (Map.Entry<Long, CompletableFuture<BeaconActionResponse<MtrRouteTrainsResponse>>> request : requests.entrySet()) {
+            try {
+                long wait = Math.max(0L, deadline - System.currentTimeMillis());
+                BeaconActionResponse<MtrRouteTrainsResponse> response = request.getValue().get(wait, TimeUnit.MILLISECONDS);
+                if (!response.isOk() || response.getPayload() == null) {
+                    routeFailures.incrementAndGet();
+                    continue;
+                }
+                fetched.add(request.getKey());
+                for (MtrDtos.TrainStatus train : response.getPayload().getTrains()) {
+                    if (train.getTrainUuid() != null) {
+                        current.put(train.getTrainUuid(), new Sampled(train, sampledAt));
+                    }
+                }
+            } catch (ExecutionException | TimeoutException e) {
+                routeFailures.incrementAndGet();
+            }
+        }
+        Diff diff = diff(previous, current, routes, fetched);
+        unchangedTrains.addAndGet(diff.unchanged);
+        changedTrains.addAndGet(diff.changedCount);
+        samples.put(dimension, current);
+
+        SocketServerManager socket = plugin.getSocketServerManager();
+        if (socket != null && (!diff.changed.isEmpty() || !diff.removed.isEmpty())) {
+            pushedEvents.addAndGet(socket.pushTrainDeltas(dimension, sampledAt, subscribers, diff.changed, diff.removed));
+        }
+    }
+
+    /**
+     * Compares a sample with the previous one. Trains of requested routes that were not fetched this round
+     * are copied into {@code current} from {@code previous}, and are neither changed nor removed.
+     */
+    static Diff diff(Map<String, Sampled> previous, Map<String, Sampled> current, Set<Long> routes, Set<Long> fetched) {
+        for (Map.Entry<String, Sampled> train : previous.entrySet()) {
+            long routeId = train.getValue().status.getRouteId();
+            if (routes.contains(routeId) && !fetched.contains(routeId) && !current.containsKey(train.getKey())) {
+                current.put(train.getKey(), train.getValue());
+            }
+        }
+
+        Diff diff = new Diff();
+        for (Map.Entry<String, Sampled> train : current.entrySet()) {
+            Sampled before = previous.get(train.getKey());
+            Sampled after = train.getValue();
+            if (before == after) {
+                continue;
+            }
+            if (before != null && before.sameAs(after.status)) {
+                diff.unchanged++;
+                continue;
+            }
+            diff.changedCount++;
+            diff.changed.computeIfAbsent(after.status.getRouteId(), key -> new ArrayList<>()).add(delta(before, after));
+        }
+        for (Map.Entry<String, Sampled> train : previous.entrySet()) {
+            long routeId = train.getValue().status.getRouteId();
+            if (fetched.contains(routeId) && !current.containsKey(train.getKey())) {
+                diff.removed.computeIfAbsent(routeId, key -> new ArrayList<>()).add(train.getKey());
+            }
+        }
+        return diff;
+    }
+
+    private static Set<Long> routesOf(Map<UUID, Set<Long>> subscribers) {
+        Set<Long> routes = new HashSet<>();
+        for (Set<Long> routeIds : subscribers.values()) {
+            routes.addAll(routeIds);
+        }
+        return routes;
+    }
+
+    // The train's full state plus, when it was seen in the previous sample, how far it moved per second.
+    private static Map<String, Object> delta(Sampled before, Sampled after) {
+        Map<String, Object> delta = new LinkedHashMap<>();
+        delta.put("train", after.status);
+        if (before == null || after.sampledAt <= before.sampledAt) {
+            return delta;
+        }
+        long elapsed = after.sampledAt - before.sampledAt;
+        double seconds = elapsed / 1000.0;
+        delta.put("elapsed_ms", elapsed);
+        MtrDtos.TrainStatus from = before.status;
+        MtrDtos.TrainStatus to = after.status;
+        // progress is relative to the current segment, so it only compares within the same segment
+        if (from.getProgress() != null && to.getProgress() != null
+                && Objects.equals(from.getCurrentStationId(), to.getCurrentStationId())
+                && Objects.equals(from.getNextStationId(), to.getNextStationId())) {
+            double progressDelta = to.getProgress() - from.getProgress();
+            delta.put("progress_delta", progressDelta);
+            delta.put("progress_per_second", progressDelta / seconds);
+        }
+        if (from.getNode() != null && to.getNode() != null) {
+            Map<String, Object> velocity = new LinkedHashMap<>();
+            velocity.put("x", (to.getNode().getX() - from.getNode().getX()) / seconds);
+            velocity.put("y", (to.getNode().getY() - from.getNode().getY()) / seconds);
+            velocity.put("z", (to.getNode().getZ() - from.getNode().getZ()) / seconds);
+            delta.put("velocity", velocity);
+        }
+        return delta;
+    }
+
+    static final class Diff {
+        final Map<Long, List<Map<String, Object>>> changed = new HashMap<>();
+        final Map<Long, List<String>> removed = new HashMap<>();
+        int changedCount;
+        int unchanged;
+    }
+
+    static final class Sampled {
+        private final MtrDtos.TrainStatus status;
+        private final long sampledAt;
+
+        Sampled(MtrDtos.TrainStatus status, long sampledAt) {
+            this.status = status;
+            this.sampledAt = sampledAt;
+        }
+
+        private boolean sameAs(MtrDtos.TrainStatus other) {
+            MtrDtos.NodeInfo node = status.getNode();
+            MtrDtos.NodeInfo otherNode = other.getNode();
+            boolean sameNode = node == null ? otherNode == null
+                    : otherNode != null && node.getX() == otherNode.getX() && node.getY() == otherNode.getY()
+                    && node.getZ() == otherNode.getZ();
+            return sameNode
+                    && status.getRouteId() == other.getRouteId()
+                    && Objects.equals(status.getProgress(), other.getProgress())
+                    && Objects.equals(status.getSegmentCategory(), other.getSegmentCategory())
+                    && Objects.equals(status.getCurrentStationId(), other.getCurrentStationId())
+                    && Objects.equals(status.getNextStationId(), other.getNextStationId())
+                    && Objects.equals(status.getDelayMillis(), other.getDelayMillis());
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.hydroline.beacon.provider.channel;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.type.TypeFactory;
 
 import java.time.Duration;
@@ -12,6 +15,9 @@ import java.util.Objects;
 public final class BeaconActionCall<T> {
     private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
     private static final TypeFactory TYPE_FACTORY = TypeFactory.defaultInstance();
+    // sorts map keys so equal payloads built in different orders produce the same request key
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
 
     private final String action;
     private final Object payload;
@@ -52,4 +58,16 @@ public final class BeaconActionCall<T> {
     public Duration getTimeout() {
         return timeout;
     }
+
+    /**
+     * 由 action、payload 类型与规范化 payload 组成的键：相同键的调用可共用同一响应；payload 无法序列化时返回 null。
+     */
+    public String getRequestKey() {
+        try {
+            Object canonical = payload == null ? null : CANONICAL_MAPPER.convertValue(payload, Object.class);
+            return action + '\n' + responseType.toCanonical() + '\n' + CANONICAL_MAPPER.writeValueAsString(canonical);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            return null;
+        }
+    }
 }
@@ -15,6 +15,7 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
@@ -39,6 +40,9 @@ public final class BeaconProviderClient {
     private final BeaconPlugin plugin;
     private final ObjectMapper mapper = new ObjectMapper();
     private final Map<String, PendingRequest<?>> pendingRequests = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong dispatchedRequests = new AtomicLong();
+    private final AtomicLong coalescedRequests = new AtomicLong();
     private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
         Thread t = new Thread(r, "beacon-gateway-client");
         t.setDaemon(true);
@@ -147,12 +151,55 @@ public final class BeaconProviderClient {
                 lastConnectedAtMillis,
                 reconnectDelayMs,
                 pendingRequests.size(),
-                peerVersion
+                peerVersion,
+                dispatchedRequests.get(),
+                coalescedRequests.get()
         );
     }
 
+    /**
+     * Sends {@code call}, or joins an identical call (same action, response type and payload) that is still
+     * in flight; all joiners complete with the same response.
+     */
     public <T> CompletableFuture<BeaconActionResponse<T>> sendAction(BeaconActionCall<T> call) {
         Objects.requireNonNull(call, "call");
+        String key = call.getRequestKey();
+        if (key == null) {
+            dispatchedRequests.incrementAndGet();
+            return dispatch(call);
+        }
+        CompletableFuture<BeaconActionResponse<T>> shared = new CompletableFuture<>();
+        @SuppressWarnings("unchecked")
+        CompletableFuture<BeaconActionResponse<T>> existing =
+                (CompletableFuture<BeaconActionResponse<T>>) inFlight.putIfAbsent(key, shared);
+        if (existing != null) {
+            coalescedRequests.incrementAndGet();
+            return existing;
+        }
+        dispatchedRequests.incrementAndGet();
+        dispatch(call).whenComplete((response, error) -> {
+            inFlight.remove(key, shared);
+            if (error != null) {
+                shared.completeExceptionally(error);
+            } else {
+                shared.complete(response);
+            }
+        });
+        return shared;
+    }
+
+    public Map<String, Object> getCoalescingMetrics() {
+        long dispatched = dispatchedRequests.get();
+        long coalesced = coalescedRequests.get();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("dispatched", dispatched);
+        metrics.put("coalesced", coalesced);
+        metrics.put("hit_ratio", dispatched + coalesced == 0 ? 0.0 : (double) coalesced / (dispatched + coalesced));
+        metrics.put("in_flight", inFlight.size());
+        return metrics;
+    }
+
+    private <T> CompletableFuture<BeaconActionResponse<T>> dispatch(BeaconActionCall<T> call) {
         if (!isStarted()) {
             return failedFuture(new IllegalStateException("Beacon Provider gateway is not ready"));
         }
@@ -513,6 +560,8 @@ public final class BeaconProviderClient {
         private final long reconnectDelayMillis;
         private final int pendingRequests;
         private final String modVersion;
+        private final long dispatchedRequests;
+        private final long coalescedRequests;
 
         private StatusSnapshot(boolean gatewayEnabled,
                                boolean connected,
@@ -521,7 +570,9 @@ public final class BeaconProviderClient {
                                long lastConnectedAtMillis,
                                long reconnectDelayMillis,
                                int pendingRequests,
-                               String modVersion) {
+                               String modVersion,
+                               long dispatchedRequests,
+                               long coalescedRequests) {
             this.gatewayEnabled = gatewayEnabled;
             this.connected = connected;
             this.connectionId = connectionId;
@@ -530,6 +581,8 @@ public final class BeaconProviderClient {
             this.reconnectDelayMillis = reconnectDelayMillis;
             this.pendingRequests = pendingRequests;
             this.modVersion = modVersion;
+            this.dispatchedRequests = dispatchedRequests;
+            this.coalescedRequests = coalescedRequests;
         }
 
         public boolean gatewayEnabled() {
@@ -563,6 +616,14 @@ public final class BeaconProviderClient {
         public String getModVersion() {
             return modVersion;
         }
+
+        public long getDispatchedRequests() {
+            return dispatchedRequests;
+        }
+
+        public long getCoalescedRequests() {
+            return coalescedRequests;
+        }
     }
 
     private final class PendingRequest<T> {
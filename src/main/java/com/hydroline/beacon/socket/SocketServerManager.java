@@ -1,6 +1,7 @@
 package com.hydroline.beacon.socket;
 
 import com.corundumstudio.socketio.AckRequest;
+import com.corundumstudio.socketio.BroadcastOperations;
 import com.corundumstudio.socketio.Configuration;
 import com.corundumstudio.socketio.HandshakeData;
 import com.corundumstudio.socketio.SocketIOClient;
@@ -12,24 +13,43 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.hydroline.beacon.BeaconPlugin;
 import com.hydroline.beacon.config.PluginConfig;
 import com.hydroline.beacon.mtr.MtrCategory;
+import com.hydroline.beacon.mtr.MtrEntity;
+import com.hydroline.beacon.mtr.MtrNetworkGraph;
+import com.hydroline.beacon.mtr.MtrSpatialIndex;
+import com.hydroline.beacon.mtr.MtrTileEngine;
+import com.hydroline.beacon.storage.DirectJsonValue;
+import com.hydroline.beacon.storage.MtrQueryCache;
+import com.hydroline.beacon.storage.PlayerIdentityIndex;
+import com.hydroline.beacon.provider.BeaconActionCache;
+import com.hydroline.beacon.provider.MtrNodeMirror;
+import com.hydroline.beacon.provider.MtrRailwaySnapshotCache;
+import com.hydroline.beacon.provider.MtrSchedulePrefetcher;
+import com.hydroline.beacon.provider.MtrTrainStream;
 import com.hydroline.beacon.provider.actions.BeaconProviderActions;
+import com.hydroline.beacon.provider.actions.dto.MtrDtos;
+import com.hydroline.beacon.provider.actions.dto.MtrNodePageResponse;
 import com.hydroline.beacon.provider.channel.BeaconActionCall;
 import com.hydroline.beacon.provider.channel.BeaconActionResponse;
 import com.hydroline.beacon.provider.channel.BeaconProviderClient;
+import com.hydroline.beacon.provider.channel.BeaconResultCode;
 import com.hydroline.beacon.task.AdvancementsAndStatsScanner;
 import com.hydroline.beacon.task.MtrLogsScanner;
+import com.hydroline.beacon.task.NbtIdentityScanner;
+import com.hydroline.beacon.task.OnlineStatsSampler;
+import com.hydroline.beacon.task.ScanScheduler;
+import com.hydroline.beacon.task.ServerSnapshot;
+import com.hydroline.beacon.task.ServerSnapshotPublisher;
+import com.hydroline.beacon.util.ChunkedBase64Decoder;
+import com.hydroline.beacon.util.JsonPathProjector;
 import com.hydroline.beacon.util.MtrMessagePackDecoder;
 import org.bukkit.Bukkit;
-import org.bukkit.GameMode;
-import org.bukkit.World;
-import org.bukkit.entity.Player;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpHeaders;
-import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -40,14 +60,18 @@ import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -58,11 +82,20 @@ import java.util.concurrent.Callable;
 public class SocketServerManager {
 
     private final BeaconPlugin plugin;
-    private static final String[] RAILWAY_PAYLOAD_KEYS = new String[]{"stations", "platforms", "routes", "depots"};
     private static final ObjectMapper ACTION_LOG_MAPPER = new ObjectMapper();
     private static final long BUKKIT_SYNC_TIMEOUT_MS = 3000L;
+    private static final int MAX_BALANCE_BATCH_SIZE = 500;
+    private static final String BALANCE_OP_GET = "get";
+    private static final String BALANCE_OP_SET = "set";
+    private static final String BALANCE_OP_ADD = "add";
+    private static final int MAX_NBT_PROJECTION_PATHS = 64;
+    private static final String SCHEDULE_ROOM_PREFIX = "mtr_station_schedules:";
+    private static final String SCHEDULE_UPDATE_EVENT = "mtr_station_schedules_update";
+    private static final String TRAIN_UPDATE_EVENT = "mtr_train_positions_update";
     private SocketIOServer server;
     private final Map<UUID, Long> connectionOpenAt = new ConcurrentHashMap<>();
+    // mtr_balance values written through this server: name -> {balance, writtenAt}
+    private final Map<String, long[]> balanceWrites = new ConcurrentHashMap<>();
     private volatile boolean stopRequested;
 
     public SocketServerManager(BeaconPlugin plugin) {
@@ -88,7 +121,7 @@ public class SocketServerManager {
         server.start();
 
         plugin.getLogger().info("Socket.IO server started on port " + cfg.getPort());
-        plugin.getLogger().info("Socket.IO events registered: force_update, get_player_advancements, get_player_stats, list_online_players, get_server_time, beacon_ping, get_mtr_network_overview, get_mtr_route_detail, list_mtr_nodes_paginated, list_mtr_depots, list_mtr_fare_areas, get_mtr_station_timetable, get_mtr_station_schedule, get_mtr_all_station_schedules, list_mtr_stations, get_mtr_route_trains, get_mtr_depot_trains, get_mtr_railway_snapshot, get_player_mtr_logs, get_mtr_log_detail, get_player_sessions, get_player_nbt, lookup_player_identity, list_player_identities, get_players_data, execute_sql, query_mtr_entities, get_status");
+        plugin.getLogger().info("Socket.IO events registered: force_update, get_player_advancements, get_player_stats, list_online_players, get_server_time, beacon_ping, get_mtr_network_overview, get_mtr_route_detail, list_mtr_nodes_paginated, list_mtr_depots, list_mtr_fare_areas, get_mtr_station_timetable, get_mtr_station_schedule, get_mtr_all_station_schedules, subscribe_mtr_station_schedules, unsubscribe_mtr_station_schedules, subscribe_mtr_train_positions, unsubscribe_mtr_train_positions, list_mtr_stations, get_mtr_route_trains, get_mtr_depot_trains, get_mtr_railway_snapshot, get_player_mtr_logs, get_mtr_log_detail, get_player_sessions, get_player_nbt, query_item_holders, batch_player_balance, lookup_player_identity, list_player_identities, get_players_data, execute_sql, query_mtr_entities, find_mtr_journey, query_mtr_viewport, get_mtr_tile, get_status");
     }
 
     public void stop() {
@@ -161,6 +194,9 @@ public class SocketServerManager {
 
         server.addDisconnectListener((DisconnectListener) client -> {
             Long started = connectionOpenAt.remove(client.getSessionId());
+            if (plugin.getMtrTrainStream() != null) {
+                plugin.getMtrTrainStream().unsubscribeAll(client.getSessionId());
+            }
             long duration = started != null ? (System.currentTimeMillis() - started) : -1L;
             String durationStr = duration >= 0 ? (duration + "ms") : "unknown";
             plugin.getLogger().info("[Socket.IO] Client disconnected: " + formatClientInfo(client) + ", sessionDuration=" + durationStr);
@@ -203,6 +239,7 @@ public class SocketServerManager {
                             page,
                             pageSize
                         );
+                        @SuppressWarnings("unchecked")
                         Map<String, String> advancements = (Map<String, String>) result.get("records");
                         Map<String, Object> resp = new HashMap<>();
                         resp.put("success", true);
@@ -235,6 +272,7 @@ public class SocketServerManager {
                             page,
                             pageSize
                         );
+                        @SuppressWarnings("unchecked")
                         Map<String, Long> stats = (Map<String, Long>) result.get("records");
                         Map<String, Object> resp = new HashMap<>();
                         resp.put("success", true);
@@ -260,10 +298,11 @@ public class SocketServerManager {
                         return;
                     }
                     try {
-                        List<Map<String, Object>> players = callBukkitSyncWithTimeout(this::collectOnlinePlayers);
+                        ServerSnapshot snapshot = currentSnapshot();
                         Map<String, Object> resp = new HashMap<>();
                         resp.put("success", true);
-                        resp.put("players", players);
+                        resp.put("players", snapshot.getOnlinePlayers());
+                        resp.put("snapshot_age_ms", snapshot.getAgeMillis());
                         ackSender.sendAckData(resp);
                     } catch (TimeoutException e) {
                         sendError(ackSender, "TIMEOUT");
@@ -287,10 +326,11 @@ public class SocketServerManager {
                         return;
                     }
                     try {
-                        Map<String, Object> info = callBukkitSyncWithTimeout(this::collectServerTime);
+                        ServerSnapshot snapshot = currentSnapshot();
                         Map<String, Object> resp = new HashMap<>();
                         resp.put("success", true);
-                        resp.putAll(info);
+                        resp.putAll(snapshot.getServerTime());
+                        resp.put("snapshot_age_ms", snapshot.getAgeMillis());
                         ackSender.sendAckData(resp);
                     } catch (TimeoutException e) {
                         sendError(ackSender, "TIMEOUT");
@@ -345,6 +385,19 @@ public class SocketServerManager {
                         sendError(ackSender, "INVALID_ARGUMENT: limit must be between 1 and 2048");
                         return;
                     }
+                    MtrNodeMirror mirror = plugin.getMtrNodeMirror();
+                    MtrNodePageResponse mirrored = mirror != null ? mirror.page(data.getDimension(), data.getCursor(), limit) : null;
+                    if (mirrored != null) {
+                        Map<String, Object> resp = new HashMap<>();
+                        resp.put("success", true);
+                        resp.put("result", BeaconResultCode.OK.name());
+                        resp.put("message", "");
+                        resp.put("request_id", null);
+                        resp.put("payload", mirrored);
+                        resp.put("source", "mirror");
+                        ackSender.sendAckData(resp);
+                        return;
+                    }
                     forwardBeaconAction(ackSender, BeaconProviderActions.listNodesPaginated(data.getDimension(), data.getCursor(), limit));
                 });
 
@@ -393,10 +446,117 @@ public class SocketServerManager {
         server.addEventListener("get_mtr_all_station_schedules", MtrAllStationSchedulesRequest.class,
                 (client, data, ackSender) -> {
                     if (!validateKey(data.getKey())) { sendError(ackSender, "INVALID_KEY"); return; }
+                    MtrSchedulePrefetcher prefetcher = plugin.getMtrSchedulePrefetcher();
+                    Map<String, Object> prefetched = prefetcher != null ? prefetcher.latest(data.getDimension()) : null;
+                    if (prefetched != null) {
+                        Map<String, Object> resp = new HashMap<>();
+                        resp.put("success", true);
+                        resp.put("result", BeaconResultCode.OK.name());
+                        resp.put("message", "");
+                        resp.put("request_id", null);
+                        resp.put("payload", prefetched);
+                        resp.put("source", "prefetch");
+                        ackSender.sendAckData(resp);
+                        return;
+                    }
                     forwardBeaconAction(ackSender,
                             BeaconProviderActions.getAllStationSchedules(data.getDimension()));
                 });
 
+        server.addEventListener("subscribe_mtr_station_schedules", MtrScheduleSubscriptionRequest.class,
+                (client, data, ackSender) -> {
+                    if (!validateKey(data.getKey())) { sendError(ackSender, "INVALID_KEY"); return; }
+                    MtrSchedulePrefetcher prefetcher = plugin.getMtrSchedulePrefetcher();
+                    if (isNullOrEmpty(data.getDimension())) {
+                        sendError(ackSender, "INVALID_ARGUMENT: dimension is required");
+                        return;
+                    }
+                    if (prefetcher == null || !prefetcher.isPrefetched(data.getDimension())) {
+                        sendError(ackSender, "INVALID_ARGUMENT: dimension is not in mtr_schedule_prefetch_dimensions");
+                        return;
+                    }
+                    Set<Long> stationIds = data.getStationIds() != null ? new HashSet<>(data.getStationIds()) : Collections.emptySet();
+                    leaveScheduleRooms(client, data.getDimension());
+                    if (stationIds.isEmpty()) {
+                        client.joinRoom(scheduleRoom(data.getDimension(), null));
+                    } else {
+                        for (Long stationId : stationIds) {
+                            client.joinRoom(scheduleRoom(data.getDimension(), stationId));
+                        }
+                    }
+                    Map<String, Object> resp = new HashMap<>();
+                    resp.put("success", true);
+                    resp.put("dimension", data.getDimension());
+                    resp.put("event", SCHEDULE_UPDATE_EVENT);
+                    resp.put("stations", prefetcher.stations(data.getDimension(), stationIds));
+                    ackSender.sendAckData(resp);
+                });
+
+        server.addEventListener("unsubscribe_mtr_station_schedules", MtrDimensionRequest.class,
+                (client, data, ackSender) -> {
+                    if (!validateKey(data.getKey())) { sendError(ackSender, "INVALID_KEY"); return; }
+                    if (isNullOrEmpty(data.getDimension())) {
+                        sendError(ackSender, "INVALID_ARGUMENT: dimension is required");
+                        return;
+                    }
+                    leaveScheduleRooms(client, data.getDimension());
+                    Map<String, Object> resp = new HashMap<>();
+                    resp.put("success", true);
+                    ackSender.sendAckData(resp);
+                });
+
+        server.addEventListener("subscribe_mtr_train_positions", MtrTrainSubscriptionRequest.class,
+                (client, data, ackSender) -> {
+                    if (!validateKey(data.getKey())) { sendError(ackSender, "INVALID_KEY"); return; }
+                    MtrTrainStream stream = plugin.getMtrTrainStream();
+                    if (stream == null || !stream.isEnabled()) {
+                        sendError(ackSender, "INVALID_ARGUMENT: train position stream is disabled (mtr_train_stream_interval_ms is 0)");
+                        return;
+                    }
+                    if (isNullOrEmpty(data.getDimension())) {
+                        sendError(ackSender, "INVALID_ARGUMENT: dimension is required");
+                        return;
+                    }
+                    List<Long> routeIds = data.getRouteIds();
+                    if (routeIds == null || routeIds.isEmpty() || routeIds.size() > MtrTrainStream.MAX_ROUTES_PER_SUBSCRIPTION) {
+                        sendError(ackSender, "INVALID_ARGUMENT: routeIds must contain 1.."
+                                + MtrTrainStream.MAX_ROUTES_PER_SUBSCRIPTION + " route ids");
+                        return;
+                    }
+                    if (routeIds.contains(null)) {
+                        sendError(ackSender, "INVALID_ARGUMENT: routeIds must not contain null");
+                        return;
+                    }
+                    List<MtrDtos.TrainStatus> trains = stream.subscribe(client.getSessionId(), data.getDimension(), new HashSet<>(routeIds));
+                    if (trains == null) {
+                        sendError(ackSender, "INVALID_ARGUMENT: at most " + MtrTrainStream.MAX_DIMENSIONS_PER_SESSION
+                                + " dimensions can be subscribed per connection");
+                        return;
+                    }
+                    Map<String, Object> resp = new HashMap<>();
+                    resp.put("success", true);
+                    resp.put("dimension", data.getDimension());
+                    resp.put("event", TRAIN_UPDATE_EVENT);
+                    resp.put("interval_ms", stream.getIntervalMillis());
+                    resp.put("trains", trains);
+                    ackSender.sendAckData(resp);
+                });
+
+        server.addEventListener("unsubscribe_mtr_train_positions", MtrDimensionRequest.class,
+                (client, data, ackSender) -> {
+                    if (!validateKey(data.getKey())) { sendError(ackSender, "INVALID_KEY"); return; }
+                    if (isNullOrEmpty(data.getDimension())) {
+                        sendError(ackSender, "INVALID_ARGUMENT: dimension is required");
+                        return;
+                    }
+                    if (plugin.getMtrTrainStream() != null) {
+                        plugin.getMtrTrainStream().unsubscribe(client.getSessionId(), data.getDimension());
+                    }
+                    Map<String, Object> resp = new HashMap<>();
+                    resp.put("success", true);
+                    ackSender.sendAckData(resp);
+                });
+
         server.addEventListener("list_mtr_stations", MtrDimensionRequest.class,
                 (client, data, ackSender) -> {
                     if (!validateKey(data.getKey())) { sendError(ackSender, "INVALID_KEY"); return; }
@@ -441,7 +601,8 @@ public class SocketServerManager {
                         sendError(ackSender, "INVALID_KEY");
                         return;
                     }
-                    forwardRailwaySnapshotAction(ackSender, BeaconProviderActions.getRailwaySnapshot(data.getDimension()));
+                    forwardRailwaySnapshotAction(ackSender, BeaconProviderActions.getRailwaySnapshot(data.getDimension()),
+                            data.getSinceVersion());
                 });
 
         // get_player_mtr_logs: list MTR logs with optional filters & pagination
@@ -539,7 +700,7 @@ public class SocketServerManager {
                     }
                 });
 
-        // lookup_player_identity: resolve UUID/name + metadata from player_identities table
+        // lookup_player_identity: resolve UUID/name + metadata via the identity index (SQLite until it has loaded)
         server.addEventListener("lookup_player_identity", PlayerIdentityRequest.class,
                 (client, data, ackSender) -> {
                     if (!validateKey(data.getKey())) {
@@ -601,6 +762,37 @@ public class SocketServerManager {
                     }
                 });
 
+        // query_item_holders: who holds item X (inventory / ender chest), backed by player_inventory_items
+        server.addEventListener("query_item_holders", ItemHoldersRequest.class,
+                (client, data, ackSender) -> {
+                    if (!validateKey(data.getKey())) {
+                        sendError(ackSender, "INVALID_KEY");
+                        return;
+                    }
+                    String itemId = normalizeItemId(data.getItemId());
+                    if (itemId == null) {
+                        sendError(ackSender, "INVALID_ARGUMENT: itemId required");
+                        return;
+                    }
+                    String container = data.getContainer();
+                    if (container != null && container.isEmpty()) {
+                        container = null;
+                    }
+                    if (container != null
+                            && !NbtIdentityScanner.CONTAINER_INVENTORY.equals(container)
+                            && !NbtIdentityScanner.CONTAINER_ENDER_CHEST.equals(container)) {
+                        sendError(ackSender, "INVALID_ARGUMENT: container must be inventory or ender_chest");
+                        return;
+                    }
+                    try {
+                        Map<String, Object> result = loadItemHolders(itemId, container, data.getPage(), data.getPageSize());
+                        result.put("success", true);
+                        ackSender.sendAckData(result);
+                    } catch (SQLException e) {
+                        sendError(ackSender, "DB_ERROR: " + e.getMessage());
+                    }
+                });
+
         // get_player_nbt: return raw NBT as JSON (cached in SQLite for X minutes)
         server.addEventListener("get_player_nbt", PlayerIdentityRequest.class,
                 (client, data, ackSender) -> {
@@ -608,12 +800,24 @@ public class SocketServerManager {
                     try {
                         String uuid = ensurePlayerUuid(data.getPlayerUuid(), data.getPlayerName());
                         if (uuid == null) { sendError(ackSender, "NOT_FOUND"); return; }
+                        List<String> paths = data.getPaths();
+                        if (paths != null && paths.size() > MAX_NBT_PROJECTION_PATHS) {
+                            sendError(ackSender, "INVALID_ARGUMENT: at most " + MAX_NBT_PROJECTION_PATHS + " paths are allowed");
+                            return;
+                        }
                         Map<String, Object> resp = new HashMap<>();
                         String json = getPlayerNbtJsonCached(uuid);
                         resp.put("success", true);
                         resp.put("player_uuid", uuid);
-                        resp.put("nbt", json != null ? com.fasterxml.jackson.databind.json.JsonMapper.builder().build().readTree(json) : null);
+                        if (paths != null && !paths.isEmpty()) {
+                            // projection: only the requested subtrees, evaluated on the cached JSON without building the full tree
+                            resp.put("nbt", json != null ? JsonPathProjector.project(json, paths) : null);
+                        } else {
+                            resp.put("nbt", json != null ? ACTION_LOG_MAPPER.readTree(json) : null);
+                        }
                         ackSender.sendAckData(resp);
+                    } catch (IllegalArgumentException e) {
+                        sendError(ackSender, "INVALID_ARGUMENT: " + e.getMessage());
                     } catch (SQLException e) {
                         sendError(ackSender, "DB_ERROR: " + e.getMessage());
                     } catch (Exception e) {
@@ -633,8 +837,7 @@ public class SocketServerManager {
                         return;
                     }
                     try {
-                        // Collect Bukkit server basics on main thread
-                        Map<String, Object> basics = callBukkitSyncWithTimeout(this::collectServerBasics);
+                        ServerSnapshot snapshot = currentSnapshot();
 
                         // Load DB totals
                         Map<String, Long> totals = loadDataTotals();
@@ -645,8 +848,51 @@ public class SocketServerManager {
                         resp.put("success", true);
                         resp.put("interval_time_ticks", ticks);
                         resp.put("interval_time_seconds", ticks / 20.0);
-                        resp.putAll(basics);
+                        resp.put("server_max_players", snapshot.getMaxPlayers());
+                        resp.put("online_player_count", snapshot.getOnlinePlayerCount());
+                        resp.put("snapshot_age_ms", snapshot.getAgeMillis());
                         resp.putAll(totals);
+                        ScanScheduler scheduler = plugin.getScanScheduler();
+                        OnlineStatsSampler sampler = scheduler != null ? scheduler.getOnlineStatsSampler() : null;
+                        if (sampler != null) {
+                            resp.put("online_stats_sampler", sampler.getMetrics());
+                        }
+                        if (plugin.getPlayerDataCache() != null) {
+                            resp.put("player_data_cache", plugin.getPlayerDataCache().getMetrics());
+                        }
+                        if (plugin.getMtrQueryCache() != null) {
+                            resp.put("mtr_query_cache", plugin.getMtrQueryCache().getMetrics());
+                        }
+                        if (plugin.getMtrGraphEngine() != null) {
+                            resp.put("mtr_graph", plugin.getMtrGraphEngine().getMetrics());
+                        }
+                        if (plugin.getMtrTileEngine() != null) {
+                            resp.put("mtr_tiles", plugin.getMtrTileEngine().getMetrics());
+                        }
+                        if (plugin.getMtrNodeMirror() != null) {
+                            resp.put("mtr_node_mirror", plugin.getMtrNodeMirror().getMetrics());
+                        }
+                        if (plugin.getMtrRailwaySnapshotCache() != null) {
+                            resp.put("mtr_railway_snapshot_cache", plugin.getMtrRailwaySnapshotCache().getMetrics());
+                        }
+                        if (plugin.getSnapshotBuffers() != null) {
+                            resp.put("off_heap", plugin.getSnapshotBuffers().getMetrics());
+                        }
+                        if (plugin.getMtrEntityStore() != null) {
+                            resp.put("mtr_entity_store", plugin.getMtrEntityStore().getMetrics());
+                        }
+                        if (plugin.getBeaconProviderClient() != null) {
+                            resp.put("provider_coalescing", plugin.getBeaconProviderClient().getCoalescingMetrics());
+                        }
+                        if (plugin.getBeaconActionCache() != null) {
+                            resp.put("provider_action_cache", plugin.getBeaconActionCache().getMetrics());
+                        }
+                        if (plugin.getMtrSchedulePrefetcher() != null) {
+                            resp.put("mtr_schedule_prefetch", plugin.getMtrSchedulePrefetcher().getMetrics());
+                        }
+                        if (plugin.getMtrTrainStream() != null) {
+                            resp.put("mtr_train_stream", plugin.getMtrTrainStream().getMetrics());
+                        }
                         ackSender.sendAckData(resp);
                     } catch (TimeoutException e) {
                         sendError(ackSender, "TIMEOUT");
@@ -724,9 +970,9 @@ public class SocketServerManager {
                                     throw new IllegalArgumentException("playerNames or playerUuids required when includeBalance is true");
                                 }
                             }
-                            List<Map<String, Object>> balances = callBukkitSyncWithTimeout(() ->
-                                    collectBalancesMainScoreboard(includeBalanceAll ? null : balanceNames, includeBalanceAll));
-                            resp.put("balances", balances);
+                            ServerSnapshot snapshot = currentSnapshot();
+                            resp.put("balances", collectBalances(snapshot, includeBalanceAll ? null : balanceNames, includeBalanceAll));
+                            resp.put("snapshot_age_ms", snapshot.getBalancesAgeMillis());
                         }
 
                         if (needStats) {
@@ -791,6 +1037,142 @@ public class SocketServerManager {
                     }
                 });
 
+        server.addEventListener("find_mtr_journey", MtrJourneyRequest.class,
+                (client, data, ackSender) -> {
+                    if (!validateKey(data.getKey())) {
+                        sendError(ackSender, "INVALID_KEY");
+                        return;
+                    }
+                    if (data.getFromStationId() == null || data.getToStationId() == null) {
+                        sendError(ackSender, "INVALID_ARGUMENT: fromStationId and toStationId required");
+                        return;
+                    }
+                    String dimensionContext = normalizeMtrDimensionContext(data.getDimensionContext());
+                    if (dimensionContext == null) {
+                        sendError(ackSender, "INVALID_ARGUMENT: dimensionContext required");
+                        return;
+                    }
+                    List<MtrNetworkGraph.Mode> modes = new ArrayList<>();
+                    if (data.getMode() == null || data.getMode().trim().isEmpty()) {
+                        modes.add(MtrNetworkGraph.Mode.FASTEST);
+                        modes.add(MtrNetworkGraph.Mode.FEWEST_TRANSFERS);
+                    } else {
+                        MtrNetworkGraph.Mode mode = MtrNetworkGraph.Mode.fromKey(data.getMode().trim());
+                        if (mode == null) {
+                            sendError(ackSender, "INVALID_ARGUMENT: unknown mode: " + data.getMode());
+                            return;
+                        }
+                        modes.add(mode);
+                    }
+                    try {
+                        MtrNetworkGraph graph = plugin.getMtrGraphEngine().getGraph(dimensionContext);
+                        if (graph == null
+                                || graph.getStation(data.getFromStationId()) == null
+                                || graph.getStation(data.getToStationId()) == null) {
+                            sendError(ackSender, "NOT_FOUND");
+                            return;
+                        }
+                        Map<String, Object> resp = new HashMap<>();
+                        resp.put("success", true);
+                        resp.put("dimension_context", dimensionContext);
+                        resp.put("from_station_id", data.getFromStationId());
+                        resp.put("to_station_id", data.getToStationId());
+                        for (MtrNetworkGraph.Mode mode : modes) {
+                            resp.put(mode.getKey(), graph.findJourney(data.getFromStationId(), data.getToStationId(), mode));
+                        }
+                        ackSender.sendAckData(resp);
+                    } catch (SQLException e) {
+                        sendError(ackSender, "DB_ERROR: " + e.getMessage());
+                    }
+                });
+
+        server.addEventListener("query_mtr_viewport", MtrViewportRequest.class,
+                (client, data, ackSender) -> {
+                    if (!validateKey(data.getKey())) {
+                        sendError(ackSender, "INVALID_KEY");
+                        return;
+                    }
+                    String dimensionContext = normalizeMtrDimensionContext(data.getDimensionContext());
+                    if (dimensionContext == null) {
+                        sendError(ackSender, "INVALID_ARGUMENT: dimensionContext required");
+                        return;
+                    }
+                    if (data.getMinX() == null || data.getMinZ() == null || data.getMaxX() == null || data.getMaxZ() == null) {
+                        sendError(ackSender, "INVALID_ARGUMENT: minX, minZ, maxX and maxZ required");
+                        return;
+                    }
+                    int limit = data.getLimit() != null ? data.getLimit() : DEFAULT_MTR_VIEWPORT_LIMIT;
+                    if (limit <= 0) {
+                        sendError(ackSender, "INVALID_ARGUMENT: limit must be positive");
+                        return;
+                    }
+                    limit = Math.min(limit, MAX_MTR_VIEWPORT_LIMIT);
+                    try {
+                        MtrSpatialIndex.Result result = plugin.getMtrGraphEngine().queryViewport(dimensionContext,
+                                Math.min(data.getMinX(), data.getMaxX()), Math.min(data.getMinZ(), data.getMaxZ()),
+                                Math.max(data.getMinX(), data.getMaxX()), Math.max(data.getMinZ(), data.getMaxZ()),
+                                !Boolean.FALSE.equals(data.getIncludeRails()), !Boolean.FALSE.equals(data.getIncludeStations()),
+                                limit);
+                        Map<String, Object> resp = new HashMap<>();
+                        resp.put("success", true);
+                        resp.put("dimension_context", dimensionContext);
+                        List<Map<String, Object>> rails = new ArrayList<>();
+                        List<Map<String, Object>> stations = new ArrayList<>();
+                        if (result != null) {
+                            for (MtrNetworkGraph.RailNode rail : result.getRails()) {
+                                rails.add(toViewportRail(rail));
+                            }
+                            for (MtrNetworkGraph.Station station : result.getStations()) {
+                                stations.add(toViewportStation(station));
+                            }
+                        }
+                        resp.put("rails", rails);
+                        resp.put("stations", stations);
+                        resp.put("truncated", result != null && result.isTruncated());
+                        ackSender.sendAckData(resp);
+                    } catch (SQLException e) {
+                        sendError(ackSender, "DB_ERROR: " + e.getMessage());
+                    }
+                });
+
+        server.addEventListener("get_mtr_tile", MtrTileRequest.class,
+                (client, data, ackSender) -> {
+                    if (!validateKey(data.getKey())) {
+                        sendError(ackSender, "INVALID_KEY");
+                        return;
+                    }
+                    String dimensionContext = normalizeMtrDimensionContext(data.getDimensionContext());
+                    if (dimensionContext == null) {
+                        sendError(ackSender, "INVALID_ARGUMENT: dimensionContext required");
+                        return;
+                    }
+                    if (data.getZoom() == null || data.getX() == null || data.getZ() == null) {
+                        sendError(ackSender, "INVALID_ARGUMENT: zoom, x and z required");
+                        return;
+                    }
+                    if (data.getZoom() < 0 || data.getZoom() > MtrTileEngine.MAX_ZOOM) {
+                        sendError(ackSender, "INVALID_ARGUMENT: zoom must be between 0 and " + MtrTileEngine.MAX_ZOOM);
+                        return;
+                    }
+                    try {
+                        String tile = plugin.getMtrTileEngine().getTile(dimensionContext, data.getZoom(), data.getX(), data.getZ());
+                        if (tile == null) {
+                            sendError(ackSender, "NOT_FOUND");
+                            return;
+                        }
+                        Map<String, Object> resp = new HashMap<>();
+                        resp.put("success", true);
+                        resp.put("dimension_context", dimensionContext);
+                        resp.put("zoom", data.getZoom());
+                        resp.put("x", data.getX());
+                        resp.put("z", data.getZ());
+                        resp.put("tile", new RawValue(tile));
+                        ackSender.sendAckData(resp);
+                    } catch (SQLException e) {
+                        sendError(ackSender, "DB_ERROR: " + e.getMessage());
+                    }
+                });
+
         // mtr_balance: get/set/add player balance from main scoreboard objective
         server.addEventListener("get_player_balance", PlayerBalanceRequest.class,
                 (client, data, ackSender) -> {
@@ -803,7 +1185,10 @@ public class SocketServerManager {
                         return;
                     }
                     try {
-                        Long value = callBukkitSyncWithTimeout(() -> getPlayerBalanceOnMainScoreboard(data.getPlayerName()));
+                        Long value = readCachedBalance(data.getPlayerName());
+                        if (value == null) {
+                            value = callBukkitSyncWithTimeout(() -> getPlayerBalanceOnMainScoreboard(data.getPlayerName()));
+                        }
                         Map<String, Object> resp = new HashMap<>();
                         resp.put("success", true);
                         resp.put("player", data.getPlayerName());
@@ -839,6 +1224,7 @@ public class SocketServerManager {
                     try {
                         Long value = callBukkitSyncWithTimeout(() ->
                                 setPlayerBalanceOnMainScoreboard(data.getPlayerName(), data.getAmount()));
+                        recordBalanceWrite(data.getPlayerName().trim(), value);
                         Map<String, Object> resp = new HashMap<>();
                         resp.put("success", true);
                         resp.put("player", data.getPlayerName());
@@ -874,6 +1260,7 @@ public class SocketServerManager {
                     try {
                         Long value = callBukkitSyncWithTimeout(() ->
                                 addPlayerBalanceOnMainScoreboard(data.getPlayerName(), data.getAmount()));
+                        recordBalanceWrite(data.getPlayerName().trim(), value);
                         Map<String, Object> resp = new HashMap<>();
                         resp.put("success", true);
                         resp.put("player", data.getPlayerName());
@@ -895,6 +1282,48 @@ public class SocketServerManager {
                         sendError(ackSender, "INVALID_ARGUMENT: " + e.getMessage());
                     }
                 });
+
+        // batch_player_balance: get/set/add list applied in one main-thread task, all-or-nothing
+        server.addEventListener("batch_player_balance", BalanceBatchRequest.class,
+                (client, data, ackSender) -> {
+                    if (!validateKey(data.getKey())) {
+                        sendError(ackSender, "INVALID_KEY");
+                        return;
+                    }
+                    if (isShuttingDown()) {
+                        sendError(ackSender, "SERVER_SHUTTING_DOWN");
+                        return;
+                    }
+                    try {
+                        List<BalanceOperation> operations = validateBalanceOperations(data.getOperations());
+                        List<Map<String, Object>> results = callBukkitSyncWithTimeout(() -> applyBalanceOperations(operations));
+                        long writtenAt = System.currentTimeMillis();
+                        for (int i = 0; i < operations.size(); i++) {
+                            if (!BALANCE_OP_GET.equals(operations.get(i).getOp())) {
+                                recordBalanceWrite(operations.get(i).getPlayerName(), (Long) results.get(i).get("balance"), writtenAt);
+                            }
+                        }
+                        Map<String, Object> resp = new HashMap<>();
+                        resp.put("success", true);
+                        resp.put("results", results);
+                        resp.put("applied", results.size());
+                        ackSender.sendAckData(resp);
+                    } catch (TimeoutException e) {
+                        sendError(ackSender, "TIMEOUT");
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        sendError(ackSender, "INTERNAL_ERROR: interrupted");
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof IllegalArgumentException) {
+                            sendError(ackSender, "INVALID_ARGUMENT: " + cause.getMessage());
+                        } else {
+                            sendError(ackSender, "INTERNAL_ERROR: " + (cause != null ? cause.getMessage() : e.getMessage()));
+                        }
+                    } catch (IllegalArgumentException e) {
+                        sendError(ackSender, "INVALID_ARGUMENT: " + e.getMessage());
+                    }
+                });
     }
 
     private boolean isShuttingDown() {
@@ -917,34 +1346,42 @@ public class SocketServerManager {
         }
     }
 
-    private long getPlayerBalanceOnMainScoreboard(String playerName) {
-        if (playerName == null || playerName.trim().isEmpty()) {
-            throw new IllegalArgumentException("playerName is required");
-        }
-        org.bukkit.scoreboard.ScoreboardManager manager = Bukkit.getScoreboardManager();
-        if (manager == null) {
-            throw new IllegalArgumentException("scoreboard manager not available");
-        }
-        org.bukkit.scoreboard.Scoreboard main = manager.getMainScoreboard();
-        if (main == null) {
-            throw new IllegalArgumentException("main scoreboard not available");
-        }
-        org.bukkit.scoreboard.Objective obj = main.getObjective("mtr_balance");
-        if (obj == null) {
-            throw new IllegalArgumentException("objective mtr_balance not found");
+    /**
+     * Latest main-thread snapshot; only before the first publish tick does this wait on the main thread.
+     */
+    private ServerSnapshot currentSnapshot()
+            throws InterruptedException, ExecutionException, TimeoutException {
+        ServerSnapshotPublisher publisher = plugin.getSnapshotPublisher();
+        ServerSnapshot snapshot = publisher != null ? publisher.getSnapshot() : null;
+        if (snapshot != null) {
+            return snapshot;
         }
-        org.bukkit.OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(playerName);
-        if (offlinePlayer == null) {
-            throw new IllegalArgumentException("player not found: " + playerName);
+        if (publisher == null) {
+            throw new ExecutionException(new IllegalStateException("snapshot publisher not available"));
         }
-        org.bukkit.scoreboard.Score score = obj.getScore(offlinePlayer);
-        return score.getScore();
+        return callBukkitSyncWithTimeout(publisher::publishNow);
+    }
+
+    private long getPlayerBalanceOnMainScoreboard(String playerName) {
+        return applyBalanceOperation(balanceObjective(), BALANCE_OP_GET, requirePlayerName(playerName), null)[1];
     }
 
     private long setPlayerBalanceOnMainScoreboard(String playerName, long amount) {
+        return applyBalanceOperation(balanceObjective(), BALANCE_OP_SET, requirePlayerName(playerName), amount)[1];
+    }
+
+    private long addPlayerBalanceOnMainScoreboard(String playerName, long delta) {
+        return applyBalanceOperation(balanceObjective(), BALANCE_OP_ADD, requirePlayerName(playerName), delta)[1];
+    }
+
+    private static String requirePlayerName(String playerName) {
         if (playerName == null || playerName.trim().isEmpty()) {
             throw new IllegalArgumentException("playerName is required");
         }
+        return playerName.trim();
+    }
+
+    private static org.bukkit.scoreboard.Objective balanceObjective() {
         org.bukkit.scoreboard.ScoreboardManager manager = Bukkit.getScoreboardManager();
         if (manager == null) {
             throw new IllegalArgumentException("scoreboard manager not available");
@@ -957,74 +1394,142 @@ public class SocketServerManager {
         if (obj == null) {
             throw new IllegalArgumentException("objective mtr_balance not found");
         }
-        org.bukkit.OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(playerName);
-        if (offlinePlayer == null) {
-            throw new IllegalArgumentException("player not found: " + playerName);
+        return obj;
+    }
+
+    /**
+     * Main thread. The one place mtr_balance is read and written, for single and batch requests alike: the
+     * score entry is the player name as given (what the snapshot is keyed by, and no profile lookup for
+     * unknown names), and results are clamped to the int range of scores. Returns {previous, balance}.
+     */
+    private static long[] applyBalanceOperation(org.bukkit.scoreboard.Objective obj, String op, String playerName, Long amount) {
+        org.bukkit.scoreboard.Score score = obj.getScore(playerName);
+        int previous = score.getScore();
+        if (BALANCE_OP_SET.equals(op)) {
+            score.setScore(clampToInt(amount));
+        } else if (BALANCE_OP_ADD.equals(op)) {
+            score.setScore(clampToInt((long) previous + amount));
         }
-        org.bukkit.scoreboard.Score score = obj.getScore(offlinePlayer);
-        score.setScore((int) amount);
-        return score.getScore();
+        return new long[]{previous, score.getScore()};
     }
 
-    private long addPlayerBalanceOnMainScoreboard(String playerName, long delta) {
+    /**
+     * Cached mtr_balance read: our own writes newer than the snapshot win, otherwise the snapshot score.
+     * Returns null when no usable snapshot exists, so the caller falls back to a main-thread read.
+     */
+    private Long readCachedBalance(String playerName) {
         if (playerName == null || playerName.trim().isEmpty()) {
-            throw new IllegalArgumentException("playerName is required");
-        }
-        org.bukkit.scoreboard.ScoreboardManager manager = Bukkit.getScoreboardManager();
-        if (manager == null) {
-            throw new IllegalArgumentException("scoreboard manager not available");
+            return null;
         }
-        org.bukkit.scoreboard.Scoreboard main = manager.getMainScoreboard();
-        if (main == null) {
-            throw new IllegalArgumentException("main scoreboard not available");
+        ServerSnapshotPublisher publisher = plugin.getSnapshotPublisher();
+        ServerSnapshot snapshot = publisher != null ? publisher.getSnapshot() : null;
+        if (snapshot == null || snapshot.getBalances() == null) {
+            return null;
         }
-        org.bukkit.scoreboard.Objective obj = main.getObjective("mtr_balance");
-        if (obj == null) {
-            throw new IllegalArgumentException("objective mtr_balance not found");
+        return readCachedBalance(snapshot, playerName.trim());
+    }
+
+    private long readCachedBalance(ServerSnapshot snapshot, String name) {
+        long[] written = balanceWrites.get(name);
+        if (written != null) {
+            if (written[1] >= snapshot.getBalancesCapturedAt()) {
+                return written[0];
+            }
+            // the snapshot has caught up with the write
+            balanceWrites.remove(name, written);
         }
-        org.bukkit.OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(playerName);
-        if (offlinePlayer == null) {
-            throw new IllegalArgumentException("player not found: " + playerName);
+        Integer balance = snapshot.getBalances().get(name);
+        return balance != null ? balance.longValue() : 0L;
+    }
+
+    private void recordBalanceWrite(String playerName, Long balance) {
+        recordBalanceWrite(playerName, balance, System.currentTimeMillis());
+    }
+
+    private void recordBalanceWrite(String playerName, Long balance, long writtenAt) {
+        if (playerName == null || balance == null) {
+            return;
         }
-        org.bukkit.scoreboard.Score score = obj.getScore(offlinePlayer);
-        int current = score.getScore();
-        long next = current + delta;
-        if (next > Integer.MAX_VALUE) next = Integer.MAX_VALUE;
-        if (next < Integer.MIN_VALUE) next = Integer.MIN_VALUE;
-        score.setScore((int) next);
-        return score.getScore();
+        balanceWrites.put(playerName, new long[]{balance, writtenAt});
     }
 
-    private List<Map<String, Object>> collectBalancesMainScoreboard(List<String> names, boolean all) {
-        org.bukkit.scoreboard.ScoreboardManager manager = Bukkit.getScoreboardManager();
-        if (manager == null) {
-            throw new IllegalArgumentException("scoreboard manager not available");
+    private List<BalanceOperation> validateBalanceOperations(List<BalanceOperation> operations) {
+        if (operations == null || operations.isEmpty()) {
+            throw new IllegalArgumentException("operations is required");
         }
-        org.bukkit.scoreboard.Scoreboard main = manager.getMainScoreboard();
-        if (main == null) {
-            throw new IllegalArgumentException("main scoreboard not available");
+        if (operations.size() > MAX_BALANCE_BATCH_SIZE) {
+            throw new IllegalArgumentException("Too many operations; max " + MAX_BALANCE_BATCH_SIZE + " per request");
         }
-        org.bukkit.scoreboard.Objective obj = main.getObjective("mtr_balance");
-        if (obj == null) {
-            throw new IllegalArgumentException("objective mtr_balance not found");
+        List<BalanceOperation> normalized = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            BalanceOperation op = operations.get(i);
+            if (op == null) {
+                throw new IllegalArgumentException("operations[" + i + "] is null");
+            }
+            String type = op.getOp() != null ? op.getOp().trim().toLowerCase(Locale.ROOT) : "";
+            if (!BALANCE_OP_GET.equals(type) && !BALANCE_OP_SET.equals(type) && !BALANCE_OP_ADD.equals(type)) {
+                throw new IllegalArgumentException("operations[" + i + "].op must be get, set or add");
+            }
+            if (op.getPlayerName() == null || op.getPlayerName().trim().isEmpty()) {
+                throw new IllegalArgumentException("operations[" + i + "].playerName is required");
+            }
+            if (!BALANCE_OP_GET.equals(type) && op.getAmount() == null) {
+                throw new IllegalArgumentException("operations[" + i + "].amount is required for " + type);
+            }
+            BalanceOperation copy = new BalanceOperation();
+            copy.setOp(type);
+            copy.setPlayerName(op.getPlayerName().trim());
+            copy.setAmount(op.getAmount());
+            normalized.add(copy);
+        }
+        return normalized;
+    }
+
+    // Main thread. Everything that can fail is checked before the first score is touched.
+    private List<Map<String, Object>> applyBalanceOperations(List<BalanceOperation> operations) {
+        org.bukkit.scoreboard.Objective obj = balanceObjective();
+        List<Map<String, Object>> results = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            BalanceOperation op = operations.get(i);
+            long[] balance = applyBalanceOperation(obj, op.getOp(), op.getPlayerName(), op.getAmount());
+            Map<String, Object> row = new HashMap<>();
+            row.put("index", i);
+            row.put("op", op.getOp());
+            row.put("player", op.getPlayerName());
+            row.put("previous_balance", balance[0]);
+            row.put("balance", balance[1]);
+            results.add(row);
+        }
+        return results;
+    }
+
+    private static int clampToInt(long value) {
+        if (value > Integer.MAX_VALUE) return Integer.MAX_VALUE;
+        if (value < Integer.MIN_VALUE) return Integer.MIN_VALUE;
+        return (int) value;
+    }
+
+    // Reads mtr_balance from the published snapshot plus our newer writes; entries without a score read as 0 like Objective#getScore
+    private List<Map<String, Object>> collectBalances(ServerSnapshot snapshot, List<String> names, boolean all) {
+        Map<String, Integer> balances = snapshot.getBalances();
+        if (balances == null) {
+            throw new IllegalArgumentException(snapshot.getBalancesError());
         }
 
         List<Map<String, Object>> rows = new ArrayList<>();
         if (all) {
-            for (String entry : obj.getScoreboard().getEntries()) {
-                org.bukkit.scoreboard.Score score = obj.getScore(entry);
+            for (Map.Entry<String, Integer> entry : balances.entrySet()) {
                 Map<String, Object> row = new HashMap<>();
-                row.put("player", entry);
-                row.put("balance", score.getScore());
+                row.put("player", entry.getKey());
+                row.put("balance", readCachedBalance(snapshot, entry.getKey()));
                 rows.add(row);
             }
         } else if (names != null) {
             for (String name : names) {
                 if (name == null || name.trim().isEmpty()) continue;
-                org.bukkit.scoreboard.Score score = obj.getScore(name.trim());
                 Map<String, Object> row = new HashMap<>();
                 row.put("player", name.trim());
-                row.put("balance", score.getScore());
+                row.put("balance", readCachedBalance(snapshot, name.trim()));
                 rows.add(row);
             }
         }
@@ -1117,20 +1622,137 @@ public class SocketServerManager {
         ackSender.sendAckData(resp);
     }
 
+    /**
+     * Pushes changed station schedules of {@code dimension} to its subscribers: the whole list to clients
+     * subscribed to every station, one station per event to clients subscribed to specific stations.
+     *
+     * @return station updates delivered to at least one client
+     */
+    public int pushStationSchedules(String dimension,
+                                    long timestamp,
+                                    Map<Long, DirectJsonValue> stations) {
+        SocketIOServer currentServer = server;
+        if (currentServer == null) {
+            return 0;
+        }
+        int pushed = 0;
+        BroadcastOperations all = currentServer.getRoomOperations(scheduleRoom(dimension, null));
+        if (!all.getClients().isEmpty()) {
+            all.sendEvent(SCHEDULE_UPDATE_EVENT, scheduleUpdate(dimension, timestamp, new ArrayList<>(stations.values())));
+            pushed += stations.size();
+        }
+        for (Map.Entry<Long, DirectJsonValue> station : stations.entrySet()) {
+            BroadcastOperations room = currentServer.getRoomOperations(scheduleRoom(dimension, station.getKey()));
+            if (!room.getClients().isEmpty()) {
+                room.sendEvent(SCHEDULE_UPDATE_EVENT, scheduleUpdate(dimension, timestamp, Collections.singletonList(station.getValue())));
+                pushed++;
+            }
+        }
+        return pushed;
+    }
+
+    /**
+     * Whether any connected client is subscribed to station schedules of {@code dimension}.
+     */
+    public boolean hasScheduleSubscribers(String dimension) {
+        SocketIOServer currentServer = server;
+        if (currentServer == null) {
+            return false;
+        }
+        String all = scheduleRoom(dimension, null);
+        for (SocketIOClient client : currentServer.getAllClients()) {
+            for (String room : client.getAllRooms()) {
+                if (room.equals(all) || room.startsWith(all + "#")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends each subscriber of {@code dimension} the changed and removed trains of its routes, as one event.
+     *
+     * @return events sent
+     */
+    public int pushTrainDeltas(String dimension,
+                               long sampledAt,
+                               Map<UUID, Set<Long>> subscribers,
+                               Map<Long, List<Map<String, Object>>> changed,
+                               Map<Long, List<String>> removed) {
+        SocketIOServer currentServer = server;
+        if (currentServer == null) {
+            return 0;
+        }
+        int pushed = 0;
+        for (Map.Entry<UUID, Set<Long>> subscriber : subscribers.entrySet()) {
+            List<Map<String, Object>> trains = new ArrayList<>();
+            List<String> gone = new ArrayList<>();
+            for (Long routeId : subscriber.getValue()) {
+                trains.addAll(changed.getOrDefault(routeId, Collections.emptyList()));
+                gone.addAll(removed.getOrDefault(routeId, Collections.emptyList()));
+            }
+            if (trains.isEmpty() && gone.isEmpty()) {
+                continue;
+            }
+            SocketIOClient client = currentServer.getClient(subscriber.getKey());
+            if (client == null) {
+                continue;
+            }
+            Map<String, Object> update = new HashMap<>();
+            update.put("dimension", dimension);
+            update.put("sampled_at", sampledAt);
+            update.put("trains", trains);
+            update.put("removed", gone);
+            client.sendEvent(TRAIN_UPDATE_EVENT, update);
+            pushed++;
+        }
+        return pushed;
+    }
+
+    private static Map<String, Object> scheduleUpdate(String dimension,
+                                                      long timestamp,
+                                                      List<DirectJsonValue> stations) {
+        Map<String, Object> update = new HashMap<>();
+        update.put("dimension", dimension);
+        update.put("timestamp", timestamp);
+        update.put("stations", stations);
+        return update;
+    }
+
+    // null stationId: the room of clients subscribed to every station of the dimension
+    private static String scheduleRoom(String dimension, Long stationId) {
+        return SCHEDULE_ROOM_PREFIX + dimension + (stationId != null ? "#" + stationId : "");
+    }
+
+    private static void leaveScheduleRooms(SocketIOClient client, String dimension) {
+        String all = scheduleRoom(dimension, null);
+        for (String room : new ArrayList<>(client.getAllRooms())) {
+            if (room.equals(all) || room.startsWith(all + "#")) {
+                client.leaveRoom(room);
+            }
+        }
+    }
+
     private <T> void forwardBeaconAction(AckRequest ackSender, BeaconActionCall<T> call) {
-        BeaconProviderClient client = plugin.getBeaconProviderClient();
-        if (client == null || !client.isStarted()) {
+        CompletableFuture<BeaconActionCache.Result<T>> future = plugin.getBeaconActionCache().send(call);
+        if (future == null) {
             sendError(ackSender, "BEACON_PROVIDER_OFFLINE");
             return;
         }
         try {
-            BeaconActionResponse<T> response = client.sendAction(call).get(30, TimeUnit.SECONDS);
+            BeaconActionCache.Result<T> result = future.get(30, TimeUnit.SECONDS);
+            BeaconActionResponse<T> response = result.getResponse();
             Map<String, Object> resp = new HashMap<>();
             resp.put("success", response.isOk());
             resp.put("result", response.getResult().name());
             resp.put("message", response.getMessage());
             resp.put("request_id", response.getRequestId());
             resp.put("payload", response.getPayload());
+            resp.put("cache", result.getSource().name().toLowerCase(Locale.ROOT));
+            if (result.getSource() != BeaconActionCache.Source.PROVIDER) {
+                resp.put("cache_age_ms", result.getAgeMillis());
+            }
             ackSender.sendAckData(resp);
         } catch (InterruptedException ex) {
             Thread.currentThread().interrupt();
@@ -1145,7 +1767,7 @@ public class SocketServerManager {
         }
     }
 
-    private void forwardRailwaySnapshotAction(AckRequest ackSender, BeaconActionCall<ObjectNode> call) {
+    private void forwardRailwaySnapshotAction(AckRequest ackSender, BeaconActionCall<ObjectNode> call, Long sinceVersion) {
         BeaconProviderClient client = plugin.getBeaconProviderClient();
         if (client == null || !client.isStarted()) {
             sendError(ackSender, "BEACON_PROVIDER_OFFLINE");
@@ -1158,7 +1780,7 @@ public class SocketServerManager {
             resp.put("result", response.getResult().name());
             resp.put("message", response.getMessage());
             resp.put("request_id", response.getRequestId());
-            List<Map<String, Object>> snapshots = buildRailwaySnapshots(response.getPayload());
+            List<Map<String, Object>> snapshots = buildRailwaySnapshots(response.getPayload(), sinceVersion);
             resp.put("snapshots", snapshots);
             ackSender.sendAckData(resp);
         } catch (InterruptedException ex) {
@@ -1188,97 +1810,81 @@ public class SocketServerManager {
         }
     }
 
-    private List<Map<String, Object>> buildRailwaySnapshots(JsonNode payload) {
+    private List<Map<String, Object>> buildRailwaySnapshots(JsonNode payload, Long sinceVersion) {
         if (payload == null || !payload.has("snapshots") || !payload.get("snapshots").isArray()) {
             return Collections.emptyList();
         }
         List<Map<String, Object>> snapshots = new ArrayList<>();
         for (JsonNode snapshotNode : payload.get("snapshots")) {
             Map<String, Object> snapshot = new LinkedHashMap<>();
-            snapshot.put("dimension", snapshotNode.path("dimension").asText(null));
+            String dimension = snapshotNode.path("dimension").asText(null);
+            snapshot.put("dimension", dimension);
             snapshot.put("length", snapshotNode.has("length") ? snapshotNode.get("length").asLong() : null);
-            snapshot.put("payload", decodeRailwayPayload(snapshotNode));
+            MtrRailwaySnapshotCache.Snapshot decoded = decodeRailwayPayload(snapshotNode);
+            if (decoded == null) {
+                snapshot.put("payload", Collections.emptyMap());
+                snapshots.add(snapshot);
+                continue;
+            }
+            snapshot.put("version", decoded.getVersion());
+            if (sinceVersion != null && sinceVersion == decoded.getVersion()) {
+                snapshot.put("not_modified", true);
+                snapshots.add(snapshot);
+                continue;
+            }
+            Map<String, Object> changes = sinceVersion != null
+                    ? plugin.getMtrRailwaySnapshotCache().changesSince(decoded.getDimension(), sinceVersion)
+                    : null;
+            if (changes != null) {
+                snapshot.put("since_version", sinceVersion);
+                snapshot.put("changes", changes);
+            } else {
+                snapshot.put("payload", decoded.getPayloadJson());
+            }
             snapshots.add(snapshot);
         }
         return snapshots;
     }
 
-    private Map<String, Object> decodeRailwayPayload(JsonNode snapshotNode) {
+    private MtrRailwaySnapshotCache.Snapshot decodeRailwayPayload(JsonNode snapshotNode) {
         if (snapshotNode == null || snapshotNode.isNull()) {
-            return Collections.emptyMap();
+            return null;
         }
         String dimension = snapshotNode.path("dimension").asText("unknown");
-        String encoded = null;
+        byte[] decodedBytes = null;
         JsonNode payloadChunks = snapshotNode.path("payloadChunks");
         if (payloadChunks.isObject()) {
-            encoded = reassemblePayloadFromChunks(payloadChunks);
-            if (isNullOrEmpty(encoded)) {
-                plugin.getLogger().warning("Beacon Provider chunked payload for '" + dimension + "' is empty or invalid.");
-            }
-        }
-        if (isNullOrEmpty(encoded)) {
-            JsonNode payloadNode = snapshotNode.path("payload");
-            if (payloadNode.isTextual()) {
-                encoded = payloadNode.asText();
-            }
-        }
-        if (isNullOrEmpty(encoded)) {
-            return Collections.emptyMap();
+            decodedBytes = reassemblePayloadFromChunks(dimension, payloadChunks);
         }
         try {
-            byte[] decodedBytes = Base64.getDecoder().decode(encoded);
-            Object decoded = MtrMessagePackDecoder.decode(decodedBytes);
-            return filterRailwayPayload(decoded);
+            if (decodedBytes == null) {
+                JsonNode payloadNode = snapshotNode.path("payload");
+                if (!payloadNode.isTextual() || isNullOrEmpty(payloadNode.asText())) {
+                    return null;
+                }
+                decodedBytes = Base64.getDecoder().decode(payloadNode.asText());
+            }
+            return plugin.getMtrRailwaySnapshotCache().update(dimension, decodedBytes);
         } catch (IllegalArgumentException | MtrMessagePackDecoder.MtrMessagePackException ex) {
             plugin.getLogger().warning("Failed to decode MTR snapshot from provider: " + ex.getMessage());
-            return Collections.emptyMap();
+            return null;
         }
     }
 
-    private String reassemblePayloadFromChunks(JsonNode payloadChunks) {
+    private byte[] reassemblePayloadFromChunks(String dimension, JsonNode payloadChunks) {
         String encoding = payloadChunks.path("encoding").asText(null);
         if (encoding == null || !"base64".equalsIgnoreCase(encoding)) {
-            if (encoding != null) {
-                plugin.getLogger().warning("Unsupported chunk encoding: " + encoding);
-            }
-            return null;
-        }
-        JsonNode chunks = payloadChunks.path("chunks");
-        if (!chunks.isArray() || chunks.size() == 0) {
-            return null;
-        }
-        List<JsonNode> orderedChunks = new ArrayList<>();
-        for (JsonNode chunk : chunks) {
-            orderedChunks.add(chunk);
-        }
-        orderedChunks.sort(Comparator.comparingInt(chunk -> chunk.path("index").asInt(0)));
-        StringBuilder builder = new StringBuilder();
-        for (JsonNode chunk : orderedChunks) {
-            JsonNode dataNode = chunk.path("data");
-            if (!dataNode.isTextual()) {
-                continue;
-            }
-            builder.append(dataNode.asText());
-        }
-        return builder.length() > 0 ? builder.toString() : null;
-    }
-
-    private Map<String, Object> filterRailwayPayload(Object decoded) {
-        if (!(decoded instanceof Map)) {
-            return Collections.emptyMap();
-        }
-        Map<?, ?> raw = (Map<?, ?>) decoded;
-        Map<String, Object> filtered = new LinkedHashMap<>();
-        for (String key : RAILWAY_PAYLOAD_KEYS) {
-            if (raw.containsKey(key)) {
-                filtered.put(key, raw.get(key));
+            if (encoding != null) {
+                plugin.getLogger().warning("Unsupported chunk encoding: " + encoding);
             }
+            return null;
         }
-        Object lastDeployed = raw.get("last_deployed");
-        if (lastDeployed != null) {
-            filtered.put("last_deployed", lastDeployed);
+        try {
+            return ChunkedBase64Decoder.decode(payloadChunks.path("chunks"));
+        } catch (IllegalArgumentException ex) {
+            plugin.getLogger().warning("Beacon Provider chunked payload for '" + dimension + "' is incomplete or invalid: " + ex.getMessage());
+            return null;
         }
-        return filtered;
     }
 
     private boolean isNullOrEmpty(String value) {
@@ -1327,218 +1933,56 @@ public class SocketServerManager {
                                                           Set<String> filterKeys,
                                                           int page,
                                                           int pageSize) throws SQLException {
-        if (page <= 0) page = 1;
-        if (pageSize <= 0) pageSize = 100;
-        if (pageSize > 1000) pageSize = 1000;
-
-        Map<String, String> records = new HashMap<>();
-        Set<String> filters = filterKeys != null && !filterKeys.isEmpty() ? new HashSet<>(filterKeys) : null;
-        StringBuilder sql = new StringBuilder("SELECT advancement_key, value FROM player_advancements WHERE player_uuid = ?");
-        List<String> orderedFilters = null;
-        if (filters != null) {
-            orderedFilters = new ArrayList<>(filters);
-            sql.append(" AND advancement_key IN (");
-            for (int i = 0; i < orderedFilters.size(); i++) {
-                if (i > 0) {
-                    sql.append(',');
-                }
-                sql.append('?');
-            }
-            sql.append(')');
-        }
-
-        Map<String, Object> result = new HashMap<>();
-        try (Connection conn = plugin.getDatabaseManager().getConnection()) {
-            // count
-            StringBuilder countSql = new StringBuilder("SELECT COUNT(*) FROM player_advancements WHERE player_uuid = ?");
-            if (filters != null) {
-                countSql.append(" AND advancement_key IN (");
-                for (int i = 0; i < orderedFilters.size(); i++) {
-                    if (i > 0) {
-                        countSql.append(',');
-                    }
-                    countSql.append('?');
-                }
-                countSql.append(')');
-            }
-            try (PreparedStatement cps = conn.prepareStatement(countSql.toString())) {
-                int cidx = 1;
-                cps.setString(cidx++, playerUuid);
-                if (orderedFilters != null) {
-                    for (String key : orderedFilters) {
-                        cps.setString(cidx++, key);
-                    }
-                }
-                try (ResultSet crs = cps.executeQuery()) {
-                    result.put("total", crs.next() ? crs.getLong(1) : 0L);
-                }
-            }
-            long total = (long) result.get("total");
-            int offset = (page - 1) * pageSize;
-            if (offset >= total) { offset = 0; page = 1; }
-
-            sql.append(" LIMIT ? OFFSET ?");
-            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
-                int idx = 1;
-                ps.setString(idx++, playerUuid);
-                if (orderedFilters != null) {
-                    for (String key : orderedFilters) {
-                        ps.setString(idx++, key);
-                    }
-                }
-                ps.setInt(idx++, pageSize);
-                ps.setInt(idx, offset);
-                try (ResultSet rs = ps.executeQuery()) {
-                    while (rs.next()) {
-                        String key = rs.getString("advancement_key");
-                        if (filters != null && !filters.contains(key)) {
-                            continue;
-                        }
-                        byte[] valueBytes = rs.getBytes("value");
-                        String value = valueBytes != null
-                                ? new String(valueBytes, java.nio.charset.StandardCharsets.UTF_8)
-                                : null;
-                        records.put(key, value);
-                    }
-                }
-            }
-        }
-        result.put("records", records);
-        result.put("page", page);
-        result.put("page_size", pageSize);
-        return result;
+        return pagePlayerData(plugin.getPlayerDataCache().getAdvancements(playerUuid), filterKeys, page, pageSize);
     }
 
     private Map<String, Object> loadStatsForPlayer(String playerUuid,
                                                    Set<String> filterKeys,
                                                    int page,
                                                    int pageSize) throws SQLException {
+        return pagePlayerData(plugin.getPlayerDataCache().getStats(playerUuid), filterKeys, page, pageSize);
+    }
+
+    // Filters and pages a cached per-player map in key order
+    private <V> Map<String, Object> pagePlayerData(SortedMap<String, V> all,
+                                                   Set<String> filterKeys,
+                                                   int page,
+                                                   int pageSize) {
         if (page <= 0) page = 1;
         if (pageSize <= 0) pageSize = 100;
         if (pageSize > 1000) pageSize = 1000;
 
-        Map<String, Long> records = new HashMap<>();
-        Set<String> filters = filterKeys != null && !filterKeys.isEmpty() ? new HashSet<>(filterKeys) : null;
-        StringBuilder sql = new StringBuilder("SELECT stat_key, value FROM player_stats WHERE player_uuid = ?");
-        List<String> orderedFilters = null;
-        if (filters != null) {
-            orderedFilters = new ArrayList<>(filters);
-            sql.append(" AND stat_key IN (");
-            for (int i = 0; i < orderedFilters.size(); i++) {
-                if (i > 0) {
-                    sql.append(',');
+        List<Map.Entry<String, V>> matched = new ArrayList<>();
+        if (filterKeys != null && !filterKeys.isEmpty()) {
+            for (String key : new TreeSet<>(filterKeys)) {
+                V value = all.get(key);
+                if (value != null || all.containsKey(key)) {
+                    matched.add(new java.util.AbstractMap.SimpleImmutableEntry<>(key, value));
                 }
-                sql.append('?');
             }
-            sql.append(')');
+        } else {
+            matched.addAll(all.entrySet());
         }
 
-        Map<String, Object> result = new HashMap<>();
-        try (Connection conn = plugin.getDatabaseManager().getConnection()) {
-            StringBuilder countSql = new StringBuilder("SELECT COUNT(*) FROM player_stats WHERE player_uuid = ?");
-            if (filters != null) {
-                countSql.append(" AND stat_key IN (");
-                for (int i = 0; i < orderedFilters.size(); i++) {
-                    if (i > 0) {
-                        countSql.append(',');
-                    }
-                    countSql.append('?');
-                }
-                countSql.append(')');
-            }
-            try (PreparedStatement cps = conn.prepareStatement(countSql.toString())) {
-                int cidx = 1;
-                cps.setString(cidx++, playerUuid);
-                if (orderedFilters != null) {
-                    for (String key : orderedFilters) {
-                        cps.setString(cidx++, key);
-                    }
-                }
-                try (ResultSet crs = cps.executeQuery()) {
-                    result.put("total", crs.next() ? crs.getLong(1) : 0L);
-                }
-            }
-            long total = (long) result.get("total");
-            int offset = (page - 1) * pageSize;
-            if (offset >= total) { offset = 0; page = 1; }
+        long total = matched.size();
+        int offset = (page - 1) * pageSize;
+        if (offset >= total) { offset = 0; page = 1; }
 
-            sql.append(" LIMIT ? OFFSET ?");
-            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
-                int idx = 1;
-                ps.setString(idx++, playerUuid);
-                if (orderedFilters != null) {
-                    for (String key : orderedFilters) {
-                        ps.setString(idx++, key);
-                    }
-                }
-                ps.setInt(idx++, pageSize);
-                ps.setInt(idx, offset);
-                try (ResultSet rs = ps.executeQuery()) {
-                    while (rs.next()) {
-                        String key = rs.getString("stat_key");
-                        if (filters != null && !filters.contains(key)) {
-                            continue;
-                        }
-                        long value = rs.getLong("value");
-                        records.put(key, value);
-                    }
-                }
-            }
+        Map<String, V> records = new LinkedHashMap<>();
+        int end = (int) Math.min(total, (long) offset + pageSize);
+        for (int i = offset; i < end; i++) {
+            Map.Entry<String, V> entry = matched.get(i);
+            records.put(entry.getKey(), entry.getValue());
         }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("total", total);
         result.put("records", records);
         result.put("page", page);
         result.put("page_size", pageSize);
         return result;
     }
 
-    private List<Map<String, Object>> collectOnlinePlayers() {
-        List<Map<String, Object>> result = new ArrayList<>();
-        for (Player player : Bukkit.getOnlinePlayers()) {
-            Map<String, Object> item = new HashMap<>();
-            item.put("uuid", player.getUniqueId().toString());
-            item.put("name", player.getName());
-            item.put("health", player.getHealth());
-            item.put("max_health", player.getMaxHealth());
-            GameMode gameMode = player.getGameMode();
-            item.put("game_mode", gameMode != null ? gameMode.name() : null);
-            World world = player.getWorld();
-            item.put("world", world != null ? world.getName() : null);
-            result.add(item);
-        }
-        return result;
-    }
-
-    private Map<String, Object> collectServerTime() {
-        Map<String, Object> result = new HashMap<>();
-        World world = null;
-        for (World w : Bukkit.getWorlds()) {
-            world = w;
-            break;
-        }
-        if (world == null) {
-            result.put("world", null);
-            result.put("time", null);
-            result.put("full_time", null);
-            result.put("do_daylight_cycle", null);
-            return result;
-        }
-        result.put("world", world.getName());
-        result.put("time", world.getTime());
-        result.put("full_time", world.getFullTime());
-        String gamerule = world.getGameRuleValue("doDaylightCycle");
-        result.put("do_daylight_cycle", gamerule);
-        return result;
-    }
-
-    private Map<String, Object> collectServerBasics() {
-        Map<String, Object> result = new HashMap<>();
-        int maxPlayers = Bukkit.getMaxPlayers();
-        int online = Bukkit.getOnlinePlayers().size();
-        result.put("server_max_players", maxPlayers);
-        result.put("online_player_count", online);
-        return result;
-    }
-
     private Map<String, Object> loadMtrLogs(String playerUuid,
                                             String singleDate,
                                             String startDate,
@@ -2024,19 +2468,111 @@ public class SocketServerManager {
         return result;
     }
 
+    private Map<String, Object> loadItemHolders(String itemId,
+                                                String container,
+                                                Integer pageParam,
+                                                Integer pageSizeParam) throws SQLException {
+        int page = pageParam != null ? pageParam : 1;
+        int pageSize = pageSizeParam != null ? pageSizeParam : 100;
+        if (page <= 0) page = 1;
+        if (pageSize <= 0) pageSize = 100;
+        if (pageSize > 1000) pageSize = 1000;
+
+        String where = " WHERE i.item_id = ?" + (container != null ? " AND i.container = ?" : "");
+        Map<String, Object> result = new HashMap<>();
+        List<Map<String, Object>> records = new ArrayList<>();
+        try (Connection conn = plugin.getDatabaseManager().getConnection()) {
+            long total;
+            long totalCount;
+            try (PreparedStatement cps = conn.prepareStatement(
+                    "SELECT COUNT(DISTINCT i.player_uuid), COALESCE(SUM(i.count), 0) FROM player_inventory_items i" + where)) {
+                cps.setString(1, itemId);
+                if (container != null) cps.setString(2, container);
+                try (ResultSet rs = cps.executeQuery()) {
+                    total = rs.next() ? rs.getLong(1) : 0L;
+                    totalCount = total > 0 ? rs.getLong(2) : 0L;
+                }
+            }
+            int offset = (page - 1) * pageSize;
+            if (offset >= total) {
+                offset = 0;
+                page = 1;
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT i.player_uuid, MAX(p.player_name) AS player_name, SUM(i.count) AS total_count, SUM(i.stacks) AS stacks, " +
+                            "SUM(CASE WHEN i.container = '" + NbtIdentityScanner.CONTAINER_INVENTORY + "' THEN i.count ELSE 0 END) AS inventory_count, " +
+                            "SUM(CASE WHEN i.container = '" + NbtIdentityScanner.CONTAINER_ENDER_CHEST + "' THEN i.count ELSE 0 END) AS ender_chest_count, " +
+                            "MAX(i.last_updated) AS last_updated " +
+                            "FROM player_inventory_items i LEFT JOIN player_identities p ON p.player_uuid = i.player_uuid" + where +
+                            " GROUP BY i.player_uuid ORDER BY total_count DESC, i.player_uuid LIMIT ? OFFSET ?")) {
+                int idx = 1;
+                ps.setString(idx++, itemId);
+                if (container != null) ps.setString(idx++, container);
+                ps.setInt(idx++, pageSize);
+                ps.setInt(idx, offset);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Map<String, Object> row = new HashMap<>();
+                        row.put("player_uuid", rs.getString("player_uuid"));
+                        row.put("player_name", rs.getString("player_name"));
+                        row.put("count", rs.getLong("total_count"));
+                        row.put("stacks", rs.getLong("stacks"));
+                        row.put("inventory_count", rs.getLong("inventory_count"));
+                        row.put("ender_chest_count", rs.getLong("ender_chest_count"));
+                        row.put("last_updated", rs.getLong("last_updated"));
+                        records.add(row);
+                    }
+                }
+            }
+            result.put("total", total);
+            result.put("total_count", totalCount);
+        }
+        result.put("item_id", itemId);
+        result.put("records", records);
+        result.put("page", page);
+        result.put("page_size", pageSize);
+        return result;
+    }
+
+    private String normalizeItemId(String itemId) {
+        if (itemId == null) return null;
+        String trimmed = itemId.trim().toLowerCase(java.util.Locale.ROOT);
+        if (trimmed.isEmpty()) return null;
+        return trimmed.indexOf(':') >= 0 ? trimmed : "minecraft:" + trimmed;
+    }
+
     private String ensurePlayerUuid(String playerUuid, String playerName) throws SQLException {
         if (playerUuid != null && !playerUuid.isEmpty()) return playerUuid;
         if (playerName != null && !playerName.isEmpty()) return resolveUuidByName(playerName);
         return null;
     }
 
+    // the identity index answers once loaded; before that (or if loading failed) lookups query SQLite directly
+    private PlayerIdentityIndex loadedIdentityIndex() {
+        PlayerIdentityIndex index = plugin.getIdentityIndex();
+        return index != null && index.isLoaded() ? index : null;
+    }
+
     private String resolveUuidByName(String playerName) throws SQLException {
-        try (Connection conn = plugin.getDatabaseManager().getConnection();
-             PreparedStatement ps = conn.prepareStatement(
-                     "SELECT player_uuid FROM player_identities WHERE player_name = ? ORDER BY last_updated DESC LIMIT 1")) {
-            ps.setString(1, playerName);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) return rs.getString(1);
+        PlayerIdentityIndex index = loadedIdentityIndex();
+        if (index != null) {
+            return index.resolveUuid(playerName);
+        }
+        try (Connection conn = plugin.getDatabaseManager().getConnection()) {
+            // same order as the index: a current name first, then the latest session seen with it
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT player_uuid FROM player_identities WHERE player_name = ? COLLATE NOCASE ORDER BY last_updated DESC LIMIT 1")) {
+                ps.setString(1, playerName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) return rs.getString(1);
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT player_uuid FROM player_sessions WHERE player_name = ? COLLATE NOCASE ORDER BY occurred_at DESC LIMIT 1")) {
+                ps.setString(1, playerName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) return rs.getString(1);
+                }
             }
         }
         return null;
@@ -2044,6 +2580,11 @@ public class SocketServerManager {
 
     private Map<String, Object> loadIdentityByUuid(String playerUuid) throws SQLException {
         if (playerUuid == null || playerUuid.isEmpty()) return null;
+        PlayerIdentityIndex index = loadedIdentityIndex();
+        if (index != null) {
+            PlayerIdentityIndex.Identity identity = index.getByUuid(playerUuid);
+            return identity != null ? identity.toMap() : null;
+        }
         try (Connection conn = plugin.getDatabaseManager().getConnection();
              PreparedStatement ps = conn.prepareStatement(
                      "SELECT player_uuid, player_name, first_played, last_played, last_updated FROM player_identities WHERE player_uuid = ?")) {
@@ -2059,17 +2600,13 @@ public class SocketServerManager {
 
     private Map<String, Object> loadIdentityByName(String playerName) throws SQLException {
         if (playerName == null || playerName.isEmpty()) return null;
-        try (Connection conn = plugin.getDatabaseManager().getConnection();
-             PreparedStatement ps = conn.prepareStatement(
-                     "SELECT player_uuid, player_name, first_played, last_played, last_updated FROM player_identities WHERE player_name = ? ORDER BY last_updated DESC LIMIT 1")) {
-            ps.setString(1, playerName);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return mapIdentityRow(rs);
-                }
-            }
+        PlayerIdentityIndex index = loadedIdentityIndex();
+        if (index != null) {
+            PlayerIdentityIndex.Identity identity = index.getByName(playerName);
+            return identity != null ? identity.toMap() : null;
         }
-        return null;
+        String uuid = resolveUuidByName(playerName);
+        return uuid != null ? loadIdentityByUuid(uuid) : null;
     }
 
     private Map<String, Object> mapIdentityRow(ResultSet rs) throws SQLException {
@@ -2164,6 +2701,11 @@ public class SocketServerManager {
             upi.setLong(5, now);
             upi.executeUpdate();
         }
+        // auto-commit connection: the row is committed, so the index may follow
+        PlayerIdentityIndex index = plugin.getIdentityIndex();
+        if (index != null) {
+            index.update(playerUuid, playerName, firstPlayed, lastPlayed, now);
+        }
     }
 
     private Long extractLongFromIdentityMap(Map<String, Object> root, String key, Map<?, ?> bukkitSection) {
@@ -2231,65 +2773,76 @@ public class SocketServerManager {
         }
 
         boolean includePayload = request.getIncludePayload() == null || request.getIncludePayload();
-
-        List<String> selectColumns = new ArrayList<>();
-        selectColumns.add("entity_id");
-        selectColumns.addAll(category.getMetadataColumns());
-        selectColumns.add("file_path");
-        selectColumns.add("payload");
-        selectColumns.add("last_updated");
-        StringBuilder sql = new StringBuilder("SELECT ");
-        sql.append(String.join(", ", selectColumns));
-        sql.append(" FROM ").append(category.getTableName()).append(" WHERE 1=1");
-        List<Object> params = new ArrayList<>();
-
         String dimensionContext = normalizeMtrDimensionContext(request.getDimensionContext());
-        if (dimensionContext != null) {
-            sql.append(" AND dimension_context = ?");
-            params.add(dimensionContext);
-        }
 
-        Map<String, Object> filters = request.getFilters();
-        if (filters != null) {
-            for (Map.Entry<String, Object> entry : filters.entrySet()) {
+        Map<String, Object> filters = new TreeMap<>();
+        if (request.getFilters() != null) {
+            for (Map.Entry<String, Object> entry : request.getFilters().entrySet()) {
                 String column = entry.getKey();
-                if (column == null || !category.isFilterableColumn(column)) {
-                    continue;
+                if (column != null && category.isFilterableColumn(column)) {
+                    filters.put(column, entry.getValue());
                 }
-                sql.append(" AND ").append(column).append(" = ?");
-                params.add(entry.getValue());
             }
         }
 
-        sql.append(" ORDER BY ").append(orderBy).append(' ').append(orderDir);
-        if (!requestAll) {
-            sql.append(" LIMIT ? OFFSET ?");
-            params.add(limit);
-            params.add(offset);
+        MtrQueryCache cache = plugin.getMtrQueryCache();
+        long version = cache.currentVersion(dimensionContext);
+        if (request.getIfVersion() != null && request.getIfVersion() == version) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("not_modified", true);
+            result.put("version", version);
+            result.put("category", category.getKey());
+            return result;
         }
 
-        List<Map<String, Object>> rows = new ArrayList<>();
-        try (Connection conn = plugin.getDatabaseManager().getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
-            for (int i = 0; i < params.size(); i++) {
-                ps.setObject(i + 1, params.get(i));
-            }
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    Map<String, Object> row = new HashMap<>();
-                    row.put("entity_id", rs.getString("entity_id"));
-                    for (String column : category.getMetadataColumns()) {
-                        row.put(column, rs.getObject(column));
-                    }
-                    row.put("file_path", rs.getString("file_path"));
-                    row.put("last_updated", rs.getLong("last_updated"));
-                    if (includePayload) {
-                        String payload = rs.getString("payload");
-                        row.put("payload", parseJsonOrString(payload));
-                    }
-                    rows.add(row);
-                }
-            }
+        StringBuilder cacheKey = new StringBuilder(category.getKey())
+                .append('|').append(dimensionContext)
+                .append('|').append(requestAll ? "all" : limit + "@" + offset)
+                .append('|').append(orderBy).append(' ').append(orderDir)
+                .append('|').append(includePayload);
+        for (Map.Entry<String, Object> entry : filters.entrySet()) {
+            Object value = entry.getValue();
+            cacheKey.append('|').append(entry.getKey()).append('=')
+                    .append(value != null ? value.getClass().getSimpleName() + ":" + value : "null");
+        }
+        Map<String, Object> cached = cache.get(cacheKey.toString(), version);
+        if (cached == null) {
+            cached = runMtrEntityQuery(category, dimensionContext, filters, limit, offset, requestAll,
+                    orderBy, orderDir, includePayload);
+            cache.put(cacheKey.toString(), dimensionContext, version, cached);
+        }
+        // cached maps are shared between callers; the handler adds "success" to its own copy
+        Map<String, Object> result = new HashMap<>(cached);
+        result.put("not_modified", false);
+        result.put("version", version);
+        return result;
+    }
+
+    private Map<String, Object> runMtrEntityQuery(MtrCategory category,
+                                                  String dimensionContext,
+                                                  Map<String, Object> filters,
+                                                  int limit,
+                                                  int offset,
+                                                  boolean requestAll,
+                                                  String orderBy,
+                                                  String orderDir,
+                                                  boolean includePayload) throws SQLException {
+        List<MtrEntity> entities = plugin.getMtrEntityStore().select(category, dimensionContext, filters, orderBy,
+                "DESC".equals(orderDir), requestAll ? 0 : offset, requestAll ? -1 : limit);
+        List<Map<String, Object>> rows = new ArrayList<>(entities.size());
+        for (MtrEntity entity : entities) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("entity_id", entity.getEntityId());
+            for (String column : category.getMetadataColumns()) {
+                row.put(column, entity.getColumn(column));
+            }
+            row.put("file_path", entity.getFilePath());
+            row.put("last_updated", entity.getLastUpdated());
+            if (includePayload) {
+                // stored payload JSON is written into the ack as-is
+                row.put("payload", entity.getPayload());
+            }
+            rows.add(row);
         }
 
         Map<String, Object> result = new HashMap<>();
@@ -2302,6 +2855,42 @@ public class SocketServerManager {
         return result;
     }
 
+    private static final int DEFAULT_MTR_VIEWPORT_LIMIT = 5000;
+    private static final int MAX_MTR_VIEWPORT_LIMIT = 20000;
+
+    private Map<String, Object> toViewportRail(MtrNetworkGraph.RailNode rail) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("node_pos", rail.getPos());
+        row.put("x", MtrNetworkGraph.blockX(rail.getPos()));
+        row.put("y", MtrNetworkGraph.blockY(rail.getPos()));
+        row.put("z", MtrNetworkGraph.blockZ(rail.getPos()));
+        List<Map<String, Object>> connections = new ArrayList<>(rail.getTargets().length);
+        for (int i = 0; i < rail.getTargets().length; i++) {
+            long target = rail.getTargets()[i];
+            Map<String, Object> connection = new HashMap<>();
+            connection.put("node_pos", target);
+            connection.put("x", MtrNetworkGraph.blockX(target));
+            connection.put("y", MtrNetworkGraph.blockY(target));
+            connection.put("z", MtrNetworkGraph.blockZ(target));
+            connection.put("rail_type", rail.getRailTypes()[i]);
+            connections.add(connection);
+        }
+        row.put("connections", connections);
+        return row;
+    }
+
+    private Map<String, Object> toViewportStation(MtrNetworkGraph.Station station) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", station.getId());
+        row.put("name", station.getName());
+        row.put("color", station.getColor());
+        row.put("x_min", station.getMinX());
+        row.put("z_min", station.getMinZ());
+        row.put("x_max", station.getMaxX());
+        row.put("z_max", station.getMaxZ());
+        return row;
+    }
+
     private String normalizeMtrDimensionContext(String raw) {
         if (raw == null) {
             return null;
@@ -2337,21 +2926,6 @@ public class SocketServerManager {
         return value;
     }
 
-    private Object parseJsonOrString(String raw) {
-        if (raw == null) {
-            return null;
-        }
-        String trimmed = raw.trim();
-        if (trimmed.isEmpty()) {
-            return "";
-        }
-        try {
-            return ACTION_LOG_MAPPER.readValue(trimmed, Object.class);
-        } catch (IOException ignored) {
-            return raw;
-        }
-    }
-
     private Map<String, Object> executeSelectSql(String sql, Integer maxRows) throws SQLException {
         if (sql == null || sql.trim().isEmpty()) {
             throw new IllegalArgumentException("sql is required");
@@ -2409,11 +2983,15 @@ public class SocketServerManager {
     }
 
     private List<String> resolveNamesForUuids(Set<String> uuids) throws SQLException {
+        PlayerIdentityIndex index = loadedIdentityIndex();
+        if (index != null) {
+            return index.resolveNames(uuids);
+        }
         List<String> names = new ArrayList<>();
         if (uuids == null) return names;
         try (Connection conn = plugin.getDatabaseManager().getConnection();
              PreparedStatement ps = conn.prepareStatement(
-                     "SELECT player_name FROM player_identities WHERE player_uuid = ? ORDER BY last_updated DESC LIMIT 1")) {
+                     "SELECT player_name FROM player_identities WHERE player_uuid = ?")) {
             for (String uuid : uuids) {
                 ps.setString(1, uuid);
                 try (ResultSet rs = ps.executeQuery()) {
@@ -2563,6 +3141,30 @@ public class SocketServerManager {
         // intentionally empty
     }
 
+    public static class MtrScheduleSubscriptionRequest extends MtrDimensionRequest {
+        private List<Long> stationIds;
+
+        public List<Long> getStationIds() {
+            return stationIds;
+        }
+
+        public void setStationIds(List<Long> stationIds) {
+            this.stationIds = stationIds;
+        }
+    }
+
+    public static class MtrTrainSubscriptionRequest extends MtrDimensionRequest {
+        private List<Long> routeIds;
+
+        public List<Long> getRouteIds() {
+            return routeIds;
+        }
+
+        public void setRouteIds(List<Long> routeIds) {
+            this.routeIds = routeIds;
+        }
+    }
+
     public static class MtrDepotRequest extends MtrDimensionRequest {
         private long depotId;
 
@@ -2578,6 +3180,7 @@ public class SocketServerManager {
     public static class MtrRailwaySnapshotRequest implements AuthPayload {
         private String key;
         private String dimension;
+        private Long sinceVersion;
 
         public MtrRailwaySnapshotRequest() {
         }
@@ -2598,6 +3201,14 @@ public class SocketServerManager {
         public void setDimension(String dimension) {
             this.dimension = dimension;
         }
+
+        public Long getSinceVersion() {
+            return sinceVersion;
+        }
+
+        public void setSinceVersion(Long sinceVersion) {
+            this.sinceVersion = sinceVersion;
+        }
     }
 
     public static class ForceUpdateRequest implements AuthPayload {
@@ -2622,6 +3233,7 @@ public class SocketServerManager {
         private List<String> keys; // optional filter
         private Integer page;      // optional, for paginated queries
         private Integer pageSize;  // optional, for paginated queries
+        private List<String> paths; // optional, get_player_nbt projection
 
         public PlayerIdentityRequest() {
         }
@@ -2651,6 +3263,8 @@ public class SocketServerManager {
         public void setPage(Integer page) { this.page = page; }
         public Integer getPageSize() { return pageSize; }
         public void setPageSize(Integer pageSize) { this.pageSize = pageSize; }
+        public List<String> getPaths() { return paths; }
+        public void setPaths(List<String> paths) { this.paths = paths; }
     }
 
     public static class PlayerIdentitiesListRequest implements AuthPayload {
@@ -2668,6 +3282,27 @@ public class SocketServerManager {
         public void setPageSize(Integer pageSize) { this.pageSize = pageSize; }
     }
 
+    public static class ItemHoldersRequest implements AuthPayload {
+        private String key;
+        private String itemId;
+        private String container; // optional: inventory / ender_chest
+        private Integer page;
+        private Integer pageSize;
+
+        public ItemHoldersRequest() {}
+
+        public String getKey() { return key; }
+        public void setKey(String key) { this.key = key; }
+        public String getItemId() { return itemId; }
+        public void setItemId(String itemId) { this.itemId = itemId; }
+        public String getContainer() { return container; }
+        public void setContainer(String container) { this.container = container; }
+        public Integer getPage() { return page; }
+        public void setPage(Integer page) { this.page = page; }
+        public Integer getPageSize() { return pageSize; }
+        public void setPageSize(Integer pageSize) { this.pageSize = pageSize; }
+    }
+
     public static class MtrLogsQueryRequest implements AuthPayload {
         private String key;
         private String playerUuid; // optional
@@ -2817,6 +3452,7 @@ public class SocketServerManager {
         private String orderDir;
         private Boolean includePayload;
         private Boolean all;
+        private Long ifVersion;
 
         public MtrQueryRequest() {}
 
@@ -2838,6 +3474,74 @@ public class SocketServerManager {
         public void setIncludePayload(Boolean includePayload) { this.includePayload = includePayload; }
         public Boolean getAll() { return all; }
         public void setAll(Boolean all) { this.all = all; }
+        public Long getIfVersion() { return ifVersion; }
+        public void setIfVersion(Long ifVersion) { this.ifVersion = ifVersion; }
+    }
+
+    public static class MtrJourneyRequest extends AuthOnlyRequest {
+        private String dimensionContext;
+        private Long fromStationId;
+        private Long toStationId;
+        private String mode;
+
+        public MtrJourneyRequest() {}
+
+        public String getDimensionContext() { return dimensionContext; }
+        public void setDimensionContext(String dimensionContext) { this.dimensionContext = dimensionContext; }
+        public Long getFromStationId() { return fromStationId; }
+        public void setFromStationId(Long fromStationId) { this.fromStationId = fromStationId; }
+        public Long getToStationId() { return toStationId; }
+        public void setToStationId(Long toStationId) { this.toStationId = toStationId; }
+        public String getMode() { return mode; }
+        public void setMode(String mode) { this.mode = mode; }
+    }
+
+    public static class MtrViewportRequest extends AuthOnlyRequest {
+        private String dimensionContext;
+        private Integer minX;
+        private Integer minZ;
+        private Integer maxX;
+        private Integer maxZ;
+        private Boolean includeRails;
+        private Boolean includeStations;
+        private Integer limit;
+
+        public MtrViewportRequest() {}
+
+        public String getDimensionContext() { return dimensionContext; }
+        public void setDimensionContext(String dimensionContext) { this.dimensionContext = dimensionContext; }
+        public Integer getMinX() { return minX; }
+        public void setMinX(Integer minX) { this.minX = minX; }
+        public Integer getMinZ() { return minZ; }
+        public void setMinZ(Integer minZ) { this.minZ = minZ; }
+        public Integer getMaxX() { return maxX; }
+        public void setMaxX(Integer maxX) { this.maxX = maxX; }
+        public Integer getMaxZ() { return maxZ; }
+        public void setMaxZ(Integer maxZ) { this.maxZ = maxZ; }
+        public Boolean getIncludeRails() { return includeRails; }
+        public void setIncludeRails(Boolean includeRails) { this.includeRails = includeRails; }
+        public Boolean getIncludeStations() { return includeStations; }
+        public void setIncludeStations(Boolean includeStations) { this.includeStations = includeStations; }
+        public Integer getLimit() { return limit; }
+        public void setLimit(Integer limit) { this.limit = limit; }
+    }
+
+    public static class MtrTileRequest extends AuthOnlyRequest {
+        private String dimensionContext;
+        private Integer zoom;
+        private Integer x;
+        private Integer z;
+
+        public MtrTileRequest() {}
+
+        public String getDimensionContext() { return dimensionContext; }
+        public void setDimensionContext(String dimensionContext) { this.dimensionContext = dimensionContext; }
+        public Integer getZoom() { return zoom; }
+        public void setZoom(Integer zoom) { this.zoom = zoom; }
+        public Integer getX() { return x; }
+        public void setX(Integer x) { this.x = x; }
+        public Integer getZ() { return z; }
+        public void setZ(Integer z) { this.z = z; }
     }
 
     public static class PlayerBalanceRequest implements AuthPayload {
@@ -2860,4 +3564,31 @@ public class SocketServerManager {
         public long getAmount() { return amount; }
         public void setAmount(long amount) { this.amount = amount; }
     }
+
+    public static class BalanceBatchRequest implements AuthPayload {
+        private String key;
+        private List<BalanceOperation> operations;
+
+        public BalanceBatchRequest() {}
+
+        public String getKey() { return key; }
+        public void setKey(String key) { this.key = key; }
+        public List<BalanceOperation> getOperations() { return operations; }
+        public void setOperations(List<BalanceOperation> operations) { this.operations = operations; }
+    }
+
+    public static class BalanceOperation {
+        private String op;
+        private String playerName;
+        private Long amount;
+
+        public BalanceOperation() {}
+
+        public String getOp() { return op; }
+        public void setOp(String op) { this.op = op; }
+        public String getPlayerName() { return playerName; }
+        public void setPlayerName(String playerName) { this.playerName = playerName; }
+        public Long getAmount() { return amount; }
+        public void setAmount(Long amount) { this.amount = amount; }
+    }
 }
@@ -14,7 +14,7 @@ public class DatabaseManager {
 
     private final Plugin plugin;
     private final String jdbcUrl;
-    private static final int CURRENT_SCHEMA_VERSION = 2;
+    private static final int CURRENT_SCHEMA_VERSION = 3;
     private static final String CREATE_MTR_RAILS_TABLE_SQL =
             "CREATE TABLE IF NOT EXISTS mtr_rails (" +
                     "id INTEGER PRIMARY KEY AUTOINCREMENT," +
@@ -182,6 +182,20 @@ public class DatabaseManager {
                             ")"
             );
 
+            // Per-player item totals from playerdata Inventory/EnderItems, rebuilt when the .dat changes
+            statement.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS player_inventory_items (" +
+                            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                            "player_uuid TEXT NOT NULL," +
+                            "container TEXT NOT NULL," +
+                            "item_id TEXT NOT NULL," +
+                            "count INTEGER NOT NULL," +
+                            "stacks INTEGER NOT NULL," +
+                            "last_updated INTEGER NOT NULL," +
+                            "UNIQUE(player_uuid, container, item_id)" +
+                            ")"
+            );
+
             statement.executeUpdate(
                     "CREATE TABLE IF NOT EXISTS mtr_world_files (" +
                             "id INTEGER PRIMARY KEY AUTOINCREMENT," +
@@ -288,6 +302,7 @@ public class DatabaseManager {
         applyMigrations(connection);
 
         try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_player_inventory_items_item ON player_inventory_items(item_id, player_uuid)");
             statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_mtr_world_files_category ON mtr_world_files(category)");
             statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_mtr_world_files_dimension ON mtr_world_files(dimension_context)");
             statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_mtr_depots_dimension ON mtr_depots(dimension_context)");
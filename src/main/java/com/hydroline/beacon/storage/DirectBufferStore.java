@@ -0,0 +1,74 @@
+package com.hydroline.beacon.storage;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Capacity-bounded allocator of read-only direct buffers for large serialized payloads that would otherwise
+ * sit on the server heap as long-lived object trees. Callers {@link #release} a buffer once it has been
+ * replaced; the memory itself is returned when the buffer is collected, so readers still holding it are safe.
+ * <p>
+ * The capacity therefore bounds the live payloads, not the native footprint: released buffers stay allocated
+ * until the next GC cycle collects them. When the JVM's direct memory limit ({@code -XX:MaxDirectMemorySize},
+ * by default the max heap size) is reached, {@link ByteBuffer#allocateDirect} triggers {@code System.gc()}
+ * to reclaim them and throws if that is not enough; the store then reports null so the caller keeps the
+ * payload on the heap. Keep the capacity well below that limit.
+ */
+public class DirectBufferStore {
+
+    private final long capacityBytes;
+    private long usedBytes;
+    private int buffers;
+    private long rejected;
+
+    public DirectBufferStore(long capacityBytes) {
+        this.capacityBytes = Math.max(0L, capacityBytes);
+    }
+
+    /**
+     * Copies {@code data} into a new direct buffer, or returns null when it would exceed the capacity or the
+     * JVM's direct memory limit.
+     */
+    public ByteBuffer store(byte[] data) {
+        synchronized (this) {
+            if (usedBytes + data.length > capacityBytes) {
+                rejected++;
+                return null;
+            }
+            usedBytes += data.length;
+            buffers++;
+        }
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.allocateDirect(data.length);
+        } catch (OutOfMemoryError e) {
+            synchronized (this) {
+                usedBytes -= data.length;
+                buffers--;
+                rejected++;
+            }
+            return null;
+        }
+        buffer.put(data);
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        usedBytes -= buffer.capacity();
+        buffers--;
+    }
+
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("capacity_bytes", capacityBytes);
+        metrics.put("used_bytes", usedBytes);
+        metrics.put("buffers", buffers);
+        metrics.put("rejected", rejected);
+        return metrics;
+    }
+}
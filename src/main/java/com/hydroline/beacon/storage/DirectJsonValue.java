@@ -0,0 +1,77 @@
+package com.hydroline.beacon.storage;
+
+import com.fasterxml.jackson.core.JsonGenerationException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pre-serialized JSON embedded as a raw value, streamed into the generator from its buffer in small chunks.
+ * Unlike {@code RawValue(new String(bytes))} no full copy of the payload is made on the heap per response.
+ */
+public final class DirectJsonValue implements JsonSerializable {
+    private static final int CHUNK_CHARS = 8192;
+
+    private final ByteBuffer json;
+
+    public DirectJsonValue(ByteBuffer json) {
+        this.json = json;
+    }
+
+    public DirectJsonValue(byte[] json) {
+        this(ByteBuffer.wrap(json));
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        // a private view: concurrent responses never share the buffer position
+        ByteBuffer in = json.duplicate();
+        in.rewind();
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer chunk = CharBuffer.allocate(CHUNK_CHARS);
+        boolean first = true;
+        boolean done = false;
+        while (!done) {
+            CoderResult result = decoder.decode(in, chunk, true);
+            if (result.isUnderflow()) {
+                result = decoder.flush(chunk);
+                done = result.isUnderflow();
+            }
+            if (result.isError()) {
+                throw new JsonGenerationException("Invalid UTF-8 in stored JSON", gen);
+            }
+            chunk.flip();
+            int length = chunk.remaining();
+            // never split a surrogate pair across two writes; the generator rejects a lone high surrogate
+            if (!done && length > 0 && Character.isHighSurrogate(chunk.get(chunk.limit() - 1))) {
+                length--;
+            }
+            if (first) {
+                // writeRawValue also emits the separator the current context expects
+                gen.writeRawValue(chunk.array(), chunk.position(), length);
+                first = false;
+            } else if (length > 0) {
+                gen.writeRaw(chunk.array(), chunk.position(), length);
+            }
+            chunk.position(chunk.position() + length);
+            chunk.compact();
+        }
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+            throws IOException {
+        serialize(gen, serializers);
+    }
+}
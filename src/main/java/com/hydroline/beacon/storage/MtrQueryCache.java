@@ -0,0 +1,196 @@
+package com.hydroline.beacon.storage;
+
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Response cache for query_mtr_entities. Entries are tagged with the mtr_dimension_versions.last_updated
+ * of their dimension (or the newest version of any dimension for unscoped queries) and are dropped when
+ * MtrWorldScanner reports a version bump for that dimension. The cache is bounded by the estimated serialized
+ * size of its responses (LRU); a response larger than the whole budget, such as an unfiltered full-table
+ * query, is never cached.
+ */
+public class MtrQueryCache {
+
+    // per map entry / list element: quotes, colon, comma
+    private static final long JSON_OVERHEAD = 4L;
+    private static final long SCALAR_WEIGHT = 8L;
+
+    private final DatabaseManager db;
+    private final long maxWeight;
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private volatile boolean versionsLoaded;
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public MtrQueryCache(DatabaseManager db, long maxWeightBytes) {
+        this.db = db;
+        this.maxWeight = Math.max(1L, maxWeightBytes);
+    }
+
+    /**
+     * Current version of one dimension, or of all dimensions when {@code dimensionContext} is null.
+     * 0 when nothing has been scanned yet.
+     */
+    public long currentVersion(String dimensionContext) throws SQLException {
+        ensureVersionsLoaded();
+        if (dimensionContext != null) {
+            Long version = versions.get(dimensionContext);
+            return version != null ? version : 0L;
+        }
+        long max = 0L;
+        for (Long version : versions.values()) {
+            max = Math.max(max, version);
+        }
+        return max;
+    }
+
+    /**
+     * Cached result for {@code key} if it was built at {@code version}, otherwise null.
+     */
+    public synchronized Map<String, Object> get(String key, long version) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.version == version) {
+            hits++;
+            return entry.result;
+        }
+        misses++;
+        return null;
+    }
+
+    public void put(String key, String dimensionContext, long version, Map<String, Object> result) {
+        long resultWeight = weigh(result);
+        synchronized (this) {
+            if (resultWeight > maxWeight) {
+                remove(key);
+                return;
+            }
+            Entry previous = entries.put(key, new Entry(dimensionContext, version, result, resultWeight));
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += resultWeight;
+            Iterator<Entry> it = entries.values().iterator();
+            while (weight > maxWeight && it.hasNext()) {
+                weight -= it.next().weight;
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Called by the scanner after committing changes to the given dimensions.
+     */
+    public void onDimensionsUpdated(Collection<String> dimensionContexts, long version) {
+        if (dimensionContexts.isEmpty()) {
+            return;
+        }
+        for (String dimensionContext : dimensionContexts) {
+            versions.put(dimensionContext, version);
+        }
+        synchronized (this) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.dimensionContext == null || dimensionContexts.contains(entry.dimensionContext)) {
+                    weight -= entry.weight;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long requests = hits + misses;
+        metrics.put("hits", hits);
+        metrics.put("misses", misses);
+        metrics.put("hit_ratio", requests > 0 ? (double) hits / requests : 0.0);
+        metrics.put("entries", entries.size());
+        metrics.put("weight_bytes", weight);
+        metrics.put("max_weight_bytes", maxWeight);
+        metrics.put("evictions", evictions);
+        return metrics;
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    // Approximate size of the value written as JSON, in characters.
+    private static long weigh(Object value) {
+        if (value instanceof Map) {
+            long total = 2L;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                total += JSON_OVERHEAD + String.valueOf(e.getKey()).length() + weigh(e.getValue());
+            }
+            return total;
+        }
+        if (value instanceof Collection) {
+            long total = 2L;
+            for (Object element : (Collection<?>) value) {
+                total += 1L + weigh(element);
+            }
+            return total;
+        }
+        if (value instanceof String) {
+            return 2L + ((String) value).length();
+        }
+        if (value instanceof RawValue) {
+            Object raw = ((RawValue) value).rawValue();
+            return raw instanceof String ? ((String) raw).length() : SCALAR_WEIGHT;
+        }
+        return SCALAR_WEIGHT;
+    }
+
+    private void ensureVersionsLoaded() throws SQLException {
+        if (versionsLoaded) {
+            return;
+        }
+        synchronized (versions) {
+            if (versionsLoaded) {
+                return;
+            }
+            try (Connection conn = db.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(
+                         "SELECT dimension_context, last_updated FROM mtr_dimension_versions");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    // a bump reported while loading is at least as new as the stored row
+                    versions.merge(rs.getString(1), rs.getLong(2), Math::max);
+                }
+            }
+            versionsLoaded = true;
+        }
+    }
+
+    private static final class Entry {
+        private final String dimensionContext;
+        private final long version;
+        private final Map<String, Object> result;
+        private final long weight;
+
+        private Entry(String dimensionContext, long version, Map<String, Object> result, long weight) {
+            this.dimensionContext = dimensionContext;
+            this.version = version;
+            this.result = result;
+            this.weight = weight;
+        }
+    }
+}
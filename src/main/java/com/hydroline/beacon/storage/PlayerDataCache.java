@@ -0,0 +1,213 @@
+package com.hydroline.beacon.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Weight-bounded LRU of each player's full stats and advancements maps, read through from SQLite.
+ * Writers (file scans, live writer) call {@link #invalidateStats}/{@link #invalidateAdvancements} after
+ * committing; a load that raced with an invalidation is returned to its caller but not cached. Invalidation
+ * generations are only tracked for keys with a load in flight, so bookkeeping stays bounded by concurrent loads.
+ */
+public class PlayerDataCache {
+
+    // rough per-entry overhead of a TreeMap node plus boxed value, in bytes
+    private static final long ENTRY_OVERHEAD = 64L;
+
+    private final DatabaseManager db;
+    private final long maxWeight;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    // cache key -> load in flight; removed when its last loader finishes
+    private final Map<String, Load> loads = new HashMap<>();
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public PlayerDataCache(DatabaseManager db, long maxWeightBytes) {
+        this.db = db;
+        this.maxWeight = Math.max(1L, maxWeightBytes);
+    }
+
+    /**
+     * stat_key -> value for one player, sorted by key. Unmodifiable.
+     */
+    @SuppressWarnings("unchecked")
+    public SortedMap<String, Long> getStats(String playerUuid) throws SQLException {
+        return (SortedMap<String, Long>) get(statsKey(playerUuid), playerUuid, true);
+    }
+
+    /**
+     * advancement_key -> JSON string for one player, sorted by key. Unmodifiable.
+     */
+    @SuppressWarnings("unchecked")
+    public SortedMap<String, String> getAdvancements(String playerUuid) throws SQLException {
+        return (SortedMap<String, String>) get(advancementsKey(playerUuid), playerUuid, false);
+    }
+
+    public void invalidateStats(Collection<String> playerUuids) {
+        for (String uuid : playerUuids) {
+            invalidate(statsKey(uuid));
+        }
+    }
+
+    public void invalidateAdvancements(Collection<String> playerUuids) {
+        for (String uuid : playerUuids) {
+            invalidate(advancementsKey(uuid));
+        }
+    }
+
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long requests = hits + misses;
+        metrics.put("hits", hits);
+        metrics.put("misses", misses);
+        metrics.put("hit_ratio", requests > 0 ? (double) hits / requests : 0.0);
+        metrics.put("entries", entries.size());
+        metrics.put("weight_bytes", weight);
+        metrics.put("max_weight_bytes", maxWeight);
+        metrics.put("evictions", evictions);
+        return metrics;
+    }
+
+    private SortedMap<String, ?> get(String cacheKey, String playerUuid, boolean stats) throws SQLException {
+        Load load;
+        long generation;
+        synchronized (this) {
+            Entry entry = entries.get(cacheKey);
+            if (entry != null) {
+                hits++;
+                return entry.value;
+            }
+            misses++;
+            load = loads.computeIfAbsent(cacheKey, key -> new Load());
+            load.loaders++;
+            generation = load.generation;
+        }
+        SortedMap<String, ?> loaded;
+        try {
+            loaded = stats ? loadStats(playerUuid) : loadAdvancements(playerUuid);
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this) {
+                finishLoad(cacheKey, load);
+            }
+            throw e;
+        }
+        long loadedWeight = weigh(loaded);
+        synchronized (this) {
+            finishLoad(cacheKey, load);
+            if (load.generation == generation && loadedWeight <= maxWeight) {
+                Entry previous = entries.put(cacheKey, new Entry(loaded, loadedWeight));
+                if (previous != null) {
+                    weight -= previous.weight;
+                }
+                weight += loadedWeight;
+                evictOverflow();
+            }
+        }
+        return loaded;
+    }
+
+    private synchronized void invalidate(String cacheKey) {
+        Entry removed = entries.remove(cacheKey);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+        Load load = loads.get(cacheKey);
+        if (load != null) {
+            load.generation++;
+        }
+    }
+
+    private void finishLoad(String cacheKey, Load load) {
+        if (--load.loaders == 0) {
+            loads.remove(cacheKey, load);
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            weight -= eldest.weight;
+            evictions++;
+        }
+    }
+
+    private SortedMap<String, Long> loadStats(String playerUuid) throws SQLException {
+        TreeMap<String, Long> stats = new TreeMap<>();
+        try (Connection conn = db.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT stat_key, value FROM player_stats WHERE player_uuid = ?")) {
+            ps.setString(1, playerUuid);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    stats.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+        }
+        return Collections.unmodifiableSortedMap(stats);
+    }
+
+    private SortedMap<String, String> loadAdvancements(String playerUuid) throws SQLException {
+        TreeMap<String, String> advancements = new TreeMap<>();
+        try (Connection conn = db.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT advancement_key, value FROM player_advancements WHERE player_uuid = ?")) {
+            ps.setString(1, playerUuid);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    byte[] value = rs.getBytes(2);
+                    advancements.put(rs.getString(1), value != null ? new String(value, StandardCharsets.UTF_8) : null);
+                }
+            }
+        }
+        return Collections.unmodifiableSortedMap(advancements);
+    }
+
+    private static long weigh(Map<String, ?> map) {
+        long total = ENTRY_OVERHEAD;
+        for (Map.Entry<String, ?> e : map.entrySet()) {
+            total += ENTRY_OVERHEAD + 2L * e.getKey().length();
+            if (e.getValue() instanceof String) {
+                total += 2L * ((String) e.getValue()).length();
+            }
+        }
+        return total;
+    }
+
+    private static String statsKey(String playerUuid) {
+        return "stats|" + playerUuid;
+    }
+
+    private static String advancementsKey(String playerUuid) {
+        return "advancements|" + playerUuid;
+    }
+
+    private static final class Load {
+        private int loaders;
+        private long generation;
+    }
+
+    private static final class Entry {
+        private final SortedMap<String, ?> value;
+        private final long weight;
+
+        private Entry(SortedMap<String, ?> value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
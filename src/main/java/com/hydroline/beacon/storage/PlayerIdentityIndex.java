@@ -0,0 +1,254 @@
+package com.hydroline.beacon.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of player_identities for UUID/name resolution without a query per lookup.
+ * Reads are lock-free, updates are serialized; callers update it only after the database write has committed.
+ * <p>
+ * Name resolution, case-insensitive:
+ * <ol>
+ *   <li>a player whose current name (player_identities, or a rename seen live) is the given name;</li>
+ *   <li>otherwise a former name: any name recorded in player_sessions, or a name an indexed player renamed
+ *       away from. When several players used it, the one who used it most recently wins (latest session, or
+ *       the latest rename seen since loading).</li>
+ * </ol>
+ * So a former name never shadows a player who currently holds it, and resolves to its last owner otherwise.
+ * <p>
+ * Until the first {@link #load} succeeds the index is incomplete; callers check {@link #isLoaded()} and query
+ * the database instead.
+ */
+public class PlayerIdentityIndex {
+
+    private volatile Maps maps = new Maps();
+    private volatile boolean loaded;
+    private final Object writeLock = new Object();
+    // updates made while load() reads the database, replayed onto the freshly loaded maps
+    private List<Object[]> pendingUpdates;
+
+    /**
+     * Loads identities and the name history recorded in player_sessions into fresh maps and swaps them in
+     * at once, so lookups never see a half-loaded index. Updates made meanwhile are kept.
+     */
+    public void load(DatabaseManager db) throws SQLException {
+        synchronized (writeLock) {
+            pendingUpdates = new ArrayList<>();
+        }
+        Maps loaded = new Maps();
+        try {
+            try (Connection conn = db.getConnection()) {
+                // oldest session names first so later holders win
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT player_uuid, player_name FROM player_sessions " +
+                                "WHERE player_name IS NOT NULL GROUP BY player_uuid, player_name ORDER BY MAX(occurred_at)");
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        loaded.formerNames.put(lower(rs.getString(2)), rs.getString(1));
+                    }
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT player_uuid, player_name, first_played, last_played, last_updated FROM player_identities");
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Identity identity = new Identity(
+                                rs.getString(1),
+                                rs.getString(2),
+                                nullableLong(rs, 3),
+                                nullableLong(rs, 4),
+                                rs.getLong(5)
+                        );
+                        loaded.byUuid.put(identity.uuid, identity);
+                        if (identity.name != null) {
+                            loaded.currentNames.put(lower(identity.name), identity.uuid);
+                        }
+                    }
+                }
+            }
+            synchronized (writeLock) {
+                for (Object[] update : pendingUpdates) {
+                    apply(loaded, (String) update[0], (String) update[1], (Long) update[2], (Long) update[3], (Long) update[4]);
+                }
+                maps = loaded;
+                this.loaded = true;
+            }
+        } finally {
+            synchronized (writeLock) {
+                pendingUpdates = null;
+            }
+        }
+    }
+
+    /**
+     * Mirrors an upsert into player_identities: null first/last played keep the existing values.
+     */
+    public void update(String uuid, String name, Long firstPlayed, Long lastPlayed, long updatedAt) {
+        if (uuid == null || name == null || name.isEmpty()) {
+            return;
+        }
+        synchronized (writeLock) {
+            apply(maps, uuid, name, firstPlayed, lastPlayed, updatedAt);
+            if (pendingUpdates != null) {
+                pendingUpdates.add(new Object[]{uuid, name, firstPlayed, lastPlayed, updatedAt});
+            }
+        }
+    }
+
+    private static void apply(Maps maps, String uuid, String name, Long firstPlayed, Long lastPlayed, long updatedAt) {
+        Identity previous = maps.byUuid.get(uuid);
+        Identity next = new Identity(
+                uuid,
+                name,
+                firstPlayed != null ? firstPlayed : previous != null ? previous.firstPlayed : null,
+                lastPlayed != null ? lastPlayed : previous != null ? previous.lastPlayed : null,
+                updatedAt
+        );
+        maps.byUuid.put(uuid, next);
+        if (previous != null && previous.name != null && !previous.name.equalsIgnoreCase(name)) {
+            String oldKey = lower(previous.name);
+            maps.currentNames.remove(oldKey, uuid);
+            maps.formerNames.put(oldKey, uuid);
+        }
+        String key = lower(name);
+        String holder = maps.currentNames.put(key, uuid);
+        if (holder != null && !holder.equals(uuid)) {
+            // the other player renamed away from this name without us seeing it yet
+            maps.formerNames.put(key, holder);
+        }
+    }
+
+    /**
+     * Records a name seen live (e.g. on join) without first/last played data.
+     */
+    public void recordName(String uuid, String name, long seenAt) {
+        Identity current = maps.byUuid.get(uuid);
+        if (current != null && name != null && name.equals(current.name)) {
+            return;
+        }
+        update(uuid, name, null, null, seenAt);
+    }
+
+    public Identity getByUuid(String uuid) {
+        return uuid != null ? maps.byUuid.get(uuid) : null;
+    }
+
+    public Identity getByName(String name) {
+        Maps current = maps;
+        String uuid = resolveUuid(current, name);
+        return uuid != null ? current.byUuid.get(uuid) : null;
+    }
+
+    public String resolveUuid(String name) {
+        return resolveUuid(maps, name);
+    }
+
+    private static String resolveUuid(Maps maps, String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        String key = lower(name);
+        String uuid = maps.currentNames.get(key);
+        return uuid != null ? uuid : maps.formerNames.get(key);
+    }
+
+    /**
+     * Current names for the given UUIDs, skipping unknown ones.
+     */
+    public List<String> resolveNames(Collection<String> uuids) {
+        List<String> names = new ArrayList<>();
+        if (uuids == null) {
+            return names;
+        }
+        Map<String, Identity> byUuid = maps.byUuid;
+        for (String uuid : uuids) {
+            Identity identity = byUuid.get(uuid);
+            if (identity != null && identity.name != null && !identity.name.isEmpty()) {
+                names.add(identity.name);
+            }
+        }
+        return names;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int size() {
+        return maps.byUuid.size();
+    }
+
+    private static String lower(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static Long nullableLong(ResultSet rs, int column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static final class Maps {
+        private final Map<String, Identity> byUuid = new ConcurrentHashMap<>();
+        // lowercase current name -> uuid
+        private final Map<String, String> currentNames = new ConcurrentHashMap<>();
+        // lowercase former name -> uuid of the latest player seen with it
+        private final Map<String, String> formerNames = new ConcurrentHashMap<>();
+    }
+
+    public static final class Identity {
+        private final String uuid;
+        private final String name;
+        private final Long firstPlayed;
+        private final Long lastPlayed;
+        private final long lastUpdated;
+
+        private Identity(String uuid, String name, Long firstPlayed, Long lastPlayed, long lastUpdated) {
+            this.uuid = uuid;
+            this.name = name;
+            this.firstPlayed = firstPlayed;
+            this.lastPlayed = lastPlayed;
+            this.lastUpdated = lastUpdated;
+        }
+
+        public String getUuid() {
+            return uuid;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Long getFirstPlayed() {
+            return firstPlayed;
+        }
+
+        public Long getLastPlayed() {
+            return lastPlayed;
+        }
+
+        public long getLastUpdated() {
+            return lastUpdated;
+        }
+
+        /**
+         * Same keys as a player_identities row in socket responses.
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("player_uuid", uuid);
+            map.put("player_name", name);
+            map.put("first_played", firstPlayed);
+            map.put("last_played", lastPlayed);
+            map.put("last_updated", lastUpdated);
+            return map;
+        }
+    }
+}
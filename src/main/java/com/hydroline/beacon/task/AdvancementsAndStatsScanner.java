@@ -1,23 +1,33 @@
 package com.hydroline.beacon.task;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.hydroline.beacon.BeaconPlugin;
 import com.hydroline.beacon.storage.DatabaseManager;
+import com.hydroline.beacon.storage.PlayerDataCache;
 import com.hydroline.beacon.util.PathUtils;
 import com.hydroline.beacon.world.WorldFileAccess;
 import org.bukkit.World;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class AdvancementsAndStatsScanner {
 
@@ -25,243 +35,398 @@ public class AdvancementsAndStatsScanner {
     // Bump the stats file type key to force a rescan after fixing nested parsing.
     private static final String FILE_TYPE_STATS = "stats_v2";
 
+    // Shared by every scan; parsers/generators are cheap to create from it and reuse its symbol tables.
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // One set of key/value buffers per parser thread, reused across files and scans
+    private static final ThreadLocal<ParseBuffers> BUFFERS = ThreadLocal.withInitial(ParseBuffers::new);
+    private static final Object SCAN_LOCK = new Object();
+
     private final BeaconPlugin plugin;
-    private final ObjectMapper objectMapper = new ObjectMapper();
 
     public AdvancementsAndStatsScanner(BeaconPlugin plugin) {
         this.plugin = plugin;
     }
 
     public void scanOnce() {
+        scan(null, null);
+    }
+
+    /**
+     * Rescans only the advancements/stats files of the given players.
+     */
+    public void scanPlayers(Collection<String> playerUuids) {
+        scan(null, playerUuids);
+    }
+
+    /**
+     * Rescans every advancements/stats file of the given worlds.
+     */
+    public void scanWorlds(Collection<String> worldNames) {
+        scan(worldNames, null);
+    }
+
+    private void scan(Collection<String> worldNames, Collection<String> playerUuids) {
         WorldFileAccess worldFileAccess = plugin.getWorldFileAccess();
         DatabaseManager db = plugin.getDatabaseManager();
-        if (worldFileAccess == null || db == null) {
+        ScanScheduler scheduler = plugin.getScanScheduler();
+        ScanPipeline pipeline = scheduler != null ? scheduler.getPipeline() : null;
+        if (worldFileAccess == null || db == null || pipeline == null) {
             return;
         }
 
         long startedAt = System.currentTimeMillis();
         int filesProcessed = 0;
-        int recordsUpserted = 0;
-
-        try (Connection connection = db.getConnection()) {
-            connection.setAutoCommit(false);
-
-            for (World world : worldFileAccess.getWorlds()) {
-                File advDir = worldFileAccess.getAdvancementsDirectory(world);
-                if (advDir.isDirectory()) {
-                    File[] files = advDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".json"));
-                    if (files != null) {
-                        for (File file : files) {
-                            int changed = processPlayerFile(connection, world, FILE_TYPE_ADVANCEMENTS, file);
-                            if (changed >= 0) {
-                                filesProcessed++;
-                                recordsUpserted += changed;
+        DiffCounts counts = new DiffCounts();
+
+        // full and targeted scans touch the same rows; never let them interleave
+        synchronized (SCAN_LOCK) {
+            try (Connection connection = db.getConnection()) {
+                connection.setAutoCommit(false);
+                Map<String, Long> syncedAdvancements = loadSyncedFiles(connection, FILE_TYPE_ADVANCEMENTS, playerUuids);
+                Map<String, Long> syncedStats = loadSyncedFiles(connection, FILE_TYPE_STATS, playerUuids);
+
+                ScanPipeline.Result result = pipeline.run("advancements-stats", connection,
+                        sink -> {
+                            for (World world : worldFileAccess.getWorlds()) {
+                                if (worldNames != null && !worldNames.contains(world.getName())) {
+                                    continue;
+                                }
+                                discoverFiles(worldFileAccess.getAdvancementsDirectory(world), FILE_TYPE_ADVANCEMENTS, syncedAdvancements, playerUuids, sink);
+                                discoverFiles(worldFileAccess.getStatsDirectory(world), FILE_TYPE_STATS, syncedStats, playerUuids, sink);
                             }
-                        }
-                    }
-                }
-
-                File statsDir = worldFileAccess.getStatsDirectory(world);
-                if (statsDir.isDirectory()) {
-                    File[] files = statsDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".json"));
-                    if (files != null) {
-                        for (File file : files) {
-                            int changed = processPlayerFile(connection, world, FILE_TYPE_STATS, file);
-                            if (changed >= 0) {
-                                filesProcessed++;
-                                recordsUpserted += changed;
-                            }
-                        }
-                    }
-                }
+                        },
+                        this::parsePlayerFile,
+                        (conn, parsed) -> writePlayerFile(conn, parsed, counts));
+                filesProcessed = result.getWritten();
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Failed to scan advancements/stats: " + e.getMessage());
             }
+        }
 
-            connection.commit();
-        } catch (SQLException e) {
-            plugin.getLogger().severe("Failed to scan advancements/stats: " + e.getMessage());
+        PlayerDataCache cache = plugin.getPlayerDataCache();
+        if (cache != null) {
+            cache.invalidateStats(counts.statsPlayers);
+            cache.invalidateAdvancements(counts.advancementPlayers);
         }
 
         long elapsed = System.currentTimeMillis() - startedAt;
-        if (recordsUpserted > 0) {
-            plugin.getLogger().info("Advancements/Stats scan completed in " + elapsed + " ms, " +
-                "files processed=" + filesProcessed + ", records upserted=" + recordsUpserted);
+        if (counts.total() > 0) {
+            plugin.getLogger().info("Advancements/Stats " + (worldNames == null && playerUuids == null ? "scan" : "targeted scan")
+                + " completed in " + elapsed + " ms, " +
+                "files processed=" + filesProcessed + ", keys added=" + counts.added +
+                ", updated=" + counts.updated + ", removed=" + counts.removed);
         }
     }
 
-    private int processPlayerFile(Connection connection, World world, String fileType, File file) {
-        long lastModified = file.lastModified();
-        String absolutePath = PathUtils.toServerRelativePath(plugin, file);
-
-        try {
-            if (!shouldProcessFile(connection, fileType, absolutePath, lastModified)) {
-                return 0;
+    // Discovery stage: only files whose mtime differs from the last processed state are queued.
+    private void discoverFiles(File dir,
+                               String fileType,
+                               Map<String, Long> synced,
+                               Collection<String> playerUuids,
+                               ScanPipeline.Sink<PlayerFile> sink) {
+        if (!dir.isDirectory()) {
+            return;
+        }
+        File[] files;
+        if (playerUuids != null) {
+            List<File> targeted = new ArrayList<>();
+            for (String uuid : playerUuids) {
+                File file = new File(dir, uuid + ".json");
+                if (file.isFile()) {
+                    targeted.add(file);
+                }
             }
-        } catch (SQLException e) {
-            plugin.getLogger().severe("Failed to check sync state for file " + absolutePath + ": " + e.getMessage());
-            return -1;
+            files = targeted.toArray(new File[0]);
+        } else {
+            files = dir.listFiles((d, name) -> name.toLowerCase().endsWith(".json"));
         }
-
-        String fileName = file.getName();
-        if (!fileName.toLowerCase().endsWith(".json")) {
-            return 0;
+        if (files == null) {
+            return;
         }
-        String playerUuid = fileName.substring(0, fileName.length() - ".json".length());
+        for (File file : files) {
+            long lastModified = file.lastModified();
+            String relativePath = PathUtils.toServerRelativePath(plugin, file);
+            Long syncedModified = synced.get(relativePath);
+            if (syncedModified != null && syncedModified == lastModified) {
+                continue;
+            }
+            String fileName = file.getName();
+            String playerUuid = fileName.substring(0, fileName.length() - ".json".length());
+            sink.accept(new PlayerFile(fileType, file, relativePath, playerUuid, lastModified));
+        }
+    }
 
-        JsonNode root;
-        try (FileInputStream in = new FileInputStream(file)) {
-            root = objectMapper.readTree(in);
+    // Parser stage: runs on the pipeline's parser threads.
+    private ParsedPlayerFile parsePlayerFile(PlayerFile file) {
+        ParseBuffers buffers = BUFFERS.get();
+        try (JsonParser parser = JSON_FACTORY.createParser(file.file)) {
+            if (FILE_TYPE_ADVANCEMENTS.equals(file.fileType)) {
+                return new ParsedPlayerFile(file, null, readAdvancements(parser, buffers.values));
+            }
+            return new ParsedPlayerFile(file, readStats(parser, buffers.keys), null);
         } catch (IOException e) {
-            plugin.getLogger().severe("Failed to read JSON file " + absolutePath + ": " + e.getMessage());
-            return -1;
+            plugin.getLogger().severe("Failed to read JSON file " + file.relativePath + ": " + e.getMessage());
+            return null;
         }
+    }
 
-        int upserted = 0;
+    // Writer stage: single thread, owns the connection.
+    private void writePlayerFile(Connection connection, ParsedPlayerFile parsed, DiffCounts counts) throws SQLException {
+        PlayerFile file = parsed.source;
         long now = System.currentTimeMillis();
-
-        try {
-            if (FILE_TYPE_ADVANCEMENTS.equals(fileType)) {
-                // full-sync this player's advancements: delete stale rows then re-insert current ones
-                deletePlayerAdvancementsForFile(connection, playerUuid);
-
-                Iterator<Map.Entry<String, JsonNode>> fields = root.fields();
-                while (fields.hasNext()) {
-                    Map.Entry<String, JsonNode> entry = fields.next();
-                    String advancementKey = entry.getKey();
-                    String valueJson = entry.getValue().toString();
-                    upsertAdvancement(connection, playerUuid, advancementKey, valueJson, now);
-                    upserted++;
-                }
-            } else if (FILE_TYPE_STATS.equals(fileType)) {
-                // full-sync this player's stats: delete stale rows then re-insert current ones
-                deletePlayerStatsForFile(connection, playerUuid);
-
-                JsonNode statsNode = root.get("stats");
-                if (statsNode != null && statsNode.isObject()) {
-                    upserted += upsertStatsRecursive(connection, playerUuid, statsNode, "", now);
-                } else {
-                    upserted += upsertStatsRecursive(connection, playerUuid, root, "", now);
-                }
+        if (parsed.advancements != null) {
+            if (applyAdvancementsDiff(connection, file.playerUuid, parsed.advancements, file.lastModified, counts) > 0) {
+                counts.advancementPlayers.add(file.playerUuid);
+            }
+        } else if (parsed.stats != null) {
+            if (applyStatsDiff(connection, file.playerUuid, parsed.stats, file.lastModified, counts) > 0) {
+                counts.statsPlayers.add(file.playerUuid);
             }
-
-            upsertFileSyncState(connection, fileType, playerUuid, absolutePath, lastModified, now);
-        } catch (SQLException e) {
-            plugin.getLogger().severe("Failed to upsert data for file " + absolutePath + ": " + e.getMessage());
-            return -1;
         }
-
-        return upserted;
+        upsertFileSyncState(connection, file.fileType, file.playerUuid, file.relativePath, file.lastModified, now);
     }
 
-    private int upsertStatsRecursive(Connection connection,
-                                     String playerUuid,
-                                     JsonNode node,
-                                     String prefix,
-                                     long lastUpdated) throws SQLException {
-        if (node == null || !node.isObject()) {
-            return 0;
+    /**
+     * Streams a stats file into flat "category:stat" keys. Vanilla files nest everything under "stats";
+     * when that object is present only its content is used, otherwise the root object is walked.
+     */
+    private Map<String, Long> readStats(JsonParser parser, StringBuilder keyBuffer) throws IOException {
+        Map<String, Long> out = new HashMap<>();
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return out;
+        }
+        boolean statsFound = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldKey = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("stats".equals(fieldKey) && value == JsonToken.START_OBJECT && !statsFound) {
+                statsFound = true;
+                out.clear();
+                keyBuffer.setLength(0);
+                readStatsObject(parser, out, keyBuffer);
+            } else if (statsFound || "DataVersion".equals(fieldKey)) {
+                parser.skipChildren();
+            } else {
+                keyBuffer.setLength(0);
+                keyBuffer.append(fieldKey);
+                readStatsValue(parser, value, out, keyBuffer);
+            }
         }
+        return out;
+    }
 
-        int upserted = 0;
-        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
-        while (fields.hasNext()) {
-            Map.Entry<String, JsonNode> entry = fields.next();
-            String fieldKey = entry.getKey();
-            if (prefix.isEmpty() && "DataVersion".equals(fieldKey)) {
+    private void readStatsObject(JsonParser parser, Map<String, Long> out, StringBuilder keyBuffer) throws IOException {
+        int prefixLength = keyBuffer.length();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldKey = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (prefixLength == 0 && "DataVersion".equals(fieldKey)) {
+                parser.skipChildren();
                 continue;
             }
-
-            String statKey = prefix.isEmpty() ? fieldKey : prefix + ":" + fieldKey;
-            JsonNode valueNode = entry.getValue();
-
-            if (valueNode.isObject()) {
-                upserted += upsertStatsRecursive(connection, playerUuid, valueNode, statKey, lastUpdated);
-            } else if (valueNode.isNumber()) {
-                long value = valueNode.asLong(0L);
-                upsertStat(connection, playerUuid, statKey, value, lastUpdated);
-                upserted++;
+            keyBuffer.setLength(prefixLength);
+            if (prefixLength > 0) {
+                keyBuffer.append(':');
             }
+            keyBuffer.append(fieldKey);
+            readStatsValue(parser, value, out, keyBuffer);
         }
+        keyBuffer.setLength(prefixLength);
+    }
 
-        return upserted;
+    private void readStatsValue(JsonParser parser, JsonToken value, Map<String, Long> out, StringBuilder keyBuffer) throws IOException {
+        if (value == JsonToken.START_OBJECT) {
+            readStatsObject(parser, out, keyBuffer);
+        } else if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+            out.put(keyBuffer.toString(), parser.getValueAsLong(0L));
+        } else {
+            parser.skipChildren();
+        }
     }
 
-    private boolean shouldProcessFile(Connection connection,
-                                      String fileType,
-                                      String filePath,
-                                      long lastModified) throws SQLException {
-        try (PreparedStatement ps = connection.prepareStatement(
-                "SELECT last_modified, last_processed FROM file_sync_state " +
-                        "WHERE file_type = ? AND file_path = ?"
-        )) {
-            ps.setString(1, fileType);
-            ps.setString(2, filePath);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (!rs.next()) {
-                    return true;
-                }
-                long storedLastModified = rs.getLong("last_modified");
-                long lastProcessed = rs.getLong("last_processed");
-                return storedLastModified != lastModified || lastProcessed < lastModified;
+    // Each top-level entry is kept as its compact JSON bytes, copied token by token.
+    private Map<String, byte[]> readAdvancements(JsonParser parser, ByteArrayOutputStream valueBuffer) throws IOException {
+        Map<String, byte[]> out = new HashMap<>();
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return out;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String advancementKey = parser.getCurrentName();
+            parser.nextToken();
+            valueBuffer.reset();
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(valueBuffer, JsonEncoding.UTF8)) {
+                generator.copyCurrentStructure(parser);
             }
+            out.put(advancementKey, valueBuffer.toByteArray());
         }
+        return out;
     }
 
-    private void upsertAdvancement(Connection connection,
-                                   String playerUuid,
-                                   String advancementKey,
-                                   String valueJson,
-                                   long lastUpdated) throws SQLException {
+    // Compare against stored rows and only write keys that were added, changed or removed.
+    // Written rows carry the file's mtime as last_updated, so only sampled values can be newer than a later save.
+    private int applyStatsDiff(Connection connection,
+                               String playerUuid,
+                               Map<String, Long> parsed,
+                               long fileModified,
+                               DiffCounts counts) throws SQLException {
+        Map<String, Long> current = new HashMap<>();
         try (PreparedStatement ps = connection.prepareStatement(
-                "INSERT INTO player_advancements (player_uuid, advancement_key, value, last_updated) " +
-                        "VALUES (?, ?, ?, ?) " +
-                        "ON CONFLICT(player_uuid, advancement_key) DO UPDATE SET " +
-                        "value = excluded.value, last_updated = excluded.last_updated"
+                "SELECT stat_key, value, last_updated FROM player_stats WHERE player_uuid = ?"
         )) {
             ps.setString(1, playerUuid);
-            ps.setString(2, advancementKey);
-            ps.setBytes(3, valueJson.getBytes(StandardCharsets.UTF_8));
-            ps.setLong(4, lastUpdated);
-            ps.executeUpdate();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String key = rs.getString(1);
+                    // values sampled from online players after the file was saved are newer than the file
+                    if (rs.getLong(3) > fileModified) {
+                        parsed.remove(key);
+                        continue;
+                    }
+                    current.put(key, rs.getLong(2));
+                }
+            }
         }
-    }
 
-    private void upsertStat(Connection connection,
-                            String playerUuid,
-                            String statKey,
-                            long value,
-                            long lastUpdated) throws SQLException {
+        int upserts = 0;
         try (PreparedStatement ps = connection.prepareStatement(
                 "INSERT INTO player_stats (player_uuid, stat_key, value, last_updated) " +
                         "VALUES (?, ?, ?, ?) " +
                         "ON CONFLICT(player_uuid, stat_key) DO UPDATE SET " +
                         "value = excluded.value, last_updated = excluded.last_updated"
         )) {
-            ps.setString(1, playerUuid);
-            ps.setString(2, statKey);
-            ps.setLong(3, value);
-            ps.setLong(4, lastUpdated);
-            ps.executeUpdate();
+            for (Map.Entry<String, Long> entry : parsed.entrySet()) {
+                Long previous = current.remove(entry.getKey());
+                if (previous != null && previous.longValue() == entry.getValue().longValue()) {
+                    continue;
+                }
+                if (previous == null) {
+                    counts.added++;
+                } else {
+                    counts.updated++;
+                }
+                ps.setString(1, playerUuid);
+                ps.setString(2, entry.getKey());
+                ps.setLong(3, entry.getValue());
+                ps.setLong(4, fileModified);
+                ps.addBatch();
+                upserts++;
+            }
+            if (upserts > 0) {
+                ps.executeBatch();
+            }
         }
+
+        // whatever is left in current no longer exists in the file
+        deleteKeys(connection, "DELETE FROM player_stats WHERE player_uuid = ? AND stat_key = ?", playerUuid, current.keySet());
+        counts.removed += current.size();
+        return upserts + current.size();
     }
 
-    private void deletePlayerAdvancementsForFile(Connection connection,
-                                                 String playerUuid) throws SQLException {
+    // Rows written here carry the file's mtime as last_updated, so only live writes can be newer than a later save.
+    private int applyAdvancementsDiff(Connection connection,
+                                      String playerUuid,
+                                      Map<String, byte[]> parsed,
+                                      long fileModified,
+                                      DiffCounts counts) throws SQLException {
+        Map<String, byte[]> current = new HashMap<>();
         try (PreparedStatement ps = connection.prepareStatement(
-                "DELETE FROM player_advancements WHERE player_uuid = ?"
+                "SELECT advancement_key, value, last_updated FROM player_advancements WHERE player_uuid = ?"
         )) {
             ps.setString(1, playerUuid);
-            ps.executeUpdate();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String key = rs.getString(1);
+                    // rows written by LivePlayerDataWriter after the file was saved are newer than the file
+                    if (rs.getLong(3) > fileModified) {
+                        parsed.remove(key);
+                        continue;
+                    }
+                    current.put(key, rs.getBytes(2));
+                }
+            }
         }
-    }
 
-    private void deletePlayerStatsForFile(Connection connection,
-                                          String playerUuid) throws SQLException {
+        int upserts = 0;
         try (PreparedStatement ps = connection.prepareStatement(
-                "DELETE FROM player_stats WHERE player_uuid = ?"
+                "INSERT INTO player_advancements (player_uuid, advancement_key, value, last_updated) " +
+                        "VALUES (?, ?, ?, ?) " +
+                        "ON CONFLICT(player_uuid, advancement_key) DO UPDATE SET " +
+                        "value = excluded.value, last_updated = excluded.last_updated"
         )) {
-            ps.setString(1, playerUuid);
-            ps.executeUpdate();
+            for (Map.Entry<String, byte[]> entry : parsed.entrySet()) {
+                boolean existed = current.containsKey(entry.getKey());
+                byte[] previous = current.remove(entry.getKey());
+                if (existed && Arrays.equals(previous, entry.getValue())) {
+                    continue;
+                }
+                if (existed) {
+                    counts.updated++;
+                } else {
+                    counts.added++;
+                }
+                ps.setString(1, playerUuid);
+                ps.setString(2, entry.getKey());
+                ps.setBytes(3, entry.getValue());
+                ps.setLong(4, fileModified);
+                ps.addBatch();
+                upserts++;
+            }
+            if (upserts > 0) {
+                ps.executeBatch();
+            }
         }
+
+        deleteKeys(connection, "DELETE FROM player_advancements WHERE player_uuid = ? AND advancement_key = ?", playerUuid, current.keySet());
+        counts.removed += current.size();
+        return upserts + current.size();
+    }
+
+    private void deleteKeys(Connection connection, String sql, String playerUuid, Collection<String> keys) throws SQLException {
+        if (keys.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (String key : keys) {
+                ps.setString(1, playerUuid);
+                ps.setString(2, key);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Returns file path -> last_modified for every file of this type that was fully processed,
+     * optionally limited to the given players.
+     */
+    private Map<String, Long> loadSyncedFiles(Connection connection,
+                                              String fileType,
+                                              Collection<String> playerUuids) throws SQLException {
+        Map<String, Long> synced = new HashMap<>();
+        String sql = "SELECT file_path, last_modified FROM file_sync_state " +
+                "WHERE file_type = ? AND last_processed >= last_modified";
+        if (playerUuids != null) {
+            if (playerUuids.isEmpty()) {
+                return synced;
+            }
+            sql += " AND player_uuid IN (" + String.join(", ", Collections.nCopies(playerUuids.size(), "?")) + ")";
+        }
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int idx = 1;
+            ps.setString(idx++, fileType);
+            if (playerUuids != null) {
+                for (String uuid : playerUuids) {
+                    ps.setString(idx++, uuid);
+                }
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    synced.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+        }
+        return synced;
     }
 
     private void upsertFileSyncState(Connection connection,
@@ -284,5 +449,60 @@ public class AdvancementsAndStatsScanner {
             ps.executeUpdate();
         }
     }
-}
 
+    private static final class DiffCounts {
+        private int added;
+        private int updated;
+        private int removed;
+        // players whose rows changed, for cache invalidation after commit
+        private final Set<String> statsPlayers = new HashSet<>();
+        private final Set<String> advancementPlayers = new HashSet<>();
+
+        private int total() {
+            return added + updated + removed;
+        }
+    }
+
+    private static final class ParseBuffers {
+        private final StringBuilder keys = new StringBuilder(128);
+        private final ByteArrayOutputStream values = new ByteArrayOutputStream(1024);
+    }
+
+    private static final class PlayerFile {
+        private final String fileType;
+        private final File file;
+        private final String relativePath;
+        private final String playerUuid;
+        private final long lastModified;
+
+        private PlayerFile(String fileType, File file, String relativePath, String playerUuid, long lastModified) {
+            this.fileType = fileType;
+            this.file = file;
+            this.relativePath = relativePath;
+            this.playerUuid = playerUuid;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public String toString() {
+            return relativePath;
+        }
+    }
+
+    private static final class ParsedPlayerFile {
+        private final PlayerFile source;
+        private final Map<String, Long> stats;
+        private final Map<String, byte[]> advancements;
+
+        private ParsedPlayerFile(PlayerFile source, Map<String, Long> stats, Map<String, byte[]> advancements) {
+            this.source = source;
+            this.stats = stats;
+            this.advancements = advancements;
+        }
+
+        @Override
+        public String toString() {
+            return source.relativePath;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.hydroline.beacon.task;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hydroline.beacon.BeaconPlugin;
+import com.hydroline.beacon.storage.DatabaseManager;
+import com.hydroline.beacon.storage.PlayerDataCache;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Batches player data captured live on the main thread (advancement events, sampled statistics)
+ * into player_advancements / player_stats. Values use the same shape as the vanilla files,
+ * so the file scan only reconciles.
+ */
+public class LivePlayerDataWriter {
+
+    private static final long FLUSH_INTERVAL_TICKS = 20L;
+    private static final ObjectMapper JSON = new ObjectMapper();
+    // Format used by vanilla in world/advancements/<uuid>.json
+    private static final String CRITERIA_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss Z";
+
+    private final BeaconPlugin plugin;
+    private final ConcurrentLinkedQueue<AdvancementRecord> pendingAdvancements = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<StatRecord> pendingStats = new ConcurrentLinkedQueue<>();
+    private final Object flushLock = new Object();
+    private BukkitTask task;
+
+    public LivePlayerDataWriter(BeaconPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    public void start() {
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::flush, FLUSH_INTERVAL_TICKS, FLUSH_INTERVAL_TICKS);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        flush();
+    }
+
+    /**
+     * @param criteria awarded criterion name -> award time in epoch millis
+     */
+    public void enqueueAdvancement(String playerUuid, String advancementKey, Map<String, Long> criteria, boolean done) {
+        pendingAdvancements.add(new AdvancementRecord(playerUuid, advancementKey, criteria, done, System.currentTimeMillis()));
+    }
+
+    /**
+     * @param statKey flat key in the same "category:stat" form the stats file scan stores
+     */
+    public void enqueueStat(String playerUuid, String statKey, long value) {
+        pendingStats.add(new StatRecord(playerUuid, statKey, value, System.currentTimeMillis()));
+    }
+
+    public void flush() {
+        synchronized (flushLock) {
+            if (pendingAdvancements.isEmpty() && pendingStats.isEmpty()) {
+                return;
+            }
+            // several records for one key within a flush collapse to the latest state
+            Map<String, AdvancementRecord> advancements = new LinkedHashMap<>();
+            AdvancementRecord advancement;
+            while ((advancement = pendingAdvancements.poll()) != null) {
+                advancements.put(advancement.playerUuid + "|" + advancement.advancementKey, advancement);
+            }
+            Map<String, StatRecord> stats = new LinkedHashMap<>();
+            StatRecord stat;
+            while ((stat = pendingStats.poll()) != null) {
+                stats.put(stat.playerUuid + "|" + stat.statKey, stat);
+            }
+            DatabaseManager db = plugin.getDatabaseManager();
+            if (db == null) {
+                return;
+            }
+            try (Connection connection = db.getConnection()) {
+                connection.setAutoCommit(false);
+                Set<String> advancementPlayers = new HashSet<>();
+                Set<String> statPlayers = new HashSet<>();
+                if (!advancements.isEmpty()) {
+                    writeAdvancements(connection, advancements, advancementPlayers);
+                }
+                if (!stats.isEmpty()) {
+                    writeStats(connection, stats, statPlayers);
+                }
+                connection.commit();
+                invalidateCache(advancementPlayers, statPlayers);
+            } catch (SQLException | JsonProcessingException e) {
+                plugin.getLogger().warning("Failed to write live player data (advancements=" + advancements.size()
+                        + ", stats=" + stats.size() + "): " + e.getMessage());
+            }
+        }
+    }
+
+    // only players with a row that actually changed; re-sampled equal values leave their cache entries alone
+    private void invalidateCache(Set<String> advancementPlayers, Set<String> statPlayers) {
+        PlayerDataCache cache = plugin.getPlayerDataCache();
+        if (cache == null) {
+            return;
+        }
+        if (!advancementPlayers.isEmpty()) {
+            cache.invalidateAdvancements(advancementPlayers);
+        }
+        if (!statPlayers.isEmpty()) {
+            cache.invalidateStats(statPlayers);
+        }
+    }
+
+    private void writeAdvancements(Connection connection,
+                                   Map<String, AdvancementRecord> records,
+                                   Set<String> changedPlayers) throws SQLException, JsonProcessingException {
+        SimpleDateFormat format = new SimpleDateFormat(CRITERIA_DATE_FORMAT, Locale.ROOT);
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO player_advancements (player_uuid, advancement_key, value, last_updated) " +
+                        "VALUES (?, ?, ?, ?) " +
+                        "ON CONFLICT(player_uuid, advancement_key) DO UPDATE SET " +
+                        "value = excluded.value, last_updated = excluded.last_updated " +
+                        "WHERE player_advancements.value IS NOT excluded.value"
+        )) {
+            List<String> players = new ArrayList<>(records.size());
+            for (AdvancementRecord r : records.values()) {
+                players.add(r.playerUuid);
+                ps.setString(1, r.playerUuid);
+                ps.setString(2, r.advancementKey);
+                ps.setBytes(3, toValueJson(r, format));
+                ps.setLong(4, r.capturedAt);
+                ps.addBatch();
+            }
+            collectChanged(ps.executeBatch(), players, changedPlayers);
+        }
+    }
+
+    private void writeStats(Connection connection,
+                            Map<String, StatRecord> records,
+                            Set<String> changedPlayers) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO player_stats (player_uuid, stat_key, value, last_updated) " +
+                        "VALUES (?, ?, ?, ?) " +
+                        "ON CONFLICT(player_uuid, stat_key) DO UPDATE SET " +
+                        "value = excluded.value, last_updated = excluded.last_updated " +
+                        "WHERE player_stats.value <> excluded.value"
+        )) {
+            List<String> players = new ArrayList<>(records.size());
+            for (StatRecord r : records.values()) {
+                players.add(r.playerUuid);
+                ps.setString(1, r.playerUuid);
+                ps.setString(2, r.statKey);
+                ps.setLong(3, r.value);
+                ps.setLong(4, r.capturedAt);
+                ps.addBatch();
+            }
+            collectChanged(ps.executeBatch(), players, changedPlayers);
+        }
+    }
+
+    // an update count of 0 means the upsert's WHERE kept the existing, equal row
+    private static void collectChanged(int[] counts, List<String> players, Set<String> changedPlayers) {
+        for (int i = 0; i < players.size(); i++) {
+            if (i >= counts.length || counts[i] != 0) {
+                changedPlayers.add(players.get(i));
+            }
+        }
+    }
+
+    private byte[] toValueJson(AdvancementRecord record, SimpleDateFormat format) throws JsonProcessingException {
+        Map<String, String> criteria = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : record.criteria.entrySet()) {
+            criteria.put(e.getKey(), format.format(new Date(e.getValue())));
+        }
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("criteria", criteria);
+        value.put("done", record.done);
+        return JSON.writeValueAsString(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class AdvancementRecord {
+        private final String playerUuid;
+        private final String advancementKey;
+        private final Map<String, Long> criteria;
+        private final boolean done;
+        private final long capturedAt;
+
+        private AdvancementRecord(String playerUuid, String advancementKey, Map<String, Long> criteria, boolean done, long capturedAt) {
+            this.playerUuid = playerUuid;
+            this.advancementKey = advancementKey;
+            this.criteria = criteria;
+            this.done = done;
+            this.capturedAt = capturedAt;
+        }
+    }
+
+    private static final class StatRecord {
+        private final String playerUuid;
+        private final String statKey;
+        private final long value;
+        private final long capturedAt;
+
+        private StatRecord(String playerUuid, String statKey, long value, long capturedAt) {
+            this.playerUuid = playerUuid;
+            this.statKey = statKey;
+            this.value = value;
+            this.capturedAt = capturedAt;
+        }
+    }
+}
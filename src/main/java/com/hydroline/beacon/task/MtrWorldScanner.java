@@ -5,7 +5,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hydroline.beacon.BeaconPlugin;
 import com.hydroline.beacon.config.PluginConfig;
 import com.hydroline.beacon.mtr.MtrCategory;
+import com.hydroline.beacon.mtr.MtrEntity;
+import com.hydroline.beacon.mtr.MtrEntityStore;
+import com.hydroline.beacon.mtr.MtrGraphEngine;
 import com.hydroline.beacon.storage.DatabaseManager;
+import com.hydroline.beacon.storage.MtrQueryCache;
 import com.hydroline.beacon.util.MtrMessagePackDecoder;
 import com.hydroline.beacon.util.PathUtils;
 import com.hydroline.beacon.world.WorldFileAccess;
@@ -23,9 +27,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class MtrWorldScanner {
 
@@ -64,34 +70,40 @@ public class MtrWorldScanner {
             batchSize = 16;
         }
 
+        ScanScheduler scheduler = plugin.getScanScheduler();
+        ScanPipeline pipeline = scheduler != null ? scheduler.getPipeline() : null;
+        if (pipeline == null) {
+            return;
+        }
+
         int filesProcessed = 0;
-        int entityChanges = 0;
+        int[] entityChanges = new int[1];
+        Set<String> touchedDimensions = new HashSet<>();
+        List<MtrEntityStore.Change> storeChanges = new ArrayList<>();
+        boolean committed = false;
 
         try (Connection connection = db.getConnection()) {
             connection.setAutoCommit(false);
             for (World world : worldFileAccess.getWorlds()) {
                 collectWorldFiles(world, connection, scanStart);
             }
-            handleDeletedFiles(connection, scanStart);
+            handleDeletedFiles(connection, scanStart, touchedDimensions, storeChanges);
+            connection.commit();
             boolean interrupted = false;
             while (true) {
                 List<MtrWorldFile> pending = fetchPendingFiles(connection, batchSize);
                 if (pending.isEmpty()) {
                     break;
                 }
-                for (MtrWorldFile file : pending) {
-                    try {
-                        int delta = processFile(connection, file, serverRoot, scanStart);
-                        if (delta >= 0) {
-                            filesProcessed++;
-                            entityChanges += delta;
-                        }
-                    } catch (IOException e) {
-                        plugin.getLogger().warning("Failed to read MTR file " + file.filePath + ": " + e.getMessage());
-                    } catch (SQLException e) {
-                        plugin.getLogger().warning("DB error while processing MTR file " + file.filePath + ": " + e.getMessage());
-                    }
-                }
+                // each batch is decoded on the parser pool and written (and committed) by this thread
+                ScanPipeline.Result result = pipeline.<MtrWorldFile, ParsedMtrFile>run("mtr-world", connection,
+                        sink -> pending.forEach(sink::accept),
+                        file -> parseFile(file, serverRoot),
+                        (conn, parsed) -> {
+                            entityChanges[0] += writeFile(conn, parsed, scanStart, storeChanges);
+                            touchedDimensions.add(parsed.source.dimensionContext);
+                        });
+                filesProcessed += result.getWritten();
                 if (pending.size() < batchSize) {
                     break;
                 }
@@ -101,16 +113,35 @@ public class MtrWorldScanner {
                 }
             }
             connection.commit();
+            committed = true;
             if (interrupted) {
                 plugin.getLogger().warning("MTR world scan interrupted before finishing all batches");
             }
         } catch (SQLException e) {
             plugin.getLogger().severe("Failed to scan MTR world data: " + e.getMessage());
             return;
+        } finally {
+            // batches are committed as the scan goes, so a failed scan leaves the store with an unknown subset
+            MtrEntityStore entityStore = plugin.getMtrEntityStore();
+            if (entityStore != null) {
+                if (committed) {
+                    entityStore.apply(storeChanges);
+                } else {
+                    entityStore.invalidate();
+                }
+            }
+            MtrGraphEngine graphEngine = plugin.getMtrGraphEngine();
+            if (graphEngine != null && !touchedDimensions.isEmpty()) {
+                graphEngine.markStale();
+            }
+            MtrQueryCache queryCache = plugin.getMtrQueryCache();
+            if (queryCache != null) {
+                queryCache.onDimensionsUpdated(touchedDimensions, scanStart);
+            }
         }
 
         if (filesProcessed > 0) {
-            plugin.getLogger().info("MTR world scan processed " + filesProcessed + " files, entity changes=" + entityChanges);
+            plugin.getLogger().info("MTR world scan processed " + filesProcessed + " files, entity changes=" + entityChanges[0]);
         }
     }
 
@@ -251,9 +282,12 @@ public class MtrWorldScanner {
         return files;
     }
 
-    private void handleDeletedFiles(Connection connection, long scanStart) throws SQLException {
+    private void handleDeletedFiles(Connection connection,
+                                    long scanStart,
+                                    Set<String> touchedDimensions,
+                                    List<MtrEntityStore.Change> storeChanges) throws SQLException {
         try (PreparedStatement ps = connection.prepareStatement(
-                "SELECT id, file_path, category, dimension_context FROM mtr_world_files WHERE last_seen_at < ?"
+                "SELECT id, file_path, category, dimension_context, namespace, dimension FROM mtr_world_files WHERE last_seen_at < ?"
         )) {
             ps.setLong(1, scanStart);
             try (ResultSet rs = ps.executeQuery()) {
@@ -265,6 +299,9 @@ public class MtrWorldScanner {
                     MtrCategory category = MtrCategory.fromKey(categoryKey);
                     if (category != null) {
                         deleteEntityForMissingFile(connection, category, dimensionContext, filePath);
+                        storeChanges.add(MtrEntityStore.Change.removeFile(category, dimensionContext, filePath));
+                        updateDimensionVersion(connection, dimensionContext, rs.getString("namespace"), rs.getString("dimension"), scanStart);
+                        touchedDimensions.add(dimensionContext);
                     }
                     try (PreparedStatement delete = connection.prepareStatement(
                             "DELETE FROM mtr_world_files WHERE id = ?"
@@ -283,12 +320,13 @@ public class MtrWorldScanner {
                                             String filePath) throws SQLException {
         String table = category.getTableName();
         try (PreparedStatement select = connection.prepareStatement(
-                "SELECT entity_id, payload FROM " + table + " WHERE file_path = ? AND dimension_context = ? LIMIT 1"
+                "SELECT entity_id, payload FROM " + table + " WHERE file_path = ? AND dimension_context = ?"
         )) {
             select.setString(1, filePath);
             select.setString(2, dimensionContext);
             try (ResultSet rs = select.executeQuery()) {
-                if (rs.next()) {
+                // one diff per removed entity, so diff consumers see every deletion of a multi-entity file
+                while (rs.next()) {
                     String entityId = rs.getString("entity_id");
                     String payload = rs.getString("payload");
                     insertDiff(connection, category.getKey(), dimensionContext, entityId, "deleted", payload, null, filePath, System.currentTimeMillis());
@@ -304,16 +342,46 @@ public class MtrWorldScanner {
         }
     }
 
-    private int processFile(Connection connection, MtrWorldFile file, File serverRoot, long scanStart) throws SQLException, IOException {
+    // Parser stage: file read, MessagePack decode and JSON serialization run on the parser pool.
+    private ParsedMtrFile parseFile(MtrWorldFile file, File serverRoot) {
         File actual = new File(serverRoot, file.filePath);
         if (!actual.isFile()) {
-            return -1;
+            return null;
+        }
+        List<Map<String, Object>> records;
+        try {
+            records = decodeRecords(Files.readAllBytes(actual.toPath()));
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to read MTR file " + file.filePath + ": " + e.getMessage());
+            return null;
+        }
+        ParsedMtrFile parsed = new ParsedMtrFile(file, MtrCategory.fromKey(file.category));
+        if (parsed.category == null) {
+            return parsed;
         }
-        List<Map<String, Object>> records = decodeRecords(Files.readAllBytes(actual.toPath()));
-        int changed = 0;
         for (Map<String, Object> record : records) {
-            if (storeEntity(connection, file, record, scanStart)) {
-                changed++;
+            String entityId = getEntityId(record, parsed.category);
+            if (entityId == null || entityId.isEmpty()) {
+                continue;
+            }
+            parsed.entities.add(new ParsedEntity(entityId, toJson(record), toString(record.get("transport_mode")),
+                    toString(record.get("name")), toLong(record.get("color"))));
+        }
+        return parsed;
+    }
+
+    private int writeFile(Connection connection,
+                          ParsedMtrFile parsed,
+                          long scanStart,
+                          List<MtrEntityStore.Change> storeChanges) throws SQLException {
+        MtrWorldFile file = parsed.source;
+        int changed = 0;
+        if (parsed.category != null) {
+            for (ParsedEntity entity : parsed.entities) {
+                if (storeEntity(connection, file, parsed.category, entity, scanStart)) {
+                    storeChanges.add(MtrEntityStore.Change.upsert(parsed.category, toStoreEntity(parsed.category, file, entity, scanStart)));
+                    changed++;
+                }
             }
         }
         markFileProcessed(connection, file.filePath, scanStart, true);
@@ -321,6 +389,15 @@ public class MtrWorldScanner {
         return changed;
     }
 
+    // Same column subset storeEntity writes for the category.
+    private MtrEntity toStoreEntity(MtrCategory category, MtrWorldFile file, ParsedEntity entity, long scannedAt) {
+        return new MtrEntity(file.dimensionContext, entity.entityId,
+                category.hasTransportModeColumn() ? entity.transportMode : null,
+                category.hasNameColumn() ? entity.name : null,
+                category.hasColorColumn() ? entity.color : null,
+                file.filePath, scannedAt, entity.payload);
+    }
+
     private List<Map<String, Object>> decodeRecords(byte[] raw) {
         Object decoded = MtrMessagePackDecoder.decode(raw);
         if (decoded instanceof List) {
@@ -353,20 +430,13 @@ public class MtrWorldScanner {
         return normalized;
     }
 
-    private boolean storeEntity(Connection connection, MtrWorldFile file, Map<String, Object> record, long scannedAt) throws SQLException {
-        MtrCategory category = MtrCategory.fromKey(file.category);
-        if (category == null) {
-            return false;
-        }
-        String entityId = getEntityId(record, category);
-        if (entityId == null || entityId.isEmpty()) {
-            return false;
-        }
-        String payload = toJson(record);
+    private boolean storeEntity(Connection connection, MtrWorldFile file, MtrCategory category, ParsedEntity entity, long scannedAt) throws SQLException {
+        String entityId = entity.entityId;
+        String payload = entity.payload;
         String table = category.getTableName();
-        String transportMode = toString(record.get("transport_mode"));
-        String name = toString(record.get("name"));
-        Long color = toLong(record.get("color"));
+        String transportMode = entity.transportMode;
+        String name = entity.name;
+        Long color = entity.color;
         boolean hasTransportMode = category.hasTransportModeColumn();
         boolean hasName = category.hasNameColumn();
         boolean hasColor = category.hasColorColumn();
@@ -577,5 +647,42 @@ public class MtrWorldScanner {
         private String namespace;
         private String dimension;
         private long lastModified;
+
+        @Override
+        public String toString() {
+            return filePath;
+        }
+    }
+
+    private static final class ParsedMtrFile {
+        private final MtrWorldFile source;
+        private final MtrCategory category;
+        private final List<ParsedEntity> entities = new ArrayList<>();
+
+        private ParsedMtrFile(MtrWorldFile source, MtrCategory category) {
+            this.source = source;
+            this.category = category;
+        }
+
+        @Override
+        public String toString() {
+            return source.filePath;
+        }
+    }
+
+    private static final class ParsedEntity {
+        private final String entityId;
+        private final String payload;
+        private final String transportMode;
+        private final String name;
+        private final Long color;
+
+        private ParsedEntity(String entityId, String payload, String transportMode, String name, Long color) {
+            this.entityId = entityId;
+            this.payload = payload;
+            this.transportMode = transportMode;
+            this.name = name;
+            this.color = color;
+        }
     }
 }
@@ -5,6 +5,7 @@ import com.hydroline.beacon.storage.DatabaseManager;
 import com.hydroline.beacon.util.PathUtils;
 import com.hydroline.beacon.util.NbtUtils;
 import com.hydroline.beacon.world.WorldFileAccess;
+import com.hydroline.beacon.storage.PlayerIdentityIndex;
 import org.bukkit.World;
 
 import java.io.File;
@@ -12,12 +13,25 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NbtIdentityScanner {
 
+    public static final String FILE_TYPE_PLAYERDATA = "playerdata";
+    public static final String CONTAINER_INVENTORY = "inventory";
+    public static final String CONTAINER_ENDER_CHEST = "ender_chest";
+    private static final Object SCAN_LOCK = new Object();
+
     private final BeaconPlugin plugin;
 
     public NbtIdentityScanner(BeaconPlugin plugin) {
@@ -25,81 +39,293 @@ public class NbtIdentityScanner {
     }
 
     public void scanOnce() {
+        scan(null, null);
+    }
+
+    /**
+     * Refreshes identity, NBT cache and item index for the given players only.
+     */
+    public void scanPlayers(Collection<String> playerUuids) {
+        scan(null, playerUuids);
+    }
+
+    /**
+     * Refreshes every playerdata file of the given worlds.
+     */
+    public void scanWorlds(Collection<String> worldNames) {
+        scan(worldNames, null);
+    }
+
+    private void scan(Collection<String> worldNames, Collection<String> playerUuids) {
         WorldFileAccess wfa = plugin.getWorldFileAccess();
         DatabaseManager db = plugin.getDatabaseManager();
-        if (wfa == null || db == null) return;
+        ScanScheduler scheduler = plugin.getScanScheduler();
+        ScanPipeline pipeline = scheduler != null ? scheduler.getPipeline() : null;
+        if (wfa == null || db == null || pipeline == null) return;
 
         long started = System.currentTimeMillis();
         int filesProcessed = 0;
-        int upserts = 0;
-
-        try (Connection conn = db.getConnection()) {
-            conn.setAutoCommit(false);
-            List<World> worlds = wfa.getWorlds();
-            for (World world : worlds) {
-                File dir = new File(world.getWorldFolder(), "playerdata");
-                if (!dir.isDirectory()) continue;
-                File[] files = dir.listFiles((d, name) -> name.toLowerCase().endsWith(".dat"));
-                if (files == null) continue;
-                for (File f : files) {
-                    String uuid = stripDat(f.getName());
-                    if (uuid == null || !isValidPlayerDataUuid(uuid)) continue;
-                    filesProcessed++;
-                    String playerName = null;
-                    Long firstPlayed = null;
-                    Long lastPlayed = null;
-                    Map<String, Object> nbt = null;
-                    try (FileInputStream in = new FileInputStream(f)) {
-                        nbt = NbtUtils.readPlayerDatToMap(in);
-                        // Common CraftBukkit path: bukkit -> lastKnownName
-                        Object bkt = nbt.get("bukkit");
-                        if (bkt instanceof Map) {
-                            Object lkn = ((Map<?, ?>) bkt).get("lastKnownName");
-                            if (lkn instanceof String) {
-                                playerName = (String) lkn;
-                            }
-                            if (firstPlayed == null) {
-                                firstPlayed = asLong(((Map<?, ?>) bkt).get("firstPlayed"));
-                            }
-                            if (lastPlayed == null) {
-                                lastPlayed = asLong(((Map<?, ?>) bkt).get("lastPlayed"));
-                            }
-                        }
-                        if (firstPlayed == null) {
-                            firstPlayed = asLong(nbt.get("firstPlayed"));
-                        }
-                        if (lastPlayed == null) {
-                            lastPlayed = asLong(nbt.get("lastPlayed"));
-                        }
-                    } catch (IOException e) {
-                        plugin.getLogger().warning("Failed to parse NBT for " + PathUtils.toServerRelativePath(plugin, f) + ": " + e.getMessage());
+        int removedPlayers = 0;
+        ScanCounts counts = new ScanCounts();
+
+        synchronized (SCAN_LOCK) {
+            try (Connection conn = db.getConnection()) {
+                conn.setAutoCommit(false);
+                Map<String, Long> synced = loadSyncedFiles(conn, playerUuids);
+                List<World> worlds = new ArrayList<>();
+                for (World world : wfa.getWorlds()) {
+                    if (worldNames == null || worldNames.contains(world.getName())) {
+                        worlds.add(world);
                     }
+                }
+                PlayerDataListing listing = new PlayerDataListing();
+                ScanPipeline.Result result = pipeline.run("playerdata", conn,
+                        sink -> discoverFiles(worlds, synced, playerUuids, listing, sink),
+                        this::parsePlayerData,
+                        (c, parsed) -> writePlayerData(c, parsed, counts));
+                filesProcessed = result.getWritten();
+                // every write is committed once run() returns; only now may the index see the new identities
+                applyIdentityUpdates(counts.identities);
+                // a world-scoped scan does not see every playerdata folder, so it cannot tell a file is gone
+                if (worldNames == null && listing.complete) {
+                    removedPlayers = removeMissingPlayers(conn, listing.present, playerUuids);
+                    conn.commit();
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Failed to scan player identities: " + e.getMessage());
+            }
+        }
 
-                    long now = System.currentTimeMillis();
+        long elapsed = System.currentTimeMillis() - started;
+        if (filesProcessed > 0 || removedPlayers > 0) {
+            plugin.getLogger().info("NBT identity scan completed in " + elapsed + " ms, files=" + filesProcessed + ", upserts=" + counts.upserts + ", item rows=" + counts.itemRows + ", removed=" + removedPlayers);
+        }
+    }
 
-                    if (playerName != null && !playerName.isEmpty()) {
-                        upsertIdentity(conn, uuid, playerName, firstPlayed, lastPlayed, now);
-                        upserts++;
-                    }
+    // playerdata is rewritten on save; unchanged files keep identities/cache/item index as-is
+    private void discoverFiles(List<World> worlds,
+                               Map<String, Long> synced,
+                               Collection<String> playerUuids,
+                               PlayerDataListing listing,
+                               ScanPipeline.Sink<PlayerDataFile> sink) {
+        boolean listed = true;
+        for (World world : worlds) {
+            File dir = new File(world.getWorldFolder(), "playerdata");
+            if (!dir.isDirectory()) continue;
+            File[] files;
+            if (playerUuids != null) {
+                List<File> targeted = new ArrayList<>();
+                for (String uuid : playerUuids) {
+                    File f = new File(dir, uuid + ".dat");
+                    if (f.isFile()) targeted.add(f);
+                }
+                files = targeted.toArray(new File[0]);
+            } else {
+                files = dir.listFiles((d, name) -> name.toLowerCase().endsWith(".dat"));
+            }
+            if (files == null) {
+                listed = false;
+                continue;
+            }
+            for (File f : files) {
+                String uuid = stripDat(f.getName());
+                if (uuid == null || !isValidPlayerDataUuid(uuid)) continue;
+                listing.present.add(uuid);
+                long lastModified = f.lastModified();
+                String relativePath = PathUtils.toServerRelativePath(plugin, f);
+                Long syncedModified = synced.get(relativePath);
+                if (syncedModified != null && syncedModified == lastModified) continue;
+                sink.accept(new PlayerDataFile(f, uuid, relativePath, lastModified));
+            }
+        }
+        listing.complete = listed;
+    }
 
-                    // Keep raw NBT JSON cache in sync with current playerdata
-                    if (nbt != null) {
-                        try {
-                            upsertPlayerNbtCache(conn, uuid, NbtUtils.toJson(nbt), now);
-                        } catch (IOException e) {
-                            plugin.getLogger().warning("Failed to serialize NBT JSON for " + uuid + ": " + e.getMessage());
-                        }
-                    }
+    // Parser stage: NBT decode, JSON serialization and item aggregation all happen off the writer thread.
+    private ParsedPlayerData parsePlayerData(PlayerDataFile file) {
+        Map<String, Object> nbt;
+        try (FileInputStream in = new FileInputStream(file.file)) {
+            nbt = NbtUtils.readPlayerDatToMap(in);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to parse NBT for " + file.relativePath + ": " + e.getMessage());
+            return null;
+        }
+        ParsedPlayerData parsed = new ParsedPlayerData(file);
+        // Common CraftBukkit path: bukkit -> lastKnownName
+        Object bkt = nbt.get("bukkit");
+        if (bkt instanceof Map) {
+            Object lkn = ((Map<?, ?>) bkt).get("lastKnownName");
+            if (lkn instanceof String) {
+                parsed.playerName = (String) lkn;
+            }
+            parsed.firstPlayed = asLong(((Map<?, ?>) bkt).get("firstPlayed"));
+            parsed.lastPlayed = asLong(((Map<?, ?>) bkt).get("lastPlayed"));
+        }
+        if (parsed.firstPlayed == null) {
+            parsed.firstPlayed = asLong(nbt.get("firstPlayed"));
+        }
+        if (parsed.lastPlayed == null) {
+            parsed.lastPlayed = asLong(nbt.get("lastPlayed"));
+        }
+        try {
+            parsed.json = NbtUtils.toJson(nbt);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to serialize NBT JSON for " + file.uuid + ": " + e.getMessage());
+        }
+        collectItems(nbt.get("Inventory"), CONTAINER_INVENTORY, parsed.itemTotals);
+        collectItems(nbt.get("EnderItems"), CONTAINER_ENDER_CHEST, parsed.itemTotals);
+        return parsed;
+    }
+
+    private void writePlayerData(Connection conn, ParsedPlayerData parsed, ScanCounts counts) throws SQLException {
+        PlayerDataFile file = parsed.source;
+        long now = System.currentTimeMillis();
+        boolean named = parsed.playerName != null && !parsed.playerName.isEmpty();
+
+        if (named) {
+            upsertIdentity(conn, file.uuid, parsed.playerName, parsed.firstPlayed, parsed.lastPlayed, now);
+        }
+        // Keep raw NBT JSON cache in sync with current playerdata
+        if (parsed.json != null) {
+            upsertPlayerNbtCache(conn, file.uuid, parsed.json, now);
+        }
+        int itemRows = replaceInventoryItems(conn, file.uuid, parsed.itemTotals, now);
+        upsertFileSyncState(conn, file.uuid, file.relativePath, file.lastModified, now);
+
+        // a failed write is rolled back by the pipeline, so only a fully written file is counted
+        if (named) {
+            counts.identities.add(new IdentityUpdate(file.uuid, parsed.playerName, parsed.firstPlayed, parsed.lastPlayed, now));
+            counts.upserts++;
+        }
+        counts.itemRows += itemRows;
+    }
+
+    private void applyIdentityUpdates(List<IdentityUpdate> updates) {
+        PlayerIdentityIndex index = plugin.getIdentityIndex();
+        if (index == null) {
+            return;
+        }
+        for (IdentityUpdate update : updates) {
+            index.update(update.uuid, update.name, update.firstPlayed, update.lastPlayed, update.updatedAt);
+        }
+    }
+
+    /**
+     * Rebuilds the item index rows of one player: item counts aggregated per container and item id.
+     */
+    private int replaceInventoryItems(Connection conn, String uuid, Map<String, long[]> totals, long now) throws SQLException {
+        try (PreparedStatement del = conn.prepareStatement("DELETE FROM player_inventory_items WHERE player_uuid = ?")) {
+            del.setString(1, uuid);
+            del.executeUpdate();
+        }
+        if (totals.isEmpty()) {
+            return 0;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO player_inventory_items (player_uuid, container, item_id, count, stacks, last_updated) VALUES (?, ?, ?, ?, ?, ?)"
+        )) {
+            for (Map.Entry<String, long[]> e : totals.entrySet()) {
+                int sep = e.getKey().indexOf('|');
+                ps.setString(1, uuid);
+                ps.setString(2, e.getKey().substring(0, sep));
+                ps.setString(3, e.getKey().substring(sep + 1));
+                ps.setLong(4, e.getValue()[0]);
+                ps.setLong(5, e.getValue()[1]);
+                ps.setLong(6, now);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        return totals.size();
+    }
+
+    /**
+     * Drops the item index and sync state of players whose playerdata file no longer exists, limited to
+     * {@code playerUuids} when given. Returns the number of players removed.
+     */
+    private int removeMissingPlayers(Connection conn, Set<String> present, Collection<String> playerUuids) throws SQLException {
+        Set<String> missing = new HashSet<>();
+        if (playerUuids != null) {
+            missing.addAll(playerUuids);
+        } else {
+            try (PreparedStatement ps = conn.prepareStatement("SELECT DISTINCT player_uuid FROM player_inventory_items");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    missing.add(rs.getString(1));
                 }
             }
-            conn.commit();
-        } catch (SQLException e) {
-            plugin.getLogger().severe("Failed to scan player identities: " + e.getMessage());
         }
+        missing.removeAll(present);
+        if (missing.isEmpty()) {
+            return 0;
+        }
+        try (PreparedStatement items = conn.prepareStatement("DELETE FROM player_inventory_items WHERE player_uuid = ?");
+             PreparedStatement sync = conn.prepareStatement("DELETE FROM file_sync_state WHERE file_type = ? AND player_uuid = ?")) {
+            for (String uuid : missing) {
+                items.setString(1, uuid);
+                items.addBatch();
+                // a restored file with the old mtime must be indexed again
+                sync.setString(1, FILE_TYPE_PLAYERDATA);
+                sync.setString(2, uuid);
+                sync.addBatch();
+            }
+            items.executeBatch();
+            sync.executeBatch();
+        }
+        return missing.size();
+    }
 
-        long elapsed = System.currentTimeMillis() - started;
-        if (upserts > 0) {
-            plugin.getLogger().info("NBT identity scan completed in " + elapsed + " ms, files=" + filesProcessed + ", upserts=" + upserts);
+    private void collectItems(Object list, String container, Map<String, long[]> totals) {
+        if (!(list instanceof List)) return;
+        for (Object entry : (List<?>) list) {
+            if (!(entry instanceof Map)) continue;
+            Map<?, ?> item = (Map<?, ?>) entry;
+            Object id = item.get("id");
+            if (!(id instanceof String) || ((String) id).isEmpty()) continue;
+            Long count = asLong(item.get("Count"));
+            long[] acc = totals.computeIfAbsent(container + "|" + id, k -> new long[2]);
+            acc[0] += count != null ? count : 1L;
+            acc[1]++;
+        }
+    }
+
+    private Map<String, Long> loadSyncedFiles(Connection conn, Collection<String> playerUuids) throws SQLException {
+        Map<String, Long> synced = new HashMap<>();
+        String sql = "SELECT file_path, last_modified FROM file_sync_state WHERE file_type = ? AND last_processed >= last_modified";
+        if (playerUuids != null) {
+            if (playerUuids.isEmpty()) return synced;
+            sql += " AND player_uuid IN (" + String.join(", ", Collections.nCopies(playerUuids.size(), "?")) + ")";
+        }
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int idx = 1;
+            ps.setString(idx++, FILE_TYPE_PLAYERDATA);
+            if (playerUuids != null) {
+                for (String uuid : playerUuids) {
+                    ps.setString(idx++, uuid);
+                }
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    synced.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+        }
+        return synced;
+    }
+
+    private void upsertFileSyncState(Connection conn, String uuid, String filePath, long lastModified, long now) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO file_sync_state (file_type, player_uuid, file_path, last_modified, last_processed) " +
+                        "VALUES (?, ?, ?, ?, ?) " +
+                        "ON CONFLICT(file_type, file_path) DO UPDATE SET " +
+                        "last_modified = excluded.last_modified, last_processed = excluded.last_processed"
+        )) {
+            ps.setString(1, FILE_TYPE_PLAYERDATA);
+            ps.setString(2, uuid);
+            ps.setString(3, filePath);
+            ps.setLong(4, lastModified);
+            ps.setLong(5, now);
+            ps.executeUpdate();
         }
     }
 
@@ -169,4 +395,70 @@ public class NbtIdentityScanner {
         if (uuid.length() != 36) return false;
         return uuid.matches("^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
     }
+
+    private static final class ScanCounts {
+        private int upserts;
+        private int itemRows;
+        // identity upserts written but not yet known to be committed
+        private final List<IdentityUpdate> identities = new ArrayList<>();
+    }
+
+    private static final class IdentityUpdate {
+        private final String uuid;
+        private final String name;
+        private final Long firstPlayed;
+        private final Long lastPlayed;
+        private final long updatedAt;
+
+        private IdentityUpdate(String uuid, String name, Long firstPlayed, Long lastPlayed, long updatedAt) {
+            this.uuid = uuid;
+            this.name = name;
+            this.firstPlayed = firstPlayed;
+            this.lastPlayed = lastPlayed;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    // Valid playerdata UUIDs seen by discovery; complete once every folder has been listed.
+    private static final class PlayerDataListing {
+        private final Set<String> present = ConcurrentHashMap.newKeySet();
+        private volatile boolean complete;
+    }
+
+    private static final class PlayerDataFile {
+        private final File file;
+        private final String uuid;
+        private final String relativePath;
+        private final long lastModified;
+
+        private PlayerDataFile(File file, String uuid, String relativePath, long lastModified) {
+            this.file = file;
+            this.uuid = uuid;
+            this.relativePath = relativePath;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public String toString() {
+            return relativePath;
+        }
+    }
+
+    private static final class ParsedPlayerData {
+        private final PlayerDataFile source;
+        private final Map<String, long[]> itemTotals = new HashMap<>();
+        private String playerName;
+        private Long firstPlayed;
+        private Long lastPlayed;
+        private String json;
+
+        private ParsedPlayerData(PlayerDataFile source) {
+            this.source = source;
+        }
+
+        @Override
+        public String toString() {
+            return source.relativePath;
+        }
+    }
 }
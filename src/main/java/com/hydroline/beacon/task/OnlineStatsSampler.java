@@ -0,0 +1,282 @@
+package com.hydroline.beacon.task;
+
+import com.hydroline.beacon.BeaconPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Statistic;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Samples selected statistics of online players on the main thread, so player_stats does not wait for the
+ * stats file to be saved. Each tick reads (player, key) pairs round-robin until the per-tick time budget is
+ * spent; changed values go to {@link LivePlayerDataWriter}. A new pass over all online players starts at most
+ * once per sample interval.
+ */
+public class OnlineStatsSampler {
+
+    private static final String CATEGORY_CUSTOM = "minecraft:custom";
+    private static final Map<String, Statistic> TYPED_CATEGORIES = new HashMap<>();
+
+    static {
+        TYPED_CATEGORIES.put("minecraft:mined", Statistic.MINE_BLOCK);
+        TYPED_CATEGORIES.put("minecraft:used", Statistic.USE_ITEM);
+        TYPED_CATEGORIES.put("minecraft:crafted", Statistic.CRAFT_ITEM);
+        TYPED_CATEGORIES.put("minecraft:broken", Statistic.BREAK_ITEM);
+        TYPED_CATEGORIES.put("minecraft:picked_up", Statistic.PICKUP);
+        TYPED_CATEGORIES.put("minecraft:dropped", Statistic.DROP);
+        TYPED_CATEGORIES.put("minecraft:killed", Statistic.KILL_ENTITY);
+        TYPED_CATEGORIES.put("minecraft:killed_by", Statistic.ENTITY_KILLED_BY);
+    }
+
+    private final BeaconPlugin plugin;
+    private final LivePlayerDataWriter writer;
+    private final List<SampleKey> keys;
+    private final long budgetNanos;
+    private final long passIntervalTicks;
+
+    // main thread only
+    private final Map<UUID, long[]> lastValues = new HashMap<>();
+    private List<Player> roster = Collections.emptyList();
+    private int playerIndex;
+    private int keyIndex;
+    private boolean passActive;
+    private long ticksSincePassStart;
+    private BukkitTask task;
+
+    // written on the main thread, read by get_status
+    private volatile long lastTickNanos;
+    private volatile long maxTickNanos;
+    private volatile double avgTickNanos;
+    private volatile long activeTicks;
+    private volatile long samplesTotal;
+    private volatile long lastPassTicks;
+
+    public OnlineStatsSampler(BeaconPlugin plugin,
+                              LivePlayerDataWriter writer,
+                              List<String> statKeys,
+                              long budgetMicros,
+                              long passIntervalTicks) {
+        this.plugin = plugin;
+        this.writer = writer;
+        this.keys = resolveKeys(statKeys);
+        this.budgetNanos = Math.max(1L, budgetMicros) * 1000L;
+        this.passIntervalTicks = Math.max(1L, passIntervalTicks);
+        this.ticksSincePassStart = this.passIntervalTicks;
+    }
+
+    public void start() {
+        if (keys.isEmpty()) {
+            plugin.getLogger().info("Online stats sampler disabled: no resolvable stat keys configured.");
+            return;
+        }
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private void tick() {
+        ticksSincePassStart++;
+        if (!passActive) {
+            if (ticksSincePassStart < passIntervalTicks) {
+                return;
+            }
+            startPass();
+            if (!passActive) {
+                return;
+            }
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        long samples = 0;
+        // always take at least one sample so a pass makes progress even with a tiny budget
+        while (playerIndex < roster.size()) {
+            Player player = roster.get(playerIndex);
+            if (!player.isOnline()) {
+                playerIndex++;
+                keyIndex = 0;
+                continue;
+            }
+            long[] last = lastValues.get(player.getUniqueId());
+            if (last == null) {
+                last = new long[keys.size()];
+                Arrays.fill(last, -1L);
+                lastValues.put(player.getUniqueId(), last);
+            }
+            SampleKey key = keys.get(keyIndex);
+            long value = key.read(player);
+            samples++;
+            if (value >= 0 && value != last[keyIndex]) {
+                last[keyIndex] = value;
+                writer.enqueueStat(player.getUniqueId().toString(), key.statKey, value);
+            }
+            if (++keyIndex >= keys.size()) {
+                keyIndex = 0;
+                playerIndex++;
+            }
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+        if (playerIndex >= roster.size()) {
+            passActive = false;
+            roster = Collections.emptyList();
+            lastPassTicks = ticksSincePassStart;
+        }
+        recordTick(System.nanoTime() - start, samples);
+    }
+
+    private void startPass() {
+        List<Player> online = new ArrayList<>(Bukkit.getOnlinePlayers());
+        ticksSincePassStart = 0;
+        Set<UUID> onlineIds = new HashSet<>();
+        for (Player player : online) {
+            onlineIds.add(player.getUniqueId());
+        }
+        lastValues.keySet().retainAll(onlineIds);
+        if (online.isEmpty()) {
+            return;
+        }
+        roster = online;
+        playerIndex = 0;
+        keyIndex = 0;
+        passActive = true;
+    }
+
+    private void recordTick(long elapsedNanos, long samples) {
+        lastTickNanos = elapsedNanos;
+        if (elapsedNanos > maxTickNanos) {
+            maxTickNanos = elapsedNanos;
+        }
+        long ticks = activeTicks + 1;
+        avgTickNanos = ticks == 1 ? elapsedNanos : avgTickNanos * 0.95 + elapsedNanos * 0.05;
+        activeTicks = ticks;
+        samplesTotal = samplesTotal + samples;
+    }
+
+    /**
+     * Measured main-thread cost, for get_status.
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", task != null);
+        metrics.put("keys", keys.size());
+        metrics.put("tick_budget_us", budgetNanos / 1000L);
+        metrics.put("last_tick_us", lastTickNanos / 1000L);
+        metrics.put("avg_tick_us", Math.round(avgTickNanos / 1000.0));
+        metrics.put("max_tick_us", maxTickNanos / 1000L);
+        metrics.put("active_ticks", activeTicks);
+        metrics.put("samples_total", samplesTotal);
+        metrics.put("last_pass_ticks", lastPassTicks);
+        return metrics;
+    }
+
+    private List<SampleKey> resolveKeys(List<String> statKeys) {
+        List<SampleKey> resolved = new ArrayList<>();
+        if (statKeys == null) {
+            return resolved;
+        }
+        Map<String, Statistic> untyped = new HashMap<>();
+        for (Statistic statistic : Statistic.values()) {
+            if (statistic.getType() == Statistic.Type.UNTYPED) {
+                untyped.put(statistic.getKey().toString(), statistic);
+            }
+        }
+        Set<String> seen = new HashSet<>();
+        for (String raw : statKeys) {
+            if (raw == null || raw.trim().isEmpty() || !seen.add(raw.trim())) {
+                continue;
+            }
+            SampleKey key = resolveKey(raw.trim(), untyped);
+            if (key == null) {
+                plugin.getLogger().warning("Online stats sampler: cannot map stat key '" + raw + "' to a Bukkit statistic, skipped.");
+            } else {
+                resolved.add(key);
+            }
+        }
+        return resolved;
+    }
+
+    // Keys use the flat form stored by the stats file scan: "<category>:<stat>", e.g. minecraft:custom:minecraft:jump
+    private SampleKey resolveKey(String statKey, Map<String, Statistic> untyped) {
+        String[] parts = statKey.split(":");
+        if (parts.length != 4) {
+            return null;
+        }
+        String category = parts[0] + ":" + parts[1];
+        String target = parts[2] + ":" + parts[3];
+        if (CATEGORY_CUSTOM.equals(category)) {
+            Statistic statistic = untyped.get(target);
+            return statistic != null ? new SampleKey(statKey, statistic, null, null) : null;
+        }
+        Statistic statistic = TYPED_CATEGORIES.get(category);
+        if (statistic == null) {
+            return null;
+        }
+        if (statistic.getType() == Statistic.Type.ENTITY) {
+            EntityType entityType = findEntityType(target);
+            return entityType != null ? new SampleKey(statKey, statistic, null, entityType) : null;
+        }
+        Material material = Material.matchMaterial(target);
+        return material != null ? new SampleKey(statKey, statistic, material, null) : null;
+    }
+
+    private static EntityType findEntityType(String key) {
+        for (EntityType type : EntityType.values()) {
+            try {
+                if (type.getKey() != null && key.equals(type.getKey().toString())) {
+                    return type;
+                }
+            } catch (IllegalArgumentException ignored) {
+                // UNKNOWN has no key
+            }
+        }
+        return null;
+    }
+
+    private static final class SampleKey {
+        private final String statKey;
+        private final Statistic statistic;
+        private final Material material;
+        private final EntityType entityType;
+
+        private SampleKey(String statKey, Statistic statistic, Material material, EntityType entityType) {
+            this.statKey = statKey;
+            this.statistic = statistic;
+            this.material = material;
+            this.entityType = entityType;
+        }
+
+        private long read(Player player) {
+            try {
+                if (material != null) {
+                    return player.getStatistic(statistic, material);
+                }
+                if (entityType != null) {
+                    return player.getStatistic(statistic, entityType);
+                }
+                return player.getStatistic(statistic);
+            } catch (IllegalArgumentException e) {
+                return -1L;
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.hydroline.beacon.task;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Three-stage scan pipeline shared by the file scanners: a discovery thread feeds a bounded work queue,
+ * a pool of parser threads decodes files into a bounded result queue, and the calling thread is the single
+ * writer that applies results to SQLite and commits every {@link #WRITE_BATCH_SIZE} results. Each result is
+ * written under its own savepoint, so a write that fails part-way is rolled back before the next commit.
+ * Full queues block the upstream stage, so memory stays bounded by the queue capacity.
+ */
+public final class ScanPipeline {
+
+    private static final int WRITE_BATCH_SIZE = 256;
+    private static final long OFFER_POLL_MS = 100L;
+    private static final Object END = new Object();
+
+    private final Logger logger;
+    private final int parserThreads;
+    private final int queueCapacity;
+    private final ExecutorService parserPool;
+
+    public ScanPipeline(Logger logger, int parserThreads, int queueCapacity) {
+        this.logger = logger;
+        this.parserThreads = Math.max(1, parserThreads);
+        this.queueCapacity = Math.max(this.parserThreads * 2, queueCapacity);
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "beacon-scan-parser-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.parserPool = Executors.newFixedThreadPool(this.parserThreads, factory);
+    }
+
+    public int getParserThreads() {
+        return parserThreads;
+    }
+
+    public void shutdown() {
+        parserPool.shutdownNow();
+    }
+
+    /**
+     * Runs one scan. Must be called from the thread that owns {@code connection}; it becomes the writer stage.
+     * Parse or write failures of single items are logged and counted without stopping the scan; a failed
+     * write is rolled back to the savepoint taken before it.
+     */
+    public <T, R> Result run(String name,
+                             Connection connection,
+                             Source<T> source,
+                             Parser<T, R> parser,
+                             Writer<R> writer) throws SQLException {
+        BlockingQueue<Object> work = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Object> results = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicBoolean aborted = new AtomicBoolean(false);
+        Result result = new Result();
+
+        Thread discovery = new Thread(() -> {
+            try {
+                source.emit(item -> {
+                    if (item != null && offer(work, item, aborted)) {
+                        result.discovered.incrementAndGet();
+                    }
+                });
+            } catch (Exception e) {
+                logger.warning("[" + name + "] file discovery failed: " + e.getMessage());
+            } finally {
+                for (int i = 0; i < parserThreads; i++) {
+                    offer(work, END, aborted);
+                }
+            }
+        }, "beacon-scan-discovery-" + name);
+        discovery.setDaemon(true);
+        discovery.start();
+
+        for (int i = 0; i < parserThreads; i++) {
+            if (parserPool.isShutdown()) {
+                aborted.set(true);
+                break;
+            }
+            parserPool.execute(() -> {
+                try {
+                    while (!aborted.get()) {
+                        Object item = work.poll(OFFER_POLL_MS, TimeUnit.MILLISECONDS);
+                        if (item == null) {
+                            continue;
+                        }
+                        if (item == END) {
+                            break;
+                        }
+                        try {
+                            @SuppressWarnings("unchecked")
+                            R parsed = parser.parse((T) item);
+                            if (parsed != null && offer(results, parsed, aborted)) {
+                                result.parsed.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            result.failed.incrementAndGet();
+                            logger.warning("[" + name + "] failed to parse " + item + ": " + e.getMessage());
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    offer(results, END, aborted);
+                }
+            });
+        }
+
+        int finishedParsers = 0;
+        int pendingCommit = 0;
+        try {
+            try {
+                while (finishedParsers < parserThreads) {
+                    Object item = results.poll(OFFER_POLL_MS, TimeUnit.MILLISECONDS);
+                    if (item == null) {
+                        // parsers dropped by a pool shutdown never send END
+                        if (aborted.get() || parserPool.isShutdown()) {
+                            aborted.set(true);
+                            break;
+                        }
+                        continue;
+                    }
+                    if (item == END) {
+                        finishedParsers++;
+                        continue;
+                    }
+                    // a failed item must leave nothing behind for the next batch commit to pick up
+                    Savepoint savepoint = connection.setSavepoint();
+                    try {
+                        @SuppressWarnings("unchecked")
+                        R parsed = (R) item;
+                        writer.write(connection, parsed);
+                        connection.releaseSavepoint(savepoint);
+                        result.written.incrementAndGet();
+                    } catch (SQLException | RuntimeException e) {
+                        connection.rollback(savepoint);
+                        result.failed.incrementAndGet();
+                        logger.warning("[" + name + "] failed to write " + item + ": " + e.getMessage());
+                    }
+                    if (++pendingCommit >= WRITE_BATCH_SIZE) {
+                        connection.commit();
+                        pendingCommit = 0;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warning("[" + name + "] scan interrupted, committing partial results");
+            }
+            connection.commit();
+        } finally {
+            // however the writer stage ends, release discovery and parsers blocked in offer()
+            aborted.set(true);
+        }
+        return result;
+    }
+
+    // Blocking put that gives up once the run has been aborted, so no stage can hang on a dead consumer.
+    private static boolean offer(BlockingQueue<Object> queue, Object item, AtomicBoolean aborted) {
+        try {
+            while (!queue.offer(item, OFFER_POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (aborted.get()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            aborted.set(true);
+            return false;
+        }
+    }
+
+    public interface Source<T> {
+        void emit(Sink<T> sink) throws Exception;
+    }
+
+    public interface Sink<T> {
+        void accept(T item);
+    }
+
+    public interface Parser<T, R> {
+        /**
+         * Returns the parsed form of {@code item}, or null to skip it.
+         */
+        R parse(T item) throws Exception;
+    }
+
+    public interface Writer<R> {
+        void write(Connection connection, R parsed) throws SQLException;
+    }
+
+    public static final class Result {
+        private final AtomicInteger discovered = new AtomicInteger();
+        private final AtomicInteger parsed = new AtomicInteger();
+        private final AtomicInteger written = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        public int getDiscovered() {
+            return discovered.get();
+        }
+
+        public int getParsed() {
+            return parsed.get();
+        }
+
+        public int getWritten() {
+            return written.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+    }
+}
@@ -5,13 +5,30 @@ import com.hydroline.beacon.config.PluginConfig;
 import org.bukkit.Bukkit;
 import org.bukkit.scheduler.BukkitTask;
 
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public class ScanScheduler {
 
+    // Delays give the server time to finish writing the files after the quit/save event fired
+    private static final long PLAYER_REFRESH_DELAY_TICKS = 40L;
+    private static final long WORLD_REFRESH_DELAY_TICKS = 100L;
+
     private final BeaconPlugin plugin;
     private BukkitTask advancementsAndStatsTask;
     private BukkitTask mtrLogsTask;
     private BukkitTask nbtIdentityTask;
     private BukkitTask mtrWorldTask;
+    private ScanPipeline pipeline;
+    private LivePlayerDataWriter liveDataWriter;
+    private OnlineStatsSampler onlineStatsSampler;
+    private final Set<String> pendingPlayerRefresh = ConcurrentHashMap.newKeySet();
+    private final Set<String> pendingWorldRefresh = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean(false);
+    private volatile boolean running;
 
     public ScanScheduler(BeaconPlugin plugin) {
         this.plugin = plugin;
@@ -24,10 +41,26 @@ public class ScanScheduler {
             interval = 200L;
         }
 
+        pipeline = new ScanPipeline(plugin.getLogger(), cfg.getScanParserThreads(), cfg.getScanQueueCapacity());
+        liveDataWriter = new LivePlayerDataWriter(plugin);
+        liveDataWriter.start();
+        if (cfg.isOnlineStatsSamplerEnabled()) {
+            onlineStatsSampler = new OnlineStatsSampler(plugin, liveDataWriter, cfg.getOnlineStatsSampleKeys(),
+                    cfg.getOnlineStatsTickBudgetMicros(), cfg.getOnlineStatsSampleIntervalTicks());
+            onlineStatsSampler.start();
+        }
+
+        // player files are refreshed on quit/world save; full scans only reconcile
+        long playerScanInterval = cfg.getPlayerFullScanIntervalTicks();
+        if (playerScanInterval <= 0L) {
+            playerScanInterval = interval;
+        }
+        running = true;
+
         advancementsAndStatsTask = Bukkit.getScheduler()
                 .runTaskTimerAsynchronously(plugin, () -> {
                     new AdvancementsAndStatsScanner(plugin).scanOnce();
-                }, interval, interval);
+                }, interval, playerScanInterval);
 
         mtrLogsTask = Bukkit.getScheduler()
                 .runTaskTimerAsynchronously(plugin, () -> {
@@ -44,10 +77,11 @@ public class ScanScheduler {
         nbtIdentityTask = Bukkit.getScheduler()
                 .runTaskTimerAsynchronously(plugin, () -> {
                     new NbtIdentityScanner(plugin).scanOnce();
-                }, interval, interval * 6); // less frequent after first run (~6x interval)
+                }, interval, playerScanInterval * 6); // less frequent after first run (~6x interval)
     }
 
     public void stop() {
+        running = false;
         if (advancementsAndStatsTask != null) {
             advancementsAndStatsTask.cancel();
             advancementsAndStatsTask = null;
@@ -64,5 +98,80 @@ public class ScanScheduler {
             mtrWorldTask.cancel();
             mtrWorldTask = null;
         }
+        if (onlineStatsSampler != null) {
+            onlineStatsSampler.stop();
+            onlineStatsSampler = null;
+        }
+        if (liveDataWriter != null) {
+            liveDataWriter.stop();
+            liveDataWriter = null;
+        }
+        if (pipeline != null) {
+            pipeline.shutdown();
+            pipeline = null;
+        }
+    }
+
+    public ScanPipeline getPipeline() {
+        return pipeline;
+    }
+
+    public LivePlayerDataWriter getLiveDataWriter() {
+        return liveDataWriter;
+    }
+
+    public OnlineStatsSampler getOnlineStatsSampler() {
+        return onlineStatsSampler;
+    }
+
+    /**
+     * Queues a rescan of one player's stats, advancements and playerdata shortly after they were saved.
+     */
+    public void requestPlayerRefresh(String playerUuid) {
+        pendingPlayerRefresh.add(playerUuid);
+        scheduleRefresh(PLAYER_REFRESH_DELAY_TICKS);
+    }
+
+    /**
+     * Queues a rescan of the player files stored under one world folder.
+     */
+    public void requestWorldRefresh(String worldName) {
+        pendingWorldRefresh.add(worldName);
+        scheduleRefresh(WORLD_REFRESH_DELAY_TICKS);
+    }
+
+    // Requests arriving while a refresh is pending are coalesced into that run
+    private void scheduleRefresh(long delayTicks) {
+        if (!running || !refreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        Bukkit.getScheduler().runTaskLaterAsynchronously(plugin, this::runTargetedRefresh, delayTicks);
+    }
+
+    private void runTargetedRefresh() {
+        refreshScheduled.set(false);
+        if (!running) {
+            return;
+        }
+        Set<String> worlds = drain(pendingWorldRefresh);
+        Set<String> players = drain(pendingPlayerRefresh);
+        if (!worlds.isEmpty()) {
+            new AdvancementsAndStatsScanner(plugin).scanWorlds(worlds);
+            new NbtIdentityScanner(plugin).scanWorlds(worlds);
+        }
+        if (!players.isEmpty()) {
+            new AdvancementsAndStatsScanner(plugin).scanPlayers(players);
+            new NbtIdentityScanner(plugin).scanPlayers(players);
+        }
+    }
+
+    private Set<String> drain(Set<String> pending) {
+        Set<String> drained = new LinkedHashSet<>();
+        Iterator<String> it = pending.iterator();
+        while (it.hasNext()) {
+            drained.add(it.next());
+            it.remove();
+        }
+        return drained;
     }
 }
@@ -0,0 +1,79 @@
+package com.hydroline.beacon.task;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of main-thread server state, published by {@link ServerSnapshotPublisher}.
+ * Collections are unmodifiable and shared by every reader.
+ */
+public final class ServerSnapshot {
+
+    private final long capturedAt;
+    private final List<Map<String, Object>> onlinePlayers;
+    private final Map<String, Object> serverTime;
+    private final int maxPlayers;
+    private final Map<String, Integer> balances;
+    private final String balancesError;
+    private final long balancesCapturedAt;
+
+    ServerSnapshot(long capturedAt,
+                   List<Map<String, Object>> onlinePlayers,
+                   Map<String, Object> serverTime,
+                   int maxPlayers,
+                   Map<String, Integer> balances,
+                   String balancesError,
+                   long balancesCapturedAt) {
+        this.capturedAt = capturedAt;
+        this.onlinePlayers = onlinePlayers;
+        this.serverTime = serverTime;
+        this.maxPlayers = maxPlayers;
+        this.balances = balances;
+        this.balancesError = balancesError;
+        this.balancesCapturedAt = balancesCapturedAt;
+    }
+
+    public long getCapturedAt() {
+        return capturedAt;
+    }
+
+    public long getAgeMillis() {
+        return Math.max(0L, System.currentTimeMillis() - capturedAt);
+    }
+
+    public List<Map<String, Object>> getOnlinePlayers() {
+        return onlinePlayers;
+    }
+
+    public int getOnlinePlayerCount() {
+        return onlinePlayers.size();
+    }
+
+    public Map<String, Object> getServerTime() {
+        return serverTime;
+    }
+
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    /**
+     * Scoreboard entry -> mtr_balance score, or null when the objective could not be read
+     * (see {@link #getBalancesError()}).
+     */
+    public Map<String, Integer> getBalances() {
+        return balances;
+    }
+
+    public String getBalancesError() {
+        return balancesError;
+    }
+
+    public long getBalancesCapturedAt() {
+        return balancesCapturedAt;
+    }
+
+    public long getBalancesAgeMillis() {
+        return Math.max(0L, System.currentTimeMillis() - balancesCapturedAt);
+    }
+}
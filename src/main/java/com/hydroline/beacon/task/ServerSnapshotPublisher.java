@@ -0,0 +1,192 @@
+package com.hydroline.beacon.task;
+
+import com.hydroline.beacon.BeaconPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.GameMode;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.scoreboard.Objective;
+import org.bukkit.scoreboard.Scoreboard;
+import org.bukkit.scoreboard.ScoreboardManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rebuilds a {@link ServerSnapshot} on the main thread every few ticks and publishes it through a volatile
+ * reference, so socket handlers read online players, world time and server basics without a
+ * callSyncMethod round-trip. The mtr_balance scores cover every scoreboard entry; they are re-read in passes
+ * started at most once a second, each tick reading at most {@link #BALANCE_ENTRIES_PER_TICK} entries, and a
+ * pass is published once it has read every entry. Only the first pass (and {@link #publishNow()}) reads all
+ * entries in one tick, so readers have balances from the first snapshot on.
+ */
+public class ServerSnapshotPublisher {
+
+    private static final String BALANCE_OBJECTIVE = "mtr_balance";
+    private static final long BALANCE_REFRESH_TICKS = 20L;
+    private static final int BALANCE_ENTRIES_PER_TICK = 512;
+
+    private final BeaconPlugin plugin;
+    private final long intervalTicks;
+    private volatile ServerSnapshot snapshot;
+    private BukkitTask task;
+    private long ticksSinceBalances = BALANCE_REFRESH_TICKS;
+    // published balances; main thread only
+    private Map<String, Integer> balances;
+    private String balancesError;
+    private long balancesCapturedAt;
+    // pass in progress, null between passes
+    private List<String> passEntries;
+    private Map<String, Integer> passBalances;
+    private int passIndex;
+    private long passStartedAt;
+
+    public ServerSnapshotPublisher(BeaconPlugin plugin, long intervalTicks) {
+        this.plugin = plugin;
+        this.intervalTicks = Math.max(1L, intervalTicks);
+    }
+
+    public void start() {
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::publish, 0L, intervalTicks);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Latest snapshot, or null before the first main-thread publish.
+     */
+    public ServerSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Rebuilds and publishes a snapshot immediately, finishing any balance pass in progress. Main thread only.
+     */
+    public ServerSnapshot publishNow() {
+        publish(true);
+        return snapshot;
+    }
+
+    private void publish() {
+        publish(false);
+    }
+
+    private void publish(boolean complete) {
+        long now = System.currentTimeMillis();
+        refreshBalances(now, complete || snapshot == null);
+        snapshot = new ServerSnapshot(
+                now,
+                collectOnlinePlayers(),
+                collectServerTime(),
+                Bukkit.getMaxPlayers(),
+                balances,
+                balancesError,
+                balancesCapturedAt
+        );
+    }
+
+    private void refreshBalances(long now, boolean complete) {
+        ticksSinceBalances += intervalTicks;
+        if (passEntries == null) {
+            if (!complete && ticksSinceBalances < BALANCE_REFRESH_TICKS) {
+                return;
+            }
+            ticksSinceBalances = 0L;
+        }
+        Objective obj;
+        try {
+            obj = balanceObjective();
+        } catch (IllegalArgumentException e) {
+            passEntries = null;
+            passBalances = null;
+            balances = null;
+            balancesError = e.getMessage();
+            balancesCapturedAt = now;
+            return;
+        }
+        if (passEntries == null) {
+            // a pass reads the entries as they were when it started; entries added later wait for the next pass
+            passEntries = new ArrayList<>(obj.getScoreboard().getEntries());
+            passBalances = new HashMap<>(Math.max(16, passEntries.size() * 4 / 3 + 1));
+            passIndex = 0;
+            passStartedAt = now;
+        }
+        int end = complete ? passEntries.size() : Math.min(passEntries.size(), passIndex + BALANCE_ENTRIES_PER_TICK);
+        for (; passIndex < end; passIndex++) {
+            String entry = passEntries.get(passIndex);
+            passBalances.put(entry, obj.getScore(entry).getScore());
+        }
+        if (passIndex < passEntries.size()) {
+            return;
+        }
+        balances = Collections.unmodifiableMap(passBalances);
+        balancesError = null;
+        // scores read during the pass are at least as new as its start, so later writes still take precedence
+        balancesCapturedAt = passStartedAt;
+        passEntries = null;
+        passBalances = null;
+    }
+
+    private List<Map<String, Object>> collectOnlinePlayers() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("uuid", player.getUniqueId().toString());
+            item.put("name", player.getName());
+            item.put("health", player.getHealth());
+            item.put("max_health", player.getMaxHealth());
+            GameMode gameMode = player.getGameMode();
+            item.put("game_mode", gameMode != null ? gameMode.name() : null);
+            World world = player.getWorld();
+            item.put("world", world != null ? world.getName() : null);
+            result.add(Collections.unmodifiableMap(item));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private Map<String, Object> collectServerTime() {
+        Map<String, Object> result = new HashMap<>();
+        World world = null;
+        for (World w : Bukkit.getWorlds()) {
+            world = w;
+            break;
+        }
+        if (world == null) {
+            result.put("world", null);
+            result.put("time", null);
+            result.put("full_time", null);
+            result.put("do_daylight_cycle", null);
+            return Collections.unmodifiableMap(result);
+        }
+        result.put("world", world.getName());
+        result.put("time", world.getTime());
+        result.put("full_time", world.getFullTime());
+        result.put("do_daylight_cycle", world.getGameRuleValue("doDaylightCycle"));
+        return Collections.unmodifiableMap(result);
+    }
+
+    private Objective balanceObjective() {
+        ScoreboardManager manager = Bukkit.getScoreboardManager();
+        if (manager == null) {
+            throw new IllegalArgumentException("scoreboard manager not available");
+        }
+        Scoreboard main = manager.getMainScoreboard();
+        if (main == null) {
+            throw new IllegalArgumentException("main scoreboard not available");
+        }
+        Objective obj = main.getObjective(BALANCE_OBJECTIVE);
+        if (obj == null) {
+            throw new IllegalArgumentException("objective " + BALANCE_OBJECTIVE + " not found");
+        }
+        return obj;
+    }
+}
@@ -0,0 +1,134 @@
+package com.hydroline.beacon.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+
+/**
+ * Decodes a Base64 payload split into {@code [{index, data}, ...]} chunks (in any order) without joining
+ * the text: chunks are slotted by index, checked for gaps and duplicates, and streamed through a Base64
+ * decoder into a buffer sized to the exact decoded length.
+ */
+public final class ChunkedBase64Decoder {
+
+    private ChunkedBase64Decoder() {}
+
+    /**
+     * @throws IllegalArgumentException when chunks are missing, duplicated, not textual or not valid Base64
+     */
+    public static byte[] decode(JsonNode chunks) {
+        if (chunks == null || !chunks.isArray() || chunks.size() == 0) {
+            throw new IllegalArgumentException("no chunks");
+        }
+        String[] ordered = new String[chunks.size()];
+        long totalChars = 0;
+        for (JsonNode chunk : chunks) {
+            JsonNode indexNode = chunk.path("index");
+            JsonNode dataNode = chunk.path("data");
+            if (!indexNode.canConvertToInt() || !dataNode.isTextual()) {
+                throw new IllegalArgumentException("malformed chunk " + chunk.path("index").asText("?"));
+            }
+            int index = indexNode.asInt();
+            if (index < 0 || index >= ordered.length) {
+                throw new IllegalArgumentException("chunk index " + index + " out of range 0.." + (ordered.length - 1));
+            }
+            if (ordered[index] != null) {
+                throw new IllegalArgumentException("duplicate chunk " + index);
+            }
+            ordered[index] = dataNode.textValue();
+            totalChars += ordered[index].length();
+        }
+        // every slot is filled: n distinct indices in [0, n)
+        if (totalChars == 0 || totalChars % 4 != 0) {
+            throw new IllegalArgumentException("Base64 length " + totalChars + " is not a positive multiple of 4");
+        }
+        long decodedLength = totalChars / 4 * 3 - trailingPadding(ordered);
+        if (decodedLength > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("payload too large: " + decodedLength + " bytes");
+        }
+        byte[] out = new byte[(int) decodedLength];
+        try (InputStream in = Base64.getDecoder().wrap(new ChunkStream(ordered))) {
+            int offset = 0;
+            while (offset < out.length) {
+                int read = in.read(out, offset, out.length - offset);
+                if (read < 0) {
+                    throw new IllegalArgumentException("payload ended after " + offset + " of " + out.length + " bytes");
+                }
+                offset += read;
+            }
+            if (in.read() >= 0) {
+                throw new IllegalArgumentException("payload longer than " + out.length + " bytes");
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        return out;
+    }
+
+    // '=' characters at the very end, which may be split across the last chunks
+    private static int trailingPadding(String[] ordered) {
+        int padding = 0;
+        for (int i = ordered.length - 1; i >= 0 && padding < 2; i--) {
+            String chunk = ordered[i];
+            for (int j = chunk.length() - 1; j >= 0 && padding < 2; j--) {
+                if (chunk.charAt(j) != '=') {
+                    return padding;
+                }
+                padding++;
+            }
+        }
+        return padding;
+    }
+
+    // Presents the chunk strings, in index order, as one ASCII byte stream.
+    private static final class ChunkStream extends InputStream {
+        private final String[] chunks;
+        private int chunk;
+        private int position;
+
+        private ChunkStream(String[] chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read() {
+            while (chunk < chunks.length && position >= chunks[chunk].length()) {
+                chunk++;
+                position = 0;
+            }
+            if (chunk >= chunks.length) {
+                return -1;
+            }
+            return ascii(chunks[chunk].charAt(position++));
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            int written = 0;
+            while (written < length && chunk < chunks.length) {
+                String current = chunks[chunk];
+                int count = Math.min(length - written, current.length() - position);
+                for (int i = 0; i < count; i++) {
+                    buffer[offset + written + i] = (byte) ascii(current.charAt(position + i));
+                }
+                written += count;
+                position += count;
+                if (position >= current.length()) {
+                    chunk++;
+                    position = 0;
+                }
+            }
+            return written == 0 ? -1 : written;
+        }
+
+        // anything outside ASCII becomes '?', which the Base64 decoder rejects
+        private static int ascii(char c) {
+            return c < 0x80 ? c : '?';
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.hydroline.beacon.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts selected subtrees from a JSON document with a streaming parser, skipping every branch
+ * that no requested path goes through. Paths can be JSON Pointers ({@code /Inventory/0/id}) or
+ * NBT-style paths ({@code Inventory[0].id}, {@code bukkit.lastKnownName}, {@code "odd.key".x}). The document
+ * root is the empty path, as in RFC 6901; {@code "/"} is the pointer to the key {@code ""}.
+ */
+public final class JsonPathProjector {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory FACTORY = MAPPER.getFactory();
+
+    private JsonPathProjector() {}
+
+    /**
+     * Returns a map of each requested path (in request order) to its subtree, or null when the path does not exist.
+     *
+     * @throws IllegalArgumentException if a path expression cannot be parsed
+     */
+    public static Map<String, JsonNode> project(String json, List<String> paths) throws IOException {
+        Map<String, JsonNode> result = new LinkedHashMap<>();
+        PathNode root = new PathNode();
+        int targets = 0;
+        for (String path : paths) {
+            if (path == null || result.containsKey(path)) {
+                continue;
+            }
+            result.put(path, null);
+            PathNode node = root;
+            for (String segment : parsePath(path)) {
+                node = node.child(segment);
+            }
+            node.targets.add(path);
+            targets++;
+        }
+        if (targets == 0 || json == null) {
+            return result;
+        }
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            if (parser.nextToken() != null) {
+                walk(parser, root, result, new int[]{targets});
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Walks the value the parser is currently positioned on. Returns false once every target has been resolved
+     * so that callers can stop reading the rest of the document.
+     */
+    private static boolean walk(JsonParser parser, PathNode node, Map<String, JsonNode> out, int[] remaining)
+            throws IOException {
+        if (!node.targets.isEmpty()) {
+            JsonNode value = MAPPER.readTree(parser);
+            resolveFromTree(value, node, out, remaining);
+            return remaining[0] > 0;
+        }
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                PathNode child = node.children.get(parser.getCurrentName());
+                parser.nextToken();
+                if (child == null) {
+                    parser.skipChildren();
+                } else if (!walk(parser, child, out, remaining)) {
+                    return false;
+                }
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            int index = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                PathNode child = node.children.get(Integer.toString(index++));
+                if (child == null) {
+                    parser.skipChildren();
+                } else if (!walk(parser, child, out, remaining)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Once a subtree has been materialized, deeper targets below it are resolved from the tree itself.
+    private static void resolveFromTree(JsonNode value, PathNode node, Map<String, JsonNode> out, int[] remaining) {
+        if (value == null || value.isMissingNode()) {
+            return;
+        }
+        for (String target : node.targets) {
+            out.put(target, value);
+            remaining[0]--;
+        }
+        for (Map.Entry<String, PathNode> e : node.children.entrySet()) {
+            JsonNode child = null;
+            if (value.isObject()) {
+                child = value.get(e.getKey());
+            } else if (value.isArray() && isIndex(e.getKey())) {
+                child = value.get(Integer.parseInt(e.getKey()));
+            }
+            resolveFromTree(child, e.getValue(), out, remaining);
+        }
+    }
+
+    static List<String> parsePath(String path) {
+        String trimmed = path.trim();
+        if (trimmed.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return trimmed.charAt(0) == '/' ? parsePointer(trimmed) : parseNbtPath(trimmed);
+    }
+
+    // RFC 6901: '/'-separated segments with ~1 -> '/' and ~0 -> '~'
+    private static List<String> parsePointer(String pointer) {
+        List<String> segments = new ArrayList<>();
+        for (String raw : pointer.substring(1).split("/", -1)) {
+            segments.add(raw.replace("~1", "/").replace("~0", "~"));
+        }
+        return segments;
+    }
+
+    // NBT path subset: dotted keys, optional "quoted keys" and [index] accessors. Every '.' must sit between two
+    // segments and a key must follow '.' or start the path, so "a..b", ".a", "a." and "a[0]b" are rejected.
+    private static List<String> parseNbtPath(String path) {
+        List<String> segments = new ArrayList<>();
+        int i = 0;
+        int len = path.length();
+        boolean afterDot = false;
+        while (i < len) {
+            char c = path.charAt(i);
+            if (!segments.isEmpty() && !afterDot && c != '.' && c != '[') {
+                throw new IllegalArgumentException("expected '.' or '[' at " + i + " in path: " + path);
+            }
+            if (c == '.') {
+                if (segments.isEmpty() || afterDot || i == len - 1) {
+                    throw new IllegalArgumentException("empty segment in path: " + path);
+                }
+                afterDot = true;
+                i++;
+                continue;
+            }
+            if (c == '[' && afterDot) {
+                throw new IllegalArgumentException("empty segment in path: " + path);
+            }
+            afterDot = false;
+            if (c == '[') {
+                int end = path.indexOf(']', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("unclosed '[' in path: " + path);
+                }
+                String index = path.substring(i + 1, end).trim();
+                if (!isIndex(index)) {
+                    throw new IllegalArgumentException("only numeric indexes are supported: " + path);
+                }
+                segments.add(Integer.toString(Integer.parseInt(index)));
+                i = end + 1;
+            } else if (c == '"') {
+                StringBuilder sb = new StringBuilder();
+                i++;
+                while (i < len && path.charAt(i) != '"') {
+                    char ch = path.charAt(i);
+                    if (ch == '\\' && i + 1 < len) {
+                        ch = path.charAt(++i);
+                    }
+                    sb.append(ch);
+                    i++;
+                }
+                if (i >= len) {
+                    throw new IllegalArgumentException("unclosed quote in path: " + path);
+                }
+                segments.add(sb.toString());
+                i++;
+            } else {
+                int start = i;
+                while (i < len && path.charAt(i) != '.' && path.charAt(i) != '[') {
+                    i++;
+                }
+                segments.add(path.substring(start, i));
+            }
+        }
+        return segments;
+    }
+
+    private static boolean isIndex(String s) {
+        if (s.isEmpty() || s.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class PathNode {
+        private final Map<String, PathNode> children = new HashMap<>();
+        private final List<String> targets = new ArrayList<>();
+
+        private PathNode child(String segment) {
+            PathNode node = children.get(segment);
+            if (node == null) {
+                node = new PathNode();
+                children.put(segment, node);
+            }
+            return node;
+        }
+    }
+}
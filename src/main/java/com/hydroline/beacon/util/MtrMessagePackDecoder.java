@@ -220,6 +220,8 @@ public final class MtrMessagePackDecoder {
     }
 
     public static final class MtrMessagePackException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
         private MtrMessagePackException(String message) {
             super(message);
         }
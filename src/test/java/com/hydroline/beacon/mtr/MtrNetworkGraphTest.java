@@ -0,0 +1,170 @@
+package com.hydroline.beacon.mtr;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MtrNetworkGraphTest {
+
+    private final Map<Long, MtrNetworkGraph.Station> stations = new HashMap<>();
+    private final Map<Long, MtrNetworkGraph.Platform> platforms = new HashMap<>();
+    private final Map<Long, MtrNetworkGraph.Route> routes = new HashMap<>();
+    private final Map<MtrNetworkGraph.SegmentKey, Double> segmentSeconds = new HashMap<>();
+
+    @Test
+    void fastestAndFewestTransfersPickDifferentRoutes() {
+        station(1);
+        station(2);
+        station(3);
+        platform(11, 1, 0);
+        platform(21, 2, 0);
+        platform(31, 3, 0);
+        route(100, false, 11, 31);
+        route(200, false, 11, 21);
+        route(300, false, 21, 31);
+        ride(11, 31, 600);
+        ride(11, 21, 60);
+        ride(21, 31, 60);
+        MtrNetworkGraph graph = graph();
+
+        Map<String, Object> fastest = graph.findJourney(1, 3, MtrNetworkGraph.Mode.FASTEST);
+        assertEquals(Math.round(60 + MtrNetworkGraph.TRANSFER_WAIT_SECONDS + 60), fastest.get("total_seconds"));
+        assertEquals(1, fastest.get("transfers"));
+        assertEquals(200L, legs(fastest).get(0).get("route_id"));
+        assertEquals(300L, legs(fastest).get(1).get("route_id"));
+
+        Map<String, Object> fewest = graph.findJourney(1, 3, MtrNetworkGraph.Mode.FEWEST_TRANSFERS);
+        assertEquals(600L, fewest.get("total_seconds"));
+        assertEquals(0, fewest.get("transfers"));
+        assertEquals(1, legs(fewest).size());
+        assertEquals(100L, legs(fewest).get(0).get("route_id"));
+    }
+
+    @Test
+    void interchangeAddsWalkAndTransferWait() {
+        station(1);
+        station(2);
+        station(3);
+        platform(11, 1, 0);
+        platform(21, 2, 0);
+        platform(22, 2, 10);
+        platform(31, 3, 0);
+        route(200, false, 11, 21);
+        route(300, false, 22, 31);
+        ride(11, 21, 60);
+        ride(22, 31, 90);
+
+        Map<String, Object> journey = graph().findJourney(1, 3, MtrNetworkGraph.Mode.FASTEST);
+
+        double expected = 60 + MtrNetworkGraph.INTERCHANGE_WALK_SECONDS + MtrNetworkGraph.TRANSFER_WAIT_SECONDS + 90;
+        assertEquals(Math.round(expected), journey.get("total_seconds"));
+        assertEquals(1, journey.get("transfers"));
+        List<Map<String, Object>> legs = legs(journey);
+        assertEquals(2, legs.size());
+        assertEquals(21L, legs.get(0).get("to_platform_id"));
+        assertEquals(22L, legs.get(1).get("from_platform_id"));
+        // a leg's time starts once the train is boarded, after the walk and the wait
+        assertEquals(90L, legs.get(1).get("seconds"));
+    }
+
+    @Test
+    void circularRouteWrapsToItsFirstPlatform() {
+        station(1);
+        station(2);
+        station(3);
+        platform(11, 1, 0);
+        platform(21, 2, 0);
+        platform(31, 3, 0);
+        ride(11, 21, 60);
+        ride(21, 31, 60);
+        ride(31, 11, 60);
+
+        route(100, true, 11, 21, 31);
+        Map<String, Object> journey = graph().findJourney(3, 1, MtrNetworkGraph.Mode.FASTEST);
+        assertNotNull(journey);
+        assertEquals(60L, journey.get("total_seconds"));
+        assertEquals(1, legs(journey).get(0).get("stops"));
+
+        route(100, false, 11, 21, 31);
+        assertNull(graph().findJourney(3, 1, MtrNetworkGraph.Mode.FASTEST));
+    }
+
+    @Test
+    void unreachableOrSameStationHasNoJourney() {
+        station(1);
+        station(2);
+        platform(11, 1, 0);
+        platform(21, 2, 0);
+        MtrNetworkGraph graph = graph();
+
+        assertNull(graph.findJourney(1, 2, MtrNetworkGraph.Mode.FASTEST));
+        assertNull(graph.findJourney(1, 1, MtrNetworkGraph.Mode.FASTEST));
+    }
+
+    @Test
+    void ridesFollowScannedRails() {
+        station(1);
+        station(2);
+        platform(11, 1, 0);
+        platform(21, 2, 0);
+        route(100, false, 11, 21);
+        // platform 11 ends at (1001, 64, 0), platform 21 starts at (2000, 64, 0)
+        long from = pack(1001, 64, 0);
+        long via = pack(1500, 64, 0);
+        long to = pack(2000, 64, 0);
+        Map<Long, MtrNetworkGraph.RailNode> rails = new HashMap<>();
+        rails.put(from, new MtrNetworkGraph.RailNode(from, new long[]{via}, new String[]{"IRON"}, new double[]{20}));
+        rails.put(via, new MtrNetworkGraph.RailNode(via, new long[]{to}, new String[]{"IRON"}, new double[]{25}));
+
+        Map<String, Object> journey = new MtrNetworkGraph(stations, platforms, routes, rails, segmentSeconds, 0L)
+                .findJourney(1, 2, MtrNetworkGraph.Mode.FASTEST);
+
+        assertEquals(45L, journey.get("total_seconds"));
+    }
+
+    // Station n covers x in [n * 1000, n * 1000 + 100], z in [0, 100].
+    private void station(long id) {
+        int x = (int) id * 1000;
+        stations.put(id, new MtrNetworkGraph.Station(id, "S" + id, 0L, x, 0, x + 100, 100));
+    }
+
+    // A two-block platform inside the station, offset along z.
+    private void platform(long id, long stationId, int z) {
+        int x = (int) stationId * 1000;
+        platforms.put(id, new MtrNetworkGraph.Platform(id, "P" + id, pack(x, 64, z), pack(x + 1, 64, z), 0.0));
+    }
+
+    private void route(long id, boolean circular, long... platformIds) {
+        List<Long> ids = new ArrayList<>();
+        for (long platformId : platformIds) {
+            ids.add(platformId);
+        }
+        routes.put(id, new MtrNetworkGraph.Route(id, "R" + id, 0L, ids, circular));
+    }
+
+    private void ride(long fromPlatformId, long toPlatformId, double seconds) {
+        MtrNetworkGraph.Platform from = platforms.get(fromPlatformId);
+        MtrNetworkGraph.Platform to = platforms.get(toPlatformId);
+        segmentSeconds.put(new MtrNetworkGraph.SegmentKey(from.node1, from.node2, to.node1, to.node2), seconds);
+    }
+
+    private MtrNetworkGraph graph() {
+        return new MtrNetworkGraph(stations, platforms, routes, new HashMap<>(), new HashMap<>(segmentSeconds), 0L);
+    }
+
+    static long pack(int x, int y, int z) {
+        return ((long) x << 38) | (((long) z & 0x3FFFFFFL) << 12) | ((long) y & 0xFFFL);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> legs(Map<String, Object> journey) {
+        return (List<Map<String, Object>>) journey.get("legs");
+    }
+}
@@ -0,0 +1,147 @@
+package com.hydroline.beacon.mtr;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MtrTileEngineTest {
+
+    private final List<MtrNetworkGraph.RailNode> rails = new ArrayList<>();
+
+    @Test
+    void loopWithoutEndpointIsOnePolyline() {
+        rail(0, 0, 10, 0, "IRON");
+        rail(10, 0, 10, 10, "IRON");
+        rail(10, 10, 0, 10, "IRON");
+        rail(0, 10, 0, 0, "IRON");
+
+        List<MtrTileEngine.Polyline> polylines = MtrTileEngine.buildPolylines(rails);
+
+        assertEquals(1, polylines.size());
+        int[] points = polylines.get(0).points;
+        assertEquals(10, points.length);
+        // the loop closes on the node it started from
+        assertEquals(points[0], points[8]);
+        assertEquals(points[1], points[9]);
+        assertArrayEquals(new int[]{0, 0, 10, 10}, polylines.get(0).bounds);
+    }
+
+    @Test
+    void railTypeChangeSplitsRun() {
+        rail(0, 0, 10, 0, "IRON");
+        rail(10, 0, 20, 0, "IRON");
+        rail(20, 0, 30, 0, "WOOD");
+
+        List<MtrTileEngine.Polyline> polylines = MtrTileEngine.buildPolylines(rails);
+
+        assertEquals(2, polylines.size());
+        MtrTileEngine.Polyline iron = byType(polylines, "IRON");
+        MtrTileEngine.Polyline wood = byType(polylines, "WOOD");
+        assertArrayEquals(new int[]{0, 0, 10, 0, 20, 0}, iron.points);
+        assertArrayEquals(new int[]{20, 0, 30, 0}, wood.points);
+    }
+
+    @Test
+    void junctionSplitsRuns() {
+        rail(0, 0, 10, 0, "IRON");
+        rail(0, 0, -10, 0, "IRON");
+        rail(0, 0, 0, 10, "IRON");
+
+        List<MtrTileEngine.Polyline> polylines = MtrTileEngine.buildPolylines(rails);
+
+        assertEquals(3, polylines.size());
+        for (MtrTileEngine.Polyline polyline : polylines) {
+            assertEquals(4, polyline.points.length);
+        }
+    }
+
+    @Test
+    void simplifyDropsPointsWithinToleranceAndKeepsEndpoints() {
+        int[] points = {0, 0, 10, 1, 20, 0, 30, -1, 40, 0};
+
+        assertArrayEquals(new int[]{0, 0, 40, 0}, MtrTileEngine.simplify(points, 2.0));
+    }
+
+    @Test
+    void simplifyKeepsPointsBeyondTolerance() {
+        // (20, 10) is 10 blocks off the chord; (10, 0) and (30, 0) are under 5 blocks off its two halves
+        int[] points = {0, 0, 10, 0, 20, 10, 30, 0, 40, 0};
+
+        assertArrayEquals(new int[]{0, 0, 20, 10, 40, 0}, MtrTileEngine.simplify(points, 5.0));
+        assertArrayEquals(points, MtrTileEngine.simplify(points, 1.0));
+    }
+
+    @Test
+    void simplifyKeepsClosedLoop() {
+        int[] points = {0, 0, 10, 0, 10, 10, 0, 10, 0, 0};
+
+        assertArrayEquals(points, MtrTileEngine.simplify(points, 1.0));
+    }
+
+    @Test
+    void simplifyLeavesSingleSegmentAlone() {
+        int[] points = {0, 0, 40, 0};
+
+        assertSame(points, MtrTileEngine.simplify(points, 100.0));
+    }
+
+    @Test
+    void segmentTilesFollowsStraightSegment() {
+        assertArrayEquals(new long[]{tileKey(0, 0), tileKey(1, 0), tileKey(2, 0)},
+                MtrTileEngine.segmentTiles(0, 5, 300, 5, 128));
+        assertArrayEquals(new long[]{tileKey(-1, -1), tileKey(-2, -1)},
+                MtrTileEngine.segmentTiles(-1, -1, -200, -1, 128));
+    }
+
+    @Test
+    void segmentTilesWalksDiagonalInsteadOfBoundingBox() {
+        long[] keys = MtrTileEngine.segmentTiles(0, 0, 1000, 1000, 128);
+
+        // 8 x 8 tiles in the bounding box, 15 on the walk
+        assertEquals(15, keys.length);
+        assertEquals(tileKey(0, 0), keys[0]);
+        assertEquals(tileKey(7, 7), keys[keys.length - 1]);
+        for (int i = 1; i < keys.length; i++) {
+            int steps = Math.abs(tileX(keys[i]) - tileX(keys[i - 1])) + Math.abs(tileZ(keys[i]) - tileZ(keys[i - 1]));
+            assertEquals(1, steps);
+        }
+        // every tile is crossed by the segment
+        for (long key : keys) {
+            assertTrue(Math.abs(tileX(key) - tileZ(key)) <= 1, "tile off the diagonal: " + tileX(key) + "," + tileZ(key));
+        }
+    }
+
+    private void rail(int x1, int z1, int x2, int z2, String type) {
+        long from = MtrNetworkGraphTest.pack(x1, 64, z1);
+        long to = MtrNetworkGraphTest.pack(x2, 64, z2);
+        rails.add(new MtrNetworkGraph.RailNode(from, new long[]{to}, new String[]{type}, new double[]{1}));
+    }
+
+    private static MtrTileEngine.Polyline byType(List<MtrTileEngine.Polyline> polylines, String type) {
+        for (MtrTileEngine.Polyline polyline : polylines) {
+            if (type.equals(polyline.railType)) {
+                return polyline;
+            }
+        }
+        throw new AssertionError("no " + type + " polyline in " + Arrays.toString(polylines.toArray()));
+    }
+
+    private static long tileKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    private static int tileX(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int tileZ(long key) {
+        return (int) key;
+    }
+}
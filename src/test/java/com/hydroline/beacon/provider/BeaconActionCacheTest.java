@@ -0,0 +1,77 @@
+package com.hydroline.beacon.provider;
+
+import com.hydroline.beacon.provider.channel.BeaconActionCall;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BeaconActionCacheTest {
+
+    @Test
+    void freshnessBoundaries() {
+        assertEquals(BeaconActionCache.Freshness.FRESH, BeaconActionCache.freshness(0L, 1000L, 500L));
+        assertEquals(BeaconActionCache.Freshness.FRESH, BeaconActionCache.freshness(999L, 1000L, 500L));
+        assertEquals(BeaconActionCache.Freshness.STALE, BeaconActionCache.freshness(1000L, 1000L, 500L));
+        assertEquals(BeaconActionCache.Freshness.STALE, BeaconActionCache.freshness(1499L, 1000L, 500L));
+        assertEquals(BeaconActionCache.Freshness.EXPIRED, BeaconActionCache.freshness(1500L, 1000L, 500L));
+    }
+
+    @Test
+    void noStaleWindowExpiresAtTtl() {
+        assertEquals(BeaconActionCache.Freshness.EXPIRED, BeaconActionCache.freshness(1000L, 1000L, 0L));
+    }
+
+    @Test
+    void staleWindowIsCappedAtTtl() {
+        BeaconActionCache cache = new BeaconActionCache(() -> null, ttl("realtime", 2L, "static", 600L), 60L, 16);
+
+        assertEquals(2000L, cache.staleMillis(2000L));
+        assertEquals(60000L, cache.staleMillis(600000L));
+    }
+
+    @Test
+    void metricsReportEffectiveStaleWindow() {
+        BeaconActionCache cache = new BeaconActionCache(() -> null, ttl("realtime", 2L, "static", 600L), 60L, 16);
+
+        Map<String, Object> metrics = cache.getMetrics();
+        Map<String, Object> actions = castMap(metrics.get("actions"));
+        assertEquals(60L, metrics.get("stale_seconds"));
+        assertEquals(2L, castMap(actions.get("realtime")).get("stale_seconds"));
+        assertEquals(60L, castMap(actions.get("static")).get("stale_seconds"));
+    }
+
+    @Test
+    void ignoresNonPositiveTtl() {
+        BeaconActionCache cache = new BeaconActionCache(() -> null, ttl("disabled", 0L, "static", 600L), 60L, 16);
+
+        Map<String, Object> actions = castMap(cache.getMetrics().get("actions"));
+        assertEquals(1, actions.size());
+        assertEquals(600L, castMap(actions.get("static")).get("ttl_seconds"));
+    }
+
+    @Test
+    void offlineMissReturnsNull() {
+        BeaconActionCache cache = new BeaconActionCache(() -> null, ttl("static", 600L), 60L, 16);
+
+        assertNull(cache.send(BeaconActionCall.of("static", null, Object.class)));
+        assertNull(cache.send(BeaconActionCall.of("uncached", null, Object.class)));
+        assertEquals(1L, cache.getActionStats().get("static").getMisses());
+    }
+
+    private static Map<String, Long> ttl(Object... pairs) {
+        Map<String, Long> ttl = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            ttl.put((String) pairs[i], (Long) pairs[i + 1]);
+        }
+        return ttl;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+}
@@ -0,0 +1,115 @@
+package com.hydroline.beacon.provider;
+
+import com.hydroline.beacon.provider.actions.dto.MtrDtos;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MtrTrainStreamTest {
+
+    private static final long ROUTE = 1L;
+    private static final long OTHER_ROUTE = 2L;
+
+    @Test
+    void newTrainIsChangedWithoutVelocity() {
+        Map<String, MtrTrainStream.Sampled> current = samples(1000L, train("a", ROUTE, 0, 0.1));
+
+        MtrTrainStream.Diff diff = MtrTrainStream.diff(Collections.emptyMap(), current, routes(ROUTE), routes(ROUTE));
+
+        assertEquals(1, diff.changedCount);
+        Map<String, Object> delta = diff.changed.get(ROUTE).get(0);
+        assertEquals("a", ((MtrDtos.TrainStatus) delta.get("train")).getTrainUuid());
+        assertFalse(delta.containsKey("velocity"));
+        assertFalse(delta.containsKey("elapsed_ms"));
+    }
+
+    @Test
+    void movedTrainCarriesVelocityAndProgressRate() {
+        Map<String, MtrTrainStream.Sampled> previous = samples(1000L, train("a", ROUTE, 0, 0.2));
+        Map<String, MtrTrainStream.Sampled> current = samples(3000L, train("a", ROUTE, 20, 0.4));
+
+        MtrTrainStream.Diff diff = MtrTrainStream.diff(previous, current, routes(ROUTE), routes(ROUTE));
+
+        Map<String, Object> delta = diff.changed.get(ROUTE).get(0);
+        assertEquals(2000L, delta.get("elapsed_ms"));
+        assertEquals(0.1, (Double) delta.get("progress_per_second"), 1e-9);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> velocity = (Map<String, Object>) delta.get("velocity");
+        assertEquals(10.0, (Double) velocity.get("x"), 1e-9);
+        assertEquals(0.0, (Double) velocity.get("z"), 1e-9);
+    }
+
+    @Test
+    void unmovedTrainIsUnchanged() {
+        Map<String, MtrTrainStream.Sampled> previous = samples(1000L, train("a", ROUTE, 5, 0.5));
+        Map<String, MtrTrainStream.Sampled> current = samples(2000L, train("a", ROUTE, 5, 0.5));
+
+        MtrTrainStream.Diff diff = MtrTrainStream.diff(previous, current, routes(ROUTE), routes(ROUTE));
+
+        assertEquals(1, diff.unchanged);
+        assertEquals(0, diff.changedCount);
+        assertTrue(diff.changed.isEmpty());
+        assertTrue(diff.removed.isEmpty());
+    }
+
+    @Test
+    void missingTrainOfFetchedRouteIsRemoved() {
+        Map<String, MtrTrainStream.Sampled> previous = samples(1000L,
+                train("a", ROUTE, 0, 0.1), train("b", ROUTE, 0, 0.1));
+        Map<String, MtrTrainStream.Sampled> current = samples(2000L, train("a", ROUTE, 0, 0.1));
+
+        MtrTrainStream.Diff diff = MtrTrainStream.diff(previous, current, routes(ROUTE), routes(ROUTE));
+
+        assertEquals(Collections.singletonList("b"), diff.removed.get(ROUTE));
+    }
+
+    @Test
+    void trainOfFailedRouteIsCarriedOver() {
+        Map<String, MtrTrainStream.Sampled> previous = samples(1000L,
+                train("a", ROUTE, 0, 0.1), train("b", OTHER_ROUTE, 0, 0.1));
+        Map<String, MtrTrainStream.Sampled> current = samples(2000L, train("a", ROUTE, 0, 0.1));
+
+        MtrTrainStream.Diff diff = MtrTrainStream.diff(previous, current, routes(ROUTE, OTHER_ROUTE), routes(ROUTE));
+
+        assertSame(previous.get("b"), current.get("b"));
+        assertTrue(diff.removed.isEmpty());
+        assertFalse(diff.changed.containsKey(OTHER_ROUTE));
+        assertEquals(1, diff.unchanged);
+    }
+
+    private static MtrDtos.TrainStatus train(String uuid, long routeId, int x, double progress) {
+        MtrDtos.NodeInfo node = new MtrDtos.NodeInfo();
+        node.setX(x);
+        node.setY(64);
+        MtrDtos.TrainStatus status = new MtrDtos.TrainStatus();
+        status.setTrainUuid(uuid);
+        status.setRouteId(routeId);
+        status.setCurrentStationId(10L);
+        status.setNextStationId(11L);
+        status.setProgress(progress);
+        status.setNode(node);
+        return status;
+    }
+
+    private static Map<String, MtrTrainStream.Sampled> samples(long sampledAt, MtrDtos.TrainStatus... trains) {
+        Map<String, MtrTrainStream.Sampled> samples = new HashMap<>();
+        for (MtrDtos.TrainStatus train : trains) {
+            samples.put(train.getTrainUuid(), new MtrTrainStream.Sampled(train, sampledAt));
+        }
+        return samples;
+    }
+
+    private static Set<Long> routes(Long... routeIds) {
+        return new HashSet<>(Arrays.asList(routeIds));
+    }
+}
@@ -0,0 +1,173 @@
+package com.hydroline.beacon.task;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(10)
+class ScanPipelineTest {
+
+    private final Logger logger = Logger.getLogger(ScanPipelineTest.class.getName());
+    private final AtomicInteger commits = new AtomicInteger();
+    private final AtomicInteger rollbacks = new AtomicInteger();
+    // rows "written" through the fake connection; a savepoint rollback truncates it
+    private final List<Integer> rows = new ArrayList<>();
+    private ScanPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        logger.setLevel(Level.OFF);
+        pipeline = new ScanPipeline(logger, 2, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+        // the interrupted-writer case leaves the flag set when run() returns
+        Thread.interrupted();
+    }
+
+    @Test
+    void writesEveryDiscoveredItem() throws SQLException {
+        ScanPipeline.Result result = pipeline.<Integer, Integer>run("test", connection(),
+                sink -> emitRange(sink, 600), item -> item, (connection, item) -> { });
+
+        assertEquals(600, result.getDiscovered());
+        assertEquals(600, result.getParsed());
+        assertEquals(600, result.getWritten());
+        assertEquals(0, result.getFailed());
+        // two full batches of 256 plus the final commit
+        assertEquals(3, commits.get());
+    }
+
+    @Test
+    void countsParseAndWriteFailuresAndRollsBackFailedWrites() throws SQLException {
+        ScanPipeline.Result result = pipeline.<Integer, Integer>run("test", connection(),
+                sink -> emitRange(sink, 30),
+                item -> {
+                    if (item % 10 == 0) {
+                        throw new IllegalStateException("unreadable " + item);
+                    }
+                    return item % 10 == 1 ? null : item;
+                },
+                (connection, item) -> {
+                    // the first statement of the item succeeds before the second one fails
+                    rows.add(item);
+                    if (item % 10 == 2) {
+                        throw new SQLException("constraint " + item);
+                    }
+                });
+
+        assertEquals(30, result.getDiscovered());
+        assertEquals(24, result.getParsed());
+        assertEquals(21, result.getWritten());
+        assertEquals(6, result.getFailed());
+        assertEquals(3, rollbacks.get());
+        assertEquals(21, rows.size());
+        for (Integer row : rows) {
+            assertTrue(row % 10 != 2, "rolled back row " + row + " was kept");
+        }
+    }
+
+    @Test
+    void discoveryFailureStillEndsTheRun() throws SQLException {
+        ScanPipeline.Result result = pipeline.<Integer, Integer>run("test", connection(),
+                sink -> {
+                    emitRange(sink, 5);
+                    throw new IllegalStateException("directory vanished");
+                },
+                item -> item, (connection, item) -> { });
+
+        assertEquals(5, result.getDiscovered());
+        assertEquals(5, result.getWritten());
+        assertEquals(1, commits.get());
+    }
+
+    @Test
+    void shutdownBeforeRunDoesNotHang() throws SQLException {
+        pipeline.shutdown();
+
+        ScanPipeline.Result result = pipeline.<Integer, Integer>run("test", connection(),
+                sink -> emitRange(sink, 1000), item -> item, (connection, item) -> { });
+
+        assertEquals(0, result.getWritten());
+        assertEquals(1, commits.get());
+    }
+
+    @Test
+    void shutdownDuringRunDoesNotHang() throws SQLException {
+        ScanPipeline.Result result = pipeline.<Integer, Integer>run("test", connection(),
+                sink -> emitRange(sink, 100_000),
+                item -> {
+                    if (item == 50) {
+                        pipeline.shutdown();
+                    }
+                    return item;
+                },
+                (connection, item) -> { });
+
+        assertTrue(result.getWritten() < 100_000);
+        assertTrue(commits.get() >= 1);
+    }
+
+    @Test
+    void interruptedWriterCommitsPartialResults() throws SQLException {
+        Thread writer = Thread.currentThread();
+        ScanPipeline.Result result = pipeline.<Integer, Integer>run("test", connection(),
+                sink -> emitRange(sink, 100_000), item -> item,
+                (connection, item) -> {
+                    if (item == 10) {
+                        writer.interrupt();
+                    }
+                });
+
+        assertTrue(Thread.currentThread().isInterrupted());
+        assertTrue(result.getWritten() < 100_000);
+        assertTrue(commits.get() >= 1);
+    }
+
+    private static void emitRange(ScanPipeline.Sink<Integer> sink, int count) {
+        for (int i = 0; i < count; i++) {
+            sink.accept(i);
+        }
+    }
+
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "commit":
+                            commits.incrementAndGet();
+                            return null;
+                        case "setSavepoint":
+                            return savepoint(rows.size());
+                        case "rollback":
+                            rollbacks.incrementAndGet();
+                            int mark = ((Savepoint) args[0]).getSavepointId();
+                            rows.subList(mark, rows.size()).clear();
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private static Savepoint savepoint(int mark) {
+        return (Savepoint) Proxy.newProxyInstance(Savepoint.class.getClassLoader(), new Class<?>[]{Savepoint.class},
+                (proxy, method, args) -> "getSavepointId".equals(method.getName()) ? mark : null);
+    }
+}
@@ -0,0 +1,87 @@
+package com.hydroline.beacon.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChunkedBase64DecoderTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void decodesChunksInAnyOrder() {
+        byte[] payload = "hydroline beacon chunked payload".getBytes(StandardCharsets.UTF_8);
+        String encoded = Base64.getEncoder().encodeToString(payload);
+        ArrayNode chunks = MAPPER.createArrayNode();
+        chunks.add(chunk(2, encoded.substring(16)));
+        chunks.add(chunk(0, encoded.substring(0, 8)));
+        chunks.add(chunk(1, encoded.substring(8, 16)));
+
+        assertArrayEquals(payload, ChunkedBase64Decoder.decode(chunks));
+    }
+
+    @Test
+    void decodesPaddingSplitAcrossChunks() {
+        byte[] payload = {1, 2, 3, 4};
+        String encoded = Base64.getEncoder().encodeToString(payload);
+        ArrayNode chunks = MAPPER.createArrayNode();
+        chunks.add(chunk(0, encoded.substring(0, encoded.length() - 1)));
+        chunks.add(chunk(1, encoded.substring(encoded.length() - 1)));
+
+        assertArrayEquals(payload, ChunkedBase64Decoder.decode(chunks));
+    }
+
+    @Test
+    void rejectsMissingChunks() {
+        assertThrows(IllegalArgumentException.class, () -> ChunkedBase64Decoder.decode(MAPPER.createArrayNode()));
+        assertThrows(IllegalArgumentException.class, () -> ChunkedBase64Decoder.decode(null));
+    }
+
+    @Test
+    void rejectsDuplicateChunk() {
+        ArrayNode chunks = MAPPER.createArrayNode();
+        chunks.add(chunk(0, "AAAA"));
+        chunks.add(chunk(0, "AAAA"));
+
+        assertThrows(IllegalArgumentException.class, () -> ChunkedBase64Decoder.decode(chunks));
+    }
+
+    @Test
+    void rejectsIndexOutOfRange() {
+        ArrayNode chunks = MAPPER.createArrayNode();
+        chunks.add(chunk(0, "AAAA"));
+        chunks.add(chunk(2, "AAAA"));
+
+        assertThrows(IllegalArgumentException.class, () -> ChunkedBase64Decoder.decode(chunks));
+    }
+
+    @Test
+    void rejectsMalformedChunk() {
+        ArrayNode chunks = MAPPER.createArrayNode();
+        chunks.add(MAPPER.createObjectNode().put("index", 0).put("data", 42));
+
+        assertThrows(IllegalArgumentException.class, () -> ChunkedBase64Decoder.decode(chunks));
+    }
+
+    @Test
+    void rejectsInvalidBase64() {
+        ArrayNode truncated = MAPPER.createArrayNode();
+        truncated.add(chunk(0, "AAA"));
+        ArrayNode invalid = MAPPER.createArrayNode();
+        invalid.add(chunk(0, "AA*A"));
+
+        assertThrows(IllegalArgumentException.class, () -> ChunkedBase64Decoder.decode(truncated));
+        assertThrows(IllegalArgumentException.class, () -> ChunkedBase64Decoder.decode(invalid));
+    }
+
+    private static ObjectNode chunk(int index, String data) {
+        return MAPPER.createObjectNode().put("index", index).put("data", data);
+    }
+}